@@ -0,0 +1,74 @@
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Coin storage as it was before its counts moved into ordinal-indexed arrays - a 'HashMap' of boxed counts, looked up again for every check and update.
+ * <p>
+ * Kept only as the "before" of the 'coinStorageBaseline' benchmark cases, so 'CoinStorage' can be compared against it in one run.
+ * Only what those cases need is here; change planning goes through the same 'ChangePlanner' as 'CoinStorage', so only reading the counts differs.
+ */
+public class BaselineCoinStorage {
+    private final Map<CoinGBP, Integer> coinCounts = new HashMap<>();
+    private final Map<CoinGBP, Integer> coinMaxes;
+    private final ChangePlanner changePlanner = new ChangePlanner();
+
+    /**
+     * Constructor for an empty coin storage.
+     * @param coinMaxes All supported coin types and their respective capacities.
+     */
+    public BaselineCoinStorage(Map<CoinGBP, Integer> coinMaxes) {
+        this.coinMaxes = coinMaxes;
+        for (CoinGBP coin : coinMaxes.keySet()) { this.coinCounts.put(coin, 0); }
+    }
+
+    /**
+     * Deposits a single coin.
+     * @param coin The coin type to deposit.
+     * @throws IllegalArgumentException If the coin type is unsupported or its tube is full.
+     */
+    public void deposit(CoinGBP coin) {
+        this.checkSupportedCoins(coin);
+        if ((this.coinCounts.get(coin) + 1) > this.coinMaxes.get(coin)) { throw new IllegalArgumentException(String.format("Capacity of %s would be exceeded", coin)); }
+        this.coinCounts.put(coin, this.coinCounts.get(coin) + 1);
+    }
+    /**
+     * Deposits many coins of one type, one at a time as the old coin storage only could.
+     * @param coin   The coin type to deposit.
+     * @param amount How many coins to deposit.
+     */
+    public void deposit(CoinGBP coin, int amount) { for (int i = 0; i < amount; i++) this.deposit(coin); }
+    /**
+     * Withdraws a single coin.
+     * @param coin The coin type to withdraw.
+     * @throws IllegalArgumentException If the coin type is unsupported or its tube is empty.
+     */
+    public void withdraw(CoinGBP coin) {
+        this.checkSupportedCoins(coin);
+        if ((this.coinCounts.get(coin) - 1) < 0) { throw new IllegalArgumentException(String.format("Do not have %ss to withdraw", coin)); }
+        this.coinCounts.put(coin, this.coinCounts.get(coin) - 1);
+    }
+    /**
+     * Plans which coins to withdraw for an amount, using the fewest coins possible.
+     * @param amount The amount in pence.
+     * @return How many of each coin type to withdraw, indexed by 'CoinGBP.ordinal()'; otherwise 'null'.
+     */
+    public int[] planChange(long amount) { return this.changePlanner.plan(this.countVector(), amount); }
+
+    /**
+     * Helper method to reject unsupported coins.
+     * @param coin The coin type.
+     * @throws IllegalArgumentException If the coin type is unsupported.
+     */
+    private void checkSupportedCoins(CoinGBP coin) {
+        if (!this.coinMaxes.containsKey(coin)) { throw new IllegalArgumentException(String.format("This vending machine does not accept/support %ss. Use another coin type", coin)); }
+    }
+    /**
+     * Helper method to copy the counts into a vector for the change planner.
+     * @return Current count of every coin type, indexed by 'CoinGBP.ordinal()'.
+     */
+    private int[] countVector() {
+        int[] counts = new int[CoinGBP.values().length];
+        for (Map.Entry<CoinGBP, Integer> coinCount : this.coinCounts.entrySet()) { counts[coinCount.getKey().ordinal()] = coinCount.getValue(); }
+        return counts;
+    }
+}
@@ -0,0 +1,184 @@
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Throughput benchmark for 'CustomerSessionServer' - 100,000 simulated customer sessions against a fleet of vending machines, one virtual thread each.
+ * <p>
+ * Every session buys one or two items (seeded random choice) on one of the fleet's vending machines, spread evenly so every vending machine serves the same number of sessions one after another.
+ * A few customers walk away without paying, so their sessions time out and cancel.
+ * Two scenarios are measured:
+ * 'prequeued' - the coin is already waiting when the session reaches payment, so only admission and the vending machine are timed;
+ * 'fed' - another virtual thread per customer inserts the coin after a short delay, so sessions really block on coin insertion.
+ * <p>
+ * A fresh fleet is built (untimed) for every round. After every round, the drop in fleet stock must equal the items bought and every vending machine must be back to IDLE - otherwise the benchmark throws.
+ * <p>
+ * Run with: 'java --enable-preview -cp out:bench-out CustomerSessionBenchmark [scenario name filter]'.
+ */
+public class CustomerSessionBenchmark {
+    private static final int MACHINES = 1_000;
+    private static final int SESSIONS = 100_000;
+    private static final int SLOT_COUNT = 24;
+    private static final int SLOT_SIZE = 30;
+    //^ Each vending machine serves 100 sessions of at most two items - 8 of each item on average, far from the 30 stocked.
+    private static final int WARMUP_ROUNDS = 1;
+    private static final int MEASURED_ROUNDS = 3;
+    private static final long SEED = 7007L;
+    private static final double WALK_AWAY_RATE = 0.01;
+    //^ Share of customers who never insert a coin.
+    private static final Duration COIN_TIMEOUT = Duration.ofMillis(20);
+    private static final Duration FEED_DELAY = Duration.ofMillis(1);
+    //^ How long a customer takes to insert their coin in the 'fed' scenario.
+    private static final int COIN_CAPACITY = 100_000;
+    private static final int CHANGE_FLOAT = 1_000;
+
+    /**
+     * How customers' coins reach their sessions.
+     */
+    private enum Scenario { PREQUEUED, FED }
+
+    /**
+     * Runs every scenario (or only those whose name contains the first argument) and prints a result table.
+     * @param args Optional scenario name filter.
+     * @throws Exception if a session failed or the fleet was left inconsistent.
+     */
+    public static void main(String[] args) throws Exception {
+        String filter = args.length > 0 ? args[0] : "";
+        System.out.println(STR."machines - \{MACHINES}, sessions - \{SESSIONS}, warm-up rounds - \{WARMUP_ROUNDS}, measured rounds - \{MEASURED_ROUNDS}, seed - \{SEED}");
+        System.out.printf("%-10s %12s %10s %12s %10s %10s %10s %10s%n", "scenario", "sessions/s", "stdev", "best", "purchased", "cancelled", "refunded", "refused");
+        for (Scenario scenario : Scenario.values()) {
+            String name = scenario.name().toLowerCase();
+            if (!name.contains(filter)) continue;
+            double[] rates = new double[MEASURED_ROUNDS];
+            Map<CustomerSessionServer.Outcome, Integer> outcomes = null;
+            for (int round = 0; round < WARMUP_ROUNDS + MEASURED_ROUNDS; round++) {
+                VendingFleet fleet = CustomerSessionBenchmark.buildFleet();
+                Map<CustomerSessionServer.Outcome, Integer> roundOutcomes = new EnumMap<>(CustomerSessionServer.Outcome.class);
+                long elapsed = CustomerSessionBenchmark.runRound(fleet, scenario, roundOutcomes);
+                if (round >= WARMUP_ROUNDS) rates[round - WARMUP_ROUNDS] = SESSIONS * 1e9 / elapsed;
+                outcomes = roundOutcomes;
+                //^ Same every round, as the orders come from the same seed.
+            }
+            double mean = 0;
+            double best = 0;
+            for (double rate : rates) { mean += rate; best = Math.max(best, rate); }
+            mean /= rates.length;
+            double variance = 0;
+            for (double rate : rates) variance += (rate - mean) * (rate - mean);
+            double stdev = Math.sqrt(variance / (rates.length - 1));
+            System.out.printf("%-10s %12.0f %10.0f %12.0f %10d %10d %10d %10d%n", name, mean, stdev, best,
+                outcomes.getOrDefault(CustomerSessionServer.Outcome.PURCHASED, 0),
+                outcomes.getOrDefault(CustomerSessionServer.Outcome.CANCELLED, 0),
+                outcomes.getOrDefault(CustomerSessionServer.Outcome.REFUNDED, 0),
+                outcomes.getOrDefault(CustomerSessionServer.Outcome.REFUSED, 0));
+        }
+    }
+
+    /**
+     * Builds a fleet whose every vending machine has every slot assigned (item ID = slot number + 1), fully stocked, with a change float.
+     * @return The fleet.
+     */
+    private static VendingFleet buildFleet() {
+        Map<CoinGBP, Integer> coinMaxes = new EnumMap<>(CoinGBP.class);
+        for (CoinGBP coin : CoinGBP.values()) coinMaxes.put(coin, COIN_CAPACITY);
+        ItemFactory itemFactory = ItemFactory.getInstance();
+        List<Item> items = new ArrayList<>();
+        for (int slot = 0; slot < SLOT_COUNT; slot++) {
+            items.add(itemFactory.createItem(ItemType.SNACK, STR."Item \{slot}", slot + 1, 0.05 * (1 + slot % 19), 25));
+            //^ 5p to 95p, so one £2 coin always pays for two items with change.
+        }
+        VendingFleet fleet = new VendingFleet();
+        for (int machineID = 0; machineID < MACHINES; machineID++) {
+            VendingMachine vendingMachine = fleet.createVendingMachine(machineID, SLOT_COUNT, SLOT_SIZE, coinMaxes);
+            vendingMachine.changeState(VendingMachineState.MAINTENANCE);
+            for (int slot = 0; slot < SLOT_COUNT; slot++) {
+                vendingMachine.assignSlot(slot, items.get(slot));
+                for (int i = 0; i < SLOT_SIZE; i++) vendingMachine.stockItem(slot);
+            }
+            for (CoinGBP coin : CoinGBP.values()) vendingMachine.insertCoins(coin, CHANGE_FLOAT);
+            vendingMachine.changeState(VendingMachineState.IDLE);
+        }
+        return fleet;
+    }
+
+    /**
+     * Runs every session of one round and checks the fleet afterwards.
+     * @param fleet    The fleet to serve sessions on.
+     * @param scenario How coins reach the sessions.
+     * @param outcomes Filled with how many sessions ended each way.
+     * @return Nanoseconds from the first session submitted to the last one ended.
+     * @throws Exception if a session failed or the fleet was left inconsistent.
+     */
+    private static long runRound(VendingFleet fleet, Scenario scenario, Map<CustomerSessionServer.Outcome, Integer> outcomes) throws Exception {
+        Random random = new Random(SEED);
+        List<CustomerSessionServer.Order> orders = new ArrayList<>(SESSIONS);
+        List<Boolean> paying = new ArrayList<>(SESSIONS);
+        int[] itemsPerCustomer = new int[SESSIONS];
+        for (int session = 0; session < SESSIONS; session++) {
+            List<Integer> itemIDs = new ArrayList<>(2);
+            int itemCount = 1 + random.nextInt(2);
+            for (int i = 0; i < itemCount; i++) itemIDs.add(1 + random.nextInt(SLOT_COUNT));
+            boolean pays = random.nextDouble() >= WALK_AWAY_RATE;
+            BlockingQueue<CoinGBP> coins = new ArrayBlockingQueue<>(1);
+            if (pays && scenario == Scenario.PREQUEUED) coins.add(CoinGBP.TWO_POUNDS);
+            orders.add(new CustomerSessionServer.Order(session % MACHINES, itemIDs, coins));
+            paying.add(pays);
+            itemsPerCustomer[session] = itemCount;
+        }
+        long stockBefore = CustomerSessionBenchmark.totalStock(fleet);
+
+        long start = System.nanoTime();
+        List<Future<CustomerSessionServer.Outcome>> results = new ArrayList<>(SESSIONS);
+        try (CustomerSessionServer server = new CustomerSessionServer(fleet, COIN_TIMEOUT)) {
+            for (int session = 0; session < SESSIONS; session++) {
+                CustomerSessionServer.Order order = orders.get(session);
+                results.add(server.submit(order));
+                if (scenario == Scenario.FED && paying.get(session)) {
+                    Thread.ofVirtual().start(() -> {
+                        try {
+                            Thread.sleep(FEED_DELAY);
+                            order.coins().put(CoinGBP.TWO_POUNDS);
+                        }
+                        catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+                    });
+                }
+            }
+        }
+        //^ Closing the server waits for every session to end.
+        long elapsed = System.nanoTime() - start;
+
+        long itemsBought = 0;
+        for (int session = 0; session < SESSIONS; session++) {
+            CustomerSessionServer.Outcome outcome;
+            try { outcome = results.get(session).get(); }
+            catch (ExecutionException e) { throw new IllegalStateException(STR."Session \{session} failed.", e.getCause()); }
+            outcomes.merge(outcome, 1, Integer::sum);
+            if (outcome == CustomerSessionServer.Outcome.PURCHASED) itemsBought += itemsPerCustomer[session];
+        }
+        long stockDrop = stockBefore - CustomerSessionBenchmark.totalStock(fleet);
+        if (stockDrop != itemsBought) throw new IllegalStateException(STR."Fleet stock dropped by \{stockDrop} but \{itemsBought} items were bought.");
+        for (int machineID = 0; machineID < MACHINES; machineID++) {
+            VendingMachineState state = fleet.getVendingMachine(machineID).getState();
+            if (state != VendingMachineState.IDLE) throw new IllegalStateException(STR."Vending machine \{machineID} was left in \{state} state.");
+        }
+        return elapsed;
+    }
+
+    /**
+     * Helper method to total the stock of every item across the fleet.
+     * @param fleet The fleet.
+     * @return Total items in the fleet.
+     */
+    private static long totalStock(VendingFleet fleet) {
+        long total = 0;
+        for (int iD = 1; iD <= SLOT_COUNT; iD++) total += fleet.getTotalItemStock(iD);
+        return total;
+    }
+}
@@ -0,0 +1,286 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.IntConsumer;
+import jmh.Workload;
+
+/**
+ * Benchmark cases for the customer purchase path and the components it goes through - timed by JMH in 'jmh.PurchasePathBenchmark'.
+ * <p>
+ * One workload is one vending machine size: every slot holds a different item (ID = slot number + 1) and is fully stocked.
+ * Slot 0 holds an item too expensive to buy with the coins deposited by 'refund' cases, so those orders are always cancelled and refunded.
+ * Everything random (which item is bought next) comes from a fixed seed, so two runs on the same machine do the exact same work and their numbers can be compared.
+ * <p>
+ * The vending machine is refilled (item slots topped up, coin tubes reset) before every iteration, outside the timed region.
+ * No displays observe the customer cases, so they measure the vending machine and proxies only; display rendering is measured on its own ('adminDisplay').
+ */
+public class PurchasePathWorkload implements Workload {
+    private static final long SEED = 7007L;
+    private static final int LIVE_FRAMES_PER_SECOND = 30;
+    private static final int COIN_CAPACITY = 100_000;
+    private static final int CHANGE_FLOAT = 10_000;
+    //^ Coins of each type put in before every iteration so change can always be given (even if every operation took several of the same coin).
+    private static final int CHANGE_AMOUNTS = 2_000;
+    //^ Distinct (seeded) amounts 'coinStoragePlanChange' cycles through.
+    private static final CoinGBP[] COPPER_MIX = PurchasePathWorkload.repeat(new CoinGBP[]{CoinGBP.ONE_PENNY, CoinGBP.TWO_PENCE}, 10);
+    private static final CoinGBP[] MIXED_MIX = CoinGBP.values();
+    private static final CoinGBP[] LARGE_MIX = PurchasePathWorkload.repeat(new CoinGBP[]{CoinGBP.TWO_POUNDS}, 5);
+    //^ Coins deposited before cancelling; refunding them goes through the customer proxy's change planning and withdrawal.
+
+    private static volatile long sink;
+    //^ Results are written here so the JIT cannot remove work as unused.
+
+    private final int slotCount;
+    private final int slotSize;
+    private final VendingMachine vendingMachine;
+    private final AdminProxy adminProxy;
+    private final CustomerProxy customerProxy;
+    private final ItemStorage itemStorage;
+    //^ Stand-alone item storage with the same items, for timing item storage on its own.
+    private final CoinStorage coinStorage;
+    //^ Stand-alone coin storage, for timing coin storage on its own (independent of vending machine size).
+    private final BaselineCoinStorage baselineCoinStorage;
+    //^ Same coins in the old map-backed coin storage, timed by the 'coinStorageBaseline' cases for comparison.
+    private final int[] purchaseOrder;
+    //^ Item IDs in the (seeded) random order they are bought - each slot appears at most 'slotSize' times.
+    private final long[] changeAmounts;
+    private PrintStream console;
+    private AdminDisplay adminDisplay;
+    //^ Both only set during an 'adminDisplay' iteration.
+
+    /**
+     * Constructor building and filling the vending machine.
+     * @param slotCount Number of item slots.
+     * @param slotSize  Capacity of each slot.
+     */
+    public PurchasePathWorkload(int slotCount, int slotSize) {
+        this.slotCount = slotCount;
+        this.slotSize = slotSize;
+        Map<CoinGBP, Integer> coinMaxes = new EnumMap<>(CoinGBP.class);
+        for (CoinGBP coin : CoinGBP.values()) coinMaxes.put(coin, COIN_CAPACITY);
+        this.vendingMachine = VendingMachineFactory.getInstance().createVendingMachine(slotCount, slotSize, coinMaxes);
+        this.adminProxy = new AdminProxy(this.vendingMachine);
+        this.customerProxy = new CustomerProxy(this.vendingMachine);
+        this.itemStorage = new ItemStorage(slotSize, slotCount);
+        this.coinStorage = new CoinStorage(coinMaxes);
+        this.baselineCoinStorage = new BaselineCoinStorage(coinMaxes);
+        for (CoinGBP coin : CoinGBP.values()) {
+            this.coinStorage.deposit(coin, CHANGE_FLOAT);
+            this.baselineCoinStorage.deposit(coin, CHANGE_FLOAT);
+        }
+
+        ItemFactory itemFactory = ItemFactory.getInstance();
+        this.vendingMachine.changeState(VendingMachineState.MAINTENANCE);
+        for (int slot = 0; slot < slotCount; slot++) {
+            double price = slot == 0 ? 20.00 : 0.05 * (1 + slot % 39);
+            //^ Every other item costs 5p to £1.95, so one £2 coin always pays with change.
+            Item item = itemFactory.createItem(ItemType.SNACK, STR."Item \{slot}", slot + 1, price, 25);
+            this.vendingMachine.assignSlot(slot, item);
+            this.itemStorage.assignSlot(slot, item);
+        }
+        this.vendingMachine.changeState(VendingMachineState.IDLE);
+
+        List<Integer> order = new ArrayList<>();
+        for (int slot = 1; slot < slotCount; slot++) { for (int i = 0; i < slotSize; i++) order.add(slot + 1); }
+        Collections.shuffle(order, new Random(SEED));
+        this.purchaseOrder = order.stream().mapToInt(Integer::intValue).toArray();
+        this.changeAmounts = new Random(SEED).longs(CHANGE_AMOUNTS, 1, 500).toArray();
+        this.refill();
+    }
+
+    /**
+     * Helper method to top every slot up to full and reset every coin tube to 'CHANGE_FLOAT' coins - untimed.
+     */
+    private void refill() {
+        this.vendingMachine.changeState(VendingMachineState.MAINTENANCE);
+        ItemSlot[] slots = this.vendingMachine.getItemStorage();
+        for (int slot = 0; slot < this.slotCount; slot++) {
+            for (int i = slots[slot].getStock(); i < this.slotSize; i++) this.vendingMachine.stockItem(slot);
+            while (this.itemStorage.tryRestockItem(slot).isOk()) {}
+            //^ Until the slot is full.
+        }
+        for (CoinGBP coin : CoinGBP.values()) {
+            this.vendingMachine.withdrawCoins(coin, COIN_CAPACITY);
+            this.vendingMachine.insertCoins(coin, CHANGE_FLOAT);
+        }
+        this.vendingMachine.changeState(VendingMachineState.IDLE);
+    }
+    /**
+     * Helper method to get an item ID to buy.
+     * @param op Operation number within the iteration.
+     * @return Item ID from 'this.purchaseOrder'; cases using up stock must not do more operations per iteration than it holds (one per stocked item, excluding slot 0).
+     */
+    private int itemFor(int op) { return this.purchaseOrder[op % this.purchaseOrder.length]; }
+
+    /**
+     * Gets a case's timed operation - customer proxy cases go one step further along the purchase path each; the others time one component on its own.
+     * <p>
+     * See corresponding interface's method documentation for more information.
+     * @param name The case's name.
+     * @return The operation.
+     */
+    @Override
+    public IntConsumer operation(String name) {
+        CustomerProxy customer = this.customerProxy;
+        return switch (name) {
+            //: Customer proxy.
+            case "selectItem" -> op -> {
+                customer.startOrder();
+                customer.selectItem(this.itemFor(op));
+                customer.cancelOrder();
+            };
+            case "checkout" -> op -> {
+                customer.startOrder();
+                customer.selectItem(this.itemFor(op));
+                customer.checkout();
+                customer.cancelOrder();
+                //^ Nothing deposited, so nothing to refund.
+            };
+            case "purchase" -> op -> {
+                customer.startOrder();
+                customer.selectItem(this.itemFor(op));
+                customer.checkout();
+                customer.depositCoin(CoinGBP.TWO_POUNDS);
+                //^ Pays, dispenses the item and gives change.
+            };
+            case "refundCopper" -> this.refund(COPPER_MIX);
+            case "refundMixed" -> this.refund(MIXED_MIX);
+            case "refundLarge" -> this.refund(LARGE_MIX);
+            //: Item storage alone (no proxy or state checks) - 'getStockView' timed both unchanged (served from the cached view) and right after each dispense (rebuilt every time).
+            case "itemStorageDispense" -> op -> this.itemStorage.dispenseItem(this.itemFor(op), false);
+            case "itemStorageStockView" -> op -> sink += this.itemStorage.getStockView().size();
+            case "itemStorageDispenseAndView" -> op -> {
+                this.itemStorage.dispenseItem(this.itemFor(op), false);
+                sink += this.itemStorage.getStockView().size();
+            };
+            case "itemSlotRenderListing" -> {
+                ItemSlot[] slots = this.itemStorage.render();
+                yield op -> {
+                    //* One operation renders every slot - a whole slot listing.
+                    for (ItemSlot slot : slots) sink += slot.render().toString().length();
+                };
+            }
+            //: Admin display rendering a notice, with the whole console dump going nowhere - both the full display (a whole console per event)
+            //: and a live display coalescing events into at most 'LIVE_FRAMES_PER_SECOND' frames of changed lines.
+            case "adminDisplay", "adminDisplayLive" -> {
+                VendingEvent event = new VendingEvent.Notice(() -> "Benchmark notice.");
+                yield op -> this.adminDisplay.update(this.adminProxy, event);
+            }
+            //: Admin proxy stocking an item into a full slot - rejected every time, as when stocking a whole slot ends with its first item that does not fit.
+            //: Timed both with nothing observing the admin proxy and with a listener receiving every failure.
+            case "adminProxyStockFull" -> op -> this.adminProxy.stockItems(op % this.slotCount, 1);
+            case "adminProxyStockObserved" -> {
+                EventBus eventBus = new SynchronousEventBus();
+                eventBus.subscribe(VendingEvent.Failure.class, event -> sink += ((VendingEvent.Failure) event).error().getMessage().length());
+                AdminProxy observed = new AdminProxy(this.vendingMachine, eventBus);
+                yield op -> observed.stockItems(op % this.slotCount, 1);
+            }
+            //: Coin storage single-coin deposit and withdraw, and change planning - in 'CoinStorage' and in the old map-backed coin storage it replaced.
+            case "coinStorageDepositWithdraw" -> {
+                CoinGBP[] coins = CoinGBP.values();
+                yield op -> {
+                    CoinGBP coin = coins[op % coins.length];
+                    this.coinStorage.deposit(coin);
+                    this.coinStorage.withdraw(coin);
+                };
+            }
+            case "coinStoragePlanChange" -> op -> {
+                int[] plan = this.coinStorage.planChange(this.changeAmounts[op % CHANGE_AMOUNTS]);
+                sink += plan == null ? 0 : plan[0];
+            };
+            case "coinStorageBaselineDepositWithdraw" -> {
+                CoinGBP[] coins = CoinGBP.values();
+                yield op -> {
+                    CoinGBP coin = coins[op % coins.length];
+                    this.baselineCoinStorage.deposit(coin);
+                    this.baselineCoinStorage.withdraw(coin);
+                };
+            }
+            case "coinStorageBaselinePlanChange" -> op -> {
+                int[] plan = this.baselineCoinStorage.planChange(this.changeAmounts[op % CHANGE_AMOUNTS]);
+                sink += plan == null ? 0 : plan[0];
+            };
+            default -> throw new IllegalArgumentException(STR."Unknown benchmark case \{name}.");
+        };
+    }
+    /**
+     * Helper method to make a refund case - orders slot 0's item (too expensive to be paid off by the mix), deposits the mix, then cancels.
+     * @param coins The coin mix to deposit.
+     * @return The operation.
+     */
+    private IntConsumer refund(CoinGBP[] coins) {
+        CustomerProxy customer = this.customerProxy;
+        return op -> {
+            customer.startOrder();
+            customer.selectItem(1);
+            customer.checkout();
+            for (CoinGBP coin : coins) customer.depositCoin(coin);
+            customer.cancelOrder();
+            //^ Refunds every deposited coin.
+        };
+    }
+
+    /**
+     * Refills the vending machine, and puts it in maintenance mode for admin cases (full render and stocking only happen in maintenance mode).
+     * <p>
+     * See corresponding interface's method documentation for more information.
+     * @param name The case's name.
+     */
+    @Override
+    public void beforeIteration(String name) {
+        if (name.startsWith("coinStorage")) return;
+        if (name.startsWith("adminDisplay")) {
+            this.console = System.out;
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            //^ Rendering is timed, not the terminal.
+            this.vendingMachine.changeState(VendingMachineState.MAINTENANCE);
+            this.adminDisplay = name.equals("adminDisplayLive")
+                ? new AdminDisplay(this.adminProxy, this.vendingMachine.viewSpecifications(), this.vendingMachine.getCoinMaxes(), LIVE_FRAMES_PER_SECOND)
+                : new AdminDisplay(this.adminProxy, this.vendingMachine.viewSpecifications(), this.vendingMachine.getCoinMaxes());
+            return;
+        }
+        this.refill();
+        if (name.startsWith("adminProxy")) this.vendingMachine.changeState(VendingMachineState.MAINTENANCE);
+    }
+    /**
+     * Puts the vending machine back to idle after admin cases; checks customer cases left it idle.
+     * <p>
+     * See corresponding interface's method documentation for more information.
+     * @param name The case's name.
+     * @throws IllegalStateException if a customer case left an order in progress.
+     */
+    @Override
+    public void afterIteration(String name) {
+        if (name.startsWith("coinStorage")) return;
+        if (name.startsWith("adminDisplay")) {
+            this.adminDisplay.close();
+            this.adminDisplay = null;
+            System.setOut(this.console);
+        }
+        if (name.startsWith("admin")) {
+            this.vendingMachine.changeState(VendingMachineState.IDLE);
+            return;
+        }
+        if (this.vendingMachine.getState() != VendingMachineState.IDLE) {
+            //* Customer operations report failures as events (not exceptions) - a failed one leaves an order in progress.
+            throw new IllegalStateException(STR."Benchmark \{name} left the vending machine in \{this.vendingMachine.getState()} state - an operation failed, so its timing is meaningless.");
+        }
+    }
+
+    /**
+     * Helper method to build a coin mix by repeating coins.
+     * @param coins Coins to repeat.
+     * @param times How many times to repeat them.
+     * @return The repeated coins.
+     */
+    private static CoinGBP[] repeat(CoinGBP[] coins, int times) {
+        CoinGBP[] repeated = new CoinGBP[coins.length * times];
+        for (int i = 0; i < repeated.length; i++) repeated[i] = coins[i % coins.length];
+        return repeated;
+    }
+}
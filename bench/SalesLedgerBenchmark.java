@@ -0,0 +1,95 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Benchmark for 'SalesLedger' - appends tens of millions of seeded sales, then times "revenue per item per hour over the last 30 days".
+ * <p>
+ * Sales span 60 days across a fleet of vending machines, so the query skips about half of the blocks by their timestamp range and scans the rest in parallel.
+ * Reports the append rate, bytes stored per row, how long reopening takes, and the query's mean and minimum time over several runs (after untimed warm-up runs).
+ * The query's grand total must equal the revenue totalled while generating the sales - otherwise the benchmark throws.
+ * <p>
+ * The ledger is written to a temporary directory and deleted afterwards.
+ * <p>
+ * Run with: 'java --enable-preview -cp out:bench-out SalesLedgerBenchmark [rows]'.
+ */
+public class SalesLedgerBenchmark {
+    private static final int DEFAULT_ROWS = 20_000_000;
+    private static final int MACHINES = 1_000;
+    private static final int ITEMS = 40;
+    private static final long DAY_MILLIS = 86_400_000L;
+    private static final long SPAN_MILLIS = 60 * DAY_MILLIS;
+    private static final long WINDOW_MILLIS = 30 * DAY_MILLIS;
+    private static final long START_MILLIS = 1_767_225_600_000L;
+    //^ 2026-01-01 - fixed rather than the current time, so two runs store the exact same bytes.
+    private static final int WARMUP_QUERIES = 3;
+    private static final int MEASURED_QUERIES = 5;
+    private static final long SEED = 7007L;
+
+    /**
+     * Runs the benchmark.
+     * @param args Optional number of rows.
+     * @throws IOException If the temporary directory cannot be created or cleaned up.
+     */
+    public static void main(String[] args) throws IOException {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_ROWS;
+        Path directory = Files.createTempDirectory("sales-ledger-benchmark");
+        Path path = directory.resolve("sales.ledger");
+        long[] prices = new long[ITEMS];
+        for (int item = 0; item < ITEMS; item++) prices[item] = 50 + 5 * item;
+        //^ 50p to £2.45.
+
+        Random random = new Random(SEED);
+        long endMillis = START_MILLIS + SPAN_MILLIS;
+        long windowStart = endMillis - WINDOW_MILLIS;
+        long expectedRevenue = 0;
+        long start = System.nanoTime();
+        try (SalesLedger ledger = SalesLedger.open(path, ForkJoinPool.commonPool(), DurabilityFailureHandler.uncaught(), 0)) {
+            //^ Only full blocks - a short block written on a timer would change the bytes stored (and bytes per row) from run to run.
+            long meanGap = SPAN_MILLIS / rows;
+            long timestamp = START_MILLIS;
+            for (int row = 0; row < rows; row++) {
+                timestamp += random.nextLong(2 * meanGap + 1);
+                int item = random.nextInt(ITEMS);
+                int quantity = 1 + (random.nextInt(8) == 0 ? 1 : 0);
+                //^ One in eight lines is two of the item.
+                boolean firstLine = random.nextInt(3) != 0;
+                long coinsIn = firstLine ? 200 : 0;
+                long changeOut = firstLine ? Math.max(0, 200 - prices[item] * quantity) : 0;
+                ledger.append(timestamp, random.nextInt(MACHINES), 1 + item, quantity, prices[item], coinsIn, changeOut);
+                if (timestamp >= windowStart && timestamp < endMillis) expectedRevenue += prices[item] * quantity;
+            }
+        }
+        double appendSeconds = (System.nanoTime() - start) / 1e9;
+        long bytes = Files.size(path);
+        System.out.println(STR."rows - \{rows}, machines - \{MACHINES}, items - \{ITEMS}, span - 60 days, seed - \{SEED}");
+        System.out.printf("append: %.1f s (%.0f rows/s), file: %.1f MB (%.2f bytes/row)%n", appendSeconds, rows / appendSeconds, bytes / 1e6, (double) bytes / rows);
+
+        start = System.nanoTime();
+        try (SalesLedger ledger = SalesLedger.open(path)) {
+            System.out.printf("reopen: %.1f ms%n", (System.nanoTime() - start) / 1e6);
+            double total = 0;
+            double min = Double.MAX_VALUE;
+            for (int query = 0; query < WARMUP_QUERIES + MEASURED_QUERIES; query++) {
+                long queryStart = System.nanoTime();
+                Map<Integer, long[]> revenue = ledger.revenuePerItemPerHour(windowStart, endMillis);
+                double millis = (System.nanoTime() - queryStart) / 1e6;
+                long revenueTotal = 0;
+                for (long[] hours : revenue.values()) { for (long hour : hours) revenueTotal += hour; }
+                if (revenueTotal != expectedRevenue) throw new IllegalStateException(STR."Query totalled \{revenueTotal}p but \{expectedRevenue}p was sold in the last 30 days.");
+                if (query >= WARMUP_QUERIES) {
+                    total += millis;
+                    min = Math.min(min, millis);
+                }
+            }
+            System.out.printf("revenue per item per hour, last 30 days: mean %.1f ms, min %.1f ms (%d parallelism)%n", total / MEASURED_QUERIES, min, ForkJoinPool.commonPool().getParallelism());
+        }
+        finally {
+            Files.deleteIfExists(path);
+            Files.deleteIfExists(directory);
+        }
+    }
+}
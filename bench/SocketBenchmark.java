@@ -0,0 +1,184 @@
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latency and throughput benchmark for 'VendingSocketServer' and 'VendingClient' over loopback.
+ * <p>
+ * Latency benchmarks time every call on its own and report the mean, median and 99th percentile in microseconds per call,
+ * both with no event subscribers and with a second connection subscribed to every event kind (so each call also encodes and pushes its events).
+ * Throughput benchmarks run several clients at once, each on its own thread calling 'GetBasket' in a loop, and report calls per second for all of them together.
+ * <p>
+ * Untimed warm-up rounds let the JIT compile both ends first; item slots and coins are refilled between rounds (untimed).
+ * Everything random (which item is bought next) comes from a fixed seed, so two runs do the exact same work.
+ * <p>
+ * Run with: 'java --enable-preview -cp out:bench-out SocketBenchmark [benchmark name filter]'.
+ */
+public class SocketBenchmark {
+    private static final int SLOT_COUNT = 12;
+    private static final int SLOT_SIZE = 30;
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int MEASURED_ROUNDS = 10;
+    private static final int CALLS_PER_ROUND = 300;
+    //^ At most one purchase per stocked item, so purchase rounds never run out of stock.
+    private static final int[] CLIENT_COUNTS = {1, 2, 4, 8};
+    private static final int THROUGHPUT_CALLS = 20_000;
+    //^ Calls per client per throughput round.
+    private static final long SEED = 7007L;
+    private static final int COIN_CAPACITY = 100_000;
+    private static final int CHANGE_FLOAT = 10_000;
+
+    private static volatile long sink;
+    //^ Results are written here so the JIT cannot remove work as unused.
+    private static final AtomicLong failures = new AtomicLong();
+    //^ Failure events pushed to the benchmarking client - customer actions report failures as events, not exceptions.
+
+    /**
+     * Body of a latency benchmark - one call is one timed operation.
+     */
+    @FunctionalInterface
+    private interface Operation { void run(int op) throws Exception; }
+
+    /**
+     * Starts a server over a stocked vending machine and runs every benchmark (or only those whose name contains the first argument).
+     * @param args Optional benchmark name filter.
+     * @throws Exception if the server cannot be started or a call fails.
+     */
+    public static void main(String[] args) throws Exception {
+        String filter = args.length > 0 ? args[0] : "";
+        Map<CoinGBP, Integer> coinMaxes = new EnumMap<>(CoinGBP.class);
+        for (CoinGBP coin : CoinGBP.values()) coinMaxes.put(coin, COIN_CAPACITY);
+        VendingMachine vendingMachine = VendingMachineFactory.getInstance().createVendingMachine(SLOT_COUNT, SLOT_SIZE, coinMaxes);
+        InetSocketAddress loopback = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+
+        try (VendingSocketServer server = VendingSocketServer.start(vendingMachine, loopback);
+             VendingClient client = new VendingClient(server.getAddress())) {
+            client.subscribe(VendingEvent.Failure.class, event -> failures.incrementAndGet());
+            ItemFactory itemFactory = ItemFactory.getInstance();
+            client.startMaintenance();
+            for (int slot = 0; slot < SLOT_COUNT; slot++) {
+                client.assignItemSlot(slot, itemFactory.createItem(ItemType.SNACK, STR."Item \{slot}", slot + 1, 0.05 * (1 + slot), 25));
+                //^ 5p to 60p, so one £2 coin always pays with change.
+            }
+            client.stopMaintenance();
+
+            System.out.println(STR."warm-up rounds - \{WARMUP_ROUNDS}, measured rounds - \{MEASURED_ROUNDS}, calls per round - \{CALLS_PER_ROUND}, seed - \{SEED}");
+            System.out.printf("%-28s %12s %12s %12s%n", "benchmark", "mean us", "p50 us", "p99 us");
+            SocketBenchmark.latency(client, filter, "");
+            try (VendingClient subscriber = new VendingClient(server.getAddress())) {
+                AtomicLong events = new AtomicLong();
+                subscriber.subscribe(event -> events.incrementAndGet());
+                SocketBenchmark.latency(client, filter, "+events");
+                sink = events.get();
+            }
+
+            System.out.printf("%n%-28s %12s %12s%n", "benchmark", "clients", "calls/s");
+            for (int clientCount : CLIENT_COUNTS) SocketBenchmark.throughput(server, clientCount, filter);
+        }
+    }
+
+    /**
+     * Latency benchmarks, each round-trip on its own.
+     * @param client The client making the calls.
+     * @param filter Benchmark name filter.
+     * @param suffix Appended to the benchmark names (e.g. whether events are pushed meanwhile).
+     * @throws Exception if a call fails.
+     */
+    private static void latency(VendingClient client, String filter, String suffix) throws Exception {
+        List<Integer> order = new ArrayList<>();
+        for (int slot = 0; slot < SLOT_COUNT; slot++) { for (int i = 0; i < SLOT_SIZE; i++) order.add(slot + 1); }
+        Collections.shuffle(order, new Random(SEED));
+        //^ Item IDs in the (seeded) random order they are bought - each slot at most 'SLOT_SIZE' times per round.
+        SocketBenchmark.run(STR."GetBasket\{suffix}", client, filter, op -> client.GetBasket());
+        //^ Cheapest round trip - an empty basket only gives a notice (pushed only to subscribers).
+        SocketBenchmark.run(STR."startOrder+cancelOrder\{suffix}", client, filter, op -> {
+            client.startOrder();
+            client.cancelOrder();
+        });
+        SocketBenchmark.run(STR."purchase\{suffix}", client, filter, op -> {
+            client.startOrder();
+            client.selectItem(order.get(op));
+            client.checkout();
+            client.depositCoin(CoinGBP.TWO_POUNDS);
+        });
+    }
+    /**
+     * Runs one latency benchmark and prints its result row.
+     * @param name   Benchmark name.
+     * @param client The client making the calls (also used to refill).
+     * @param filter Benchmark name filter - skipped unless the name contains it.
+     * @param body   The timed operation.
+     * @throws Exception if a call fails.
+     */
+    private static void run(String name, VendingClient client, String filter, Operation body) throws Exception {
+        if (!name.contains(filter)) return;
+        long[] nanos = new long[MEASURED_ROUNDS * CALLS_PER_ROUND];
+        for (int round = 0; round < WARMUP_ROUNDS + MEASURED_ROUNDS; round++) {
+            SocketBenchmark.refill(client);
+            for (int op = 0; op < CALLS_PER_ROUND; op++) {
+                long start = System.nanoTime();
+                body.run(op);
+                long elapsed = System.nanoTime() - start;
+                if (round >= WARMUP_ROUNDS) nanos[(round - WARMUP_ROUNDS) * CALLS_PER_ROUND + op] = elapsed;
+            }
+            if (failures.get() != 0) throw new IllegalStateException(STR."Benchmark \{name} had \{failures.get()} failed calls, so its timing is meaningless.");
+        }
+        Arrays.sort(nanos);
+        double mean = Arrays.stream(nanos).average().orElse(0);
+        System.out.printf("%-28s %12.1f %12.1f %12.1f%n", name, mean / 1e3, nanos[nanos.length / 2] / 1e3, nanos[(int) (nanos.length * 0.99)] / 1e3);
+    }
+    /**
+     * Throughput benchmark - several clients calling at once, each on its own connection and thread.
+     * @param server      The server.
+     * @param clientCount How many clients.
+     * @param filter      Benchmark name filter.
+     * @throws Exception if a client cannot connect or a call fails.
+     */
+    private static void throughput(VendingSocketServer server, int clientCount, String filter) throws Exception {
+        String name = "GetBasket throughput";
+        if (!name.contains(filter)) return;
+        VendingClient[] clients = new VendingClient[clientCount];
+        for (int i = 0; i < clientCount; i++) clients[i] = new VendingClient(server.getAddress());
+        double best = 0;
+        for (int round = 0; round < WARMUP_ROUNDS + MEASURED_ROUNDS; round++) {
+            Thread[] threads = new Thread[clientCount];
+            long start = System.nanoTime();
+            for (int i = 0; i < clientCount; i++) {
+                VendingClient client = clients[i];
+                threads[i] = Thread.ofPlatform().start(() -> {
+                    for (int call = 0; call < THROUGHPUT_CALLS; call++) client.GetBasket();
+                });
+            }
+            for (Thread thread : threads) thread.join();
+            double callsPerSecond = (double) clientCount * THROUGHPUT_CALLS * 1e9 / (System.nanoTime() - start);
+            if (round >= WARMUP_ROUNDS) best = Math.max(best, callsPerSecond);
+        }
+        for (VendingClient client : clients) client.close();
+        System.out.printf("%-28s %12d %12.0f%n", name, clientCount, best);
+    }
+
+    /**
+     * Tops every slot up to full and resets every coin tube to 'CHANGE_FLOAT' coins through the admin actions - untimed.
+     * @param client The client.
+     */
+    private static void refill(VendingClient client) {
+        client.startMaintenance();
+        ItemSlot[] slots = client.viewItems();
+        for (int slot = 0; slot < SLOT_COUNT; slot++) {
+            int missing = SLOT_SIZE - slots[slot].getStock();
+            if (missing > 0) client.stockItems(slot, missing);
+        }
+        for (CoinGBP coin : CoinGBP.values()) {
+            client.withdrawCoins(coin, COIN_CAPACITY);
+            client.depositCoins(coin, CHANGE_FLOAT);
+        }
+        client.stopMaintenance();
+    }
+}
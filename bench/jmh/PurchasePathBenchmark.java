@@ -0,0 +1,170 @@
+package jmh;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+/**
+ * JMH benchmarks for the customer purchase path and the components it goes through - each method runs the 'PurchasePathWorkload' case of the same name.
+ * <p>
+ * Every case runs for every vending machine size ('slotCount' x 'slotSize'), timed as average nanoseconds per operation over 5 warm-up and 10 measured one-second iterations in a forked JVM.
+ * Cases that use up stock (buying and dispensing) instead time single batches of 'STOCK_BATCH' operations, refilling between batches -
+ * a one-second iteration would empty even the largest vending machine.
+ * <p>
+ * Build and run with: 'mvn -P jmh package', then 'java --enable-preview -jar target/benchmarks.jar PurchasePathBenchmark' (JMH options such as '-p slotCount=12' narrow the run).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+public class PurchasePathBenchmark {
+    static final int STOCK_BATCH = 100;
+    //^ Operations per batch for cases that use up stock - fewer than the smallest vending machine holds (11 buyable slots of 10).
+
+    /**
+     * A case's workload and timed operation, set up once per trial and refilled before every iteration.
+     */
+    @State(Scope.Thread)
+    public static class Machine {
+        @Param({"12", "64", "256", "1024"})
+        public int slotCount;
+        @Param({"10", "30"})
+        public int slotSize;
+        //^ 30 is the largest slot size 'VendingMachineFactory' allows.
+        private Workload workload;
+        private String name;
+        private IntConsumer operation;
+        private int op;
+        //^ Operation number within the iteration.
+
+        /**
+         * Builds the workload and looks up the running benchmark's case.
+         * @param params The running benchmark - its method name is the case's name.
+         */
+        @Setup(Level.Trial)
+        public void build(BenchmarkParams params) {
+            this.workload = Workload.load("PurchasePathWorkload", this.slotCount, this.slotSize);
+            this.name = Machine.caseOf(params);
+            this.operation = this.workload.operation(this.name);
+        }
+        /**
+         * Helper method to get a benchmark's case name.
+         * @param params The running benchmark.
+         * @return The benchmark method's name.
+         */
+        static String caseOf(BenchmarkParams params) {
+            String benchmark = params.getBenchmark();
+            return benchmark.substring(benchmark.lastIndexOf('.') + 1);
+        }
+        /**
+         * Prepares the next iteration (e.g. refills the vending machine) - untimed.
+         */
+        @Setup(Level.Iteration)
+        public void beforeIteration() {
+            this.op = 0;
+            this.workload.beforeIteration(this.name);
+        }
+        /**
+         * Finishes the iteration (e.g. checks no operation failed) - untimed.
+         */
+        @TearDown(Level.Iteration)
+        public void afterIteration() { this.workload.afterIteration(this.name); }
+        /**
+         * Runs the case's next operation.
+         */
+        void run() { this.operation.accept(this.op++); }
+    }
+    /**
+     * Coin storage cases - independent of vending machine size, so run once on the smallest one instead of once per size.
+     */
+    @State(Scope.Thread)
+    public static class Coins {
+        private IntConsumer operation;
+        private int op;
+
+        /**
+         * Builds the workload and looks up the running benchmark's case.
+         * @param params The running benchmark.
+         */
+        @Setup(Level.Trial)
+        public void build(BenchmarkParams params) {
+            this.operation = Workload.load("PurchasePathWorkload", 12, 10).operation(Machine.caseOf(params));
+        }
+        /**
+         * Runs the case's next operation.
+         */
+        void run() { this.operation.accept(this.op++ & Integer.MAX_VALUE); }
+        //^ Never negative, however long the run.
+    }
+
+    //: Customer proxy - each case goes one step further along the purchase path.
+    @Benchmark
+    public void selectItem(Machine machine) { machine.run(); }
+    @Benchmark
+    public void checkout(Machine machine) { machine.run(); }
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 100, batchSize = STOCK_BATCH)
+    @Measurement(iterations = 100, batchSize = STOCK_BATCH)
+    @OperationsPerInvocation(STOCK_BATCH)
+    public void purchase(Machine machine) { machine.run(); }
+    @Benchmark
+    public void refundCopper(Machine machine) { machine.run(); }
+    @Benchmark
+    public void refundMixed(Machine machine) { machine.run(); }
+    @Benchmark
+    public void refundLarge(Machine machine) { machine.run(); }
+
+    //: Item storage alone.
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 100, batchSize = STOCK_BATCH)
+    @Measurement(iterations = 100, batchSize = STOCK_BATCH)
+    @OperationsPerInvocation(STOCK_BATCH)
+    public void itemStorageDispense(Machine machine) { machine.run(); }
+    @Benchmark
+    public void itemStorageStockView(Machine machine) { machine.run(); }
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 100, batchSize = STOCK_BATCH)
+    @Measurement(iterations = 100, batchSize = STOCK_BATCH)
+    @OperationsPerInvocation(STOCK_BATCH)
+    public void itemStorageDispenseAndView(Machine machine) { machine.run(); }
+    @Benchmark
+    public void itemSlotRenderListing(Machine machine) { machine.run(); }
+
+    //: Admin display and admin proxy.
+    @Benchmark
+    public void adminDisplay(Machine machine) { machine.run(); }
+    @Benchmark
+    public void adminDisplayLive(Machine machine) { machine.run(); }
+    @Benchmark
+    public void adminProxyStockFull(Machine machine) { machine.run(); }
+    @Benchmark
+    public void adminProxyStockObserved(Machine machine) { machine.run(); }
+
+    //: Coin storage alone - and the old map-backed coin storage, for before/after figures from one run.
+    @Benchmark
+    public void coinStorageDepositWithdraw(Coins coins) { coins.run(); }
+    @Benchmark
+    public void coinStoragePlanChange(Coins coins) { coins.run(); }
+    @Benchmark
+    public void coinStorageBaselineDepositWithdraw(Coins coins) { coins.run(); }
+    @Benchmark
+    public void coinStorageBaselinePlanChange(Coins coins) { coins.run(); }
+}
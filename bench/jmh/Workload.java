@@ -0,0 +1,54 @@
+package jmh;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.function.IntConsumer;
+
+/**
+ * Benchmark cases written in the default package (next to the vending machine classes they drive), as run by the JMH benchmarks in this package.
+ * <p>
+ * JMH only generates code for benchmark classes in a named package, and a named package cannot refer to default package classes,
+ * so benchmarks reach their cases through this interface - loading the implementation by class name ('Workload.load').
+ * Cases are looked up by name once per trial, so the timed code is a single interface call on an operation the JIT sees as monomorphic.
+ */
+public interface Workload {
+    /**
+     * Gets a case's timed operation.
+     * @param name The case's name - the name of the '@Benchmark' method running it.
+     * @return The operation, taking the operation number within the iteration (from 0).
+     * @throws IllegalArgumentException if there is no case with that name.
+     */
+    IntConsumer operation(String name);
+    /**
+     * Prepares an iteration of a case (e.g. refilling the vending machine) - untimed.
+     * @param name The case's name.
+     */
+    void beforeIteration(String name);
+    /**
+     * Finishes an iteration of a case (e.g. checking no operation failed) - untimed.
+     * @param name The case's name.
+     * @throws IllegalStateException if an operation failed, so the iteration's timing is meaningless.
+     */
+    void afterIteration(String name);
+
+    /**
+     * Makes a workload of a default package class, through its public constructor taking one 'int' per argument.
+     * @param className The class's (unqualified) name.
+     * @param arguments Constructor arguments.
+     * @return The workload.
+     * @throws IllegalArgumentException if the class does not exist, is not a workload or has no such constructor.
+     */
+    static Workload load(String className, int... arguments) {
+        Class<?>[] parameterTypes = new Class<?>[arguments.length];
+        Object[] boxed = new Object[arguments.length];
+        for (int i = 0; i < arguments.length; i++) {
+            parameterTypes[i] = int.class;
+            boxed[i] = arguments[i];
+        }
+        try { return Class.forName(className).asSubclass(Workload.class).getConstructor(parameterTypes).newInstance(boxed); }
+        catch (InvocationTargetException e) {
+            if (e.getCause() instanceof RuntimeException cause) throw cause;
+            throw new IllegalStateException(STR."Workload \{className} failed to build.", e.getCause());
+        }
+        catch (ReflectiveOperationException | ClassCastException e) { throw new IllegalArgumentException(STR."No workload \{className} taking \{arguments.length} int arguments.", e); }
+    }
+}
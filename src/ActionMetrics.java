@@ -0,0 +1,276 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Latency histograms and call counters for every customer and admin action, kept per action and outcome.
+ * <p>
+ * Filled in by the metered proxies ('MeteredCustomerProxy' and 'MeteredAdminProxy') wrapping the real ones, and by 'CustomerProxy' for its change/refund withdrawals.
+ * Every histogram and counter is made up front, so memory is fixed and recording never allocates nor locks ('LatencyHistogram' and 'LongAdder').
+ * <p>
+ * Read through a 'Snapshot' (optionally resetting), which exports as text for the admin console ('AdminDisplay.showMetrics') or as compact binary.
+ */
+public class ActionMetrics {
+    /**
+     * What is measured - every method of 'ActionsCustomer' and 'ActionsAdmin', and the change/refund withdrawal inside customer actions.
+     */
+    public enum Action {
+        //: Customer actions.
+        START_ORDER("startOrder"),
+        SELECT_ITEM("selectItem"),
+        DESELECT_ITEM("deselectItem"),
+        CHECKOUT("checkout"),
+        CANCEL_ORDER("cancelOrder"),
+        DEPOSIT_COIN("depositCoin"),
+        GET_BASKET("GetBasket"),
+        GET_ITEM_STOCK("GetItemStock"),
+        //: Admin actions.
+        DEPOSIT_COINS("depositCoins"),
+        WITHDRAW_COINS("withdrawCoins"),
+        VIEW_COINS("viewCoins"),
+        STOCK_ITEMS("stockItems"),
+        REMOVE_ITEMS("removeItems"),
+        ASSIGN_ITEM_SLOT("assignItemSlot"),
+        UNASSIGN_ITEM_SLOT("unassignItemSlot"),
+        VIEW_ITEMS("viewItems"),
+        START_MAINTENANCE("startMaintenance"),
+        STOP_MAINTENANCE("stopMaintenance"),
+        //: Steps inside actions.
+        CHANGE_WITHDRAWAL("withdrawChange");
+        //^ Planned change/refund being withdrawn in one batch ('CustomerProxy.withdrawChange') - part of 'depositCoin' or 'cancelOrder'.
+
+        private final String label;
+
+        /**
+         * Constructor for an action.
+         * @param label Name shown in exports - the method's name.
+         */
+        Action(String label) { this.label = label; }
+        /**
+         * Getter method for 'this.label'.
+         * @return Name shown in exports.
+         */
+        public String getLabel() { return this.label; }
+    }
+    /**
+     * How an action ended.
+     */
+    public enum Outcome {
+        OK,
+        REFUSED,
+        //^ Reported an 'IllegalStateException' failure - not permitted in the vending machine's current state.
+        REJECTED,
+        //^ Reported an 'IllegalArgumentException' failure - e.g. full slot, unsupported coin, unknown item.
+        THREW
+        //^ An exception escaped the action.
+    }
+
+    private static final Action[] ACTIONS = Action.values();
+    private static final Outcome[] OUTCOMES = Outcome.values();
+    //^ Cached as 'values()' creates a new array every call.
+
+    private final LatencyHistogram[] latencies = new LatencyHistogram[ACTIONS.length * OUTCOMES.length];
+    private final LongAdder[] calls = new LongAdder[ACTIONS.length * OUTCOMES.length];
+    //^ Both indexed by 'ActionMetrics.keyOf'.
+
+    /**
+     * Constructor making every histogram and counter up front.
+     */
+    public ActionMetrics() {
+        for (int key = 0; key < this.calls.length; key++) {
+            this.latencies[key] = new LatencyHistogram();
+            this.calls[key] = new LongAdder();
+        }
+    }
+
+    /**
+     * Helper method to get the index of an action and outcome's histogram and counter.
+     * @param action  The action.
+     * @param outcome How it ended.
+     * @return The index.
+     */
+    private static int keyOf(Action action, Outcome outcome) { return action.ordinal() * OUTCOMES.length + outcome.ordinal(); }
+
+    /**
+     * Records one call of an action.
+     * @param action  The action.
+     * @param outcome How it ended.
+     * @param nanos   How long it took in nanoseconds.
+     */
+    public void record(Action action, Outcome outcome, long nanos) {
+        int key = ActionMetrics.keyOf(action, outcome);
+        this.calls[key].increment();
+        this.latencies[key].record(nanos);
+    }
+    /**
+     * Runs and records one call of an action - how it ended is told by the failures its proxy reported meanwhile, or by an exception escaping it.
+     * @param action     The action.
+     * @param refusals   Reads the proxy's running count of refusals (e.g. 'CustomerProxy::getRefusals').
+     * @param rejections Reads the proxy's running count of rejections.
+     * @param body       Runs the action.
+     */
+    public void measure(Action action, LongSupplier refusals, LongSupplier rejections, Runnable body) {
+        this.measure(action, refusals, rejections, () -> { body.run(); return null; });
+    }
+    /**
+     * Runs and records one call of an action that returns a result - see the 'Runnable' overload.
+     * @param action     The action.
+     * @param refusals   Reads the proxy's running count of refusals.
+     * @param rejections Reads the proxy's running count of rejections.
+     * @param body       Runs the action.
+     * @param <T>        The action's result type.
+     * @return The action's result.
+     */
+    public <T> T measure(Action action, LongSupplier refusals, LongSupplier rejections, Supplier<T> body) {
+        long refusalsBefore = refusals.getAsLong();
+        long rejectionsBefore = rejections.getAsLong();
+        //^ Kept per call, so proxies hold no state between calls.
+        long start = System.nanoTime();
+        T result;
+        try { result = body.get(); }
+        catch (RuntimeException e) {
+            this.record(action, Outcome.THREW, System.nanoTime() - start);
+            throw e;
+        }
+        long nanos = System.nanoTime() - start;
+        Outcome outcome = refusals.getAsLong() != refusalsBefore ? Outcome.REFUSED : rejections.getAsLong() != rejectionsBefore ? Outcome.REJECTED : Outcome.OK;
+        this.record(action, outcome, nanos);
+        return result;
+    }
+
+    /**
+     * Copies every histogram and counter; recording carries on meanwhile.
+     * @return Snapshot of the metrics.
+     */
+    public Snapshot snapshot() { return this.snapshot(false); }
+    /**
+     * Copies every histogram and counter and empties them, e.g. to report each interval on its own.
+     * @return Snapshot of the metrics up to the reset.
+     */
+    public Snapshot snapshotAndReset() { return this.snapshot(true); }
+    /**
+     * Empties every histogram and counter.
+     */
+    public void reset() { this.snapshot(true); }
+    /**
+     * Helper method to copy (and optionally empty) every histogram and counter.
+     * @param reset Whether to empty them.
+     * @return Snapshot of the metrics.
+     */
+    private Snapshot snapshot(boolean reset) {
+        LatencyHistogram.Snapshot[] latencies = new LatencyHistogram.Snapshot[this.calls.length];
+        long[] calls = new long[this.calls.length];
+        for (int key = 0; key < this.calls.length; key++) {
+            latencies[key] = reset ? this.latencies[key].snapshotAndReset() : this.latencies[key].snapshot();
+            calls[key] = reset ? this.calls[key].sumThenReset() : this.calls[key].sum();
+        }
+        return new Snapshot(latencies, calls);
+    }
+
+    /**
+     * Immutable copy of every histogram and counter.
+     */
+    public static final class Snapshot {
+        private final LatencyHistogram.Snapshot[] latencies;
+        private final long[] calls;
+        //^ Both indexed by 'ActionMetrics.keyOf'.
+
+        /**
+         * Constructor for a snapshot - takes ownership of the arrays.
+         * @param latencies Histogram of every action and outcome.
+         * @param calls     Call count of every action and outcome.
+         */
+        private Snapshot(LatencyHistogram.Snapshot[] latencies, long[] calls) {
+            this.latencies = latencies;
+            this.calls = calls;
+        }
+
+        //: Getter methods.
+        /**
+         * Getter method for how many times an action ended with an outcome.
+         * @param action  The action.
+         * @param outcome How it ended.
+         * @return The call count.
+         */
+        public long getCalls(Action action, Outcome outcome) { return this.calls[ActionMetrics.keyOf(action, outcome)]; }
+        /**
+         * Getter method for the latencies of an action that ended with an outcome.
+         * @param action  The action.
+         * @param outcome How it ended.
+         * @return The latency histogram.
+         */
+        public LatencyHistogram.Snapshot getLatencies(Action action, Outcome outcome) { return this.latencies[ActionMetrics.keyOf(action, outcome)]; }
+
+        /**
+         * Helper method to format a latency with a unit that keeps it short.
+         * @param nanos The latency in nanoseconds.
+         * @return Formatted latency (e.g. "850ns", "12.3us", "4.56ms").
+         */
+        private static String formatNanos(long nanos) {
+            if (nanos < 1_000) return STR."\{nanos}ns";
+            if (nanos < 1_000_000) return String.format("%.1fus", nanos / 1e3);
+            if (nanos < 1_000_000_000) return String.format("%.2fms", nanos / 1e6);
+            return String.format("%.2fs", nanos / 1e9);
+        }
+        /**
+         * Exports the snapshot as a text table - one row per action and outcome that was called, with its count and latency percentiles.
+         * @return The table.
+         */
+        public String toText() {
+            StringBuilder table = new StringBuilder(String.format("%-22s%-10s%10s%10s%10s%10s%10s%10s%n", "Action", "Outcome", "Calls", "Mean", "p50", "p99", "p99.9", "Max"));
+            for (Action action : ACTIONS) {
+                for (Outcome outcome : OUTCOMES) {
+                    int key = ActionMetrics.keyOf(action, outcome);
+                    if (this.calls[key] == 0) continue;
+                    LatencyHistogram.Snapshot latencies = this.latencies[key];
+                    table.append(String.format("%-22s%-10s%10d%10s%10s%10s%10s%10s%n", action.getLabel(), outcome, this.calls[key],
+                        Snapshot.formatNanos(latencies.getMean()), Snapshot.formatNanos(latencies.getPercentile(50)),
+                        Snapshot.formatNanos(latencies.getPercentile(99)), Snapshot.formatNanos(latencies.getPercentile(99.9)), Snapshot.formatNanos(latencies.getMax())));
+                }
+            }
+            return table.toString();
+        }
+        /**
+         * Exports the snapshot as compact binary - only actions and outcomes that were called are written.
+         * @param out Where to write the snapshot.
+         * @throws IOException If writing fails.
+         */
+        public void writeTo(DataOutput out) throws IOException {
+            int used = 0;
+            for (long callCount : this.calls) if (callCount != 0) used++;
+            out.writeShort(used);
+            for (int key = 0; key < this.calls.length; key++) {
+                if (this.calls[key] == 0) continue;
+                out.writeByte(key / OUTCOMES.length);
+                out.writeByte(key % OUTCOMES.length);
+                out.writeLong(this.calls[key]);
+                this.latencies[key].writeTo(out);
+            }
+        }
+        /**
+         * Reads a snapshot written by 'writeTo' (e.g. exported by another vending machine).
+         * @param in Where to read the snapshot from.
+         * @return The snapshot.
+         * @throws IOException If reading fails or an action or outcome is unknown.
+         */
+        public static Snapshot readFrom(DataInput in) throws IOException {
+            LatencyHistogram.Snapshot[] latencies = new LatencyHistogram.Snapshot[ACTIONS.length * OUTCOMES.length];
+            long[] calls = new long[latencies.length];
+            int used = in.readUnsignedShort();
+            for (int i = 0; i < used; i++) {
+                int action = in.readUnsignedByte();
+                int outcome = in.readUnsignedByte();
+                if (action >= ACTIONS.length || outcome >= OUTCOMES.length) throw new IOException(STR."Unknown action \{action} or outcome \{outcome}");
+                int key = ActionMetrics.keyOf(ACTIONS[action], OUTCOMES[outcome]);
+                calls[key] = in.readLong();
+                latencies[key] = LatencyHistogram.Snapshot.readFrom(in);
+            }
+            LatencyHistogram.Snapshot empty = new LatencyHistogram().snapshot();
+            for (int key = 0; key < latencies.length; key++) if (latencies[key] == null) latencies[key] = empty;
+            return new Snapshot(latencies, calls);
+        }
+    }
+}
@@ -15,6 +15,7 @@ public interface ActionsAdmin {
      * Admin/owner would deposit each coin type in bulk (rather than one at a time) during maintenance.
      * Because of this, the 'amount' parameter is included to specify how many coins of the given denomination to deposit.
      * This is different to the customer inserting coins one at a time during payment.
+     * Coins that do not fit in the coin storage are refunded; how many were actually deposited is reported once for the whole batch.
      * <p>
      * One of the actions of the coin storage part of the administrative vending machine maintenance tasks.
      * @param coin   The denomination of the coin to be deposited.
@@ -27,6 +28,7 @@ public interface ActionsAdmin {
      * Admin/owner would withdraw each coin type in bulk (rather than one at a time) during maintenance.
      * Because of this, the 'amount' parameter is included to specify how many coins of the given denomination to withdraw.
      * This is different to the customer receiving refunded coins one at a time during refunding.
+     * If the coin storage runs out, how many were actually withdrawn is reported once for the whole batch.
      * <p>
      * One of the actions of the coin storage part of the administrative vending machine maintenance tasks.
      * @param coin   The denomination of the coin to be withdrawn.
@@ -35,7 +37,7 @@ public interface ActionsAdmin {
     void withdrawCoins(CoinGBP coin, int amount);
     /**
      * Views all supported coin types in the vending machine's coin storage.
-     * @return Map containing each coin denomination (key) and its respective current count (value) in the coin storage.
+     * @return Read-only snapshot Map containing each coin denomination (key) and its respective current count (value) in the coin storage.
      */
     Map<CoinGBP, Integer> viewCoins();
 
@@ -1,7 +1,12 @@
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Observable;
 import java.util.Observer;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Represents the administrative user interface for displaying vending machine status and updates.
@@ -9,8 +14,27 @@ import java.util.Observer;
  * Implements the "observer design pattern" by implementing the 'Observer' interface to receive updates from an observable (AdminProxy).
  * <p>
  * Displays comprehensive vending machine information to the admin/owner for maintenance and monitoring purposes.
+ * <p>
+ * Renders through a cache of formatted lines: each frame compares the state, coin counts and every slot's view and stock with those last rendered,
+ * and only formats again what changed (the dirty regions) - unchanged lines reuse their cached strings.
+ * Comparing values instead of trusting event kinds also catches changes that are not announced with a region (e.g. slots (un)assigned, announced only as notices, or changes made through another admin proxy).
+ * <p>
+ * Two modes:
+ * <ul>
+ *     <li>Full (default) - every event prints the whole console, as it always has.</li>
+ *     <li>Live (given a maximum frame rate) - events are coalesced into at most that many frames per second, and each frame prints only the lines that changed since the previous one,
+ *     followed by every message since then (identical messages in a row are counted instead of repeated). So one bulk stock of 30 items is one frame with one slot line, not 30 whole consoles.</li>
+ * </ul>
+ * Live displays draw late frames on their own (daemon) thread; 'this.close' draws any pending frame and stops it.
+ * <p>
+ * Final, as the constructor registers the display with its observable - a subclass would be observed before it is fully constructed.
  */
-public class AdminDisplay implements Observer {
+public final class AdminDisplay implements Observer, AutoCloseable {
+    private static final String HEADER = "================================= ADMIN CONSOLE DISPLAY =================================\n";
+    private static final String UPDATE_HEADER = "================================= ADMIN CONSOLE UPDATE ==================================\n";
+    private static final String FOOTER = "================================= ===================== =================================\n";
+    private static final String MAINTENANCE_ONLY = "Must be in maintenance mode to view mutable (changeable) vending machine stats for security reasons.\n";
+
     private final Observable observable;
     //: No need to call fixed data multiple times (only called once); so it is stored locally to save compute power.
     private final int maxSlots;
@@ -18,78 +42,295 @@ public class AdminDisplay implements Observer {
     private final Map<CoinGBP, Integer> coinMaxes;
     //^ Coins that are not included here are not accepted by the vending machine;
     //^ hence unaccepted coin types implicitly have a max of 0.
+    private final String specificationLines;
+    //^ Fixed data formatted once, instead of streaming 'this.coinMaxes' twice on every frame.
+    private final long minFrameNanos;
+    //^ Shortest time between two live frames; 0 for a full display (every event is a frame).
+    private final ScheduledExecutorService frames;
+    //^ Draws live frames that were held back by the rate limit; 'null' for a full display.
+
+    //: Render cache - what the last frame showed, and its formatted lines; guarded by 'this'.
+    private VendingMachineState renderedState;
+    private String modeLine;
+    private Map<CoinGBP, Integer> renderedCoins;
+    private String coinLine;
+    private final ItemSlot[] renderedSlots;
+    //^ Slot views last formatted - a different view means the slot was (un)assigned since.
+    private final int[] renderedStocks;
+    private final String[] slotTexts;
+    private String slotsLine;
+    //^ Every slot text joined (full display); 'null' when a slot changed since it was joined.
+
+    //: Live display only - guarded by 'this'.
+    private final List<String> pendingMessages = new ArrayList<>();
+    private int lastMessageRepeats;
+    //^ How many times the last pending message came in a row.
+    private boolean frameScheduled;
+    private boolean drawnFirstFrame;
+    private long lastFrameNanos;
 
     /**
      * Constructor for AdminDisplay which observes an Observable (AdminProxy) for vending machine updates.
+     * Every update prints the whole console.
      * @param observable The observable object (AdminProxy) to observe for updates.
      * @param specifications An array containing vending machine specifications: [maxSlots, maxItemsPerSlot].
      * @param coinMaxes A map containing the maximum capacities for each accepted coin type.
      */
     public AdminDisplay(Observable observable, int[] specifications, Map<CoinGBP, Integer> coinMaxes) {
+        this(observable, specifications, coinMaxes, 0L);
+    }
+    /**
+     * Constructor for a live AdminDisplay - updates are coalesced into at most 'maxFramesPerSecond' frames, each printing only what changed.
+     * @param observable The observable object (AdminProxy) to observe for updates.
+     * @param specifications An array containing vending machine specifications: [maxSlots, maxItemsPerSlot].
+     * @param coinMaxes A map containing the maximum capacities for each accepted coin type.
+     * @param maxFramesPerSecond Most frames printed per second.
+     * @throws IllegalArgumentException if 'maxFramesPerSecond' is not positive.
+     */
+    public AdminDisplay(Observable observable, int[] specifications, Map<CoinGBP, Integer> coinMaxes, int maxFramesPerSecond) {
+        this(observable, specifications, coinMaxes, AdminDisplay.frameNanos(maxFramesPerSecond));
+    }
+    /**
+     * Constructor shared by both modes.
+     * @param observable The observable object (AdminProxy) to observe for updates.
+     * @param specifications An array containing vending machine specifications: [maxSlots, maxItemsPerSlot].
+     * @param coinMaxes A map containing the maximum capacities for each accepted coin type.
+     * @param minFrameNanos Shortest time between two live frames; 0 for a full display.
+     */
+    private AdminDisplay(Observable observable, int[] specifications, Map<CoinGBP, Integer> coinMaxes, long minFrameNanos) {
         this.observable = observable;
         this.maxSlots = specifications[0];
         this.maxItemsPerSlot = specifications[1];
         this.coinMaxes = coinMaxes;
+        this.specificationLines = STR."Current Vending Machine specifications: max slots - \{this.maxSlots}, max items per slot - \{this.maxItemsPerSlot}.\n"
+            + STR."Accepted coin types -  \{String.join(", ", coinMaxes.keySet().stream().map(CoinGBP::toString).toList())}.\n"
+            //^ Stream converts CoinGBP[] coin kinds (keys of map) to a list of display strings using 'CoinGBP.toString' method.
+            + STR."Respective coin capacities - \{String.join(", ", coinMaxes.values().stream().map(String::valueOf).toList())}\n";
+            //^ Stream converts coin capacities (values of map) to a list of display strings using 'String.valueOf' method.
+        this.minFrameNanos = minFrameNanos;
+        this.frames = minFrameNanos == 0 ? null : Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "admin-display-frames");
+            thread.setDaemon(true);
+            //^ Never keeps the JVM alive on its own if the display is not closed.
+            return thread;
+        });
+        this.renderedSlots = new ItemSlot[this.maxSlots];
+        this.renderedStocks = new int[this.maxSlots];
+        this.slotTexts = new String[this.maxSlots];
 
         this.observable.addObserver(this);
         //^ Adds this display/observer instance to the observable's (AdminProxy's) list of observers.
     }
 
+    /**
+     * Helper method to convert a maximum frame rate to the shortest time between frames.
+     * @param maxFramesPerSecond Most frames printed per second.
+     * @return Nanoseconds between frames.
+     * @throws IllegalArgumentException if 'maxFramesPerSecond' is not positive.
+     */
+    private static long frameNanos(int maxFramesPerSecond) {
+        if (maxFramesPerSecond <= 0) throw new IllegalArgumentException("Maximum frame rate must be positive.");
+        return TimeUnit.SECONDS.toNanos(1) / maxFramesPerSecond;
+    }
+
     /**
      * Update method called when the observable notifies observers of a change.
      * @param o The observable object.
      * @param message The message object containing update information.
      */
     public void update(Observable o, Object message) {
-        //* Simpler to use 'Object' than either genetics or wildcard.
-        switch (message.getClass().getSimpleName()){
-            //* Enhanced switch statement for better readability.
-            case "IllegalArgumentException" -> this.display(o, "INVALID OPERATION - " + ((IllegalArgumentException) message).getMessage());
-            case "IllegalStateException" -> this.display(o, "INVALID STATE - " + ((IllegalStateException) message).getMessage());
+        //* 'Object' as dictated by the 'Observer' interface; observables send 'VendingEvent' objects.
+        switch (message){
+            //* Pattern-matching switch over the sealed event kinds instead of comparing class names.
+            case VendingEvent.Failure failure when failure.error() instanceof IllegalStateException -> this.display(o, "INVALID STATE - " + failure.message());
+            case VendingEvent.Failure failure -> this.display(o, "INVALID OPERATION - " + failure.message());
+            case VendingEvent event -> this.display(o, "NOTICE - " + event.message());
             default ->  this.display(o, "NOTICE - " + message.toString());
-            //^ Default case for String, int, etc; being default case, it also tackles external errors.
+            //^ Default case for anything else; being default case, it also tackles external errors.
         }
     }
 
     /**
-     * Displays the current vending machine specifications and a formatted message.
+     * Shows action metrics (e.g. from 'MeteredAdminProxy.getMetrics') on the admin console, like any other message.
+     * @param metrics Snapshot of the metrics to show.
+     */
+    public void showMetrics(ActionMetrics.Snapshot metrics) { this.display(this.observable, "METRICS -\n" + metrics.toText()); }
+
+    /**
+     * Displays the current vending machine specifications and a formatted message - at once for a full display, or as part of the next frame for a live display.
      * Priorities showing full and comprehensive disclosure to the owner/admin over pretty formatting.
      * Assumes that admin/owner's console wraps long lines automatically.
-     * @param formattedMessage The primary information to be displayed to the admin/owner.
      * @param o The observable object (AdminProxy) providing the vending machine data.
+     * @param formattedMessage The primary information to be displayed to the admin/owner.
      */
-    private void display(Observable o, String formattedMessage) {
+    private synchronized void display(Observable o, String formattedMessage) {
+        if (this.frames == null) {
+            this.drawFull((AdminProxy) o, formattedMessage);
+            return;
+        }
 
+        this.queueMessage(formattedMessage);
+        if (this.frameScheduled) return;
+        //^ Coalesced into the frame already waiting.
+        long wait = this.lastFrameNanos + this.minFrameNanos - System.nanoTime();
+        if (!this.drawnFirstFrame || wait <= 0) {
+            this.drawLive((AdminProxy) o);
+            return;
+        }
+        this.frameScheduled = true;
+        this.frames.schedule(() -> this.drawScheduled((AdminProxy) o), wait, TimeUnit.NANOSECONDS);
+    }
+    /**
+     * Helper method to add a message to the next live frame, counting it instead if it repeats the previous message.
+     * @param formattedMessage The message.
+     */
+    private void queueMessage(String formattedMessage) {
+        if (!this.pendingMessages.isEmpty() && this.pendingMessages.getLast().equals(formattedMessage)) {
+            this.lastMessageRepeats++;
+            return;
+        }
+        this.closeRepeats();
+        this.pendingMessages.add(formattedMessage);
+    }
+    /**
+     * Helper method to mark how many times the last pending message repeated, if it did.
+     */
+    private void closeRepeats() {
+        if (this.lastMessageRepeats == 0) return;
+        this.pendingMessages.set(this.pendingMessages.size() - 1, STR."\{this.pendingMessages.getLast()} (x\{this.lastMessageRepeats + 1})");
+        this.lastMessageRepeats = 0;
+    }
+    /**
+     * Draws a live frame that was held back by the rate limit - run on 'this.frames'.
+     * @param adminProxy The admin proxy providing the vending machine data.
+     */
+    private synchronized void drawScheduled(AdminProxy adminProxy) {
+        this.frameScheduled = false;
+        if (!this.pendingMessages.isEmpty()) this.drawLive(adminProxy);
+        //^ Already drawn by 'this.close' otherwise.
+    }
+
+    /**
+     * Prints the whole console - full display.
+     * @param adminProxy The admin proxy providing the vending machine data.
+     * @param formattedMessage The primary information to be displayed to the admin/owner.
+     */
+    private void drawFull(AdminProxy adminProxy, String formattedMessage) {
         StringBuilder consoleInterface = new StringBuilder();
         //^ Using StringBuilder to accumulate the console output before printing.
         //^ This approach is more efficient building string with multiple lines than printing multiple strings.
         //^ Also is simpler to modify later if extensibility needed (e.g., redirecting output to a logging file).
 
-        consoleInterface.append("================================= ADMIN CONSOLE DISPLAY =================================\n");
+        consoleInterface.append(HEADER);
         //: immediate and frequent constant stats - admin/owner would always want to see these every time vending machine is in MAINTENANCE mode.
-        consoleInterface.append(STR."Current Vending Machine specifications: max slots - \{this.maxSlots}, max items per slot - \{this.maxItemsPerSlot}.\n");
-        //^ Using 'STR' is much simpler and compact than using 'String.format' or concatenation for more than 2 concatenating components.
-        consoleInterface.append(STR."Accepted coin types -  \{String.join(", ", coinMaxes.keySet().stream().map(CoinGBP::toString).toList())}.\n");
-        //^ '.stream()' is a single-line simple alternative to traditional 'for' loops for transforming collections; hence is used.
-        //^ Stream converts CoinGBP[] coin kinds (keys of map) to a list of display strings using 'CoinGBP.toString' method.
-        consoleInterface.append(STR."Respective coin capacities - \{String.join(", ", coinMaxes.values().stream().map(String::valueOf).toList())}\n");
-        //^ Stream converts coin capacities (values of map) to a list of display strings using 'String.valueOf' method.
+        consoleInterface.append(this.specificationLines);
 
         //: mutable but frequent stats - admin/owner would always want to see these every time vending machine is in MAINTENANCE mode.
-        consoleInterface.append(STR."Current vending machine mode - \{((AdminProxy) o).getState().toString()}.\n");
-        if (((AdminProxy) o).getState() == VendingMachineState.MAINTENANCE){
-            //: mutable but frequent stats - admin/owner would always want to see these every time vending machine is in MAINTENANCE mode.
-            consoleInterface.append(STR."Current coin storage - \{((AdminProxy)o).viewCoins().toString()}.\n");
-            consoleInterface.append(STR."Current item slot storage: \{Arrays.stream(((AdminProxy) o).viewItems()).map(it -> it == null ? "null" : it.render()).reduce((a, b) -> a + ", " + b).orElse("")}.\n");
-            //^ Stream converts ItemSlot[] to a single string by mapping each slot to its rendered details or 'null' if slot is unassigned.
+        boolean maintenance = this.refresh(adminProxy, null);
+        consoleInterface.append(this.modeLine);
+        if (maintenance){
+            consoleInterface.append(this.coinLine);
+            if (this.slotsLine == null) this.slotsLine = STR."Current item slot storage: \{String.join(", ", this.slotTexts)}.\n";
+            //^ Joined again only after a slot changed.
+            consoleInterface.append(this.slotsLine);
         }
-        else consoleInterface.append("Must be in maintenance mode to view mutable (changeable) vending machine stats for security reasons.\n");
+        else consoleInterface.append(MAINTENANCE_ONLY);
 
         consoleInterface.append(formattedMessage + "\n");
         //^ Not worth using 'STR' here as only 2 component are concatenated.
-        consoleInterface.append("================================= ===================== =================================\n");
+        consoleInterface.append(FOOTER);
 
         System.out.print(consoleInterface);
         //^ Print the entire console output at once for better performance.
     }
+    /**
+     * Prints the lines that changed since the previous frame and every pending message - live display.
+     * The first frame (and the first after switching mode) prints every line.
+     * @param adminProxy The admin proxy providing the vending machine data.
+     */
+    private void drawLive(AdminProxy adminProxy) {
+        VendingMachineState previousState = this.renderedState;
+        Map<CoinGBP, Integer> previousCoins = this.renderedCoins;
+        BitSet changedSlots = new BitSet(this.maxSlots);
+        boolean maintenance = this.refresh(adminProxy, changedSlots);
+        boolean everything = !this.drawnFirstFrame || this.renderedState != previousState;
+
+        StringBuilder consoleInterface = new StringBuilder();
+        consoleInterface.append(this.drawnFirstFrame ? UPDATE_HEADER : HEADER);
+        if (!this.drawnFirstFrame) consoleInterface.append(this.specificationLines);
+        if (everything) consoleInterface.append(this.modeLine);
+        if (maintenance) {
+            if (everything || this.renderedCoins != previousCoins) consoleInterface.append(this.coinLine);
+            //^ A new coin map is only kept (and formatted) when the counts differ.
+            for (int slotNum = 0; slotNum < this.maxSlots; slotNum++) {
+                if (everything || changedSlots.get(slotNum)) consoleInterface.append(STR."Slot #\{slotNum} - \{this.slotTexts[slotNum]}.\n");
+            }
+        }
+        else if (everything) consoleInterface.append(MAINTENANCE_ONLY);
+
+        this.closeRepeats();
+        for (String message : this.pendingMessages) consoleInterface.append(message).append('\n');
+        this.pendingMessages.clear();
+        consoleInterface.append(FOOTER);
+
+        System.out.print(consoleInterface);
+        this.drawnFirstFrame = true;
+        this.lastFrameNanos = System.nanoTime();
+    }
+    /**
+     * Helper method to bring the render cache up to date, formatting only the regions that changed since the last frame.
+     * @param adminProxy   The admin proxy providing the vending machine data.
+     * @param changedSlots Set to the slot numbers whose text changed; 'null' if not needed.
+     * @return Whether the vending machine is in MAINTENANCE mode (so coins and slots are up to date).
+     */
+    private boolean refresh(AdminProxy adminProxy, BitSet changedSlots) {
+        VendingMachineState state = adminProxy.getState();
+        if (state != this.renderedState) {
+            this.renderedState = state;
+            this.modeLine = STR."Current vending machine mode - \{state.toString()}.\n";
+        }
+        if (state != VendingMachineState.MAINTENANCE) return false;
+
+        try {
+            Map<CoinGBP, Integer> coins = adminProxy.viewCoins();
+            if (!coins.equals(this.renderedCoins)) {
+                this.renderedCoins = coins;
+                this.coinLine = STR."Current coin storage - \{coins.toString()}.\n";
+            }
+            ItemSlot[] slots = adminProxy.viewItems();
+            for (int slotNum = 0; slotNum < this.maxSlots; slotNum++) {
+                ItemSlot slot = slots[slotNum];
+                int stock = slot == null ? 0 : slot.getStock();
+                if (this.slotTexts[slotNum] != null && slot == this.renderedSlots[slotNum] && stock == this.renderedStocks[slotNum]) continue;
+                //^ Same view with the same stock - the cached text is still right.
+                this.renderedSlots[slotNum] = slot;
+                this.renderedStocks[slotNum] = stock;
+                this.slotTexts[slotNum] = slot == null ? "null" : slot.renderText();
+                //^ Rendered details (from the item's cached rendering) or 'null' if slot is unassigned.
+                this.slotsLine = null;
+                if (changedSlots != null) changedSlots.set(slotNum);
+            }
+            return true;
+        }
+        catch (IllegalStateException e) {
+            //* Maintenance ended in between (e.g. display drawing late on its own thread) - shown as not in maintenance.
+            this.renderedState = null;
+            //^ Forces the mode line to be formatted and shown again next frame.
+            this.modeLine = STR."Current vending machine mode - \{adminProxy.getState().toString()}.\n";
+            return false;
+        }
+    }
+
+    /**
+     * Stops observing, prints any live frame still held back by the rate limit and stops the live display's thread.
+     */
+    @Override
+    public void close() {
+        this.observable.deleteObserver(this);
+        synchronized (this) {
+            if (this.frames == null) return;
+            if (!this.pendingMessages.isEmpty()) this.drawLive((AdminProxy) this.observable);
+            this.frames.shutdownNow();
+        }
+    }
 }
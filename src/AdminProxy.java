@@ -1,6 +1,8 @@
 import java.util.Map;
 import java.util.Observable;
 //^ Using package simplifies code as does not require to implement an observer interface and observable superclass methods from scratch.
+import java.util.Observer;
+import java.util.function.Supplier;
 
 /**
  * Represents the admin user role for maintaining its corresponding vending machine.
@@ -13,33 +15,110 @@ import java.util.Observable;
  * <p>
  * Observers are extendable by simply declaring 'this.observable.addObserver(this);' in the observer's constructor where 'observable' is the 'AdminProxy' instance being observed.
  * This extension allows for multiple different admin user interfaces to be created and observe the same 'AdminProxy' instance if needed.
+ * Observers receive typed 'VendingEvent' objects; events that no observer or other subscriber would receive are never created nor formatted.
  * Such example can be a remote admin CLI or a GUI application, both observing the same 'AdminProxy' instance for the same vending machine.
  * <p>
  * Actions are implemented following the 'ActionsAdmin' contract; hence refer to that interface for deeper method documentations.
  */
 public class AdminProxy extends Observable implements ActionsAdmin {
     private final VendingMachine vendingMachine;
+    private final EventBus eventBus;
+    //^ Delivers events to the observers; asynchronous event bus lets admin actions never wait for display rendering.
+    private boolean observersSubscribed;
+    //^ Whether 'this.notifyAllObservers' is subscribed to the event bus yet - only done once the first observer is added (see 'this.addObserver').
+    private long refusals;
+    private long rejections;
+    //^ How many failures were reported so far - refused by state ('IllegalStateException') or rejected as invalid (anything else); read by metered proxies.
 
     /**
-     * Observable-specific helper method to notify all observers of an event.
-     * @param obj The event object to be sent to all observers to be display.
-     *            Uses polymorphism by passing different types from Maps to thrown exceptions.
-     *            Polymorphism is handled by the observer's 'update' method by using 'getClass().getSimpleName()' checks in an enhanced switch.
+     * Observable-specific helper method to notify all observers of an event via 'this.eventBus'.
+     * @param event The event to be sent to all observers to be display.
+     *              Polymorphism is handled by the observer's 'update' method by a pattern-matching switch over the sealed 'VendingEvent' kinds.
      */
-    private void event(Object obj){
+    private void event(VendingEvent event){
+        this.eventBus.publish(event);
+        //^ Delivered to the observers by the event bus - immediately or on the event bus's own thread (see 'this.notifyAllObservers').
+    }
+    /**
+     * Helper method to notify observers of a free text notice, only formatting the text if anything would receive it.
+     * @param text Supplies the notice text; must only capture values that do not change afterwards (as the event bus may format it later).
+     */
+    private void notice(Supplier<String> text){
+        if (this.eventBus.hasSubscribers(VendingEvent.Notice.class)){ this.event(new VendingEvent.Notice(text)); }
+    }
+    /**
+     * Helper method to notify observers of a failed or disallowed admin action.
+     * @param error The cause of the failure.
+     */
+    private void failure(RuntimeException error){
+        if (error instanceof IllegalStateException){ this.refusals++; } else { this.rejections++; }
+        this.event(new VendingEvent.Failure(error));
+    }
+    /**
+     * Helper method to notify observers of an admin action the vending machine rejected with a result code, only making the exception (and its message) if anything would receive it.
+     * @param operation The rejected operation.
+     * @param result    Why it was rejected.
+     * @param coin      The coin type operated on; 'null' for item operations.
+     */
+    private void failure(VendingOperation operation, VendingResult result, CoinGBP coin){
+        if (this.eventBus.hasSubscribers(VendingEvent.Failure.class)){ this.failure(result.toException(operation, coin)); }
+        else if (result == VendingResult.REFUSED){ this.refusals++; }
+        else { this.rejections++; }
+    }
+    /**
+     * Getter method for how many failures reported so far were refusals (not permitted in the vending machine's current state).
+     * <p>
+     * Counted whether or not anything receives the failures; lets a metered proxy tell how an action ended.
+     * @return Number of refusals.
+     */
+    public long getRefusals(){ return this.refusals; }
+    /**
+     * Getter method for how many failures reported so far were rejections (invalid operations, e.g. a full slot).
+     * @return Number of rejections.
+     */
+    public long getRejections(){ return this.rejections; }
+    /**
+     * Adds an observer, subscribing 'this.notifyAllObservers' to the event bus when the first observer is added.
+     * <p>
+     * Until then, nothing is subscribed, so no events are created at all.
+     * @param observer The observer to add (e.g. 'AdminDisplay').
+     */
+    @Override
+    public synchronized void addObserver(Observer observer){
+        super.addObserver(observer);
+        if (this.observersSubscribed){ return; }
+        this.eventBus.subscribe(this::notifyAllObservers);
+        this.observersSubscribed = true;
+    }
+    /**
+     * Synchronous adapter between the event bus and the 'Observable' superclass - subscribed to the event bus once the first observer is added.
+     * <p>
+     * Lets existing observers (using 'addObserver') keep working unchanged, whichever event bus is used.
+     * @param event The event delivered by the event bus.
+     */
+    private void notifyAllObservers(VendingEvent event){
         this.setChanged();
         //^ from the 'Observable' superclass - marks this Observable object as having been changed.
-        this.notifyObservers(obj);
+        this.notifyObservers(event);
         //^ from the 'Observable' superclass - if this object has changed, which it has in this scope as indicated by
         //^ the 'setChanged' method, then notify all of its observers.
     }
 
     /**
      * Constructor initializes which vending machine to be managed.
+     * <p>
+     * Events are delivered synchronously (on the caller's thread), just like plain 'java.util.Observable'.
+     * @param vendingMachine The vending machine instance reference that this admin proxy will manage using maintenance actions.
+     */
+    public AdminProxy(VendingMachine vendingMachine) { this(vendingMachine, new SynchronousEventBus()); }
+    /**
+     * Constructor initializes which vending machine to be managed and how events are delivered.
      * @param vendingMachine The vending machine instance reference that this admin proxy will manage using maintenance actions.
+     * @param eventBus       The event bus delivering events to the observers (e.g. 'AsyncEventBus' so displays render on their own thread).
      */
-    public AdminProxy(VendingMachine vendingMachine) {
+    public AdminProxy(VendingMachine vendingMachine, EventBus eventBus) {
         this.vendingMachine = vendingMachine;
+        this.eventBus = eventBus;
     }
 
     /**
@@ -58,7 +137,7 @@ public class AdminProxy extends Observable implements ActionsAdmin {
         //* Better readability for method to be called 'inMaintenanceMode', with the logical NOT operator, than 'inNotMaintenanceMode'.
         boolean inMaintenanceMode = this.vendingMachine.getState() == VendingMachineState.MAINTENANCE;
         if (!inMaintenanceMode) {
-            this.event(new IllegalStateException("Vending machine is not in maintenance mode. Cannot perform admin actions (except entering and exiting maintenance mode)."));
+            this.failure(new IllegalStateException("Vending machine is not in maintenance mode. Cannot perform admin actions (except entering and exiting maintenance mode)."));
             return false;
         }
         return true;
@@ -85,7 +164,7 @@ public class AdminProxy extends Observable implements ActionsAdmin {
     @Override
     public void startMaintenance() {
         this.vendingMachine.changeState(VendingMachineState.MAINTENANCE);
-        this.event("Vending machine is now in maintenance mode.");
+        this.event(new VendingEvent.StateChanged(VendingMachineState.MAINTENANCE));
     }
     /**
      * Caller method that ends maintenance mode on the vending machine.
@@ -98,7 +177,7 @@ public class AdminProxy extends Observable implements ActionsAdmin {
     @Override
     public void stopMaintenance() {
         this.vendingMachine.changeState(VendingMachineState.IDLE);
-        this.event("Vending machine is now out of maintenance mode.");
+        this.event(new VendingEvent.StateChanged(VendingMachineState.IDLE));
     }
 
     //: Relating to coin storage.
@@ -109,7 +188,9 @@ public class AdminProxy extends Observable implements ActionsAdmin {
      * <p>
      * See corresponding superclass's method documentation for more information.
      * <p>
-     * Catches thrown IllegalArgumentException from 'this.vendingMachine.insertCoin' calls to notifies observers (such as 'AdminDisplay') of the error instead of throwing it further.
+     * Deposits the whole batch with a single 'this.vendingMachine.insertCoins' call; coins that do not fit are refunded and reported in the one summary event.
+     * <p>
+     * Rejections (e.g. unsupported coin) are returned as a result code by 'this.vendingMachine.tryInsertCoins' and notified to observers (such as 'AdminDisplay') instead of thrown.
      * @param coin   The type of coin to be deposited.
      * @param amount The amount of coins to be deposited.
      */
@@ -117,19 +198,18 @@ public class AdminProxy extends Observable implements ActionsAdmin {
     public void depositCoins(CoinGBP coin, int amount) {
         if (!this.inMaintenanceMode()) return;
 
-        this.event(STR."Depositing \{amount} \{coin.toString()}(s)..");
-        try {
-            for (int i = 0; i < amount; i++) {
-                this.vendingMachine.insertCoin(coin);
-                this.event(coin);
-            }
-        }
-        catch (IllegalArgumentException e) {
-            this.event(e);
+        int deposited = this.vendingMachine.tryInsertCoins(coin, amount);
+        //^ One state check, one capacity check and one coin storage update for the whole batch.
+        if (deposited < 0) {
+            this.failure(VendingOperation.INSERT_COINS, VendingResult.ofCount(deposited), coin);
             return;
-            //^ Reduces indentation levels removing the 'finally' block.
         }
-        this.event("All coins deposited successfully.");
+        this.event(new VendingEvent.CoinsDeposited(coin, amount, deposited));
+        //^ One summary event (so one display re-render) instead of one per coin.
+        if (this.eventBus.hasSubscribers(VendingEvent.CoinAccepted.class)) {
+            //* Per-coin events only streamed to listeners that subscribed to them specifically.
+            for (int i = 0; i < deposited; i++) { this.event(new VendingEvent.CoinAccepted(coin)); }
+        }
     }
     /**
      * Withdraws a specified amount of coins of a specific type from the vending machine's coin storage.
@@ -138,7 +218,9 @@ public class AdminProxy extends Observable implements ActionsAdmin {
      * <p>
      * See corresponding superclass's method documentation for more information.
      * <p>
-     * Catches thrown IllegalArgumentException from 'this.vendingMachine.withdrawCoin' calls to notifies observers (such as 'AdminDisplay') of the error instead of throwing it further.
+     * Withdraws the whole batch with a single 'this.vendingMachine.withdrawCoins' call; a shortfall is reported in the one summary event.
+     * <p>
+     * Rejections (e.g. unsupported coin) are returned as a result code by 'this.vendingMachine.tryWithdrawCoins' and notified to observers (such as 'AdminDisplay') instead of thrown.
      * @param coin   The type of coin to be withdrawn.
      * @param amount The amount of coins to be withdrawn.
      */
@@ -146,19 +228,18 @@ public class AdminProxy extends Observable implements ActionsAdmin {
     public void withdrawCoins(CoinGBP coin, int amount) {
         if (!this.inMaintenanceMode()) return;
 
-        this.event(STR."Withdrawing \{amount} \{coin.toString()}(s)..");
-        try {
-            for (int i = 0; i < amount; i++) {
-                this.vendingMachine.withdrawCoin(coin);
-                this.event(coin);
-            }
-        }
-        catch (IllegalArgumentException e) {
-            this.event(e);
+        int withdrawn = this.vendingMachine.tryWithdrawCoins(coin, amount);
+        //^ One state check and one coin storage update for the whole batch.
+        if (withdrawn < 0) {
+            this.failure(VendingOperation.WITHDRAW_COINS, VendingResult.ofCount(withdrawn), coin);
             return;
-            //^ Reduces indentation levels removing the 'finally' block.
         }
-        this.event("All coins withdraw successfully.");
+        this.event(new VendingEvent.CoinsWithdrawn(coin, amount, withdrawn));
+        //^ One summary event (so one display re-render) instead of one per coin.
+        if (this.eventBus.hasSubscribers(VendingEvent.CoinWithdrawn.class)) {
+            //* Per-coin events only streamed to listeners that subscribed to them specifically.
+            for (int i = 0; i < withdrawn; i++) { this.event(new VendingEvent.CoinWithdrawn(coin)); }
+        }
     }
     /**
      * Forwarder method views all supported coin types in the vending machine's coin storage.
@@ -168,7 +249,7 @@ public class AdminProxy extends Observable implements ActionsAdmin {
      * See corresponding superclass's method documentation for more information.
      * <p>
      * Not one of the administrative actions but is called per observer display update, hence the MAINTENANCE guard clause is not needed here.
-     * @return Map containing each coin denomination (key) and its respective current count (value) in the coin storage.
+     * @return Read-only snapshot Map containing each coin denomination (key) and its respective current count (value) in the coin storage.
      */
     @Override
     public Map<CoinGBP, Integer> viewCoins() { return this.vendingMachine.getCoinStorage(); }
@@ -181,24 +262,28 @@ public class AdminProxy extends Observable implements ActionsAdmin {
      * <p>
      * See corresponding superclass's method documentation for more information.
      * <p>
-     * Catches thrown IllegalArgumentException from 'this.vendingMachine.stockItem' calls to notifies observers (such as 'AdminDisplay') of the error instead of throwing it further.
+     * Stops at the first item the vending machine rejects (e.g. slot full) - returned as a result code by 'this.vendingMachine.tryStockItem', so a rejection costs no exception unless an observer (such as 'AdminDisplay') is notified of it.
+     * <p>
+     * Reported as one summary event (so one display re-render) of how many items were stocked, instead of one per item.
      * @param slotNum The slot number to stock items into.
      * @param amount  The number of items to stock.
      */
     @Override
     public void stockItems(int slotNum, int amount) {
-        this.event(STR."attempting to stock \{amount} items into slot \{slotNum}...");
-        try {
-            for (int i = 0; i < amount; i++) {
-                this.vendingMachine.stockItem(slotNum);
-                this.event("Item stocked into slot #" + slotNum);
+        this.notice(() -> STR."attempting to stock \{amount} items into slot \{slotNum}...");
+        boolean announce = this.eventBus.hasSubscribers(VendingEvent.ItemStocked.class);
+        //^ Checked once instead of per item; per-item events only streamed to listeners that subscribed to them specifically.
+        int stocked = 0;
+        while (stocked < amount) {
+            VendingResult result = this.vendingMachine.tryStockItem(slotNum);
+            if (!result.isOk()) {
+                this.failure(VendingOperation.STOCK_ITEM, result, null);
+                break;
             }
+            stocked++;
+            if (announce) { this.event(new VendingEvent.ItemStocked(slotNum)); }
         }
-        catch (IllegalArgumentException e) {
-                this.event(e);
-                return;
-            }
-        this.event("All items stocked successfully.");
+        this.event(new VendingEvent.ItemsStocked(slotNum, amount, stocked));
     }
     /**
      * Removes a specified amount of items from a specific slot of the vending machine's item storage.
@@ -207,24 +292,27 @@ public class AdminProxy extends Observable implements ActionsAdmin {
      * <p>
      * See corresponding superclass's method documentation for more information.
      * <p>
-     * Catches thrown IllegalArgumentException from 'this.vendingMachine.dispenseItem' calls to notifies observers (such as 'AdminDisplay') of the error instead of throwing it further.
+     * Stops at the first item the vending machine rejects (e.g. slot empty) - returned as a result code by 'this.vendingMachine.tryDispenseItem' and notified to observers (such as 'AdminDisplay') instead of thrown.
+     * <p>
+     * Same structure as 'this.stockItems' - one summary event of how many items were removed.
      * @param slotNum The slot number to remove items from.
      * @param amount  The number of items to remove.
      */
     @Override
     public void removeItems(int slotNum, int amount) {
-        this.event(STR."attempting to remove \{amount} items from slot #\{slotNum}...");
-        try {
-            for (int i = 0; i < amount; i++) {
-                this.vendingMachine.dispenseItem(slotNum);
-                this.event("Item removed from slot #" + slotNum);
+        this.notice(() -> STR."attempting to remove \{amount} items from slot #\{slotNum}...");
+        boolean announce = this.eventBus.hasSubscribers(VendingEvent.ItemRemoved.class);
+        int removed = 0;
+        while (removed < amount) {
+            VendingResult result = this.vendingMachine.tryDispenseItem(slotNum);
+            if (!result.isOk()) {
+                this.failure(VendingOperation.DISPENSE_ITEM, result, null);
+                break;
             }
+            removed++;
+            if (announce) { this.event(new VendingEvent.ItemRemoved(slotNum)); }
         }
-        catch (IllegalArgumentException e) {
-            this.event(e);
-            return;
-        }
-        this.event(STR."All wanted items (in slot #\{slotNum}) removed successfully.");
+        this.event(new VendingEvent.ItemsRemoved(slotNum, amount, removed));
     }
     /**
      * Assigns an item to a specified slot in the vending machine's item storage.
@@ -233,19 +321,19 @@ public class AdminProxy extends Observable implements ActionsAdmin {
      * <p>
      * See corresponding superclass's method documentation for more information.
      * <p>
-     * Catches thrown IllegalArgumentException from 'this.vendingMachine.assignSlot' calls to notifies observers (such as 'AdminDisplay') of the error instead of throwing it further.
+     * Rejections (e.g. slot already assigned) are returned as a result code by 'this.vendingMachine.tryAssignSlot' and notified to observers (such as 'AdminDisplay') instead of thrown.
      * @param slotNum The slot number to assign the item to.
      * @param item    The item to be assigned to the slot.
      */
     @Override
     public void assignItemSlot(int slotNum, Item item) {
-        this.event(STR."Attempting to assign item \{item.getName()} to slot #\{slotNum}...");
-        try{ this.vendingMachine.assignSlot(slotNum, item); }
-        catch (IllegalArgumentException | IllegalStateException e){
-            this.event(e);
+        this.notice(() -> STR."Attempting to assign item \{item.getName()} to slot #\{slotNum}...");
+        VendingResult result = this.vendingMachine.tryAssignSlot(slotNum, item);
+        if (!result.isOk()){
+            this.failure(VendingOperation.ASSIGN_SLOT, result, null);
             return;
         }
-        this.event(STR."Slot #\{slotNum} assigned to item \{item.getName()} successfully.");
+        this.notice(() -> STR."Slot #\{slotNum} assigned to item \{item.getName()} successfully.");
     }
     /**
      * Unassigns a specified slot in the vending machine's item storage.
@@ -254,18 +342,18 @@ public class AdminProxy extends Observable implements ActionsAdmin {
      * <p>
      * See corresponding superclass's method documentation for more information.
      * <p>
-     * Catches thrown IllegalArgumentException from 'this.vendingMachine.unassignSlot' calls to notifies observers (such as 'AdminDisplay') of the error instead of throwing it further.
+     * Rejections (e.g. slot not empty) are returned as a result code by 'this.vendingMachine.tryUnassignSlot' and notified to observers (such as 'AdminDisplay') instead of thrown.
      * @param slotNum The slot number to unassign the item from.
      */
     @Override
     public void unassignItemSlot(int slotNum) {
-        this.event(STR."Attempting to unassign item from slot #\{slotNum}...");
-        try{ this.vendingMachine.unassignSlot(slotNum); }
-        catch (IllegalArgumentException | IllegalStateException e){
-            this.event(e);
+        this.notice(() -> STR."Attempting to unassign item from slot #\{slotNum}...");
+        VendingResult result = this.vendingMachine.tryUnassignSlot(slotNum);
+        if (!result.isOk()){
+            this.failure(VendingOperation.UNASSIGN_SLOT, result, null);
             return;
         }
-        this.event(STR."Slot #\{slotNum} unassigned successfully.");
+        this.notice(() -> STR."Slot #\{slotNum} unassigned successfully.");
     }
     /**
      * Forwarder method views all item slots in the vending machine's item storage.
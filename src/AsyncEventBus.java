@@ -0,0 +1,235 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Event bus that delivers events on its own dedicated consumer thread, so publishers (dispensing, coin acceptance) never wait for display rendering.
+ * <p>
+ * Events are placed in a single-producer ring buffer (fixed size array, no allocation per event).
+ * The consumer thread drains all events available at once and delivers them as a batch, publishing its progress once per batch instead of once per event.
+ * It only parks once it has found the ring buffer empty, and publishers only unpark it then - so a burst of events costs one wake-up, not one per event.
+ * <p>
+ * Single-producer means 'this.publish' must only be called by one thread at a time - each proxy has its own event bus and is driven by one front-end at a time.
+ * The publisher only ever waits if the consumer falls a whole ring buffer behind.
+ */
+public class AsyncEventBus implements EventBus {
+    private static final int DEFAULT_CAPACITY = 1024;
+    //^ Power of two so the ring index is a cheap bit mask instead of a modulo.
+    private static final int SPINS = 100;
+    //^ Busy-waits before a waiting thread starts parking - the consumer usually catches up within a batch.
+    private static final long MAX_PARK_NANOS = 1_000_000;
+    //^ Longest a waiting thread parks between checks (1 ms); parks start at 1 us and double up to it.
+
+    private final VendingEvent[] ring;
+    private final int mask;
+    private final AtomicLong published = new AtomicLong(0);
+    //^ Sequence of the next event to be published (written by the producer only).
+    private final AtomicLong delivered = new AtomicLong(0);
+    //^ Sequence of the next event to be delivered (written by the consumer only).
+    private final EventSubscribers subscribers = new EventSubscribers();
+    private final Thread consumer;
+    private final FailureHandler failureHandler;
+    private volatile boolean running = true;
+    private volatile boolean sleeping;
+    //^ Set by the consumer before it parks - publishers only unpark it while set.
+
+    /**
+     * Handler for a listener that threw while an event was delivered to it on the consumer thread.
+     * <p>
+     * There is no caller to rethrow to - the publisher returned long before - so the failure is handed here instead.
+     */
+    @FunctionalInterface
+    public interface FailureHandler {
+        /**
+         * Called on the consumer thread when a listener threw; the remaining events are still delivered.
+         * @param event The event being delivered.
+         * @param error What the listener threw.
+         */
+        void failed(VendingEvent event, RuntimeException error);
+    }
+
+    /**
+     * Constructor for an event bus with a specific ring buffer size; the consumer thread is made but not started (see 'AsyncEventBus.start').
+     * @param capacity       Ring buffer size; rounded up to a power of two.
+     * @param failureHandler Handler for listeners that throw.
+     */
+    private AsyncEventBus(int capacity, FailureHandler failureHandler) {
+        if (capacity <= 0) throw new IllegalArgumentException("Event bus capacity must be positive.");
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) size <<= 1;
+        this.ring = new VendingEvent[size];
+        this.mask = size - 1;
+        this.failureHandler = failureHandler;
+        this.consumer = new Thread(this::consume, "event-bus-consumer");
+        this.consumer.setDaemon(true);
+        //^ Never keeps the program alive on its own.
+    }
+
+    /**
+     * Makes an event bus with the default ring buffer size and starts its consumer thread.
+     * @return The running event bus.
+     */
+    public static AsyncEventBus start() { return AsyncEventBus.start(DEFAULT_CAPACITY); }
+    /**
+     * Makes an event bus with a specific ring buffer size and starts its consumer thread.
+     * <p>
+     * A listener that throws is reported to the consumer thread's uncaught exception handler (see 'Thread.setDefaultUncaughtExceptionHandler'), without stopping the thread.
+     * @param capacity Ring buffer size; rounded up to a power of two.
+     * @return The running event bus.
+     * @throws IllegalArgumentException if the capacity is not positive.
+     */
+    public static AsyncEventBus start(int capacity) {
+        return AsyncEventBus.start(capacity, (event, error) -> {
+            Thread thread = Thread.currentThread();
+            thread.getUncaughtExceptionHandler().uncaughtException(thread, error);
+        });
+    }
+    /**
+     * Makes an event bus with a specific ring buffer size and listener failure handler, and starts its consumer thread.
+     * <p>
+     * The thread is started here rather than in the constructor, so it never sees a partly constructed event bus.
+     * @param capacity       Ring buffer size; rounded up to a power of two.
+     * @param failureHandler Called (on the consumer thread) with every failure of a listener.
+     * @return The running event bus.
+     * @throws IllegalArgumentException if the capacity is not positive.
+     */
+    public static AsyncEventBus start(int capacity, FailureHandler failureHandler) {
+        AsyncEventBus eventBus = new AsyncEventBus(capacity, failureHandler);
+        eventBus.consumer.start();
+        return eventBus;
+    }
+
+    /**
+     * Adds a listener to receive every event published from now on.
+     * <p>
+     * See corresponding interface's method documentation for more information.
+     * @param listener The listener to add.
+     */
+    @Override
+    public void subscribe(EventListener listener) { this.subscribers.add(listener); }
+    /**
+     * Adds a listener to receive only one kind of event published from now on.
+     * <p>
+     * See corresponding interface's method documentation for more information.
+     * @param kind     The event kind to receive.
+     * @param listener The listener to add.
+     */
+    @Override
+    public void subscribe(Class<? extends VendingEvent> kind, EventListener listener) { this.subscribers.add(kind, listener); }
+    /**
+     * Checks if publishing an event of a kind would reach any listener.
+     * <p>
+     * See corresponding interface's method documentation for more information.
+     * @param kind The event kind.
+     * @return 'true' if at least one listener would receive it; otherwise 'false'.
+     */
+    @Override
+    public boolean hasSubscribers(Class<? extends VendingEvent> kind) { return this.subscribers.has(kind); }
+
+    /**
+     * Places the event in the ring buffer and returns straight away; event is delivered later on the consumer thread.
+     * <p>
+     * See corresponding interface's method documentation for more information.
+     * @param event The event.
+     * @throws IllegalStateException if the event bus is closed.
+     */
+    @Override
+    public void publish(VendingEvent event) {
+        if (!this.running) throw new IllegalStateException("Event bus is closed.");
+        if (!this.subscribers.has(event.getClass())) return;
+        //^ Nobody would receive it - not worth a ring buffer slot.
+        long sequence = this.published.get();
+        if (sequence - this.delivered.get() >= this.ring.length) {
+            //* Ring buffer full - waits for the consumer to catch up instead of overwriting undelivered events.
+            this.awaitDelivered(sequence - this.ring.length + 1);
+            if (sequence - this.delivered.get() >= this.ring.length) throw new IllegalStateException("Event bus consumer has stopped.");
+        }
+        this.ring[(int) sequence & this.mask] = event;
+        this.published.set(sequence + 1);
+        //^ Volatile write makes the event visible to the consumer.
+        if (this.sleeping) LockSupport.unpark(this.consumer);
+        //^ Read after publishing, while the consumer sets it before its last check - so either it sees this event or this sees it sleeping.
+    }
+
+    /**
+     * Waits until every event published so far has been delivered.
+     * <p>
+     * See corresponding interface's method documentation for more information.
+     */
+    @Override
+    public void flush() { this.awaitDelivered(this.published.get()); }
+    /**
+     * Helper method to wait until the consumer has delivered every event before a sequence (or has stopped).
+     * <p>
+     * Spins briefly, then parks for doubling spells up to 'MAX_PARK_NANOS', so a long wait (e.g. a slow display) does not burn a core.
+     * @param target Sequence every event before which must be delivered.
+     */
+    private void awaitDelivered(long target) {
+        long parkNanos = 1_000;
+        for (int waits = 0; this.delivered.get() < target && this.consumer.isAlive(); waits++) {
+            if (this.sleeping) LockSupport.unpark(this.consumer);
+            if (waits < SPINS) Thread.onSpinWait();
+            else {
+                LockSupport.parkNanos(this, parkNanos);
+                parkNanos = Math.min(parkNanos << 1, MAX_PARK_NANOS);
+            }
+        }
+    }
+
+    /**
+     * Delivers every event published so far, then stops the consumer thread.
+     * <p>
+     * See corresponding interface's method documentation for more information.
+     */
+    @Override
+    public void close() {
+        this.flush();
+        this.running = false;
+        LockSupport.unpark(this.consumer);
+        try { this.consumer.join(); }
+        catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+    }
+
+    /**
+     * Consumer thread loop - drains all available events as one batch, delivers them, then sleeps until more are published.
+     */
+    private void consume() {
+        AsyncEventBus.FailureHandler reportFailure = this::reportFailure;
+        //^ Made once, not per event.
+        while (this.running || this.delivered.get() < this.published.get()) {
+            long start = this.delivered.get();
+            long end = this.published.get();
+            if (start == end) {
+                this.sleeping = true;
+                if (this.running && this.published.get() == end) LockSupport.park(this);
+                //^ Checked again after announcing it sleeps, so an event published in between is not slept through.
+                //^ Woken up by 'this.publish' or 'this.close' (or spuriously, which is harmless).
+                this.sleeping = false;
+                continue;
+            }
+            for (long sequence = start; sequence < end; sequence++) {
+                int index = (int) sequence & this.mask;
+                VendingEvent event = this.ring[index];
+                this.ring[index] = null;
+                //^ Lets the event be garbage collected once delivered.
+                this.subscribers.deliver(event, reportFailure);
+                //^ Each failing listener is reported on its own - it must not keep the event from the other listeners, nor kill the consumer thread (and thus every other display).
+            }
+            this.delivered.set(end);
+            //^ Progress published once per batch.
+        }
+    }
+    /**
+     * Helper method to hand a listener's failure to the failure handler.
+     * @param event The event being delivered.
+     * @param error What the listener threw.
+     */
+    private void reportFailure(VendingEvent event, RuntimeException error) {
+        try { this.failureHandler.failed(event, error); }
+        catch (RuntimeException handlerError) {
+            //* A failing handler must not stop the consumer thread either - both failures go to the thread's uncaught exception handler instead.
+            handlerError.addSuppressed(error);
+            Thread thread = Thread.currentThread();
+            thread.getUncaughtExceptionHandler().uncaughtException(thread, handlerError);
+        }
+    }
+}
@@ -0,0 +1,219 @@
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Customer's basket - which items are selected and how many of each, keyed by primitive item ID.
+ * <p>
+ * Lines are held in parallel arrays (item ID, quantity and the selected 'Item'), found through a small open-addressing hash table of line numbers,
+ * so selecting, deselecting and looking up an item are O(1) and never box nor allocate (arrays only grow when a basket outgrows them).
+ * The total price is kept as a running total in pence, updated on every change, instead of being re-summed at checkout.
+ * <p>
+ * Line order is not kept: removing a line moves the last line into its place.
+ * Not thread-safe - owned by one 'CustomerProxy', just like the 'HashMap' it replaces.
+ */
+public class Basket {
+    private static final int INITIAL_LINES = 8;
+    //^ Most baskets have a handful of lines, so they never grow.
+
+    private int[] itemIDs = new int[INITIAL_LINES];
+    private int[] quantities = new int[INITIAL_LINES];
+    private Item[] items = new Item[INITIAL_LINES];
+    //^ One entry per line, indexed by line number; only the first 'this.lines' entries are in use.
+    private int lines;
+    private int[] index = new int[INITIAL_LINES * 2];
+    //^ Open-addressing (linear probing) table from item ID to line number plus one; zero marks a free position.
+    //^ Twice as many positions as lines, so it is at most half full and probes stay short.
+    private long total;
+    //^ Sum of price times quantity over every line, in pence.
+
+    /**
+     * Helper method to spread item IDs over the table - consecutive IDs are common and would otherwise cluster.
+     * @param iD The item ID.
+     * @return Hash of the item ID.
+     */
+    private static int hash(int iD) {
+        int h = iD * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+    /**
+     * Helper method to find an item ID's position in 'this.index'.
+     * @param iD The item ID.
+     * @return Position holding the item ID's line; otherwise the free position where it would be put.
+     */
+    private int find(int iD) {
+        int mask = this.index.length - 1;
+        int position = Basket.hash(iD) & mask;
+        while (this.index[position] != 0 && this.itemIDs[this.index[position] - 1] != iD) position = (position + 1) & mask;
+        return position;
+    }
+    /**
+     * Helper method to get the line of an item ID.
+     * @param iD The item ID.
+     * @return The line number; otherwise -1 if the item is not in the basket.
+     */
+    private int lineOf(int iD) { return this.index[this.find(iD)] - 1; }
+
+    /**
+     * Adds one of an item to the basket, as a new line if it is not in the basket yet.
+     * <p>
+     * If the item ID is already in the basket, the line keeps the item it was first selected with.
+     * @param item The selected item.
+     * @return The item's new quantity in the basket.
+     */
+    public int add(Item item) { return this.add(item, 1); }
+    /**
+     * Adds several of an item to the basket (e.g. restoring a recovered basket), as a new line if it is not in the basket yet.
+     * @param item     The item.
+     * @param quantity How many to add (positive).
+     * @return The item's new quantity in the basket.
+     */
+    public int add(Item item, int quantity) {
+        int position = this.find(item.getID());
+        int line = this.index[position] - 1;
+        if (line < 0) {
+            if (this.lines == this.itemIDs.length) {
+                this.grow();
+                position = this.find(item.getID());
+            }
+            line = this.lines++;
+            this.itemIDs[line] = item.getID();
+            this.items[line] = item;
+            this.quantities[line] = 0;
+            this.index[position] = line + 1;
+        }
+        this.quantities[line] += quantity;
+        this.total += this.items[line].getPrice() * quantity;
+        return this.quantities[line];
+    }
+    /**
+     * Removes one of an item from the basket, removing its whole line when the last one goes.
+     * @param iD The item ID.
+     * @return The item's new quantity in the basket (zero if its line was removed); otherwise -1 if the item is not in the basket.
+     */
+    public int remove(int iD) {
+        int position = this.find(iD);
+        int line = this.index[position] - 1;
+        if (line < 0) return -1;
+        this.total -= this.items[line].getPrice();
+        if (--this.quantities[line] > 0) return this.quantities[line];
+
+        this.delete(position);
+        int last = --this.lines;
+        if (line != last) {
+            //* Last line moves into the removed line's place, so lines stay packed at the front.
+            this.itemIDs[line] = this.itemIDs[last];
+            this.quantities[line] = this.quantities[last];
+            this.items[line] = this.items[last];
+            this.index[this.find(this.itemIDs[line])] = line + 1;
+        }
+        this.items[last] = null;
+        //^ Not kept reachable by the basket.
+        return 0;
+    }
+    /**
+     * Helper method to free a position in 'this.index', shifting later entries of the same probe run back so none becomes unreachable.
+     * @param position The position to free.
+     */
+    private void delete(int position) {
+        int mask = this.index.length - 1;
+        int hole = position;
+        for (int next = (hole + 1) & mask; this.index[next] != 0; next = (next + 1) & mask) {
+            int home = Basket.hash(this.itemIDs[this.index[next] - 1]) & mask;
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                //* Entry's probe run passes through the hole, so it can move back into it.
+                this.index[hole] = this.index[next];
+                hole = next;
+            }
+        }
+        this.index[hole] = 0;
+    }
+    /**
+     * Helper method to double the line arrays and rebuild 'this.index' for them.
+     */
+    private void grow() {
+        int capacity = this.itemIDs.length * 2;
+        this.itemIDs = Arrays.copyOf(this.itemIDs, capacity);
+        this.quantities = Arrays.copyOf(this.quantities, capacity);
+        this.items = Arrays.copyOf(this.items, capacity);
+        this.index = new int[capacity * 2];
+        for (int line = 0; line < this.lines; line++) this.index[this.find(this.itemIDs[line])] = line + 1;
+    }
+    /**
+     * Empties the basket.
+     */
+    public void clear() {
+        Arrays.fill(this.index, 0);
+        Arrays.fill(this.items, 0, this.lines, null);
+        this.lines = 0;
+        this.total = 0;
+    }
+
+    //: Getter methods.
+    /**
+     * Getter method for an item's quantity in the basket.
+     * @param iD The item ID.
+     * @return How many of the item are in the basket; zero if none.
+     */
+    public int getQuantity(int iD) {
+        int line = this.lineOf(iD);
+        return line < 0 ? 0 : this.quantities[line];
+    }
+    /**
+     * Getter method for the item a line was selected with.
+     * @param iD The item ID.
+     * @return The item in the basket with that ID; otherwise 'null' if the basket has no such item.
+     */
+    public Item getItem(int iD) {
+        int line = this.lineOf(iD);
+        return line < 0 ? null : this.items[line];
+    }
+    /**
+     * Getter method for the running total.
+     * @return Total price of everything in the basket, in pence.
+     */
+    public long getTotal() { return this.total; }
+    /**
+     * Getter method for the number of lines (different items) in the basket.
+     * @return Number of lines.
+     */
+    public int getLines() { return this.lines; }
+    /**
+     * Predicate method to check whether the basket is empty.
+     * @return 'true' if no items are selected; otherwise 'false'.
+     */
+    public boolean isEmpty() { return this.lines == 0; }
+    /**
+     * Getter method for the item of a line.
+     * @param line The line number, from zero to 'this.getLines()' (exclusive).
+     * @return The item of the line.
+     */
+    public Item getItemAt(int line) { return this.items[line]; }
+    /**
+     * Getter method for the quantity of a line.
+     * @param line The line number, from zero to 'this.getLines()' (exclusive).
+     * @return The quantity of the line.
+     */
+    public int getQuantityAt(int line) { return this.quantities[line]; }
+    /**
+     * Copies the item ID of every line (e.g. to reserve the basket's stock).
+     * @return Item IDs indexed by line number.
+     */
+    public int[] copyItemIDs() { return Arrays.copyOf(this.itemIDs, this.lines); }
+    /**
+     * Copies the quantity of every line.
+     * @return Quantities indexed by line number.
+     */
+    public int[] copyQuantities() { return Arrays.copyOf(this.quantities, this.lines); }
+    /**
+     * Copies the basket as a read-only map (e.g. for displaying it) - the only basket operation that allocates per line.
+     * @return Each selected item (key) and its quantity (value).
+     */
+    public Map<Item, Integer> toMap() {
+        Map<Item, Integer> map = new HashMap<>(this.lines * 2);
+        for (int line = 0; line < this.lines; line++) map.merge(this.items[line], this.quantities[line], Integer::sum);
+        //^ Merged rather than put, so two lines holding 'equals' items add up instead of one overwriting the other.
+        return Collections.unmodifiableMap(map);
+    }
+}
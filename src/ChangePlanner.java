@@ -0,0 +1,146 @@
+import java.util.Arrays;
+
+/**
+ * Plans which coins to withdraw when giving change or refunding a customer, before any coin is physically withdrawn.
+ * <p>
+ * Solves the bounded coin change problem (bounded knapsack over pence) with dynamic programming so that:
+ * the plan uses the fewest coins possible, only coins actually in the coin storage are used, and amounts that a greedy approach would miss are still payable
+ * (e.g. 60p with no 50p or 10p coins but three 20p coins).
+ * <p>
+ * The latest table is kept together with the coin counts it was built from, published as one immutable pair instead of behind a lock,
+ * so concurrent callers (e.g. several customers getting change) never wait for each other, and repeated questions about unchanged coin counts reuse it.
+ * After any deposit/withdraw the counts differ, so the next call builds a fresh table - each coin type's row costs the same however many coins of it there are.
+ * <p>
+ * Plans and coin counts are represented as 'int[]' indexed by 'CoinGBP.ordinal()' - a count of zero for coin types not in (or not supported by) the coin storage.
+ */
+public class ChangePlanner {
+    private static final CoinGBP[] COINS = CoinGBP.values();
+    //^ Cached as 'CoinGBP.values()' creates a new array every call.
+    private static final int UNPAYABLE = Integer.MAX_VALUE;
+    //^ Marks an amount that cannot be made from the available coins.
+
+    /**
+     * A dynamic programming table and the coin counts it was built from.
+     * @param counts   Coin counts, indexed by 'CoinGBP.ordinal()' (never mutated).
+     * @param minCoins 'minCoins[i][a]' is the fewest coins needed to make 'a' pence using only the first 'i' coin types; 'UNPAYABLE' if impossible (never mutated).
+     */
+    private record Table(int[] counts, int[][] minCoins) {}
+
+    private volatile Table latest;
+    //^ Null when nothing has been computed yet.
+
+    /**
+     * Plans the coins to withdraw for an amount of change/refund.
+     * @param counts Current coin counts of the coin storage, indexed by 'CoinGBP.ordinal()'.
+     * @param amount The amount to be withdrawn in pence.
+     * @return How many of each coin type to withdraw (indexed by 'CoinGBP.ordinal()') using the fewest coins possible; otherwise 'null' if the amount cannot be made from the available coins.
+     * @throws IllegalArgumentException If the amount is negative.
+     */
+    public int[] plan(int[] counts, long amount) {
+        if (amount < 0) throw new IllegalArgumentException("Cannot plan change for a negative amount.");
+        if (amount > Integer.MAX_VALUE) return null;
+        //^ Far beyond what any coin storage can hold; avoids oversized table.
+        int[][] minCoins = this.tableFor(counts, (int) amount);
+
+        if (minCoins[COINS.length][(int) amount] == UNPAYABLE) return null;
+        int[] plan = new int[COINS.length];
+        int remaining = (int) amount;
+        for (int i = COINS.length; i > 0; i--) {
+            //* Backtracks through the table to find how many of each coin type was used.
+            int value = (int) COINS[i - 1].getValue();
+            int target = minCoins[i][remaining];
+            for (int k = 0; k <= counts[i - 1] && k * value <= remaining; k++) {
+                int previous = minCoins[i - 1][remaining - k * value];
+                if (previous != UNPAYABLE && previous + k == target) {
+                    plan[i - 1] = k;
+                    remaining -= k * value;
+                    break;
+                }
+            }
+        }
+        return plan;
+    }
+    /**
+     * Checks if an amount of change/refund can be made from the available coins, without building the plan itself.
+     * @param counts Current coin counts of the coin storage, indexed by 'CoinGBP.ordinal()'.
+     * @param amount The amount to be withdrawn in pence.
+     * @return 'true' if the amount can be made exactly; otherwise 'false'.
+     */
+    public boolean isPayable(int[] counts, long amount) {
+        if (amount < 0 || amount > Integer.MAX_VALUE) return false;
+        return this.tableFor(counts, (int) amount)[COINS.length][(int) amount] != UNPAYABLE;
+    }
+    /**
+     * Checks if every amount from 1 pence up to (and including) an amount can be made from the available coins.
+     * <p>
+     * Builds one table for the largest amount and reads every smaller amount from it, instead of one table per amount.
+     * @param counts Current coin counts of the coin storage, indexed by 'CoinGBP.ordinal()'.
+     * @param amount The largest amount in pence.
+     * @return 'true' if every amount up to 'amount' can be made exactly; otherwise 'false'.
+     */
+    public boolean isEveryPayableUpTo(int[] counts, long amount) {
+        if (amount <= 0) return true;
+        if (amount > Integer.MAX_VALUE) return false;
+        int[] last = this.tableFor(counts, (int) amount)[COINS.length];
+        for (int a = 1; a <= amount; a++) { if (last[a] == UNPAYABLE) return false; }
+        return true;
+    }
+
+    /**
+     * Helper method to get a table for some coin counts covering an amount - the latest one if it fits, otherwise a newly built one (which becomes the latest).
+     * @param counts Coin counts, indexed by 'CoinGBP.ordinal()'.
+     * @param amount The largest amount (in pence) the table must cover.
+     * @return The table (not to be mutated).
+     */
+    private int[][] tableFor(int[] counts, int amount) {
+        Table latest = this.latest;
+        if (latest != null && latest.minCoins()[0].length > amount && Arrays.equals(latest.counts(), counts)) return latest.minCoins();
+        int[][] minCoins = ChangePlanner.minCoins(counts, amount);
+        this.latest = new Table(counts.clone(), minCoins);
+        //^ Copied so the caller reusing their array cannot change what the table claims to be for.
+        //^ Racing callers may overwrite each other's table; whichever wins is still tagged with the counts it was built from.
+        return minCoins;
+    }
+    /**
+     * Helper method to compute the dynamic programming table for some coin counts.
+     * @param counts Coin counts, indexed by 'CoinGBP.ordinal()'.
+     * @param amount The largest amount (in pence) the table must cover.
+     * @return 'minCoins[i][a]', the fewest coins needed to make 'a' pence using only the first 'i' coin types; 'UNPAYABLE' if impossible.
+     */
+    private static int[][] minCoins(int[] counts, int amount) {
+        int[][] minCoins = new int[COINS.length + 1][amount + 1];
+        Arrays.fill(minCoins[0], UNPAYABLE);
+        minCoins[0][0] = 0;
+        //^ With no coin types, only zero pence can be made (with zero coins).
+        for (int i = 1; i <= COINS.length; i++) {
+            int value = (int) COINS[i - 1].getValue();
+            int count = counts[i - 1];
+            if (count == 0) {
+                System.arraycopy(minCoins[i - 1], 0, minCoins[i], 0, amount + 1);
+                //^ Coin type not available - same as without it.
+                continue;
+            }
+            int[] previous = minCoins[i - 1];
+            int[] current = minCoins[i];
+            int[] window = new int[amount / value + 1];
+            for (int r = 0; r < value && r <= amount; r++) {
+                //* Amounts 'r', 'r + value', 'r + 2 * value'... - the 'j'th is made from the 'j - k'th of previous coin types plus 'k' coins of this type.
+                //* So it is the smallest 'previous[r + t * value] - t' over the last 'count + 1' values of 't', plus 'j' - kept in a sliding window minimum,
+                //* so each amount costs the same however many coins of this type there are (instead of trying every 'k').
+                int head = 0;
+                int tail = 0;
+                for (int j = 0, a = r; a <= amount; j++, a += value) {
+                    if (previous[a] != UNPAYABLE) {
+                        while (tail > head && previous[r + window[tail - 1] * value] - window[tail - 1] >= previous[a] - j) tail--;
+                        //^ Never better than 'j' again - drops out of the window no later.
+                        window[tail++] = j;
+                    }
+                    while (head < tail && window[head] < j - count) head++;
+                    //^ Would need more than 'count' coins of this type.
+                    current[a] = head == tail ? UNPAYABLE : previous[r + window[head] * value] - window[head] + j;
+                }
+            }
+        }
+        return minCoins;
+    }
+}
@@ -5,29 +5,30 @@
  * Note that comment thought the code repository, The different coins are referred to as coin "types" in some places and coin "denominations" in others; both terms refer to the same thing.
  */
 public enum CoinGBP {
-    ONE_PENNY(0.01),
-    TWO_PENCE(0.02),
+    ONE_PENNY(1),
+    TWO_PENCE(2),
     //!^ Not listed in assessment brief but lecturer said that it does not matter.
-    FIVE_PENCE(0.05),
-    TEN_PENCE(0.10),
-    TWENTY_PENCE(0.20),
-    FIFTY_PENCE(0.50),
-    ONE_POUND(1.00),
-    TWO_POUNDS(2.00);
+    FIVE_PENCE(5),
+    TEN_PENCE(10),
+    TWENTY_PENCE(20),
+    FIFTY_PENCE(50),
+    ONE_POUND(100),
+    TWO_POUNDS(200);
 
-    private final double value;
+    private final long value;
+    //^ In whole pence (see 'Money' class).
 
     /**
-     * Constructor assigns double representation of the item type for balance calculations.
+     * Constructor assigns pence representation of the coin for balance calculations.
      */
-    CoinGBP(double value) { this.value = value; }
-    //^ Assigns money value (double) to each coin (final constant).
+    CoinGBP(long value) { this.value = value; }
+    //^ Assigns money value (pence) to each coin (final constant).
 
     /**
      * Getter method for 'this.value'.
-     * @return Monetary value of the coin.
+     * @return Monetary value of the coin in pence.
      */
-    public double getValue() { return value; }
+    public long getValue() { return value; }
     //^ Used for calculating/adding to vending machine balance.
 
     /**
@@ -1,11 +1,19 @@
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
 /**
  * Handles the coin storage component of a vending machine as a leaf class.
  * Responsible depositing and withdrawing coins, as well as tracking current coin counts, capacities, and supported coin types.
  * <p>
  * Makes use of CoinGBP enum for representing different (GBP) coin denominations.
+ * Counts and capacities are held in primitive arrays indexed by 'CoinGBP.ordinal()', so depositing and withdrawing never box or allocate.
+ * Callers only ever get read-only snapshots as Maps, never the live arrays.
+ * <p>
+ * Safe to use from several threads at once (e.g. coin acceptor and remote admin).
+ * Each coin tube's count is updated with compare-and-set, so coins landing in different tubes never wait for each other.
  * <p>
  * This class follows the Single Responsibility Principle (SRP) by encapsulating all coin storage-related functionalities; allowing the vending machine class to focus on higher-level operations.
  * Both private fields are 'final' to enforce SRP.
@@ -13,14 +21,25 @@ import java.util.Map;
 public class CoinStorage { //< Composite pattern class - stored in vending machine class for satisfying SRP.
     //* We assume that any deposited coin goes straight to the coin storage instead of a buffer storage, even if
     //* order has not been completed.
+    private static final CoinGBP[] COINS = CoinGBP.values();
+    //^ Cached as 'CoinGBP.values()' creates a new array every call.
 
     //: Owner/admin cannot change coin capacity or supported coin types - hence the 'final' code.
-    private final Map<CoinGBP, Integer> coinCounts = new HashMap<>();
-    //^ Current amount of each coin type in the vending machine's coin storage.
-    //^ Assigned now so final Map can be mutated in constructor.
-    private final Map<CoinGBP, Integer> coinMaxes;
-    //^ How much of each coin can be held.
+    private final AtomicIntegerArray coinCounts = new AtomicIntegerArray(COINS.length);
+    //^ Current amount of each coin type in the vending machine's coin storage, indexed by 'CoinGBP.ordinal()'.
+    //^ Atomic array instead of 'int[]' so every tube can be updated with compare-and-set.
+    private final int[] coinMaxes = new int[COINS.length];
+    //^ How much of each coin can be held, indexed by 'CoinGBP.ordinal()'.
     //^ As coins are different sizes, each coin type will have a different capacity.
+    private final boolean[] supported = new boolean[COINS.length];
+    //^ Whether each coin type is accepted, indexed by 'CoinGBP.ordinal()'.
+    //^ Kept separately from 'this.coinMaxes' as a capacity of zero does not mean unsupported.
+    private final Map<CoinGBP, Integer> coinMaxesView;
+    //^ Read-only Map of capacities; built once as capacities never change.
+    private final ChangePlanner changePlanner = new ChangePlanner();
+    //^ Composite - plans change/refund withdrawals from the current coin counts (and keeps its latest calculation for unchanged counts).
+    private final PayableAmounts payableAmounts;
+    //^ Composite - which change amounts are payable with the current coin counts; only updated when a tube has changed below the count that can still matter for change.
 
     /**
      * Constructor initializes the physical coin storage with specified capacities (not current counts).
@@ -34,37 +53,44 @@ public class CoinStorage { //< Composite pattern class - stored in vending machi
             //* Prevents the law of physics from being broken.
             if (coinMax.getValue() < 0) { throw new IllegalArgumentException( String.format("Capacity of %s cannot be less than 0", coinMax.getKey().toString() )); }
         }
-        //: Maps are used instead of int[] because some vending machine variants may not accept certain coin types;
+        //: Some vending machine variants may not accept certain coin types, hence 'this.supported';
         //: Such example is one that does not accept pennies nor 2-pence coins due to value being too low (assuming
         //: all item prices are multiples of 5p).
-        this.coinMaxes = coinMaxes;
-        for (CoinGBP coin :  coinMaxes.keySet()) { this.coinCounts.put(coin, 0); }
-        //^ Admin/owner cannot deposit coins when vending machine is being made - only after creation can owner/admin deposit.
-        //^ Admin can deposit.
+        for (Map.Entry<CoinGBP, Integer> coinMax : coinMaxes.entrySet()) {
+            this.coinMaxes[coinMax.getKey().ordinal()] = coinMax.getValue();
+            this.supported[coinMax.getKey().ordinal()] = true;
+        }
+        this.coinMaxesView = Collections.unmodifiableMap(new EnumMap<>(coinMaxes));
+        //^ Counts are already all zero - admin/owner cannot deposit coins when vending machine is being made - only after creation can owner/admin deposit.
+        this.payableAmounts = new PayableAmounts(this.coinCounts, (int) coinMaxes.keySet().stream().mapToLong(CoinGBP::getValue).max().orElse(0));
+        //^ Change owed is always less than the coin that overpaid, so only amounts up to the largest supported coin value need tracking.
     }
 
     //: To be used by owner/admin for maintenance and customer to check order.
     //: Getter methods.
     /**
-     * Getter method for 'this.coinCounts'.
-     * @return All supported coin types and their respective current counts (not capacities).
+     * Getter method for a read-only snapshot of 'this.coinCounts'.
+     * <p>
+     * Snapshot does not change with later deposits/withdraws and cannot be used to mutate the coin storage.
+     * @return All supported coin types and their respective current counts (not capacities), in order of coin value.
      */
-    public Map<CoinGBP, Integer> getCoinCounts(){ return this.coinCounts; }
+    public Map<CoinGBP, Integer> getCoinCounts(){
+        Map<CoinGBP, Integer> snapshot = new EnumMap<>(CoinGBP.class);
+        for (CoinGBP coin : COINS) { if (this.supported[coin.ordinal()]) snapshot.put(coin, this.coinCounts.get(coin.ordinal())); }
+        return Collections.unmodifiableMap(snapshot);
+    }
     /**
-     * Getter method for 'this.coinMaxes'.
-     * @return All supported coin types and their respective physical storage capacities (not current counts).
+     * Getter method for the current count of a single coin type.
+     * @param coin The coin type to count.
+     * @return Current count of the coin type; zero if unsupported.
      */
-    public Map<CoinGBP, Integer> getCoinMaxes(){ return this.coinMaxes; }
-
+    public int getCoinCount(CoinGBP coin){ return this.coinCounts.get(coin.ordinal()); }
     /**
-     * Helper method to check if a coin type is supported by the vending machine.
-     * @param coin The coin type to check.
-     * @throws IllegalArgumentException If the coin type is unsupported.
+     * Getter method for a read-only view of 'this.coinMaxes'.
+     * @return All supported coin types and their respective physical storage capacities (not current counts), in order of coin value.
      */
-    private void checkSupportedCoins(CoinGBP coin) {
-        //* Prevents unsupported coins from being deposited.
-        if (!this.coinMaxes.containsKey(coin)) { throw new IllegalArgumentException(String.format("This vending machine does not accept/support %ss. Use another coin type", coin)); }
-    }
+    public Map<CoinGBP, Integer> getCoinMaxes(){ return this.coinMaxesView; }
+
     //: Calling multiple times, but with simpler parameters, is highly preferred over calling once with a Map argument
     //: in parameter for less complexity and thus better readability - comparing 'CoinGBP coin' parameter with '
     //: Map<CoinGBP, Integer> coins' parameter.
@@ -81,16 +107,27 @@ public class CoinStorage { //< Composite pattern class - stored in vending machi
      * @param coin The coin type to deposit.
      * @throws IllegalArgumentException If the coin type is unsupported or if depositing would exceed capacity (overflow).
      */
-    public void deposit(CoinGBP coin){
+    public void deposit(CoinGBP coin){ this.tryDeposit(coin).orThrow(VendingOperation.INSERT_COIN, coin); }
+    /**
+     * Non-throwing version of 'this.deposit(CoinGBP)' - a full tube is an ordinary outcome, so it is returned rather than thrown.
+     * @param coin The coin type to deposit.
+     * @return 'OK' if deposited; otherwise 'COIN_UNSUPPORTED' or 'TUBE_FULL'.
+     */
+    public VendingResult tryDeposit(CoinGBP coin){
         //* When customer deposit too much, all deposited will be refunded; but when owner/admin deposit too much, only
         //* the over flowing coins are refunded.
         //* This differance in behaviour is another reason for the method called per coin instead of multiple coins.
-        this.checkSupportedCoins(coin);
-        if((this.coinCounts.get(coin) + 1) > this.coinMaxes.get(coin)) { throw new IllegalArgumentException( String.format("Capacity of %s would be exceeded", coin.toString() )); }
-        //^ Extra bracket set is not necessary but makes expression more readable.
-        //^ Prevents too much coins to be deposited.
-        this.coinCounts.put(coin, this.coinCounts.get(coin) + 1);
-        //^ Method carrying out the verified operation.
+        if (!this.supported[coin.ordinal()]) return VendingResult.COIN_UNSUPPORTED;
+        //^ Prevents unsupported coins from being deposited.
+        int count;
+        do {
+            count = this.coinCounts.get(coin.ordinal());
+            if((count + 1) > this.coinMaxes[coin.ordinal()]) return VendingResult.TUBE_FULL;
+            //^ Extra bracket set is not necessary but makes expression more readable.
+            //^ Prevents too much coins to be deposited.
+        } while (!this.coinCounts.compareAndSet(coin.ordinal(), count, count + 1));
+        //^ Method carrying out the verified operation; retried if another thread changed the tube in between.
+        return VendingResult.OK;
     }
     /**
      * Withdraws a single coin from the coin storage.
@@ -105,10 +142,170 @@ public class CoinStorage { //< Composite pattern class - stored in vending machi
      * @param coin The coin type to withdraw.
      * @throws IllegalArgumentException If the coin type is unsupported or if there are not enough coins to withdraw (underflow).
      */
-    public void withdraw(CoinGBP coin){
-        this.checkSupportedCoins(coin);
-        //* Same structure as 'this.deposit'
-        if((this.coinCounts.get(coin) - 1) < 0) { throw new IllegalArgumentException( String.format("Do not have %ss to withdraw", coin.toString() )); }
-        this.coinCounts.put(coin, this.coinCounts.get(coin) - 1);
+    public void withdraw(CoinGBP coin){ this.tryWithdraw(coin).orThrow(VendingOperation.WITHDRAW_COIN, coin); }
+    /**
+     * Non-throwing version of 'this.withdraw(CoinGBP)'.
+     * @param coin The coin type to withdraw.
+     * @return 'OK' if withdrawn; otherwise 'COIN_UNSUPPORTED' or 'TUBE_EMPTY'.
+     */
+    public VendingResult tryWithdraw(CoinGBP coin){
+        if (!this.supported[coin.ordinal()]) return VendingResult.COIN_UNSUPPORTED;
+        //* Same structure as 'this.tryDeposit'
+        int count;
+        do {
+            count = this.coinCounts.get(coin.ordinal());
+            if((count - 1) < 0) return VendingResult.TUBE_EMPTY;
+        } while (!this.coinCounts.compareAndSet(coin.ordinal(), count, count - 1));
+        return VendingResult.OK;
+    }
+    /**
+     * Deposits many coins of one type into the coin storage in one go (e.g. admin/owner filling a coin tube).
+     * <p>
+     * Capacity is checked once for the whole batch; coins that would overflow the tube are not deposited (physically refunded) while the rest are.
+     * Therefore, unlike 'this.deposit', a full tube is reported by the returned count rather than by an exception.
+     * @param coin   The coin type to deposit.
+     * @param amount How many coins to deposit.
+     * @return How many coins were actually deposited - less than 'amount' if the tube became full.
+     * @throws IllegalArgumentException If the coin type is unsupported or 'amount' is negative.
+     */
+    public int deposit(CoinGBP coin, int amount){
+        int deposited = this.tryDeposit(coin, amount);
+        VendingResult.ofCount(deposited).orThrow(VendingOperation.INSERT_COINS, coin);
+        return deposited;
+    }
+    /**
+     * Non-throwing version of 'this.deposit(CoinGBP, int)'.
+     * @param coin   The coin type to deposit.
+     * @param amount How many coins to deposit.
+     * @return How many coins were actually deposited; otherwise 'COIN_UNSUPPORTED' or 'NEGATIVE_AMOUNT' as a negative count (see 'VendingResult.ofCount').
+     */
+    public int tryDeposit(CoinGBP coin, int amount){
+        if (!this.supported[coin.ordinal()]) return VendingResult.COIN_UNSUPPORTED.asCount();
+        if (amount < 0) return VendingResult.NEGATIVE_AMOUNT.asCount();
+        int count;
+        int accepted;
+        do {
+            count = this.coinCounts.get(coin.ordinal());
+            accepted = Math.min(amount, this.coinMaxes[coin.ordinal()] - count);
+            //^ Only as many as there is room left for.
+        } while (!this.coinCounts.compareAndSet(coin.ordinal(), count, count + accepted));
+        return accepted;
+    }
+    /**
+     * Withdraws many coins of one type from the coin storage in one go (e.g. admin/owner emptying a coin tube).
+     * <p>
+     * Same structure as 'this.deposit(CoinGBP, int)' - only as many coins as the tube holds are withdrawn.
+     * @param coin   The coin type to withdraw.
+     * @param amount How many coins to withdraw.
+     * @return How many coins were actually withdrawn - less than 'amount' if the tube became empty.
+     * @throws IllegalArgumentException If the coin type is unsupported or 'amount' is negative.
+     */
+    public int withdraw(CoinGBP coin, int amount){
+        int withdrawn = this.tryWithdraw(coin, amount);
+        VendingResult.ofCount(withdrawn).orThrow(VendingOperation.WITHDRAW_COINS, coin);
+        return withdrawn;
+    }
+    /**
+     * Non-throwing version of 'this.withdraw(CoinGBP, int)'.
+     * @param coin   The coin type to withdraw.
+     * @param amount How many coins to withdraw.
+     * @return How many coins were actually withdrawn; otherwise 'COIN_UNSUPPORTED' or 'NEGATIVE_AMOUNT' as a negative count (see 'VendingResult.ofCount').
+     */
+    public int tryWithdraw(CoinGBP coin, int amount){
+        if (!this.supported[coin.ordinal()]) return VendingResult.COIN_UNSUPPORTED.asCount();
+        if (amount < 0) return VendingResult.NEGATIVE_AMOUNT.asCount();
+        int count;
+        int taken;
+        do {
+            count = this.coinCounts.get(coin.ordinal());
+            taken = Math.min(amount, count);
+        } while (!this.coinCounts.compareAndSet(coin.ordinal(), count, count - taken));
+        return taken;
+    }
+
+    /**
+     * Plans which coins to withdraw to pay out an amount of change/refund, using the fewest coins possible.
+     * <p>
+     * Does not withdraw anything - plan is to be passed to 'this.withdraw(int[])' afterwards.
+     * @param amount The amount to pay out in pence.
+     * @return How many of each coin type to withdraw, indexed by 'CoinGBP.ordinal()'; otherwise 'null' if the amount cannot be paid out with the current coins.
+     */
+    public int[] planChange(long amount) {
+        return this.changePlanner.plan(this.countVector(), amount);
+    }
+    /**
+     * Helper method to take a snapshot of the coin counts for the change planner.
+     * <p>
+     * Tubes are read twice until both reads agree, so the snapshot is counts the coin storage actually held at one moment - not some from before and some from after a concurrent deposit or withdrawal.
+     * @return Count of every coin type held at one moment, indexed by 'CoinGBP.ordinal()'.
+     */
+    private int[] countVector() {
+        int[] counts = new int[COINS.length];
+        int[] again = new int[COINS.length];
+        for (int i = 0; i < COINS.length; i++) { counts[i] = this.coinCounts.get(i); }
+        while (true) {
+            for (int i = 0; i < COINS.length; i++) { again[i] = this.coinCounts.get(i); }
+            if (Arrays.equals(counts, again)) return counts;
+            int[] swap = counts;
+            counts = again;
+            again = swap;
+        }
+    }
+    /**
+     * Withdraws a batch of coins (such as a plan from 'this.planChange') from the coin storage in one go.
+     * <p>
+     * Each tube is taken from in turn; if one does not have enough coins, tubes already taken from are given their coins back, so either every coin is withdrawn or none are.
+     * @param plan How many of each coin type to withdraw, indexed by 'CoinGBP.ordinal()'.
+     * @throws IllegalArgumentException If a coin type in the batch is unsupported or there are not enough of it to withdraw (underflow).
+     */
+    public void withdraw(int[] plan){
+        for (CoinGBP coin : COINS) {
+            if (plan[coin.ordinal()] != 0 && !this.supported[coin.ordinal()]) throw VendingResult.COIN_UNSUPPORTED.toException(VendingOperation.WITHDRAW_COIN, coin);
+            //^ Names the unsupported coin, which the non-throwing version's result cannot.
+        }
+        this.tryWithdraw(plan).orThrow(VendingOperation.WITHDRAW_COIN);
+    }
+    /**
+     * Non-throwing version of 'this.withdraw(int[])'.
+     * @param plan How many of each coin type to withdraw, indexed by 'CoinGBP.ordinal()'.
+     * @return 'OK' if the whole batch was withdrawn; otherwise 'COIN_UNSUPPORTED' or 'BATCH_SHORT' (nothing withdrawn).
+     */
+    public VendingResult tryWithdraw(int[] plan){
+        for (CoinGBP coin : COINS) { if (plan[coin.ordinal()] != 0 && !this.supported[coin.ordinal()]) return VendingResult.COIN_UNSUPPORTED; }
+        for (CoinGBP coin : COINS) {
+            int amount = plan[coin.ordinal()];
+            if (amount == 0) continue;
+            int count;
+            do {
+                count = this.coinCounts.get(coin.ordinal());
+                if (count < amount) {
+                    //* Another thread took coins since the plan was made - gives back what was already taken.
+                    for (int i = 0; i < coin.ordinal(); i++) { if (plan[i] != 0) this.coinCounts.addAndGet(i, plan[i]); }
+                    return VendingResult.BATCH_SHORT;
+                }
+            } while (!this.coinCounts.compareAndSet(coin.ordinal(), count, count - amount));
+        }
+        return VendingResult.OK;
+    }
+    /**
+     * Checks whether an exact amount of change can be paid out with the current coins.
+     * <p>
+     * Single bit lookup for amounts up to the largest supported coin value (always the case for customer change), as long as no tube changed below the count that can still matter for change; larger amounts fall back to the change planner.
+     * @param amount The amount of change in pence.
+     * @return 'true' if the amount can be paid out exactly; otherwise 'false'.
+     */
+    public boolean isChangePayable(long amount) {
+        if (amount <= this.payableAmounts.getBound()) return this.payableAmounts.isPayable(amount);
+        return this.changePlanner.isPayable(this.countVector(), amount);
+    }
+    /**
+     * Checks whether every amount of change from 1 pence up to (and including) an amount can be paid out with the current coins.
+     * @param amount The largest amount of change in pence.
+     * @return 'true' if every amount up to 'amount' can be paid out exactly; otherwise 'false'.
+     */
+    public boolean isEveryChangePayableUpTo(long amount) {
+        if (amount <= this.payableAmounts.getBound()) return this.payableAmounts.isEveryPayableUpTo(amount);
+        if (!this.payableAmounts.isEveryPayableUpTo(this.payableAmounts.getBound())) return false;
+        return this.changePlanner.isEveryPayableUpTo(this.countVector(), amount);
     }
 }
\ No newline at end of file
@@ -26,20 +26,16 @@ public class CustomerDisplay implements Observer {
 
     /**
      * Helper method to format item list for either vending machine stock or basket contents.
-     * @param itemMap Map of items to their respective quantities.
+     * @param itemMap   Map of items to their respective quantities.
+     * @param amountTag What the quantities are (e.g. "Stock" or "Amount in basket").
      * @return Formatted string representation of the item list.
      */
-    private String displayItemList(Map<Item, Integer> itemMap) {
+    private String displayItemList(Map<Item, Integer> itemMap, String amountTag) {
         //* Helper method to format item list for either vending machine stock or basket contents.
         StringBuilder itemList = new StringBuilder();
-        CustomerProxy customerObservable = (CustomerProxy) this.observable;
-        String amountTag = "Stock";
-        if (customerObservable.getShowBasket()) {
-            amountTag = "Amount in basket";
-            customerObservable.showBasketDefault();
-        }
+        //^ Which list it is comes from the event kind ('VendingEvent.BasketView' or 'VendingEvent.StockView'), not from the observable.
 
-        for (Map.Entry<Item, Integer> entry : itemMap.entrySet()) itemList.append(STR."\{entry.getKey().render()} - \{amountTag}: \{entry.getValue()}\n");
+        for (Map.Entry<Item, Integer> entry : itemMap.entrySet()) itemList.append(STR."\{entry.getKey().renderText()} - \{amountTag}: \{entry.getValue()}\n");
 
         return itemList.toString();
     }
@@ -51,15 +47,16 @@ public class CustomerDisplay implements Observer {
      */
     @Override
     public void update(Observable o, Object message) {
-        //* Simpler to use 'Object' than either genetics or wildcard.
-        switch (message.getClass().getSimpleName()){
-            //* Enhanced switch statement for better readability.
+        //* 'Object' as dictated by the 'Observer' interface; observables send 'VendingEvent' objects.
+        switch (message){
+            //* Pattern-matching switch over the sealed event kinds instead of comparing class names.
             //: Few cases are needed as customer display only shows limited information (only information relevant to the customer).
-            case "IllegalArgumentException" -> this.display(o, "Something went wrong - " + ((IllegalArgumentException) message).getMessage());
-            case "IllegalStateException" -> this.display(o, "Something went wrong - " + ((IllegalStateException) message).getMessage());
-            case "HashMap" -> this.display(o, "Items:\n" + this.displayItemList((Map<Item, Integer>) message));
+            case VendingEvent.Failure failure -> this.display(o, "Something went wrong - " + failure.message());
+            case VendingEvent.BasketView basket -> this.display(o, "Items:\n" + this.displayItemList(basket.items(), "Amount in basket"));
+            case VendingEvent.StockView stock -> this.display(o, "Items:\n" + this.displayItemList(stock.items(), "Stock"));
+            case VendingEvent event -> this.display(o, "Notice - " + event.message());
             default ->  this.display(o, "Notice - " + message.toString());
-            //^ Default case for String, int, etc; being default case, it also tackles external errors (hence including 'toString').
+            //^ Default case for anything else; being default case, it also tackles external errors (hence including 'toString').
         }
     }
 
@@ -1,4 +1,6 @@
 import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 /**
  * Represents the customer role for interacting with the corresponding vending machine.
@@ -10,53 +12,199 @@ import java.util.*;
  * 'java.util.Observable' superclass is extended/inherited to provide observable functionality (e.g. managing observers, notifying observers of events) instead of creating observable fields and methods from scratch ('setChanged','notifyObservers','addObserver','Vector&lt;Observer&gt;', etc.).
  * <p>
  * Observers are extendable by simply declaring 'this.observable.addObserver(this);' in the observer's constructor where 'observable' is the 'CustomerProxy' instance being observed.
+ * Observers receive typed 'VendingEvent' objects; events that no observer or other subscriber would receive are never created nor formatted.
  * <p>
  * Actions are implemented following the 'CustomerActions' contract; hence refer to that interface for deeper method documentations.
  */
 public class CustomerProxy extends Observable implements ActionsCustomer {
+    private static final long RESERVATION_TIMEOUT_NANOS = TimeUnit.MINUTES.toNanos(5);
+    //^ How long checked out items are held for a customer paying; after that another order may take them (though they are reserved again if still there).
+
     private final VendingMachine vendingMachine;
-    private double payDue;
-    //^ Total amount the customer needs to pay for selected items in their basket.
+    private long payDue;
+    //^ Total amount the customer needs to pay for selected items in their basket - taken from the basket's running total at checkout.
     //^ Unlike basket's item, each coin physically goes in one at a time instead of being "on paper" until transaction was complete.
-    private double balance;
+    //^ In whole pence, like every other money amount (see 'Money' class).
+    private long balance;
     //^ 'payDue' is used for calculating change/leftover coins, after payment, but balance to used know how much to refund when customer cancels order for whatever reason.
-    private final Map<Item, Integer> basket;
-    //^ Keeps track of items, selected by the customer, and their quantities.
+    private final Basket basket;
+    //^ Keeps track of items, selected by the customer, and their quantities (keyed by item ID, with a running total price).
     //^ Handled in customer proxy to separate customer actions from vending machine operations.
+    private ItemStorage.Reservation reservation;
+    //^ Basket's items held back by the item storage from checkout until dispensed or the order is cancelled; 'null' outside the payment phase.
     private final CoinGBP[] acceptedCoinTypes;
-    //^ Accepted coin types by the vending machine for payment, sorted in descending order of value for quicker change dispensing for both program and customer.
+    //^ Accepted coin types by the vending machine for payment, sorted in descending order of value for announcing dispensed change to the customer.
     //^ Is 'final' as accepted coin types cannot be physically changed inside vending machine once made.
     //^ As it is constant, it stored here to avoid repeated calling to 'this.vendingMachine' every time change is dispensed.
-    //^! Despite being used for telling  the vending machine what coins to withdraw, it does not verify deposited coins as that is the vending machine's coin storage responsibility; it is so as it is the hardware that checks the coin as it is physically inserted.
+    //^! Which coins to withdraw is decided by the vending machine's change planner ('VendingMachine.planChange'), not by this field.
+    //^! It does not verify deposited coins as that is the vending machine's coin storage responsibility; it is so as it is the hardware that checks the coin as it is physically inserted.
     //^! On top of this, it also enforces SRP (not violating it).
-    private boolean showBasket;
-    //^ Helper field to inform 'CustomerDisplay' whether the current item list to display is the basket or the vending machine stock.
+    private final EventBus eventBus;
+    //^ Delivers events to the observers; asynchronous event bus lets customer actions never wait for display rendering.
+    private boolean observersSubscribed;
+    //^ Whether 'this.notifyAllObservers' is subscribed to the event bus yet - only done once the first observer is added (see 'this.addObserver').
+    private long refusals;
+    private long rejections;
+    //^ How many failures were reported so far - refused by state ('IllegalStateException') or rejected as invalid (anything else); read by metered proxies.
+    private ActionMetrics metrics;
+    //^ Where change/refund withdrawals are timed (see 'this.setMetrics'); 'null' if not measured.
+    private long progressFrameNanos;
+    //^ Shortest time between two 'VendingEvent.OrderProgress' ticks (see 'this.setProgressFrameRate'); 0 for a tick per item and per coin.
+    private long lastProgressNanos;
+    private final SalesLedger salesLedger;
+    private final int machineID;
+    //^ Where completed orders are recorded, and under which machine ID; ledger is 'null' if sales are not recorded.
 
     /**
      * Constructor for CustomerProxy which initializes the proxy with a specific vending machine.
+     * <p>
+     * Events are delivered synchronously (on the caller's thread), just like plain 'java.util.Observable'.
+     * @param vendingMachine The vending machine instance to be managed by this customer proxy.
+     */
+    public CustomerProxy(VendingMachine vendingMachine) { this(vendingMachine, new SynchronousEventBus()); }
+    /**
+     * Constructor for CustomerProxy which initializes the proxy with a specific vending machine and event bus.
+     * @param vendingMachine The vending machine instance to be managed by this customer proxy.
+     * @param eventBus       The event bus delivering events to the observers (e.g. 'AsyncEventBus' so displays render on their own thread).
+     */
+    public CustomerProxy(VendingMachine vendingMachine, EventBus eventBus) { this(vendingMachine, eventBus, null, 0); }
+    /**
+     * Constructor for CustomerProxy which also records every completed order in a sales ledger.
      * @param vendingMachine The vending machine instance to be managed by this customer proxy.
+     * @param eventBus       The event bus delivering events to the observers (e.g. 'AsyncEventBus' so displays render on their own thread).
+     * @param salesLedger    Where completed orders are recorded (one row per basket line); 'null' to not record sales.
+     * @param machineID      The vending machine's ID in the sales ledger (e.g. its ID in a 'VendingFleet').
      */
-    public CustomerProxy(VendingMachine vendingMachine) {
+    public CustomerProxy(VendingMachine vendingMachine, EventBus eventBus, SalesLedger salesLedger, int machineID) {
         this.vendingMachine = vendingMachine;
-        this.payDue = 0.0;
-        this.basket = new HashMap<>();
-        this.showBasket = true;
+        this.eventBus = eventBus;
+        this.salesLedger = salesLedger;
+        this.machineID = machineID;
+        this.payDue = 0;
+        this.basket = new Basket();
+        CustomerSession session = this.vendingMachine.takeRecoveredSession();
+        //^ Only a journaled vending machine recovering from a power cut mid-order has one.
 
         //: Takes up more code lines but purposely made more readable for future maintainability.
         this.acceptedCoinTypes = this.vendingMachine.getCoinMaxes().keySet()
             //^ Get all supported coin types.
-            .stream().sorted(Comparator.comparingDouble(CoinGBP::getValue).reversed()).toArray(CoinGBP[]::new);
-            //^ Stream statement sort in descending order ('.reversed()') of value ('getValue') by comparing double values ('Comparator.comparingDouble').
+            .stream().sorted(Comparator.comparingLong(CoinGBP::getValue).reversed()).toArray(CoinGBP[]::new);
+            //^ Stream statement sort in descending order ('.reversed()') of value ('getValue') by comparing pence values ('Comparator.comparingLong').
+        if (session != null) this.resume(session);
+        //^ Last, as finishing an interrupted purchase/refund needs 'this.acceptedCoinTypes'.
+    }
+
+    /**
+     * Helper method to carry on a customer session interrupted by a power cut (rebuilt from the vending machine's journal).
+     * <p>
+     * Orders that were being made or paid for are simply restored, so the customer can carry on.
+     * A purchase or refund that was being carried out (DISPENSING/REFUNDING) is finished: remaining items are dispensed and owed money is paid out.
+     * @param session The recovered customer session.
+     */
+    private void resume(CustomerSession session) {
+        for (Map.Entry<Item, Integer> line : session.basket().entrySet()) this.basket.add(line.getKey(), line.getValue());
+        this.payDue = session.payDue();
+        this.balance = session.balance();
+        VendingMachineState state = this.vendingMachine.getState();
+        if (state != VendingMachineState.DISPENSING && state != VendingMachineState.REFUNDING) return;
+
+        if (this.payDue > 0) {
+            //* Not fully paid, so the order was being cancelled - refund everything.
+            this.processCoinWithdrawal(this.balance);
+        }
+        else {
+            //* Fully paid, so the purchase was being completed.
+            this.completeOrder();
+            this.recordSale();
+        }
+        this.fullReset();
     }
 
     /**
-     * Observable-specific helper method to notify all observers of an event.
-     * @param obj The event object to be sent to observers such as 'CustomerDisplay'.
+     * Observable-specific helper method to notify all observers of an event via 'this.eventBus'.
+     * @param event The event to be sent to observers such as 'CustomerDisplay'.
+     */
+    private void event(VendingEvent event){
+        this.eventBus.publish(event);
+        //^ Delivered to the observers by the event bus - immediately or on the event bus's own thread (see 'this.notifyAllObservers').
+    }
+    /**
+     * Helper method to notify observers of a free text notice, only formatting the text if anything would receive it.
+     * @param text Supplies the notice text; must only capture values that do not change afterwards (as the event bus may format it later).
+     */
+    private void notice(Supplier<String> text){
+        if (this.eventBus.hasSubscribers(VendingEvent.Notice.class)){ this.event(new VendingEvent.Notice(text)); }
+    }
+    /**
+     * Helper method to notify observers of a failed or disallowed customer action.
+     * @param error The cause of the failure.
+     */
+    private void failure(RuntimeException error){
+        if (error instanceof IllegalStateException){ this.refusals++; } else { this.rejections++; }
+        this.event(new VendingEvent.Failure(error));
+    }
+    /**
+     * Helper method to notify observers of a customer action the vending machine rejected with a result code, only making the exception (and its message) if anything would receive it.
+     * @param operation The rejected operation.
+     * @param result    Why it was rejected.
+     * @param coin      The coin type operated on; 'null' for item operations.
+     */
+    private void failure(VendingOperation operation, VendingResult result, CoinGBP coin){
+        if (this.eventBus.hasSubscribers(VendingEvent.Failure.class)){ this.failure(result.toException(operation, coin)); }
+        else if (result == VendingResult.REFUSED){ this.refusals++; }
+        else { this.rejections++; }
+    }
+    /**
+     * Getter method for how many failures reported so far were refusals (not permitted in the vending machine's current state).
+     * <p>
+     * Counted whether or not anything receives the failures; lets a metered proxy tell how an action ended.
+     * @return Number of refusals.
+     */
+    public long getRefusals(){ return this.refusals; }
+    /**
+     * Getter method for how many failures reported so far were rejections (invalid operations, e.g. a full slot).
+     * @return Number of rejections.
+     */
+    public long getRejections(){ return this.rejections; }
+    /**
+     * Times every change/refund withdrawal into metrics - set by 'MeteredCustomerProxy', which times the customer actions themselves.
+     * @param metrics Where withdrawals are recorded; 'null' to stop measuring.
+     */
+    public void setMetrics(ActionMetrics metrics){ this.metrics = metrics; }
+    /**
+     * Throttles the optional 'VendingEvent.OrderProgress' ticks to a frame rate - e.g. that of the live display showing them, so it is not sent ticks it would only coalesce.
+     * <p>
+     * Without it, a tick is sent for every item dispensed and every coin returned. The last tick of an order is always sent.
+     * @param maxFramesPerSecond Most ticks sent per second.
+     * @throws IllegalArgumentException if 'maxFramesPerSecond' is not positive.
+     */
+    public void setProgressFrameRate(int maxFramesPerSecond){
+        if (maxFramesPerSecond <= 0){ throw new IllegalArgumentException("Maximum frame rate must be positive."); }
+        this.progressFrameNanos = TimeUnit.SECONDS.toNanos(1) / maxFramesPerSecond;
+    }
+    /**
+     * Adds an observer, subscribing 'this.notifyAllObservers' to the event bus when the first observer is added.
+     * <p>
+     * Until then, nothing is subscribed, so no events are created at all.
+     * @param observer The observer to add (e.g. 'CustomerDisplay').
+     */
+    @Override
+    public synchronized void addObserver(Observer observer){
+        super.addObserver(observer);
+        if (this.observersSubscribed){ return; }
+        this.eventBus.subscribe(this::notifyAllObservers);
+        this.observersSubscribed = true;
+    }
+    /**
+     * Synchronous adapter between the event bus and the 'Observable' superclass - subscribed to the event bus once the first observer is added.
+     * <p>
+     * Lets existing observers (using 'addObserver') keep working unchanged, whichever event bus is used.
+     * @param event The event delivered by the event bus.
      */
-    private void event(Object obj){
+    private void notifyAllObservers(VendingEvent event){
         this.setChanged();
         //^ from the 'Observable' superclass - marks this Observable object as having been changed.
-        this.notifyObservers(obj);
+        this.notifyObservers(event);
         //^ from the 'Observable' superclass - if this object has changed, which it has in this scope as indicated by
         //^ the 'setChanged' method, then notify all of its observers.
     }
@@ -68,91 +216,199 @@ public class CustomerProxy extends Observable implements ActionsCustomer {
     private boolean inMaintenance(){
         boolean inMaintenance = this.vendingMachine.getState() == VendingMachineState.MAINTENANCE;
         if (inMaintenance){
-            this.event(new IllegalStateException("This vending machine is currently under maintenance - customer actions are disabled. Please come back when maintainer has finished."));
+            this.failure(new IllegalStateException("This vending machine is currently under maintenance - customer actions are disabled. Please come back when maintainer has finished."));
             return true;
         }
         return false;
     }
 
     /**
-     * Utility helper method to process coin withdrawal for change/refund.
-     * @param dueAmount The total amount to be withdrawn/refunded.
+     * Utility helper method to process coin withdrawal for a refund.
+     * <p>
+     * Coins to withdraw are planned first ('VendingMachine.planChange') using the fewest coins possible; only then is the whole plan withdrawn in one batch.
+     * Therefore, coin storage is never touched when the amount cannot be paid out.
+     * @param dueAmount The total amount to be refunded in pence.
      * @throws IllegalArgumentException If the vending machine cannot dispense the exact amount requested due to insufficient coin types/quantities.
      */
-    private void processCoinWithdrawal(double dueAmount){
-        //* No update message every time a coin is refunded or withdrawn change dispensing to avoid spamming customer display.
+    private void processCoinWithdrawal(long dueAmount){
+        //* No update message every time a coin is refunded to avoid spamming customer display (per-coin events are opt-in).
         //* This is unlike owner/admin coin deposit/withdraw where each operation of an action is notified.
+        int[] plan = this.planChange(dueAmount);
+        this.event(new VendingEvent.ChangeStarted(dueAmount));
+        this.withdrawChange(plan);
+        this.announceUnits(false, plan);
+        this.event(new VendingEvent.ChangeCompleted(dueAmount));
+    }
+    /**
+     * Helper method to plan the coins for a change/refund amount.
+     * @param dueAmount The amount to be paid out in pence.
+     * @return How many of each coin type to withdraw, indexed by 'CoinGBP.ordinal()'.
+     * @throws IllegalArgumentException If the vending machine cannot dispense the exact amount requested due to insufficient coin types/quantities.
+     */
+    private int[] planChange(long dueAmount){
+        int[] plan = this.vendingMachine.planChange(dueAmount);
+        if (plan == null){ throw new IllegalArgumentException(STR."Oops, unexpected problem has been uncounted. Remaining change - \{Money.format(dueAmount)}GBP. Please call the nearest maintainance technician and show him/her this message."); }
+        //^ When refunding (not giving payment change), this should never be executed (as customer's own deposited coins are always in the coin storage) but external errors may cause unexpected behaviour.
+        return plan;
+    }
+    /**
+     * Helper method to withdraw a planned change/refund in one batch.
+     * @param plan How many of each coin type to withdraw, indexed by 'CoinGBP.ordinal()'.
+     */
+    private void withdrawChange(int[] plan){
+        ActionMetrics metrics = this.metrics;
+        long start = metrics == null ? 0 : System.nanoTime();
         this.vendingMachine.changeState(VendingMachineState.REFUNDING);
         //^ Change state to REFUNDING to allow coin withdrawal/refunding.
         //^ It is very appropriate to change state here as this method is private - cannot be called by customer directly and thus not called carelessly/abusively (very secure).
-        String displayRefundedAmount = String.format("%.2f", dueAmount);
-        //^ Allows correct refunded amount to be displayed after withdrawal process (as 'dueAmount' is mutated in the process).
-        this.event(STR."Processing money withdrawal of £\{displayRefundedAmount} for dear customer...");
-        boolean allCoinTypesExhausted;
-        while (dueAmount > 0.0){
-            allCoinTypesExhausted = true;
-            for (CoinGBP coin : acceptedCoinTypes){
-                //^ Assumes 'acceptedCoinTypes' is sorted in descending order of value.
-                if (coin.getValue() <= dueAmount){
-                    try {
-                        this.vendingMachine.withdrawCoin(coin);
-                        this.event(STR."Dispensed \{coin.toString()} as change/refund.");
-                    }
-                    catch (IllegalArgumentException e){
-                        //* IllegalStateException will never be thrown here as coin types are from acceptedCoinTypes.
-                        continue;
-                    }
-                    dueAmount -= coin.getValue();
-                    dueAmount = Math.round(dueAmount * 100.0) / 100.0;
-                    //^ Important logic error avoidance - avoids floating point precision issues.
-                    allCoinTypesExhausted = false;
-                    break;
-                }
-            }
-            if (allCoinTypesExhausted){ throw new IllegalArgumentException(STR."Oops, unexpected problem has been uncounted. Remaining change - \{dueAmount}GBP. Please call the nearest maintainance technician and show him/her this message."); }
-            //^ When refunding (not giving payment change), this should never be executed (as order will be canceled before when change is needed but lacking) but external errors may cause unexpected behaviour.
-            else { this.event(STR."£\{displayRefundedAmount} withdrawn sucessfully."); }
+        try { this.vendingMachine.withdrawCoins(plan); }
+        catch (RuntimeException e){
+            if (metrics != null){ metrics.record(ActionMetrics.Action.CHANGE_WITHDRAWAL, ActionMetrics.Outcome.THREW, System.nanoTime() - start); }
+            throw e;
         }
+        if (metrics != null){ metrics.record(ActionMetrics.Action.CHANGE_WITHDRAWAL, ActionMetrics.Outcome.OK, System.nanoTime() - start); }
     }
 
     /**
-     * Helper method to calculate the total amount due for the items in the basket.
-     * Updates the 'payDue' field with the calculated total.
+     * Helper method to complete a fully paid order as one batch - every item dispensed, then all change returned, then one summary event.
+     * <p>
+     * Change is planned before anything is dispensed, so an order that cannot be given change fails before the customer gets any items.
+     * The customer is told the outcome by one 'VendingEvent.OrderCompleted' instead of an event (and display render) per item and per coin;
+     * per-unit events ('VendingEvent.ItemDispensed', 'VendingEvent.ChangeDispensed' and 'VendingEvent.OrderProgress') are opt-in.
+     * @return 'true' if the order was completed; 'false' if the reservation expired and another order took the items meanwhile (nothing dispensed).
+     * @throws IllegalArgumentException If the vending machine cannot give the change.
+     */
+    private boolean completeOrder(){
+        int[] plan = this.payDue < 0 ? this.planChange(-this.payDue) : null;
+        //^ Negated as overpayment makes 'this.payDue' negative; only the change is owed, not the whole balance.
+        this.vendingMachine.changeState(VendingMachineState.DISPENSING);
+        //^ Change state to DISPENSING to allow dispensing items.
+        if (!this.dispenseReservation()){ return false; }
+        if (plan != null){ this.withdrawChange(plan); }
+        this.announceUnits(true, plan);
+        if (this.eventBus.hasSubscribers(VendingEvent.OrderCompleted.class)){
+            Map<CoinGBP, Integer> change = new EnumMap<>(CoinGBP.class);
+            if (plan != null){
+                for (CoinGBP coin : this.acceptedCoinTypes){ if (plan[coin.ordinal()] > 0){ change.put(coin, plan[coin.ordinal()]); } }
+            }
+            this.event(new VendingEvent.OrderCompleted(this.basket.toMap(), Collections.unmodifiableMap(change), Math.max(0, -this.payDue)));
+        }
+        return true;
+    }
+    /**
+     * Helper method to send the opt-in per-unit events of a completed batch, skipped entirely when nothing subscribed to them.
+     * <p>
+     * 'VendingEvent.OrderProgress' ticks are throttled to 'this.progressFrameNanos' apart, except the last.
+     * @param items Whether the basket's items were dispensed ('false' for a refund).
+     * @param plan  How many of each coin type were returned, indexed by 'CoinGBP.ordinal()'; 'null' if none.
      */
-    private void fillPayDue(){
-        for (Map.Entry<Item, Integer> entry : this.basket.entrySet()){
-            this.payDue += entry.getKey().getPrice() * entry.getValue();
+    private void announceUnits(boolean items, int[] plan){
+        boolean perItem = items && this.eventBus.hasSubscribers(VendingEvent.ItemDispensed.class);
+        boolean perCoin = plan != null && this.eventBus.hasSubscribers(VendingEvent.ChangeDispensed.class);
+        boolean progress = this.eventBus.hasSubscribers(VendingEvent.OrderProgress.class);
+        if (!perItem && !perCoin && !progress){ return; }
+
+        int itemCount = 0;
+        int coinCount = 0;
+        if (items){ for (int line = 0; line < this.basket.getLines(); line++){ itemCount += this.basket.getQuantityAt(line); } }
+        if (plan != null){ for (int count : plan){ coinCount += count; } }
+        int itemsDispensed = 0;
+        int coinsReturned = 0;
+        for (int line = 0; items && line < this.basket.getLines(); line++){
+            for (int i = 0; i < this.basket.getQuantityAt(line); i++){
+                if (perItem){ this.event(new VendingEvent.ItemDispensed(this.basket.getItemAt(line))); }
+                if (progress){ this.progress(++itemsDispensed, itemCount, coinsReturned, coinCount); }
+            }
+        }
+        for (int c = 0; plan != null && c < this.acceptedCoinTypes.length; c++){
+            //* Assumes 'acceptedCoinTypes' is sorted in descending order of value - customer is told about the largest coins first.
+            CoinGBP coin = this.acceptedCoinTypes[c];
+            for (int i = 0; i < plan[coin.ordinal()]; i++){
+                if (perCoin){ this.event(new VendingEvent.ChangeDispensed(coin)); }
+                if (progress){ this.progress(itemsDispensed, itemCount, ++coinsReturned, coinCount); }
+            }
         }
     }
-
     /**
-     * Utility helper method to reset the customer proxy state for a new order.
-     * Clears the basket, resets payment due and balance, and reverts the vending machine state to IDLE.
+     * Helper method to send one progress tick, unless the last one was sent less than 'this.progressFrameNanos' ago (the final tick is always sent).
+     * @param itemsDispensed How many items have been dispensed so far.
+     * @param items          How many items the order dispenses.
+     * @param coinsReturned  How many coins have been returned so far.
+     * @param coins          How many coins the order returns.
      */
-    private void fullReset(){
-        //* When same customer wants to start a new order after completing/cancelling for starting another order.
-        this.payDue = 0.0;
-        this.balance = 0.0;
-        this.basket.clear();
-        this.vendingMachine.changeState(VendingMachineState.IDLE);
+    private void progress(int itemsDispensed, int items, int coinsReturned, int coins){
+        if (this.progressFrameNanos > 0){
+            long now = System.nanoTime();
+            boolean last = itemsDispensed == items && coinsReturned == coins;
+            if (!last && now - this.lastProgressNanos < this.progressFrameNanos){ return; }
+            this.lastProgressNanos = now;
+        }
+        this.event(new VendingEvent.OrderProgress(itemsDispensed, items, coinsReturned, coins));
     }
 
+    /**
+     * Helper method to dispense the reserved basket in one go - vending machine must be in DISPENSING state.
+     * <p>
+     * A session resumed after a power cut has no reservation (reservations are not journaled), so its basket is dispensed item by item instead.
+     * @return 'true' if every item was dispensed; 'false' if the reservation expired and another order took the items meanwhile (nothing dispensed).
+     */
+    private boolean dispenseReservation(){
+        if (this.reservation == null){
+            this.dispenseBasket();
+            return true;
+        }
+        return this.vendingMachine.tryDispenseReserved(this.reservation).isOk();
+    }
+    /**
+     * Helper method to give the reserved items back to the vending machine (if any are still held) and forget the reservation.
+     */
+    private void releaseReservation(){
+        if (this.reservation == null){ return; }
+        this.vendingMachine.releaseItems(this.reservation);
+        //^ Does nothing if already dispensed or expired.
+        this.reservation = null;
+    }
+    /**
+     * Helper method to dispense every item in the basket - vending machine must be in DISPENSING state.
+     */
+    private void dispenseBasket(){
+        for (int line = 0; line < this.basket.getLines(); line++){
+            int itemID = this.basket.getItemAt(line).getID();
+            for (int i = 0; i < this.basket.getQuantityAt(line); i++){ this.vendingMachine.dispenseItem(itemID); }
+        }
+    }
 
-
-    //: Not actions but are called by listeners to modify display behaviour.
     /**
-     * Getter method for 'showBasket' field.
-     * @return true if the current item list to display is the basket; false if it is the vending machine stock.
+     * Helper method to record the completed order in the sales ledger (if any) - one row per basket line, before the basket is cleared.
+     * <p>
+     * The order's coins in and change out go on its first line only, so they are counted once.
+     * A ledger failure does not undo nor fail the purchase (items and change are already out); it is only reported, to the ledger's failure handler.
      */
-    public boolean getShowBasket() {
-        return showBasket;
+    private void recordSale(){
+        if (this.salesLedger == null){ return; }
+        long timestamp = System.currentTimeMillis();
+        long coinsIn = this.balance;
+        long changeOut = Math.max(0, -this.payDue);
+        for (int line = 0; line < this.basket.getLines(); line++){
+            Item item = this.basket.getItemAt(line);
+            if (!this.salesLedger.tryAppend(timestamp, this.machineID, item.getID(), this.basket.getQuantityAt(line), item.getPrice(), coinsIn, changeOut)){ return; }
+            //^ e.g. disk full or ledger closed - the customer has been served either way.
+            coinsIn = 0;
+            changeOut = 0;
+        }
     }
+
     /**
-     * Resets the 'showBasket' field to false after the basket has been displayed.
-     * Much simpler alternative than reading then mutating to boolean argument.
+     * Utility helper method to reset the customer proxy state for a new order.
+     * Clears the basket, resets payment due and balance, and reverts the vending machine state to IDLE.
      */
-    public void showBasketDefault() {
-        this.showBasket = false;
+    private void fullReset(){
+        //* When same customer wants to start a new order after completing/cancelling for starting another order.
+        this.payDue = 0;
+        this.balance = 0;
+        this.basket.clear();
+        this.releaseReservation();
+        this.vendingMachine.changeState(VendingMachineState.IDLE);
     }
 
     /**
@@ -168,12 +424,12 @@ public class CustomerProxy extends Observable implements ActionsCustomer {
     public void startOrder() {
         if (this.inMaintenance()){ return; }
 
-        if (this.vendingMachine.getState() == VendingMachineState.IDLE){
-            this.vendingMachine.changeState(VendingMachineState.ORDERING);
-            this.event("Order started. Please select items to add to your basket.");
+        if (this.vendingMachine.changeState(VendingMachineState.IDLE, VendingMachineState.ORDERING)){
+            //^ Compare-and-set so only one front-end can start an order on an idle vending machine.
+            this.notice(() -> "Order started. Please select items to add to your basket.");
             return;
         }
-        this.event(new IllegalStateException("Cannot start a new order while another order is in progress. Please complete or cancel the ongoing order first."));
+        this.failure(new IllegalStateException("Cannot start a new order while another order is in progress. Please complete or cancel the ongoing order first."));
     }
 
     /**
@@ -189,49 +445,33 @@ public class CustomerProxy extends Observable implements ActionsCustomer {
         if (this.inMaintenance()){ return; }
 
         if (this.vendingMachine.getState() != VendingMachineState.ORDERING){
-            this.event(new IllegalStateException("Cannot select items unless an order is in progress. Please start a new order first."));
+            this.failure(new IllegalStateException("Cannot select items unless an order is in progress. Please start a new order first."));
             return;
         }
 
-        int itemAvailableCount = 0;
-        Item selectedItem = null;
-        //^ Assigned to null to check if vending machine offer item but not enough stock or item is just not offered.
-        Item basketItem = null;
-        boolean itemFound = false;
-
-        for (ItemSlot slot : this.vendingMachine.getItemStorage()) {
-            if (slot == null){ continue; }
-            //^ Skip unassigned slots.
-            if (slot.checkID(itemID)){
-                itemFound = true;
-                itemAvailableCount += slot.getStock();
-                //^ Does no break here as multiple slots may contain the same item.
-                selectedItem = slot.getItem();
-                //^ Avoids another for-loop when basket does not have item - reduces worst case time complexity from O(n^2) to O(n).
-            }
-        }
-        if (!itemFound){
-            this.event(STR."There is currently no item assaigned to ID \{itemID}. Please use a different ID instead.");
+        Item selectedItem = this.vendingMachine.getItem(itemID);
+        //^ Null if vending machine does not offer the item at all (as opposed to offering it but having no stock).
+
+        if (selectedItem == null){
+            this.notice(() -> STR."There is currently no item assaigned to ID \{itemID}. Please use a different ID instead.");
             return;
         }
+        int itemAvailableCount = this.vendingMachine.getItemStock(itemID);
+        //^ Sum of stock across multiple slots containing the same item; maintained by item storage instead of summed here.
 
-        for (Item item : this.basket.keySet()){
-            if (item.checkID(itemID)){
-                basketItem = item;
-                break;
-            }
-        }
-        if (basketItem == null){
-            this.basket.put(selectedItem, 0);
-            basketItem = selectedItem;
-        }
+        Item foundItem = this.basket.getItem(itemID);
+        Item basketItem = foundItem != null ? foundItem : selectedItem;
+        //^ Not reassigned so notices can capture it.
 
-        if (this.basket.getOrDefault(basketItem, 0) + 1 > itemAvailableCount) {
-            this.event(STR."There is currently not enough \{basketItem.getName()} stock in the vending machine. Please select another item instead.");
+        if (this.basket.getQuantity(itemID) + 1 > itemAvailableCount) {
+            this.notice(() -> STR."There is currently not enough \{basketItem.getName()} stock in the vending machine. Please select another item instead.");
             //^ If basket already has all available items of that ID, or item is just out of stock, cannot select more.
         }
-        this.basket.put(basketItem, (this.basket.getOrDefault(basketItem, 0) + 1));
-        this.event(STR."One \{basketItem.getName()} has been added to your basket. Item details: \{basketItem.render()}");
+        int quantity = this.basket.add(basketItem);
+        //^ Also adds the item's price to the basket's running total.
+        this.vendingMachine.journalBasket(itemID, quantity);
+        //^ So the order survives a power cut (if the vending machine is journaled).
+        this.notice(() -> STR."One \{basketItem.getName()} has been added to your basket. Item details: \{basketItem.renderText()}");
     }
 
     /**
@@ -248,26 +488,20 @@ public class CustomerProxy extends Observable implements ActionsCustomer {
 
         //* Assumes the vending machine's interface is advanced enough to allow deselecting items instead of cancelling and redoing the entire order.
 
-        Item basketItem = null;
-        for (Item item : this.basket.keySet()){
-            if (item.checkID(itemID)){
-                basketItem = item;
-                break;
-            }
-        }
+        Item basketItem = this.basket.getItem(itemID);
 
         if (basketItem == null) {
-            this.event(STR."There is no item with ID \{itemID} currently in the basket. Please select another item ID instead.");
+            this.notice(() -> STR."There is no item with ID \{itemID} currently in the basket. Please select another item ID instead.");
             return;
         }
-        if (this.basket.get(basketItem) == 1){
-            //* Remove item from basket if only one left to prevent wasted space.
-            this.event(STR."All \{basketItem.getName()} has been removed from your basket.");
-            this.basket.remove(basketItem);
+        int quantity = this.basket.remove(itemID);
+        //^ Whole line removed when the last one goes, to prevent wasted space.
+        this.vendingMachine.journalBasket(itemID, quantity);
+        if (quantity == 0){
+            this.notice(() -> STR."All \{basketItem.getName()} has been removed from your basket.");
             return;
         }
-        this.basket.put(basketItem, this.basket.get(basketItem) - 1);
-        this.event(STR."One \{basketItem.getName()} has been removed from your basket.");
+        this.notice(() -> STR."One \{basketItem.getName()} has been removed from your basket.");
     }
 
     /**
@@ -278,20 +512,29 @@ public class CustomerProxy extends Observable implements ActionsCustomer {
      * See corresponding superclass's method documentation for more information.
      * <p>
      * Changes vending machine state to PAYING upon successful checkout.
+     * <p>
+     * Every basket item is reserved first, so none can run out while the customer pays; checkout is refused if the vending machine no longer has them all.
      */
     @Override
     public void checkout() {
         if (this.inMaintenance()){ return; }
 
         if (this.basket.isEmpty()){
-            //^ 'this.payDue == 0.0' also works.
+            //^ 'this.payDue == 0' also works.
             //^ If basket is not empty, this means that vending machine is in ORDERING state.
-            this.event(STR."Cannot checkout with an empty basket dear customer. Please select items first.");
+            this.notice(() -> STR."Cannot checkout with an empty basket dear customer. Please select items first.");
+            return;
+        }
+        this.reservation = this.vendingMachine.reserveItems(this.basket.copyItemIDs(), this.basket.copyQuantities(), RESERVATION_TIMEOUT_NANOS);
+        if (this.reservation == null){
+            //* E.g. more selected than was in stock - customer stays in the selecting-items phase to change the basket.
+            this.failure(new IllegalStateException("Sorry, the vending machine does not have enough stock for every item in your basket. Please deselect some items and checkout again."));
             return;
         }
-        this.fillPayDue();
+        this.payDue = this.basket.getTotal();
+        //^ Running total kept by the basket - set, not added, so checking out again never counts the basket twice.
         this.vendingMachine.changeState(VendingMachineState.PAYING);
-        this.event(STR."Items in basket total to £\{String.format("%.2f", this.payDue)}. Please deposit coins to proceed with payment.");
+        this.event(new VendingEvent.CheckoutTotal(this.payDue));
     }
 
     /**
@@ -308,31 +551,36 @@ public class CustomerProxy extends Observable implements ActionsCustomer {
         if (this.inMaintenance()){ return; }
 
         switch (this.vendingMachine.getState()){
-            case IDLE -> this.event(STR."No ongoing order to cancel dear customer.");
+            case IDLE -> this.notice(() -> STR."No ongoing order to cancel dear customer.");
 
             case ORDERING -> {
                 this.fullReset();
                 //^ Customer has not deposited any coins yet, so no need to refund anything beforehand.
-                this.event(STR."Order cancelled, basket cleared. sorry to see you go!");
+                this.notice(() -> STR."Order cancelled, basket cleared. sorry to see you go!");
             }
 
             case PAYING -> {
-                this.event(STR."Order cancelled during payment. Sorry to see you go. Refunding processing...");
+                this.releaseReservation();
+                //^ Items go back on sale straight away, even if refunding goes wrong.
+                this.notice(() -> STR."Order cancelled during payment. Sorry to see you go. Refunding processing...");
                 //^ If vending machine is slow, see this message; otherwise the customer do not need time to read the redundant message.
                 try { if (balance > 0) { this.processCoinWithdrawal(this.balance); } }
 
                 catch (IllegalArgumentException e){
                     //* For whatever external/physical reason the vending machine cannot refund the customer.
+                    //* Only reached when the change planner finds no combination of stored coins for the balance - not when one coin type merely runs out.
 
                     //: Change state to IDLE first before MAINTENANCE to allow admin/owner to fix issue.
                     this.vendingMachine.changeState(VendingMachineState.IDLE);
                     this.vendingMachine.changeState(VendingMachineState.MAINTENANCE);
                     //^ Change to MAINTENANCE mode to prevent further customer actions until issue is resolved.
 
-                    this.event(e);
+                    this.failure(e);
                     return;
                 }
-                this.event(STR."Order cancelled during payment. Balance (£\{String.format("%.2f", this.balance)}) refunded. Sorry to see you go!");
+                long refunded = this.balance;
+                //^ Captured as notice may be formatted after 'this.fullReset' (on the event bus's own thread).
+                this.notice(() -> STR."Order cancelled during payment. Balance (£\{Money.format(refunded)}) refunded. Sorry to see you go!");
                 this.fullReset();
                 //^ Reset done after displaying message to show the correct balance refunded.
             }
@@ -346,7 +594,7 @@ public class CustomerProxy extends Observable implements ActionsCustomer {
      * <p>
      * See corresponding superclass's method documentation for more information.
      * <p>
-     * Catches exceptions from invalid coin deposit and notifies customer accordingly.
+     * A rejected coin deposit is returned as a result code ('VendingMachine.tryInsertCoin') and notified to the customer accordingly.
      * <p>
      * @param coin The coin to be deposited for payment.
      */
@@ -355,40 +603,39 @@ public class CustomerProxy extends Observable implements ActionsCustomer {
         if (this.inMaintenance()){ return; }
 
         if (this.vendingMachine.getState() != VendingMachineState.PAYING){
-            this.event(new IllegalStateException("Cannot deposit coins unless in the payment phase of the order. Please checkout an order first."));
+            this.failure(new IllegalStateException("Cannot deposit coins unless in the payment phase of the order. Please checkout an order first."));
             return;
         }
 
-        try {
-            this.vendingMachine.insertCoin(coin);
+        long change = coin.getValue() - this.payDue;
+        if (change > 0 && !this.vendingMachine.canPayChange(change)){
+            //* Rejects the coin before it goes in, instead of finding out change cannot be given after items are dispensed.
+            this.failure(new IllegalArgumentException(STR."Sorry, this vending machine cannot give £\{Money.format(change)} change for a \{coin.toString()}. Please insert a smaller coin instead."));
+            return;
         }
-        catch (IllegalArgumentException | IllegalStateException e){
-            this.event(e);
+        VendingResult result = this.vendingMachine.tryInsertCoin(coin);
+        if (!result.isOk()){
+            //* E.g. coin tube full - the coin is refunded.
+            this.failure(VendingOperation.INSERT_COIN, result, coin);
             return;
         }
         this.payDue -= coin.getValue();
         this.balance += coin.getValue();
-        this.event(STR."Deposited \{coin.toString()}. Remaining price to pay: £\{String.format("%.2f", this.payDue)}");
+        this.event(new VendingEvent.PaymentProgress(coin, this.payDue));
         //^ If 'this.payDue' is negative, it means customer overpaid and is owed change.
         //^ If 'this.payDue' is zero, it means customer paid exact amount.
         //^ If 'this.payDue' is not positive, it means customer does not need to pay more; this means weather the customer sees this message or not does not matter.
         //^ Deliberate made to show negative 'this.payDue' to inform customer of overpayment - shows money to refund.
         if (this.payDue <= 0) {
-            this.event("Dispensing all selected items for dear customer...");
-            this.vendingMachine.changeState(VendingMachineState.DISPENSING);
-            //^ Change state to DISPENSING to allow dispensing items.
-            for (Item item : this.basket.keySet()){
-                int quantity = this.basket.get(item);
-                for (int i = 0; i < quantity; i++){
-                    this.vendingMachine.dispenseItem(item.getID());
-                    this.event(STR."Dispensed one \{item.getName()}.");
-                }
-            }
-            this.event("All selected items dispensed successfully. Thank you for your purchase!");
-            if (this.payDue != 0 ) {
+            this.notice(() -> "Dispensing all selected items for dear customer...");
+            if (!this.completeOrder()){
+                //* Customer took longer than the reservation timeout and another order bought the items - nothing was dispensed, so everything paid is refunded.
+                this.failure(new IllegalStateException("Sorry, your selected items sold out while you were paying. Your payment is being refunded."));
                 this.processCoinWithdrawal(this.balance);
-                //^ Since 'this.balance' exists, might as well use it instead of 'this.payDue*-1' (negated).
+                this.fullReset();
+                return;
             }
+            this.recordSale();
             this.fullReset();
         }
     }
@@ -409,12 +656,12 @@ public class CustomerProxy extends Observable implements ActionsCustomer {
 
         if (this.basket.isEmpty()){
             //* Satisfaction condition includes not being in ORDERING or PAYING state as basket is only filled in those states.
-            this.event(STR."Your basket is currently empty. Please select items to add to your basket.");
+            this.notice(() -> STR."Your basket is currently empty. Please select items to add to your basket.");
             return;
         }
 
-        this.showBasket = true;
-        this.event(this.basket);
+        this.event(new VendingEvent.BasketView(this.basket.toMap()));
+        //^ Copied as the basket keeps changing while the event bus may still be delivering the event.
     }
 
     /**
@@ -431,21 +678,13 @@ public class CustomerProxy extends Observable implements ActionsCustomer {
         if (this.vendingMachine.getState() != VendingMachineState.ORDERING){
             //* Does not cause unexpected behaviour if there is no state check; However, there is absolutely no reason
             //* for customer to view item stock unless they are choosing items to select for order.
-            this.event(new IllegalStateException("Sorry dear customer, but you cannot view item stock unless in the selecting-items phase."));
+            this.failure(new IllegalStateException("Sorry dear customer, but you cannot view item stock unless in the selecting-items phase."));
             return;
         }
+        if (!this.eventBus.hasSubscribers(VendingEvent.StockView.class)){ return; }
+        //^ Nothing would display the stock; so not worth building its view.
 
-        ItemSlot[] itemStorage = this.vendingMachine.getItemStorage();
-        Map<Item, Integer> itemStock = new HashMap<>();
-
-        for (ItemSlot slot : itemStorage) {
-            //* Includes items with zero stock.
-            if (slot == null){ continue; }
-            //^ Skip unassigned slots.
-            Item item = slot.getItem();
-            itemStock.put(item, itemStock.getOrDefault(item, 0) + slot.getStock());
-            //^ Accumulates stock from multiple slots containing the same item.
-        }
-        this.event(itemStock);
+        this.event(new VendingEvent.StockView(this.vendingMachine.getItemStockView()));
+        //^ Cached and immutable - rebuilt by the item storage only after the stock changes, and safe to hand to an asynchronous event bus as is.
     }
 }
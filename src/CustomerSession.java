@@ -0,0 +1,11 @@
+import java.util.Map;
+
+/**
+ * Customer session (basket and money) that was still open when the vending machine lost power, rebuilt from its journal.
+ * <p>
+ * Handed to the next 'CustomerProxy' attached to the vending machine so the customer can carry on (or their purchase/refund is finished) instead of the machine forgetting coins it already took.
+ * @param basket  Items still in the basket (not yet dispensed) and their quantities.
+ * @param payDue  Amount left to pay in pence; negative if overpaid (change owed).
+ * @param balance Amount the customer deposited in pence.
+ */
+public record CustomerSession(Map<Item, Integer> basket, long payDue, long balance) {}
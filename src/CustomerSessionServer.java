@@ -0,0 +1,176 @@
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hosts many concurrent customer sessions against a fleet of vending machines ('VendingFleet') - one virtual thread per session.
+ * <p>
+ * Each session runs the usual customer flow ('ActionsCustomer': startOrder, selectItem, checkout, depositCoin) on its own 'CustomerProxy', blocking while it waits for the customer's next coin.
+ * Virtual threads make that blocking cheap: a session waiting for a coin holds no platform thread, so 100,000 sessions run on a handful of them.
+ * <p>
+ * Admission is per vending machine: a session acquires its vending machine's (fair) permit before starting the order and holds it until the order is complete or cancelled.
+ * Therefore, only one session owns a vending machine at a time, waiting sessions are served in arrival order, and sessions for different vending machines never wait for each other.
+ * <p>
+ * Sessions are headless - their proxies have no displays, so no notices are formatted.
+ */
+public class CustomerSessionServer implements AutoCloseable {
+    private static final Duration DEFAULT_COIN_TIMEOUT = Duration.ofSeconds(60);
+    //^ Like a real vending machine timing out a customer who walked away mid-payment.
+
+    private final VendingFleet fleet;
+    private final long coinTimeoutNanos;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Map<Integer, Semaphore> admissions = new ConcurrentHashMap<>();
+    //^ One permit per machine ID, created on the vending machine's first session.
+
+    /**
+     * How a session ended.
+     */
+    public enum Outcome {
+        PURCHASED,
+        //^ Paid in full - items dispensed and any change given.
+        CANCELLED,
+        //^ No coin came in time - order cancelled and coins refunded.
+        REFUNDED,
+        //^ Paid in full but the order could not be completed (e.g. the reservation expired and the items sold out meanwhile) - everything paid refunded.
+        REFUSED
+        //^ Order could not be made (e.g. vending machine in MAINTENANCE, or nothing selected was in stock).
+    }
+
+    /**
+     * What one customer wants to do.
+     * @param machineID Which vending machine of the fleet to use.
+     * @param itemIDs   Items to select, in order (an ID twice selects two of the item).
+     * @param coins     Coins the customer inserts, in order - the session blocks on it, so a coin acceptor can feed it while the session runs.
+     */
+    public record Order(int machineID, List<Integer> itemIDs, BlockingQueue<CoinGBP> coins) {
+        /**
+         * Constructor makes the item IDs read-only.
+         * @param machineID Which vending machine of the fleet to use.
+         * @param itemIDs   Items to select, in order.
+         * @param coins     Coins the customer inserts, in order.
+         */
+        public Order {
+            itemIDs = List.copyOf(itemIDs);
+        }
+    }
+
+    /**
+     * Listener keeping the last failure reported by a session's customer proxy, as customer actions report failures as events instead of throwing.
+     */
+    private static final class FailureCapture implements EventListener {
+        private RuntimeException failure;
+        //^ Only touched by the session's own thread (synchronous event bus).
+
+        @Override
+        public void onEvent(VendingEvent event) {
+            if (event instanceof VendingEvent.Failure(RuntimeException error)) this.failure = error;
+        }
+        /**
+         * Takes the last failure, clearing it.
+         * @return The last failure since the previous call; 'null' if none.
+         */
+        private RuntimeException take() {
+            RuntimeException failure = this.failure;
+            this.failure = null;
+            return failure;
+        }
+    }
+
+    /**
+     * Constructor for a server timing out customers after 60 seconds without a coin.
+     * @param fleet The vending machines sessions are served on.
+     */
+    public CustomerSessionServer(VendingFleet fleet) { this(fleet, DEFAULT_COIN_TIMEOUT); }
+    /**
+     * Constructor for a server with a chosen coin timeout.
+     * @param fleet       The vending machines sessions are served on.
+     * @param coinTimeout How long a session waits for the next coin before cancelling the order.
+     * @throws IllegalArgumentException if the timeout is not positive.
+     */
+    public CustomerSessionServer(VendingFleet fleet, Duration coinTimeout) {
+        if (coinTimeout.isNegative() || coinTimeout.isZero()) throw new IllegalArgumentException("Coin timeout must be positive.");
+        this.fleet = fleet;
+        this.coinTimeoutNanos = coinTimeout.toNanos();
+    }
+
+    /**
+     * Starts a session on its own virtual thread.
+     * @param order What the customer wants to do.
+     * @return Completes with how the session ended; fails if the machine ID is not in the fleet or the vending machine failed unexpectedly.
+     */
+    public Future<Outcome> submit(Order order) { return this.executor.submit(() -> this.serve(order)); }
+
+    /**
+     * Runs one session - waits for the vending machine, then drives the customer flow.
+     * @param order What the customer wants to do.
+     * @return How the session ended.
+     * @throws InterruptedException if interrupted (e.g. server shut down) - the order is cancelled and refunded first.
+     */
+    private Outcome serve(Order order) throws InterruptedException {
+        VendingMachine vendingMachine = this.fleet.getVendingMachine(order.machineID());
+        Semaphore admission = this.admissions.computeIfAbsent(order.machineID(), machineID -> new Semaphore(1, true));
+        admission.acquire();
+        //^ Blocks this virtual thread only - its carrier thread serves other sessions meanwhile.
+        try {
+            SynchronousEventBus eventBus = new SynchronousEventBus();
+            FailureCapture failures = new FailureCapture();
+            eventBus.subscribe(VendingEvent.Failure.class, failures);
+            CustomerProxy customer = new CustomerProxy(vendingMachine, eventBus);
+            try { return this.runFlow(vendingMachine, customer, failures, order); }
+            catch (InterruptedException | RuntimeException e) {
+                customer.cancelOrder();
+                //^ Never leaves an order open on the vending machine for the next session; refunds any coins.
+                throw e;
+            }
+        }
+        finally { admission.release(); }
+    }
+    /**
+     * Helper method for the customer flow of one session, once it owns the vending machine.
+     * @param vendingMachine The vending machine.
+     * @param customer       The session's customer proxy.
+     * @param failures       Failures reported by the customer proxy.
+     * @param order          What the customer wants to do.
+     * @return How the session ended.
+     * @throws InterruptedException if interrupted while waiting for a coin.
+     */
+    private Outcome runFlow(VendingMachine vendingMachine, CustomerProxy customer, FailureCapture failures, Order order) throws InterruptedException {
+        customer.startOrder();
+        if (failures.take() != null || vendingMachine.getState() != VendingMachineState.ORDERING) return Outcome.REFUSED;
+        //^ e.g. in MAINTENANCE, or an order was started elsewhere (a front-end not going through this server).
+        for (int itemID : order.itemIDs()) customer.selectItem(itemID);
+        customer.checkout();
+        if (vendingMachine.getState() != VendingMachineState.PAYING) {
+            //* Checkout refused - nothing in the basket.
+            customer.cancelOrder();
+            return Outcome.REFUSED;
+        }
+        while (vendingMachine.getState() == VendingMachineState.PAYING) {
+            CoinGBP coin = order.coins().poll(this.coinTimeoutNanos, TimeUnit.NANOSECONDS);
+            if (coin == null) {
+                customer.cancelOrder();
+                return Outcome.CANCELLED;
+            }
+            customer.depositCoin(coin);
+            RuntimeException failure = failures.take();
+            if (failure != null && vendingMachine.getState() != VendingMachineState.PAYING) return Outcome.REFUNDED;
+            //^ The last coin paid the order but it did not complete - the customer was refunded instead.
+            //^ Otherwise a rejected coin (e.g. change cannot be given) is handed back; the session waits for another one.
+        }
+        return Outcome.PURCHASED;
+    }
+
+    /**
+     * Stops accepting sessions and waits for every submitted session to end.
+     */
+    @Override
+    public void close() { this.executor.close(); }
+}
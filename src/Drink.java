@@ -1,4 +1,3 @@
-import java.util.HashMap;
 import java.util.Map;
 
 /**
@@ -19,14 +18,20 @@ public class Drink extends Item{
      * See corresponding superclass's method documentation for more information.
      * @param name   What it is called for the customer's knowledge.
      * @param iD     The unique identifier (unique in subject vending machine) for the item.
-     * @param price  How much, each of this specific item, costs.
+     * @param price  How much, each of this specific item, costs (in pence).
      * @param volume How much liquid it contains, in milliliters.
      */
-    public Drink(String name, int iD, double price, int volume) {
+    public Drink(String name, int iD, long price, int volume) {
         super(name, iD, price);
         this.volume = volume;
     }
 
+    /**
+     * Getter method for 'volume'.
+     * @return How much liquid it contains, in milliliters.
+     */
+    public int getVolume() { return this.volume; }
+
     /**
      * Implemented abstract method to specify item type as a drink.
      * <p>
@@ -37,15 +42,15 @@ public class Drink extends Item{
     ItemType getType() { return ItemType.DRINK; }
 
     /**
-     * View method (specialized getter method) that expands on Item's (superclass) render method by adding volume detail.
+     * View method (specialized getter method) that expands on Item's (superclass) details method (used for its cached rendering) by adding volume detail.
      * <p>
      * See corresponding superclass's method documentation for more information.
      * @return Item's name, type (drink), ID, price, and volume in ml.
      */
     @Override
-    public Map<String, String> render() {
-        Map<String, String> details = new HashMap<>(super.render());
-        //^ 'new HashMap<>' makes copy to allow appending more details.
+    Map<String, String> details() {
+        Map<String, String> details = super.details();
+        //^ Already a new map, so more details can be appended.
         details.put("volume", Integer.toString(this.volume));
         return details;
     }
@@ -0,0 +1,42 @@
+/**
+ * Handler for a failure to keep vending machine data on disk where there is no caller to throw to -
+ * e.g. a journal snapshot written on a background thread, or a sale recorded after the customer was already served.
+ * <p>
+ * Such a failure never stops the vending machine, and what was already on disk stays there, but the failed write may be lost (e.g. disk full).
+ * The handler lets an operator find out instead of it only being printed.
+ * Given to 'Journal.open' and 'SalesLedger.open'.
+ */
+@FunctionalInterface
+public interface DurabilityFailureHandler {
+    /**
+     * Called on the thread where writing failed.
+     * @param error What failed.
+     */
+    void failed(Exception error);
+
+    /**
+     * Hands a failure to this handler; if the handler itself throws, both failures go to the thread's uncaught exception handler instead of to the failing thread's caller.
+     * @param error What failed.
+     */
+    default void handle(Exception error) {
+        try { this.failed(error); }
+        catch (RuntimeException handlerError) {
+            handlerError.addSuppressed(error);
+            DurabilityFailureHandler.toUncaught(handlerError);
+        }
+    }
+
+    /**
+     * Gets the handler used when none is given - reports every failure to the thread's uncaught exception handler (see 'Thread.setDefaultUncaughtExceptionHandler').
+     * @return The handler.
+     */
+    static DurabilityFailureHandler uncaught() { return DurabilityFailureHandler::toUncaught; }
+    /**
+     * Helper method to report a failure to the current thread's uncaught exception handler.
+     * @param error What failed.
+     */
+    private static void toUncaught(Exception error) {
+        Thread thread = Thread.currentThread();
+        thread.getUncaughtExceptionHandler().uncaughtException(thread, error);
+    }
+}
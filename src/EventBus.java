@@ -0,0 +1,45 @@
+/**
+ * Pluggable event bus used by the proxy classes to notify their displays.
+ * <p>
+ * Decouples how events are delivered (on the caller's thread or on a dedicated thread) from the proxies publishing them.
+ * Implementations: 'SynchronousEventBus' (delivers immediately on the caller's thread) and 'AsyncEventBus' (delivers in batches on its own thread).
+ */
+public interface EventBus extends AutoCloseable {
+    /**
+     * Adds a listener to receive every event published from now on.
+     * @param listener The listener to add.
+     */
+    void subscribe(EventListener listener);
+    /**
+     * Adds a listener to receive only one kind of event published from now on.
+     * @param kind     The event kind (a 'VendingEvent' record class) to receive.
+     * @param listener The listener to add.
+     */
+    void subscribe(Class<? extends VendingEvent> kind, EventListener listener);
+    /**
+     * Checks if publishing an event of a kind would reach any listener.
+     * <p>
+     * Lets publishers skip creating (and formatting) events nobody listens to.
+     * @param kind The event kind (a 'VendingEvent' record class).
+     * @return 'true' if at least one listener would receive it; otherwise 'false'.
+     */
+    boolean hasSubscribers(Class<? extends VendingEvent> kind);
+    /**
+     * Publishes an event to every listener subscribed to it.
+     * @param event The event.
+     */
+    void publish(VendingEvent event);
+    /**
+     * Waits until every event published so far has been delivered.
+     * <p>
+     * Nothing to wait for by default (synchronous delivery).
+     */
+    default void flush() {}
+    /**
+     * Stops the event bus after delivering every event published so far.
+     * <p>
+     * Nothing to stop by default (synchronous delivery).
+     */
+    @Override
+    default void close() {}
+}
@@ -0,0 +1,15 @@
+/**
+ * Receives events published on an 'EventBus'.
+ * <p>
+ * Functional interface so a subscriber can simply be a lambda or method reference.
+ */
+@FunctionalInterface
+public interface EventListener {
+    /**
+     * Called once per published event, in publishing order.
+     * <p>
+     * May be called on a different thread to the publisher (see 'AsyncEventBus').
+     * @param event The published event.
+     */
+    void onEvent(VendingEvent event);
+}
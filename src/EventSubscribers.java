@@ -0,0 +1,76 @@
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Registry of event bus listeners, either for every kind of event or for specific kinds ('VendingEvent' subclasses) only.
+ * Opt-in kinds ('VendingEvent.OptIn') only go to listeners of that specific kind.
+ * <p>
+ * Shared by every 'EventBus' implementation so they only differ in when and on which thread events are delivered.
+ */
+public class EventSubscribers {
+    private final List<EventListener> allKinds = new CopyOnWriteArrayList<>();
+    //^ Listeners for every kind of event.
+    private final Map<Class<? extends VendingEvent>, List<EventListener>> byKind = new ConcurrentHashMap<>();
+    //^ Listeners for one specific kind of event each.
+    //^ Copy-on-write lists as listeners are rarely added but iterated on every event.
+
+    /**
+     * Adds a listener for every kind of event.
+     * @param listener The listener to add.
+     */
+    public void add(EventListener listener) { this.allKinds.add(listener); }
+    /**
+     * Adds a listener for one kind of event only.
+     * @param kind     The event kind (record class) to listen for.
+     * @param listener The listener to add.
+     */
+    public void add(Class<? extends VendingEvent> kind, EventListener listener) {
+        this.byKind.computeIfAbsent(kind, k -> new CopyOnWriteArrayList<>()).add(listener);
+    }
+    /**
+     * Checks if any listener would receive an event of a kind.
+     * @param kind The event kind (record class).
+     * @return 'true' if at least one listener would receive it; otherwise 'false'.
+     */
+    public boolean has(Class<? extends VendingEvent> kind) {
+        if (VendingEvent.OptIn.class.isAssignableFrom(kind)) return this.byKind.containsKey(kind);
+        return !this.allKinds.isEmpty() || this.byKind.containsKey(kind);
+    }
+    /**
+     * Delivers an event to every listener for its kind, then (unless opt-in) to every listener for all kinds.
+     * <p>
+     * A listener that throws stops the delivery - the exception reaches the publisher, like 'java.util.Observable.notifyObservers'.
+     * @param event The event to deliver.
+     */
+    public void deliver(VendingEvent event) {
+        List<EventListener> kindListeners = this.byKind.get(event.getClass());
+        if (kindListeners != null) { for (EventListener listener : kindListeners) listener.onEvent(event); }
+        if (event instanceof VendingEvent.OptIn) return;
+        for (EventListener listener : this.allKinds) { listener.onEvent(event); }
+    }
+    /**
+     * Delivers an event to every listener for its kind, then (unless opt-in) to every listener for all kinds, isolating the listeners from each other.
+     * <p>
+     * A listener that throws is handed to the failure handler and the event still reaches every later listener.
+     * @param event          The event to deliver.
+     * @param failureHandler Called with the event and what the listener threw, once per failing listener.
+     */
+    public void deliver(VendingEvent event, AsyncEventBus.FailureHandler failureHandler) {
+        List<EventListener> kindListeners = this.byKind.get(event.getClass());
+        if (kindListeners != null) { for (EventListener listener : kindListeners) EventSubscribers.deliver(listener, event, failureHandler); }
+        if (event instanceof VendingEvent.OptIn) return;
+        for (EventListener listener : this.allKinds) { EventSubscribers.deliver(listener, event, failureHandler); }
+    }
+    /**
+     * Helper method to deliver an event to one listener, handing its failure to the failure handler.
+     * @param listener       The listener.
+     * @param event          The event to deliver.
+     * @param failureHandler Called if the listener throws.
+     */
+    private static void deliver(EventListener listener, VendingEvent event, AsyncEventBus.FailureHandler failureHandler) {
+        try { listener.onEvent(event); }
+        catch (RuntimeException e) { failureHandler.failed(event, e); }
+    }
+}
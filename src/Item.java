@@ -1,3 +1,6 @@
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -7,15 +10,39 @@ import java.util.Map;
 public abstract class Item {
     private final String name;
     private final int iD;
-    private final double price;
+    private final long price;
+    //^ In whole pence (see 'Money' class).
+    private volatile Rendering rendering;
+    //^ Cached rendered details - built once by 'ItemFactory', or on first use for items made without it (e.g. rebuilt from a journal).
+    //^ Never changes afterwards, as items are immutable; racing first uses may each build one, and any of them is right.
+
+    /**
+     * Immutable rendered representation of an item, built once per item instance.
+     * <p>
+     * Also holds the item's details with a slot's stock added - as the key order, and the text around the stock count -
+     * so a slot can be rendered as a map view or a string without copying the details (see 'ItemSlot.render').
+     * @param details    Item's details (read-only), in the order rendering has always listed them.
+     * @param text       'details' as text.
+     * @param slotKeys   Keys of a slot's details - 'details' keys plus "stock" - in the order a slot lists them.
+     * @param slotPrefix Slot's details as text, up to its stock count.
+     * @param slotSuffix Slot's details as text, after its stock count.
+     */
+    record Rendering(Map<String, String> details, String text, List<String> slotKeys, String slotPrefix, String slotSuffix) {
+        /**
+         * Renders a slot holding the item as text.
+         * @param stock The slot's stock count.
+         * @return Same text as the slot's details map would give.
+         */
+        String slotText(int stock) { return this.slotPrefix + stock + this.slotSuffix; }
+    }
 
     /**
      * Constructor initializes the item with its name, ID, and price; subclasses adds more specific attributes.
      * @param name  What it is called for the customer's knowledge.
      * @param iD    The unique identifier (unique in subject vending machine) for the item.
-     * @param price How much, each of this specific item, costs.
+     * @param price How much, each of this specific item, costs (in pence).
      */
-    public Item(String name, int iD, double price) {
+    public Item(String name, int iD, long price) {
         this.name = name;
         this.iD = iD;
         this.price = price;
@@ -30,9 +57,9 @@ public abstract class Item {
     //: Getter methods.
     /**
      * Gets the price of the item. The item factory ensures that the price is valid upon creation.
-     * @return price - positive double with max two decimal places.
+     * @return price - non-negative amount in pence.
      */
-    public double getPrice() { return price; }
+    public long getPrice() { return price; }
     //^ For customer purchases.
     /**
      * Gets the identifier (unique in subject vending machine) of the item. The item factory ensures that the price is valid upon creation.
@@ -58,14 +85,64 @@ public abstract class Item {
 
     /**
      * Renders the item's details. Expanded upon in subclasses to include extra attributes. Very useful for wanting all or one of the attributes by calling just this one method and then choosing which ones to use.
-     * @return Item's name, type (drink, snack, etc.), ID, and price.
+     * <p>
+     * Served from the item's cached rendering, so no map is built after the first call.
+     * @return Item's name, type (drink, snack, etc.), ID, and price (read-only).
      */
-    public Map<String, String> render(){
+    public final Map<String, String> render(){
         //* For both user and owner/admin - seeing what the vending machine offers.
-        return Map.of(
+        return this.rendering().details();
+    }
+    /**
+     * Renders the item's details as text - same as 'this.render().toString()', without formatting the map again.
+     * @return Item's details as text.
+     */
+    public final String renderText(){ return this.rendering().text(); }
+    /**
+     * Builds the item's rendering now instead of on first use - called by 'ItemFactory' on every item it creates.
+     * @return This item.
+     */
+    final Item prerender(){
+        this.rendering();
+        return this;
+    }
+    /**
+     * Gets the cached rendering, building it on first use.
+     * @return The item's rendering.
+     */
+    final Rendering rendering(){
+        Rendering rendering = this.rendering;
+        if (rendering != null) return rendering;
+
+        Map<String, String> details = this.details();
+        Map<String, String> slotDetails = this.details();
+        slotDetails.put("stock", "");
+        //^ Built and added to exactly as a slot's details always were, so slots keep listing their details in the same order.
+        List<String> slotKeys = List.copyOf(slotDetails.keySet());
+        StringBuilder slotPrefix = new StringBuilder("{");
+        StringBuilder slotSuffix = new StringBuilder();
+        StringBuilder part = slotPrefix;
+        for (String key : slotKeys) {
+            //* Same format as 'Map.toString' ('{key=value, key=value}'), split at the stock count.
+            if (part.length() > 1 || part == slotSuffix) part.append(", ");
+            part.append(key).append('=');
+            if (key.equals("stock")) part = slotSuffix;
+            else part.append(details.get(key));
+        }
+        slotSuffix.append('}');
+        rendering = new Rendering(Collections.unmodifiableMap(details), details.toString(), slotKeys, slotPrefix.toString(), slotSuffix.toString());
+        this.rendering = rendering;
+        return rendering;
+    }
+    /**
+     * Builds the item's details - called once per item, for its rendering. Expanded upon in subclasses to include extra attributes.
+     * @return Item's name, type (drink, snack, etc.), ID, and price - in a new map that subclasses (and the rendering) may add to.
+     */
+    Map<String, String> details(){
+        return new HashMap<>(Map.of(
             "name",this.name,
             "type",this.getType().toString(),
             "ID", Integer.toString(this.iD),
-            "Price", Double.toString(this.price));
+            "Price", Money.format(this.price)));
     }
 }
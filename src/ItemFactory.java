@@ -35,8 +35,8 @@ public class ItemFactory {
      */
     private void validatePrice(double price){
         if (price < 0) throw new IllegalArgumentException("Price cannot be negative");
-        if (price * 100 % 1 != 0) throw new IllegalArgumentException("Price cannot have more than 2 decimal places");
-        //^ Dividing by int instead of double to avoid floating point precision issues (real issue).
+        if (!Money.isWholePence(price)) throw new IllegalArgumentException("Price cannot have more than 2 decimal places");
+        //^ Delegated to 'Money' to avoid floating point precision issues (real issue) - e.g. 'price * 100 % 1' rejects 1.15.
     }
     /**
      * Helper forwarder method to 'this.validateNum'.
@@ -78,11 +78,13 @@ public class ItemFactory {
      * <p>
      * Polymorphic behavior is achieved by returning the base class 'Item', allowing flexibility in handling different item types.
      * <p>
+     * Every created item has its rendering built here, once (see 'Item.render'), so displays never build it while customers wait.
+     * <p>
      * Polymorphism ('Object') was preferred over generics ('&lt;T&gt;') because there is no type preservation needed and keeps code both simpler and more flexible.
      * @param type           Determines what type of item to make (DRINK, SNACK, MISCELLANEOUS).
      * @param name           The name of the item.
      * @param iD             The unique identifier for the item.
-     * @param price          The price of the item.
+     * @param price          The price of the item in pounds; converted to pence once here.
      * @param extraAttribute The specific attribute required by the item subclass (volume, weight, or description).
      * @return The created Item instance (Drink, Snack, or MiscellaneousItem).
      * @throws IllegalArgumentException If any validation fails or if 'extraAttribute' is of incorrect type.
@@ -91,26 +93,28 @@ public class ItemFactory {
         this.validateID(iD);
         this.validatePrice(price);
         this.validateName(name);
+        long pricePence = Money.fromPounds(price);
+        //^ Only conversion from pounds (double) to pence (long) - items hold their price in pence from here on.
         switch (type) {
             case DRINK:
                 if (extraAttribute instanceof Integer volume) {
                     this.validateNum(volume);
 
-                    return new Drink(name, iD, price, volume);
+                    return new Drink(name, iD, pricePence, volume).prerender();
                 }
                 throw new IllegalArgumentException("Invalid extra attribute for Drink. Expected Integer volume.");
             case SNACK:
                 if (extraAttribute instanceof Integer weight) {
                     this.validateNum(weight);
 
-                    return new Snack(name, iD, price, weight);
+                    return new Snack(name, iD, pricePence, weight).prerender();
                 }
                 throw new IllegalArgumentException("Invalid attribute for Snack. Expected Integer weight.");
             case MISCELLANEOUS:
                 if (extraAttribute instanceof String description) {
                     //* No specific validation for description; even an empty description is allowed.
 
-                    return new MiscellaneousItem(name, iD, price, description);
+                    return new MiscellaneousItem(name, iD, pricePence, description).prerender();
                 }
                 throw new IllegalArgumentException("Invalid attribute for MiscellaneousItem. Expected String description.");
             default:
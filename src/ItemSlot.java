@@ -1,4 +1,8 @@
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * "composite design pattern" class that represents a slot in the vending machine assigned to holds a specific item type.
@@ -6,31 +10,37 @@ import java.util.Map;
  * Instances of this class are stored in an array inside the 'ItemStorage' class.
  * <p>
  * Responsibility/purpose of each vending machine slot is delegated to each instance of this class.
+ * <p>
+ * Lightweight view over one row of the item storage's columns - the stock count itself lives in 'ItemStorage' (one 'int[]' per vending machine), not in this object.
+ * Stock count is updated with compare-and-set, so several threads (e.g. touchscreen and remote admin) can stock and dispense the same slot safely without locking.
+ * <p>
+ * One view per assignment: once its slot is unassigned, the view refuses to stock or dispense (even if the slot is assigned again) as it no longer describes what is in the slot.
  */
 public class ItemSlot { //< Composite pattern class.
-    private final int capacity;
+    private final ItemStorage storage;
+    private final int slotNum;
+    //^ Row of the storage's columns this view reads and writes.
     private final Item item;
-    //^ Slot can change item but class will be re-instantiated instead of being mutated because of cleaner logic.
-    private int itemCount;
+    //^ Slot can change item but a new view will be made instead of this one being mutated because of cleaner logic.
 
     /**
-     * Constructor for initializing the physical capacity and what item type the slots is assigned to hold.
-     * @param capacity Maximum number of items the slot can hold.
-     * @param item     The specific item type assigned to this slot.
+     * Constructor for a view of a newly assigned slot.
+     * @param storage The item storage holding the slot's stock count.
+     * @param slotNum The slot number.
+     * @param item    The specific item type assigned to this slot.
      */
-    ItemSlot(int capacity, Item item) {
-        this.capacity = capacity;
+    ItemSlot(ItemStorage storage, int slotNum, Item item) {
+        this.storage = storage;
+        this.slotNum = slotNum;
         this.item = item;
-        this.itemCount = 0;
-        //^ Slot must be assigned to an item before it can be populated.
     }
 
     //: Forwarder methods:
     /**
      * Forwarder method to 'this.item.getPrice' method.
-     * @return Price of the assigned item.
+     * @return Price of the assigned item in pence.
      */
-    public double getPrice(){ return this.item.getPrice(); }
+    public long getPrice(){ return this.item.getPrice(); }
     /**
      * Forwarder method to 'this.item.checkID' method.
      * @param iD The unique identifier to check against the assigned item.
@@ -38,10 +48,15 @@ public class ItemSlot { //< Composite pattern class.
      */
     public boolean checkID(int iD){ return this.item.checkID(iD); }
     /**
-     * Getter method for 'this.itemCount'.
+     * Getter method for the slot's stock count (held by the item storage).
      * @return Number of items currently in the slot.
      */
-    public int getStock(){ return this.itemCount; }
+    public int getStock(){ return this.storage.getSlotStock(this.slotNum); }
+    /**
+     * Getter method for 'this.slotNum'.
+     * @return The slot number.
+     */
+    public int getSlotNum(){ return this.slotNum; }
     /**
      * Getter method for 'this.item'.
      * @return The assigned item in the slot; can be null if unassigned.
@@ -55,14 +70,14 @@ public class ItemSlot { //< Composite pattern class.
      * Not related to whether the slot is assigned to an item or not.
      * @return 'true' if the slot has zero items; otherwise 'false'.
      */
-    public boolean isEmpty(){ return this.itemCount == 0; }
+    public boolean isEmpty(){ return this.getStock() == 0; }
     /**
      * Predicate method to check if the slot is full - have maximum items.
      * <p>
      * Not related to whether the slot is assigned to an item or not.
      * @return 'true' if the slot has reached its capacity; otherwise 'false'.
      */
-    public boolean isFull(){ return this.itemCount == this.capacity; }
+    public boolean isFull(){ return this.getStock() == this.storage.getMaxAmount(); }
 
     //: Owner/admin or customer (customer remove only), one can only physically add or remove one item at a time.
     /**
@@ -73,8 +88,7 @@ public class ItemSlot { //< Composite pattern class.
      * @throws IllegalArgumentException if the slot is already full.
      */
     public void addItem(){
-        if (this.itemCount == this.capacity) throw new IllegalArgumentException("Slot is full");
-        this.itemCount++;
+        if (!this.tryAddItem()) throw new IllegalArgumentException("Slot is full");
     }
     /**
      * Removes one item from the slot.
@@ -85,21 +99,93 @@ public class ItemSlot { //< Composite pattern class.
      */
     public void removeItem(){
         //^ Remove the physical item, not the assignment.
-        if (this.itemCount == 0) throw new IllegalArgumentException("Slot is empty");
-        this.itemCount--;
+        if (!this.tryRemoveItem()) throw new IllegalArgumentException("Slot is empty");
     }
+    /**
+     * Atomically adds one item to the slot if it is not full.
+     * <p>
+     * Goes through the item storage, so the item's total stock and the stock view are kept up to date.
+     * @return 'true' if the item was added; 'false' if the slot was full or no longer assigned to this view's item.
+     */
+    public boolean tryAddItem(){ return this.storage.tryAddToSlot(this); }
+    /**
+     * Atomically removes one item from the slot if it is not empty.
+     * <p>
+     * Goes through the item storage, so the item's total stock and the stock view are kept up to date.
+     * @return 'true' if the item was removed; 'false' if the slot was empty or no longer assigned to this view's item.
+     */
+    public boolean tryRemoveItem(){ return this.storage.tryChangeSlotStock(this, -1); }
 
     /**
      * Expands upon the assigned item's render method ('Item.render') by adding current stock detail.
-     * @return Map of the assigned item's details along with the current stock.
+     * <p>
+     * A read-only view over the item's cached rendering with the stock count laid over it - nothing is copied, and the stock is read whenever the view is,
+     * so rendering a long listing of slots allocates only one small view per slot.
+     * @return Map of the assigned item's details along with the current stock (read-only).
      *         If a slot is unassigned (item is null), returns null.
      */
     public Map<String, String> render() {
         //* Expects either a map or null.
         if (this.item == null) return null;
         //^ Means slot is unassigned to an item.
-        Map<String, String> details = this.item.render();
-        details.put("stock", Integer.toString(this.itemCount));
-        return details;
+        return new RenderedSlot(this, this.item.rendering());
+    }
+    /**
+     * Renders the slot as text - same as 'this.render().toString()', but straight from the item's cached rendering.
+     * @return The assigned item's details along with the current stock as text; "null" if the slot is unassigned.
+     */
+    public String renderText() {
+        if (this.item == null) return "null";
+        return this.item.rendering().slotText(this.getStock());
+    }
+
+    /**
+     * Stock-overlay view returned by 'ItemSlot.render' - the item's cached details plus the slot's live stock count.
+     */
+    private static final class RenderedSlot extends AbstractMap<String, String> {
+        private final ItemSlot slot;
+        private final Item.Rendering rendering;
+
+        /**
+         * Constructor for a view over one slot.
+         * @param slot      The slot whose stock is shown.
+         * @param rendering The slot's item's rendering.
+         */
+        private RenderedSlot(ItemSlot slot, Item.Rendering rendering) {
+            this.slot = slot;
+            this.rendering = rendering;
+        }
+
+        @Override
+        public String get(Object key) {
+            return "stock".equals(key) ? Integer.toString(this.slot.getStock()) : this.rendering.details().get(key);
+        }
+        @Override
+        public boolean containsKey(Object key) { return "stock".equals(key) || this.rendering.details().containsKey(key); }
+        @Override
+        public int size() { return this.rendering.slotKeys().size(); }
+        @Override
+        public Set<Map.Entry<String, String>> entrySet() {
+            return new AbstractSet<>() {
+                @Override
+                public Iterator<Map.Entry<String, String>> iterator() {
+                    Iterator<String> keys = RenderedSlot.this.rendering.slotKeys().iterator();
+                    return new Iterator<>() {
+                        @Override
+                        public boolean hasNext() { return keys.hasNext(); }
+                        @Override
+                        public Map.Entry<String, String> next() {
+                            String key = keys.next();
+                            return Map.entry(key, RenderedSlot.this.get(key));
+                        }
+                    };
+                }
+                @Override
+                public int size() { return RenderedSlot.this.size(); }
+            };
+        }
+        @Override
+        public String toString() { return this.rendering.slotText(this.slot.getStock()); }
+        //^ Straight from the cached text, instead of walking the entries.
     }
 }
@@ -1,3 +1,17 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
 /**
  * "Composite design pattern" class that represents the item storage of the vending machine.
  * Manages item slots and their operations.
@@ -11,14 +25,161 @@
  * <p>
  * Just like vending machine, item storage only handles physical operations and viewing status, not actions that require a series of operations to maintain SRP.
  * For example, instead of having a 'getItemCount' method for the customer proxy, it has a 'render' method (used by multiple proxies) that returns the current state of all slots where the customer proxy uses to calculate total item count.
+ * <p>
+ * Safe to use from several threads at once. Slot-level admin operations (assigning, unassigning, stocking, removing by slot number) lock only their slot's stripe,
+ * so operations on unrelated slots never wait for each other; customer dispensing by item ID does not lock at all (slot counts are compare-and-set).
+ * <p>
+ * Stored column-wise ("struct of arrays"): one 'int[]' of item IDs and one of stock counts, indexed by slot number, plus one capacity for every slot.
+ * 'ItemSlot's are only views over a row, so a slot costs two array entries and one small view object instead of a slot object with its own atomic counter,
+ * and scanning stock ('this.scanStockByID') walks two flat arrays without allocating - what fleet-wide scans over thousands of vending machines need.
+ * <p>
+ * Stock can be reserved for an order at checkout ('this.reserve'), so paying for it can never end with an item that is no longer there.
+ * A third column holds each slot's unreserved ("available") count: customers and admins only ever take available items, while a reservation's items
+ * are taken by 'this.dispenseReserved' alone. Reserving, releasing and dispensing a reservation each cost one update per reserved slot - O(basket lines).
  */
 public class ItemStorage {
+    private static final VarHandle COUNTS = MethodHandles.arrayElementVarHandle(int[].class);
+    //^ Compare-and-set and volatile access to 'this.counts' elements, without wrapping each count in an 'AtomicInteger'.
+    private static final int LOCK_STRIPES = 16;
+    //^ Largest number of slot locks; slot number 'n' uses lock 'n % this.slotLocks.length'.
+    //^ Bounded so huge machines do not need one lock per slot, while unrelated slots rarely share a lock.
+
     private final int maxAmount;
     //^ How many items can one slot hold; cannot be physically changed.
     private final int maxSlots;
     //^ How many slots can the vending machine physically hold; cannot be physically changed.
-    private final ItemSlot[] slots;
+    private final AtomicReferenceArray<ItemSlot> slots;
     //^ Admin/owner cannot physically change the slots after vending machine is created - hence 'final'.
+    //^ Atomic array so a slot (un)assigned by one thread is immediately visible to the others.
+    //^ Current view of each slot; 'null' if unassigned.
+    private final int[] itemIDs;
+    //^ Column of each slot's item ID, for scans; only written while holding the slot's lock.
+    //^ Stale after unassigning, which is harmless as an unassigned slot is always empty.
+    private final int[] counts;
+    //^ Column of each slot's stock count; always accessed through 'COUNTS'.
+    private final int[] available;
+    //^ Column of each slot's unreserved stock count (never more than 'this.counts' minus what is reserved); always accessed through 'COUNTS'.
+    private final ReentrantLock[] slotLocks;
+    //^ Striped locks keyed by slot number - serialise admin operations on the same slot only.
+    //^ No more stripes than slots, so small vending machines (thousands of which may share a JVM) do not carry unused locks.
+    private final Map<Integer, List<ItemSlot>> slotsByItemID = new ConcurrentHashMap<>();
+    //^ Index of every assigned slot per item ID; kept in sync by 'this.assignSlot' and 'this.unassignSlot'.
+    //^ Avoids scanning the whole 'this.slots' array when customer selects or buys an item (several slots can hold the same item).
+    //^ Lists are copy-on-write as they are read on every selection but only written on (un)assigning.
+    private final Map<Integer, AtomicInteger> stockByItemID = new ConcurrentHashMap<>();
+    //^ Total unreserved stock per item ID across all its slots; kept in sync by every stocking, dispensing, reserving and (un)assigning operation.
+    private final Set<Reservation> reservations = ConcurrentHashMap.newKeySet();
+    //^ Reservations neither released nor dispensed yet - looked through for expired ones when stock is next reserved.
+    private final AtomicLong stockVersion = new AtomicLong();
+    //^ Incremented after every stocking, dispensing and (un)assigning operation - tells 'this.getStockView' whether its cached view is still current.
+    private volatile StockSnapshot stockSnapshot = new StockSnapshot(0, Map.of());
+    //^ Last built stock view (this.getStockView), with the version it was built at; an empty storage (version 0) offers nothing.
+
+    /**
+     * Immutable stock view cached by 'this.getStockView'.
+     * @param version Value of 'this.stockVersion' read before the view was built.
+     * @param items   Offered items and their total stock (read-only).
+     */
+    private record StockSnapshot(long version, Map<Item, Integer> items) {}
+
+    /**
+     * Items held back for one order by 'ItemStorage.reserve' until they are dispensed ('ItemStorage.dispenseReserved'), released ('ItemStorage.release') or the reservation expires.
+     * <p>
+     * One entry per slot reserved from - usually one per basket line, more only when a line's item is spread over several slots.
+     * Closed exactly once, by whichever of dispensing, releasing or expiring gets there first; an expired reservation can still be dispensed once (reserved afresh).
+     */
+    public static final class Reservation {
+        private static final int OPEN = 0;
+        private static final int RELEASING = 1;
+        private static final int EXPIRED = 2;
+        private static final int CLOSED = 3;
+        //^ Values of 'this.state'; RELEASING while an expired reservation's items are being given back, CLOSED once dispensed or released.
+
+        private final int[] itemIDs;
+        private final int[] quantities;
+        //^ Basket lines, kept to reserve afresh if the reservation expires before it is dispensed.
+        private ItemSlot[] slots;
+        private int[] slotQuantities;
+        private int entries;
+        //^ How many items are reserved from which slot; only written by 'ItemStorage.reserve' before the reservation is published,
+        //^ or by 'ItemStorage.dispenseReserved' (once closed) to the slots an expired reservation was renewed from - never while RELEASING,
+        //^ so the thread giving the items back on expiry only ever reads the entries it reserved, and its reads happen before the renewal (via 'this.state').
+        private final long deadline;
+        //^ 'System.nanoTime()' after which the reservation may be released by another order.
+        private final AtomicInteger state = new AtomicInteger(OPEN);
+
+        /**
+         * Constructor for an empty reservation of basket lines.
+         * @param itemIDs    Item ID of each line.
+         * @param quantities How many of each line's item.
+         * @param deadline   'System.nanoTime()' at which the reservation expires.
+         */
+        private Reservation(int[] itemIDs, int[] quantities, long deadline) {
+            this.itemIDs = itemIDs;
+            this.quantities = quantities;
+            this.slots = new ItemSlot[itemIDs.length];
+            this.slotQuantities = new int[itemIDs.length];
+            this.deadline = deadline;
+        }
+        /**
+         * Helper method to record items reserved from a slot.
+         * @param slot     The slot reserved from.
+         * @param quantity How many of its items were reserved.
+         */
+        private void add(ItemSlot slot, int quantity) {
+            if (this.entries == this.slots.length) {
+                this.slots = Arrays.copyOf(this.slots, this.entries * 2);
+                this.slotQuantities = Arrays.copyOf(this.slotQuantities, this.entries * 2);
+            }
+            this.slots[this.entries] = slot;
+            this.slotQuantities[this.entries++] = quantity;
+        }
+        /**
+         * Predicate method to check whether the reservation still holds its items.
+         * @return 'true' if neither dispensed, released nor expired; otherwise 'false'.
+         */
+        public boolean isOpen() { return this.state.get() == OPEN; }
+        /**
+         * Getter method for how many basket lines were reserved.
+         * @return Number of lines.
+         */
+        public int getLines() { return this.itemIDs.length; }
+        /**
+         * Getter method for a line's item ID.
+         * @param line The line number.
+         * @return Item ID of the line.
+         */
+        public int getItemID(int line) { return this.itemIDs[line]; }
+        /**
+         * Getter method for how many of a line's item were reserved.
+         * @param line The line number.
+         * @return Quantity of the line.
+         */
+        public int getQuantity(int line) { return this.quantities[line]; }
+        /**
+         * Getter method for how many slots the items were reserved from (one entry per slot and line).
+         * @return Number of entries.
+         */
+        public int getEntries() { return this.entries; }
+        /**
+         * Getter method for the slot number of an entry.
+         * @param entry The entry number.
+         * @return The slot the entry's items were reserved from.
+         */
+        public int getSlotNum(int entry) { return this.slots[entry].getSlotNum(); }
+        /**
+         * Getter method for the item ID of an entry.
+         * @param entry The entry number.
+         * @return ID of the entry's item.
+         */
+        public int getSlotItemID(int entry) { return this.slots[entry].getItem().getID(); }
+        /**
+         * Getter method for how many items an entry reserved from its slot.
+         * @param entry The entry number.
+         * @return Quantity of the entry.
+         */
+        public int getSlotQuantity(int entry) { return this.slotQuantities[entry]; }
+    }
 
     /**
      * Constructor to initialize the physical specifications of the item storage in the vending machine.
@@ -28,46 +189,186 @@ public class ItemStorage {
     public ItemStorage(int maxAmount, int maxSlots) {
         this.maxAmount = maxAmount;
         this.maxSlots = maxSlots;
-        this.slots =  new ItemSlot[maxSlots];
+        this.slots =  new AtomicReferenceArray<>(maxSlots);
+        this.itemIDs = new int[maxSlots];
+        this.counts = new int[maxSlots];
+        this.available = new int[maxSlots];
         //^ Just like coin storage fill, admin/owner can only insert items after vending machine is created.
+        this.slotLocks = new ReentrantLock[Math.max(1, Math.min(LOCK_STRIPES, maxSlots))];
+        for (int i = 0; i < this.slotLocks.length; i++) { this.slotLocks[i] = new ReentrantLock(); }
+    }
+
+    /**
+     * Helper method to get the striped lock guarding a slot.
+     * @param slotNum The slot number (must be in range).
+     * @return The lock shared by every slot number with the same stripe.
+     */
+    private ReentrantLock lockFor(int slotNum){
+        return this.slotLocks[slotNum % this.slotLocks.length];
     }
 
     /**
      * Finds appropriate slot based on item ID.
      * Slot must both be assigned to the item and hat at least one item in stock.
+     * <p>
+     * Only looks through the slots assigned to the item ID (via 'this.slotsByItemID') instead of every slot in the vending machine.
      * @param iD The unique identifier for the item.
      * @return The populated slot (assigned to the item and not empty); otherwise return 'null' indicated that no appropriate slot was found.
      */
-    private ItemSlot findSlotByItem(int iD){
+    public ItemSlot findSlotByItem(int iD){
         //* Finds appropriate based on item ID and intent to refill or dispense.
-        for (ItemSlot slot : this.slots) {
-            if (slot == null) continue;
-            //^ No point checking unassigned slots; also avoids null pointer exception ('NullPointerException').
-            if (slot.checkID(iD) && !slot.isEmpty()) return slot;
+        if (this.getStockByID(iD) == 0) return null;
+        //^ Quick exit when item is not offered or is out of stock (no slot needs to be looked at).
+        for (ItemSlot slot : this.slotsByItemID.getOrDefault(iD, List.of())) {
+            //^ 'getOrDefault' as the last slot of the item may be unassigned by another thread in between.
+            if ((int) COUNTS.getVolatile(this.available, slot.getSlotNum()) > 0) return slot;
+            //^ Only slots with unreserved items - reserved ones are already promised to an order.
         }
         return null;
     }
+    /**
+     * Gets the item assigned to any slot with the given item ID, regardless of whether the item is in stock or not.
+     * @param iD The unique identifier for the item.
+     * @return The item assigned to the first indexed slot of said ID; otherwise 'null' if no slot is assigned to the item ID.
+     */
+    public Item getItemByID(int iD){
+        List<ItemSlot> itemSlots = this.slotsByItemID.get(iD);
+        if (itemSlots == null) return null;
+        //^ Empty lists are never stored (removed on unassigning the last slot), so no need to check for emptiness.
+        for (ItemSlot slot : itemSlots) { return slot.getItem(); }
+        //^ Iterator instead of 'get(0)' as list may be emptied by another thread after the null check.
+        return null;
+    }
+    /**
+     * Gets the total unreserved stock of an item across all slots assigned to it - how many more a customer could still order.
+     * @param iD The unique identifier for the item.
+     * @return Total number of unreserved items (of said ID) in the vending machine; zero if item is not offered or out of stock.
+     */
+    public int getStockByID(int iD){
+        AtomicInteger stock = this.stockByItemID.get(iD);
+        return stock == null ? 0 : stock.get();
+    }
+    /**
+     * Gets every offered item with its total unreserved stock across all slots assigned to it (including items out of stock).
+     * <p>
+     * Served from a cached immutable view, rebuilt from the assigned slots only when 'this.stockVersion' has moved since it was built;
+     * so customers repeatedly viewing the stock of an unchanged vending machine share one map instead of summing every slot each time.
+     * A view built while another thread changes the stock is tagged with the version read before building, so the next call rebuilds it.
+     * @return Offered items and their total stock (read-only).
+     */
+    public Map<Item, Integer> getStockView(){
+        long version = this.stockVersion.get();
+        StockSnapshot cached = this.stockSnapshot;
+        if (cached.version() == version) return cached.items();
+
+        Map<Item, Integer> items = new HashMap<>();
+        for (List<ItemSlot> itemSlots : this.slotsByItemID.values()) {
+            //* Only assigned slots are indexed, so unassigned ones are never visited.
+            for (ItemSlot slot : itemSlots) { items.merge(slot.getItem(), (int) COUNTS.getVolatile(this.available, slot.getSlotNum()), Integer::sum); }
+            //^ Keyed by the slot's item object - slots given separately created items of the same ID stay separate entries, as admins assigned them.
+        }
+        StockSnapshot rebuilt = new StockSnapshot(version, Map.copyOf(items));
+        this.stockSnapshot = rebuilt;
+        //^ Racing rebuilds may overwrite each other; whichever wins is still tagged with the version it reflects.
+        return rebuilt.items();
+    }
+    /**
+     * Scans the columns for the total stock of an item across all slots assigned to it.
+     * <p>
+     * Same answer as 'this.getStockByID' (give or take concurrent changes and reserved items, which are counted here) but reads only the two flat arrays - no map lookup, boxing or allocation -
+     * so fleet-wide scans stay cache-friendly and the loop can be vectorised by the JIT compiler.
+     * @param iD The unique identifier for the item.
+     * @return Total number of items (of said ID) in the vending machine; zero if item is not offered or out of stock.
+     */
+    public int scanStockByID(int iD){
+        int stock = 0;
+        for (int i = 0; i < this.maxSlots; i++) { stock += this.itemIDs[i] == iD ? this.counts[i] : 0; }
+        //^ Plain reads - a count from just before or after a concurrent change is fine for a scan.
+        return stock;
+    }
+    /**
+     * Getter method for one slot's stock count - used by 'ItemSlot' views.
+     * @param slotNum The slot number.
+     * @return Number of items currently in the slot.
+     */
+    int getSlotStock(int slotNum){ return (int) COUNTS.getVolatile(this.counts, slotNum); }
+    /**
+     * Atomically changes a slot's stock count by one, if the slot is still assigned to the view and stays within its capacity - used by 'ItemSlot' views.
+     * <p>
+     * Only unreserved items can be removed: an item is taken from 'this.available' first and from 'this.counts' after; an added item goes the other way round.
+     * So the available count never exceeds what is physically there and not reserved, even mid-change.
+     * @param slot   The view of the slot.
+     * @param change +1 to add an item, -1 to remove one.
+     * The item's total stock and 'this.stockVersion' are updated here too, so every change of a slot's count - whether made through this class or straight through the view - is reflected in the stock view.
+     * @return 'true' if the count was changed; 'false' if the slot was full/empty (of unreserved items) or is no longer assigned to the view.
+     */
+    boolean tryChangeSlotStock(ItemSlot slot, int change){
+        int slotNum = slot.getSlotNum();
+        int[] first = change > 0 ? this.counts : this.available;
+        int count;
+        do {
+            count = (int) COUNTS.getVolatile(first, slotNum);
+            if (this.slots.get(slotNum) != slot) return false;
+            //^ Stale view - the slot was unassigned (and maybe assigned to another item) since the view was found.
+            if (count + change < 0 || count + change > this.maxAmount) return false;
+        } while (!COUNTS.compareAndSet(first, slotNum, count, count + change));
+        //^ Retries if another thread changed the count in between.
+        COUNTS.getAndAdd(change > 0 ? this.available : this.counts, slotNum, change);
+        this.changeStockByID(slot.getItem().getID(), change);
+        return true;
+    }
+    /**
+     * Adds one item to a slot under the slot's stripe lock - used by 'ItemSlot' views.
+     * <p>
+     * Same lock as unassigning, so a slot found empty by 'this.tryUnassignSlot' cannot be stocked before it is removed.
+     * @param slot The view of the slot.
+     * @return 'true' if the item was added; 'false' if the slot was full or is no longer assigned to the view.
+     */
+    boolean tryAddToSlot(ItemSlot slot){
+        ReentrantLock lock = this.lockFor(slot.getSlotNum());
+        lock.lock();
+        try { return this.tryChangeSlotStock(slot, 1); }
+        finally { lock.unlock(); }
+    }
+    /**
+     * Helper method to update the total stock of an item ID by a change in stock.
+     * @param iD     The unique identifier for the item.
+     * @param change Positive for stocking and negative for dispensing.
+     */
+    private void changeStockByID(int iD, int change){
+        AtomicInteger stock = this.stockByItemID.get(iD);
+        if (stock != null) stock.addAndGet(change);
+        //^ Null only when the item's last slot was unassigned in between - nothing left to keep count of.
+        this.stockVersion.incrementAndGet();
+    }
     /**
      * Helper method dispenses one item from a specific slot in the vending machine (one dispensed item per call).
-     * Called locally by 'this.dispenseItem' method when in MAINTENANCE mode.
+     * Called locally by 'this.tryDispenseItem' method when in MAINTENANCE mode.
      * @param slotNum The slot number from which the item is to be dispensed (if possible).
-     * @throws IllegalArgumentException If the slot number does not exist in vending machine, the slot is unassigned, or the slot is empty.
+     * @return 'OK' if dispensed; otherwise 'SLOT_OUT_OF_RANGE', 'SLOT_UNASSIGNED' or 'SLOT_EMPTY'.
      */
-    private void dispenseItemBySlotNum(int slotNum){
+    private VendingResult tryDispenseItemBySlotNum(int slotNum){
         //* When machine restock an item (by admin/owner only entered item ID).
-        if (slotNum < 0 || slotNum >= this.slots.length) throw new IllegalArgumentException("Slot number out of range");
-        ItemSlot slot = this.slots[slotNum];
-        if (slot == null) throw new IllegalArgumentException("Cannot remove items from a unassigned slot.");
-        if (slot.isEmpty()) throw new IllegalArgumentException("Cannot remove items in an empty slot.");
-        slot.removeItem();
+        if (slotNum < 0 || slotNum >= this.maxSlots) return VendingResult.SLOT_OUT_OF_RANGE;
+        ReentrantLock lock = this.lockFor(slotNum);
+        lock.lock();
+        try {
+            ItemSlot slot = this.slots.get(slotNum);
+            if (slot == null) return VendingResult.SLOT_UNASSIGNED;
+            if (!slot.tryRemoveItem()) return VendingResult.SLOT_EMPTY;
+            return VendingResult.OK;
+        }
+        finally { lock.unlock(); }
     }
 
     /**
      * Renders the current state of the item storage.
-     * @return An array of item slot objects representing the current state of each slot in the vending machine.
+     * @return A copy of the array of item slot objects representing the current state of each slot in the vending machine.
      */
     public ItemSlot[] render() {
-        return this.slots;
+        ItemSlot[] rendered = new ItemSlot[this.maxSlots];
+        for (int i = 0; i < this.maxSlots; i++) { rendered[i] = this.slots.get(i); }
+        return rendered;
     }
 
     /**
@@ -90,13 +391,25 @@ public class ItemStorage {
      * @param slotNum The slot number where the item is to be restocked.
      * @throws IllegalArgumentException If the slot number does not exist in vending machine, the slot is unassigned, or the slot is already full.
      */
-    public void restockItem(int slotNum){
+    public void restockItem(int slotNum){ this.tryRestockItem(slotNum).orThrow(VendingOperation.STOCK_ITEM); }
+    /**
+     * Non-throwing version of 'this.restockItem' - a full slot is an ordinary outcome when stocking in a loop.
+     * @param slotNum The slot number where the item is to be restocked.
+     * @return 'OK' if restocked; otherwise 'SLOT_OUT_OF_RANGE', 'SLOT_UNASSIGNED' or 'SLOT_FULL'.
+     */
+    public VendingResult tryRestockItem(int slotNum){
         //* When machine restock an item (by admin/owner only entered item ID).
-        if (slotNum < 0 || slotNum >= this.slots.length) throw new IllegalArgumentException("Slot number out of range");
-        ItemSlot slot = this.slots[slotNum];
-        if (slot == null) throw new IllegalArgumentException("Cannot put items in a unassigned slot.");
-        if (slot.isFull()) throw new IllegalArgumentException("Cannot put items in a completely populated slot.");
-        slot.addItem();
+        if (slotNum < 0 || slotNum >= this.maxSlots) return VendingResult.SLOT_OUT_OF_RANGE;
+        ReentrantLock lock = this.lockFor(slotNum);
+        lock.lock();
+        //^ Prevents the slot from being unassigned while it is being stocked.
+        try {
+            ItemSlot slot = this.slots.get(slotNum);
+            if (slot == null) return VendingResult.SLOT_UNASSIGNED;
+            if (!slot.tryAddItem()) return VendingResult.SLOT_FULL;
+            return VendingResult.OK;
+        }
+        finally { lock.unlock(); }
     }
     /**
      * Dispenses an item from the vending machine (one dispensed item per call).
@@ -108,17 +421,163 @@ public class ItemStorage {
      * @throws IllegalArgumentException if the slot number is out of range, the slot is unassigned, or the slot is empty.
      *                                  Also thrown if the item ID is not found or the corresponding slot is out of stock.
      */
-    public void dispenseItem(int identity, boolean isMaintenance){
+    public void dispenseItem(int identity, boolean isMaintenance){ this.tryDispenseItem(identity, isMaintenance).orThrow(VendingOperation.DISPENSE_ITEM); }
+    /**
+     * Non-throwing version of 'this.dispenseItem'.
+     * @param identity      Slot number if 'isMaintenance' is true; otherwise item ID.
+     * @param isMaintenance Indicates whether the action is performed by an admin/owner for maintenance purposes.
+     * @return 'OK' if dispensed; otherwise 'SLOT_OUT_OF_RANGE', 'SLOT_UNASSIGNED' or 'SLOT_EMPTY' (by slot number), or 'ITEM_UNAVAILABLE' (by item ID).
+     */
+    public VendingResult tryDispenseItem(int identity, boolean isMaintenance){
         //* When machine dispenses an item (by customer, or admin/owner, entered item ID).
         if (isMaintenance){
             //* When admin/owner entered slot number to dispense item.
-            this.dispenseItemBySlotNum(identity);
-            return;
+            return this.tryDispenseItemBySlotNum(identity);
         }
         //: When customer buys an item.
-        ItemSlot slot = findSlotByItem(identity);
-        if (slot == null) throw new IllegalArgumentException("Item not found or out of stock.");
-        slot.removeItem();
+        while (true) {
+            ItemSlot slot = findSlotByItem(identity);
+            if (slot == null) return VendingResult.ITEM_UNAVAILABLE;
+            if (slot.tryRemoveItem()) return VendingResult.OK;
+            //^ Another thread emptied the slot in between finding and removing - try the next populated slot.
+        }
+    }
+
+    //: Customer checkout - holding items back for an order until it is paid for.
+    /**
+     * Reserves stock for an order, so it can be dispensed once paid for whatever other orders do in the meantime.
+     * <p>
+     * All or nothing: if any line cannot be fully reserved from its item's unreserved stock, nothing is reserved.
+     * Expired reservations are released first, so an abandoned order cannot hold items back for longer than its timeout.
+     * @param itemIDs      Item ID of each basket line.
+     * @param quantities   How many of each line's item (positive).
+     * @param timeoutNanos How long the items are held before other orders may take them.
+     * @return The reservation; otherwise 'null' if there is not enough unreserved stock for every line.
+     */
+    public Reservation reserve(int[] itemIDs, int[] quantities, long timeoutNanos){
+        this.releaseExpired();
+        Reservation reservation = new Reservation(itemIDs.clone(), quantities.clone(), System.nanoTime() + timeoutNanos);
+        if (!this.reserveLines(reservation)) return null;
+        this.reservations.add(reservation);
+        return reservation;
+    }
+    /**
+     * Releases a reservation's items back to unreserved stock (e.g. order cancelled).
+     * <p>
+     * Does nothing if the reservation was already dispensed, released or has expired.
+     * @param reservation The reservation to release.
+     */
+    public void release(Reservation reservation){
+        if (!reservation.state.compareAndSet(Reservation.OPEN, Reservation.CLOSED)){
+            ItemStorage.awaitReleased(reservation);
+            reservation.state.compareAndSet(Reservation.EXPIRED, Reservation.CLOSED);
+            //^ Items already given back on expiry; only stops it being reserved afresh.
+            return;
+        }
+        this.reservations.remove(reservation);
+        this.giveBack(reservation);
+    }
+    /**
+     * Dispenses every item of a reservation (order paid for) - cannot run out of stock, as nothing else can take reserved items.
+     * <p>
+     * If the reservation expired before it was paid for, its lines are reserved afresh; only then can it fail, when another order took the items meanwhile.
+     * @param reservation The reservation to dispense.
+     * @return 'OK' if every reserved item was dispensed; otherwise 'ITEM_UNAVAILABLE' (nothing dispensed - also if it was already dispensed or released).
+     */
+    public VendingResult dispenseReserved(Reservation reservation){
+        if (reservation.state.compareAndSet(Reservation.OPEN, Reservation.CLOSED)) this.reservations.remove(reservation);
+        else if (!ItemStorage.awaitReleased(reservation) || !reservation.state.compareAndSet(Reservation.EXPIRED, Reservation.CLOSED)) return VendingResult.ITEM_UNAVAILABLE;
+        else {
+            Reservation renewed = new Reservation(reservation.itemIDs, reservation.quantities, reservation.deadline);
+            //^ Never published - dispensed straight away.
+            if (!this.reserveLines(renewed)) return VendingResult.ITEM_UNAVAILABLE;
+            reservation.slots = renewed.slots;
+            reservation.slotQuantities = renewed.slotQuantities;
+            reservation.entries = renewed.entries;
+            //^ Caller (e.g. the journal) sees the slots actually dispensed from.
+        }
+        for (int i = 0; i < reservation.entries; i++) { COUNTS.getAndAdd(this.counts, reservation.slots[i].getSlotNum(), -reservation.slotQuantities[i]); }
+        //^ Reserved items were already taken off the available counts (and item totals) when reserved.
+        this.stockVersion.incrementAndGet();
+        return VendingResult.OK;
+    }
+    /**
+     * Helper method to wait while another thread gives an expired reservation's items back - a handful of counter updates, so spun rather than blocked on.
+     * @param reservation The reservation that is no longer open.
+     * @return 'true' if it expired (and may be reserved afresh); otherwise 'false' (already dispensed or released).
+     */
+    private static boolean awaitReleased(Reservation reservation){
+        int state;
+        while ((state = reservation.state.get()) == Reservation.RELEASING) Thread.onSpinWait();
+        return state == Reservation.EXPIRED;
+    }
+    /**
+     * Helper method to reserve every line of a reservation from unreserved stock, giving back whatever was reserved if a line falls short.
+     * @param reservation The reservation to fill (no entries yet).
+     * @return 'true' if every line was reserved; otherwise 'false' (nothing left reserved).
+     */
+    private boolean reserveLines(Reservation reservation){
+        for (int line = 0; line < reservation.itemIDs.length; line++) {
+            int iD = reservation.itemIDs[line];
+            int remaining = reservation.quantities[line];
+            for (ItemSlot slot : this.slotsByItemID.getOrDefault(iD, List.of())) {
+                //* Usually one slot per item - only spills into the next slot when the first has too few.
+                if (remaining == 0) break;
+                int taken = this.takeAvailable(slot, remaining);
+                if (taken == 0) continue;
+                reservation.add(slot, taken);
+                this.changeStockByID(iD, -taken);
+                remaining -= taken;
+            }
+            if (remaining > 0) {
+                this.giveBack(reservation);
+                return false;
+            }
+        }
+        return true;
+    }
+    /**
+     * Helper method to atomically take up to a number of unreserved items of a slot.
+     * @param slot   The view of the slot.
+     * @param wanted How many items are wanted.
+     * @return How many were taken - fewer if the slot has fewer unreserved items, and none if it is no longer assigned to the view.
+     */
+    private int takeAvailable(ItemSlot slot, int wanted){
+        int slotNum = slot.getSlotNum();
+        int count;
+        int taken;
+        do {
+            count = (int) COUNTS.getVolatile(this.available, slotNum);
+            if (this.slots.get(slotNum) != slot) return 0;
+            taken = Math.min(count, wanted);
+            if (taken == 0) return 0;
+        } while (!COUNTS.compareAndSet(this.available, slotNum, count, count - taken));
+        return taken;
+    }
+    /**
+     * Helper method to return a reservation's items to unreserved stock - only reads the reservation, so never changes one another thread may renew.
+     * @param reservation The reservation whose entries are given back (no longer open, or not yet published).
+     */
+    private void giveBack(Reservation reservation){
+        for (int i = 0; i < reservation.entries; i++) {
+            ItemSlot slot = reservation.slots[i];
+            COUNTS.getAndAdd(this.available, slot.getSlotNum(), reservation.slotQuantities[i]);
+            this.changeStockByID(slot.getItem().getID(), reservation.slotQuantities[i]);
+        }
+    }
+    /**
+     * Helper method to release every reservation past its deadline - a quick emptiness check when there are none.
+     */
+    private void releaseExpired(){
+        if (this.reservations.isEmpty()) return;
+        long now = System.nanoTime();
+        for (Reservation reservation : this.reservations) {
+            if (now - reservation.deadline < 0 || !reservation.state.compareAndSet(Reservation.OPEN, Reservation.RELEASING)) continue;
+            this.reservations.remove(reservation);
+            this.giveBack(reservation);
+            reservation.state.set(Reservation.EXPIRED);
+            //^ Only now may 'this.dispenseReserved' renew it - its entries are no longer being read.
+        }
     }
 
     //: Admin/owner only - assign or unassign entire slot from/to vending machine.
@@ -128,20 +587,70 @@ public class ItemStorage {
      * @param slotNum The slot number to be unassigned.
      * @throws IllegalArgumentException If the slot number does not exist in vending machine or if the slot is already assigned.
      */
-    public void assignSlot(int slotNum, Item item){
-        if (slotNum < 0 || slotNum >= this.maxSlots) throw new IllegalArgumentException("Slot number out of range.");
-        if (this.slots[slotNum] != null) throw new IllegalArgumentException("Slot already assigned.");
-        this.slots[slotNum] = new ItemSlot(this.maxAmount, item);
+    public void assignSlot(int slotNum, Item item){ this.tryAssignSlot(slotNum, item).orThrow(VendingOperation.ASSIGN_SLOT); }
+    /**
+     * Non-throwing version of 'this.assignSlot'.
+     * @param slotNum The slot number to be assigned.
+     * @param item    The item to assign the slot to.
+     * @return 'OK' if assigned; otherwise 'SLOT_OUT_OF_RANGE' or 'SLOT_ASSIGNED'.
+     */
+    public VendingResult tryAssignSlot(int slotNum, Item item){
+        if (slotNum < 0 || slotNum >= this.maxSlots) return VendingResult.SLOT_OUT_OF_RANGE;
+        ReentrantLock lock = this.lockFor(slotNum);
+        lock.lock();
+        try {
+            if (this.slots.get(slotNum) != null) return VendingResult.SLOT_ASSIGNED;
+            ItemSlot slot = new ItemSlot(this, slotNum, item);
+            this.slotsByItemID.compute(item.getID(), (iD, itemSlots) -> {
+                //* 'compute' is atomic per item ID, so assigning and unassigning slots of the same item cannot interleave.
+                if (itemSlots == null) {
+                    itemSlots = new CopyOnWriteArrayList<>();
+                    this.stockByItemID.put(iD, new AtomicInteger(0));
+                    //^ New slots are always empty so total stock starts at zero.
+                }
+                itemSlots.add(slot);
+                return itemSlots;
+            });
+            this.itemIDs[slotNum] = item.getID();
+            this.slots.set(slotNum, slot);
+            //^ Set last - publishes the item ID column entry to threads reading the view.
+            this.stockVersion.incrementAndGet();
+            return VendingResult.OK;
+        }
+        finally { lock.unlock(); }
     }
     /**
      * Unassigns a slot from the vending machine.
      * Can only be performed if the slot is empty.
      * @param slotNum The slot number to be unassigned.
-     * @throws IllegalArgumentException If the slot number does not exist in vending machine or if the slot is not empty.
+     * @throws IllegalArgumentException If the slot number does not exist in vending machine, the slot is already unassigned, or if the slot is not empty.
+     */
+    public void unassignSlot(int slotNum){ this.tryUnassignSlot(slotNum).orThrow(VendingOperation.UNASSIGN_SLOT); }
+    /**
+     * Non-throwing version of 'this.unassignSlot'.
+     * @param slotNum The slot number to be unassigned.
+     * @return 'OK' if unassigned; otherwise 'SLOT_OUT_OF_RANGE', 'SLOT_UNASSIGNED' or 'SLOT_NOT_EMPTY'.
      */
-    public void unassignSlot(int slotNum){
-        if (slotNum < 0 || slotNum >= this.maxSlots) throw new IllegalArgumentException("Slot number out of range.");
-        if (!this.slots[slotNum].isEmpty()) throw new IllegalArgumentException("Cannot unassign a slot that physically have items inside it.");
-        this.slots[slotNum] = null;
+    public VendingResult tryUnassignSlot(int slotNum){
+        if (slotNum < 0 || slotNum >= this.maxSlots) return VendingResult.SLOT_OUT_OF_RANGE;
+        ReentrantLock lock = this.lockFor(slotNum);
+        lock.lock();
+        try {
+            ItemSlot slot = this.slots.get(slotNum);
+            if (slot == null) return VendingResult.SLOT_UNASSIGNED;
+            if (!slot.isEmpty()) return VendingResult.SLOT_NOT_EMPTY;
+            //^ Slot cannot be restocked in between as restocking needs the same lock; customers cannot take from an empty slot.
+            this.slots.set(slotNum, null);
+            this.slotsByItemID.compute(slot.getItem().getID(), (iD, itemSlots) -> {
+                itemSlots.remove(slot);
+                if (!itemSlots.isEmpty()) return itemSlots;
+                //* Item no longer offered by the vending machine, hence removed from both indexes.
+                this.stockByItemID.remove(iD);
+                return null;
+            });
+            this.stockVersion.incrementAndGet();
+            return VendingResult.OK;
+        }
+        finally { lock.unlock(); }
     }
 }
@@ -0,0 +1,482 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only log of 'JournalRecord's, so a vending machine can be rebuilt after a power cut.
+ * <p>
+ * Each record is framed as [payload length][CRC32C of payload][payload]. A power cut can only tear the last frame; when the journal is opened, reading stops at the first incomplete or corrupt frame and the newest segment is truncated there.
+ * <p>
+ * 'append' only returns once its record is on disk (fsync), but uses group commit: while one caller is writing and syncing, records from other callers are gathered in a buffer and then written and synced together by one of them.
+ * Therefore, several threads (e.g. coin acceptor and touchscreen) share one fsync instead of queuing for one each.
+ * <p>
+ * Stored as segment files named after the journal path and the sequence number (1-based) of their first record, e.g. 'machine.journal.1', 'machine.journal.10001'.
+ * Every so many records the vending machine starts a new segment and hands over a 'Snapshot' of everything before it ('compact'); a background thread writes it and deletes the segments it no longer needs.
+ * Startup then maps the snapshot and only replays the records after it, so it takes about as long however long the vending machine has been running.
+ * <p>
+ * The snapshot before the latest is kept too ('machine.journal.snapshot.previous'), and only segments both snapshots cover are deleted.
+ * Therefore, if the latest snapshot is found corrupt at startup, the previous one and the segments after it still rebuild the vending machine.
+ * <p>
+ * Failing to snapshot or compact never fails an append (every record is still in the segments); it is handed to the journal's 'DurabilityFailureHandler' instead.
+ */
+public class Journal implements AutoCloseable {
+    private static final int FRAME_HEADER_BYTES = Integer.BYTES * 2;
+    //^ Payload length and checksum.
+    private static final int INITIAL_BUFFER_BYTES = 4096;
+    private static final int DEFAULT_SNAPSHOT_INTERVAL = 2_000;
+    //^ Records between snapshots - replaying this many takes milliseconds even before the JIT compiler kicks in, while a snapshot of even a large vending machine is only tens of kilobytes.
+
+    private final Path path;
+    private final Path snapshotPath;
+    private final Path previousSnapshotPath;
+    private final int snapshotInterval;
+    private final DurabilityFailureHandler failureHandler;
+    //^ Told about snapshots and compactions that failed.
+    private final List<JournalRecord> recoveredRecords;
+    //^ Snapshot records followed by the records after the snapshot when the journal was opened - to be replayed once.
+    private final AtomicBoolean compacting = new AtomicBoolean();
+    private volatile Thread compaction;
+    private volatile long snapshotSequence;
+    //^ Records covered by the latest valid snapshot on disk.
+    private volatile long retainedSequence;
+    //^ Records covered by both snapshots kept on disk - segments wholly within it are deleted; 0 while there are not two valid snapshots.
+    private final boolean snapshotRejected;
+    //^ Whether the latest snapshot failed validation when opened - explains any records found missing.
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition durableChanged = this.lock.newCondition();
+    //: Guarded by 'this.lock'.
+    private FileChannel channel;
+    //^ The newest segment - swapped by 'this.startSegment', never while a batch is being written.
+    private final List<Long> segmentStarts = new ArrayList<>();
+    //^ First sequence number of each segment on disk, oldest first.
+    private ByteBuffer pending = ByteBuffer.allocate(INITIAL_BUFFER_BYTES);
+    //^ Frames appended but not yet being written.
+    private ByteBuffer spare = ByteBuffer.allocate(INITIAL_BUFFER_BYTES);
+    //^ Swapped with 'this.pending' by the caller doing the write, so others can keep appending meanwhile.
+    private long appendedCount;
+    private long durableCount;
+    //^ Sequence number of the last record appended, and of the last record known to be on disk; an 'append' returns once the latter reaches its own record.
+    private boolean writing;
+    private IOException failure;
+    //^ Set if a write or sync failed - the journal can no longer promise durability, so every later append fails too.
+    private boolean closed;
+    //: Only touched by the compaction thread (one at a time) once opened.
+    private boolean latestSnapshotValid;
+    //^ Whether the file at 'this.snapshotPath' is valid - only a valid one is kept as the previous snapshot.
+    private long previousSnapshotSequence;
+    //^ Records covered by the valid snapshot at 'this.previousSnapshotPath'; -1 if there is none.
+
+    /**
+     * Opens (or creates) a journal, snapshotting every 2,000 records and reporting failed snapshots to the thread's uncaught exception handler.
+     * @param path The journal path - segment and snapshot files are named after it.
+     * @return The opened journal, positioned at its end.
+     * @throws UncheckedIOException If the journal cannot be opened or read.
+     * @throws IllegalStateException If records neither snapshot nor any segment holds are missing.
+     */
+    public static Journal open(Path path) { return Journal.open(path, DEFAULT_SNAPSHOT_INTERVAL, DurabilityFailureHandler.uncaught()); }
+    /**
+     * Opens (or creates) a journal, snapshotting every 2,000 records.
+     * @param path           The journal path - segment and snapshot files are named after it.
+     * @param failureHandler Told about every snapshot or compaction that failed.
+     * @return The opened journal, positioned at its end.
+     * @throws UncheckedIOException If the journal cannot be opened or read.
+     * @throws IllegalStateException If records neither snapshot nor any segment holds are missing.
+     */
+    public static Journal open(Path path, DurabilityFailureHandler failureHandler) { return Journal.open(path, DEFAULT_SNAPSHOT_INTERVAL, failureHandler); }
+    /**
+     * Opens (or creates) a journal, reporting failed snapshots to the thread's uncaught exception handler.
+     * @param path             The journal path - segment and snapshot files are named after it.
+     * @param snapshotInterval How many records to append between snapshots.
+     * @return The opened journal, positioned at its end.
+     * @throws IllegalArgumentException If the snapshot interval is not positive.
+     * @throws UncheckedIOException If the journal cannot be opened or read.
+     * @throws IllegalStateException If records neither snapshot nor any segment holds are missing.
+     */
+    public static Journal open(Path path, int snapshotInterval) { return Journal.open(path, snapshotInterval, DurabilityFailureHandler.uncaught()); }
+    /**
+     * Opens (or creates) a journal: maps its snapshot, reads the valid records after it and truncates any torn record at its end.
+     * <p>
+     * If the latest snapshot is corrupt, the previous snapshot is mapped instead and the records after it are replayed.
+     * @param path             The journal path - segment and snapshot files are named after it.
+     * @param snapshotInterval How many records to append between snapshots.
+     * @param failureHandler   Told about every snapshot or compaction that failed.
+     * @return The opened journal, positioned at its end.
+     * @throws IllegalArgumentException If the snapshot interval is not positive.
+     * @throws UncheckedIOException If the journal cannot be opened or read.
+     * @throws IllegalStateException If records neither snapshot nor any segment holds are missing (e.g. both snapshots corrupt) - the message names what to restore from a backup.
+     */
+    public static Journal open(Path path, int snapshotInterval, DurabilityFailureHandler failureHandler) {
+        if (snapshotInterval <= 0) throw new IllegalArgumentException("Snapshot interval must be positive.");
+        try { return new Journal(path.toAbsolutePath(), snapshotInterval, failureHandler); }
+        catch (IOException e) { throw new UncheckedIOException(STR."Cannot open journal \{path}", e); }
+    }
+
+    /**
+     * Constructor reads the snapshot and every valid record after it.
+     * <p>
+     * Segments wholly covered by the snapshot are not read at all (a crash may have stopped the background thread before deleting them).
+     * @param path             The absolute journal path.
+     * @param snapshotInterval How many records to append between snapshots.
+     * @param failureHandler   Told about every snapshot or compaction that failed.
+     * @throws IOException If reading or truncating fails.
+     */
+    private Journal(Path path, int snapshotInterval, DurabilityFailureHandler failureHandler) throws IOException {
+        this.path = path;
+        this.failureHandler = failureHandler;
+        this.snapshotPath = path.resolveSibling(STR."\{path.getFileName()}.snapshot");
+        this.previousSnapshotPath = path.resolveSibling(STR."\{path.getFileName()}.snapshot.previous");
+        this.snapshotInterval = snapshotInterval;
+        Snapshot latest = Snapshot.read(this.snapshotPath);
+        Snapshot previous = Snapshot.read(this.previousSnapshotPath);
+        this.latestSnapshotValid = latest != null;
+        this.snapshotRejected = latest == null && Files.exists(this.snapshotPath);
+        this.previousSnapshotSequence = previous == null ? -1 : previous.sequence();
+        Snapshot snapshot = latest != null ? latest : previous;
+        //^ Falls back on the previous snapshot - the segments after it are only deleted once a newer snapshot pair covers them.
+        this.snapshotSequence = snapshot == null ? 0 : snapshot.sequence();
+        this.retainedSequence = latest != null && previous != null ? Math.min(latest.sequence(), previous.sequence()) : 0;
+        List<JournalRecord> records = new ArrayList<>(snapshot == null ? List.of() : snapshot.records());
+
+        this.segmentStarts.addAll(this.listSegments());
+        if (this.segmentStarts.isEmpty()) this.segmentStarts.add(this.snapshotSequence + 1);
+        if (this.segmentStarts.getFirst() > this.snapshotSequence + 1) throw this.missingRecords(this.snapshotSequence + 1, this.segmentStarts.getFirst() - 1);
+        //^ E.g. snapshots deleted by hand - the vending machine cannot be rebuilt.
+        long sequence = this.segmentStarts.getFirst() - 1;
+        for (int i = 0; i < this.segmentStarts.size(); i++) {
+            long start = this.segmentStarts.get(i);
+            boolean newest = i == this.segmentStarts.size() - 1;
+            if (!newest && this.segmentStarts.get(i + 1) - 1 <= this.snapshotSequence) {
+                sequence = this.segmentStarts.get(i + 1) - 1;
+                continue;
+            }
+            if (start != sequence + 1) throw this.missingRecords(sequence + 1, start - 1);
+            FileChannel segment = FileChannel.open(this.segmentPath(start), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            List<JournalRecord> segmentRecords = Journal.readSegment(segment);
+            for (JournalRecord record : segmentRecords) if (++sequence > this.snapshotSequence) records.add(record);
+            if (newest) this.channel = segment;
+            else segment.close();
+        }
+        if (sequence < this.snapshotSequence) throw this.missingRecords(sequence + 1, this.snapshotSequence);
+        //^ Otherwise new records would reuse sequence numbers the snapshot already covers (and be skipped by the next startup).
+        this.appendedCount = sequence;
+        this.durableCount = sequence;
+        this.recoveredRecords = Collections.unmodifiableList(records);
+        if (this.segmentStarts.size() > 1 && this.segmentStarts.get(1) - 1 <= this.retainedSequence) this.startCompaction(null);
+        //^ Leftover covered segments are deleted in the background rather than delaying startup.
+    }
+    /**
+     * Helper method for the failure to open a journal with records missing, naming what to restore.
+     * @param from First missing sequence number.
+     * @param to   Last missing sequence number.
+     * @return The exception to throw.
+     */
+    private IllegalStateException missingRecords(long from, long to) {
+        String message = STR."Journal records \{from} to \{to} are missing.";
+        if (this.snapshotRejected) message += STR." Snapshot \{this.snapshotPath} is corrupt and no valid previous snapshot reaches the remaining segments - restore either snapshot, or the segments holding those records, from a backup.";
+        else message += STR." Restore the segments holding those records (or a snapshot covering them) from a backup.";
+        return new IllegalStateException(message);
+    }
+    /**
+     * Helper method to find the segment files on disk.
+     * @return First sequence number of each segment, oldest first.
+     * @throws IOException If the directory cannot be listed.
+     */
+    private List<Long> listSegments() throws IOException {
+        String prefix = STR."\{this.path.getFileName()}.";
+        List<Long> starts = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(this.path.getParent(), STR."\{prefix}[0-9]*")) {
+            for (Path file : files) {
+                String suffix = file.getFileName().toString().substring(prefix.length());
+                if (suffix.matches("[0-9]+")) starts.add(Long.parseLong(suffix));
+                //^ Skips look-alikes such as 'machine.journal.1.bak'.
+            }
+        }
+        Collections.sort(starts);
+        return starts;
+    }
+    /**
+     * Helper method to get a segment's file.
+     * @param start Sequence number of the segment's first record.
+     * @return The segment file.
+     */
+    private Path segmentPath(long start) { return this.path.resolveSibling(STR."\{this.path.getFileName()}.\{start}"); }
+    /**
+     * Helper method to read every valid record from a segment, truncating any torn record at its end.
+     * @param channel The open segment file; left positioned at its end.
+     * @return The read records, oldest first.
+     * @throws IOException If reading or truncating fails.
+     */
+    private static List<JournalRecord> readSegment(FileChannel channel) throws IOException {
+        List<JournalRecord> records = new ArrayList<>();
+        long size = channel.size();
+        ByteBuffer contents = ByteBuffer.allocate(Math.toIntExact(size));
+        while (contents.hasRemaining() && channel.read(contents, contents.position()) >= 0) {}
+        //^ Read whole rather than frame by frame - two system calls per record would dominate startup.
+        //^ Not mapped as a mapped file cannot be truncated on every platform.
+        int position = 0;
+        while (position + FRAME_HEADER_BYTES <= size) {
+            int length = contents.getInt(position);
+            int checksum = contents.getInt(position + Integer.BYTES);
+            if (length <= 0 || position + FRAME_HEADER_BYTES + (long) length > size) break;
+            //^ Torn frame - the power cut happened while it was being written.
+            byte[] payload = new byte[length];
+            contents.get(position + FRAME_HEADER_BYTES, payload);
+            CRC32C crc = new CRC32C();
+            crc.update(payload);
+            if ((int) crc.getValue() != checksum) break;
+            records.add(JournalRecord.readFrom(new DataInputStream(new ByteArrayInputStream(payload))));
+            position += FRAME_HEADER_BYTES + length;
+        }
+        if (position != size) {
+            channel.truncate(position);
+            channel.force(false);
+        }
+        channel.position(position);
+        return records;
+    }
+
+    /**
+     * Getter method for the records that were in the file when it was opened.
+     * @return Read-only list of recovered records, oldest first.
+     */
+    public List<JournalRecord> getRecoveredRecords() { return this.recoveredRecords; }
+    /**
+     * Getter method for the sequence number of the last appended record.
+     * @return How many records were ever appended (including those now only in the snapshot).
+     */
+    public long getSequence() {
+        this.lock.lock();
+        try { return this.appendedCount; }
+        finally { this.lock.unlock(); }
+    }
+    /**
+     * Checks if enough records were appended since the latest snapshot that another is worth taking.
+     * @return True if a snapshot is due and none is being written.
+     */
+    public boolean isSnapshotDue() { return !this.compacting.get() && this.getSequence() - this.snapshotSequence >= this.snapshotInterval; }
+
+    /**
+     * Starts a new segment, so the records before it can be deleted once a snapshot covers them.
+     * <p>
+     * Called right before taking a snapshot, so segments line up with snapshots and startup replays at most one segment.
+     * @return Sequence number of the last record before the new segment.
+     * @throws UncheckedIOException If the old segment cannot be closed or the new one created, or an earlier write failed.
+     * @throws IllegalStateException If the journal is closed.
+     */
+    public long startSegment() {
+        this.lock.lock();
+        try {
+            while (this.writing) this.durableChanged.awaitUninterruptibly();
+            //^ Every appended record is on disk once no batch is being written.
+            this.checkUsable();
+            long start = this.appendedCount + 1;
+            if (this.segmentStarts.getLast() != start) {
+                FileChannel next = FileChannel.open(this.segmentPath(start), StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                this.channel.close();
+                this.channel = next;
+                this.segmentStarts.add(start);
+            }
+            return this.appendedCount;
+        }
+        catch (IOException e) { throw new UncheckedIOException("Cannot start journal segment", e); }
+        finally { this.lock.unlock(); }
+    }
+    /**
+     * Non-throwing version of 'this.startSegment' - a failure is handed to the failure handler.
+     * @return Sequence number of the last record before the new segment; -1 if it could not be started (the records carry on in the current segment).
+     */
+    public long tryStartSegment() {
+        try { return this.startSegment(); }
+        catch (UncheckedIOException | IllegalStateException e) {
+            this.failureHandler.handle(e);
+            return -1;
+        }
+    }
+    /**
+     * Hands over a snapshot; a background thread writes it (keeping the snapshot before it as the previous one) and deletes the segments both cover.
+     * <p>
+     * The caller must make sure the snapshot reflects exactly the first 'snapshot.sequence()' records (see 'VendingMachine').
+     * Does nothing if a snapshot is already being written.
+     * @param snapshot The snapshot.
+     */
+    public void compact(Snapshot snapshot) { this.startCompaction(snapshot); }
+    /**
+     * Helper method to start the background compaction thread.
+     * @param snapshot The snapshot to write first; 'null' to only delete segments the current snapshots cover.
+     */
+    private void startCompaction(Snapshot snapshot) {
+        if (!this.compacting.compareAndSet(false, true)) return;
+        Thread thread = new Thread(() -> {
+            try {
+                if (snapshot != null) {
+                    boolean keepLatest = this.latestSnapshotValid;
+                    snapshot.write(this.snapshotPath, keepLatest ? this.previousSnapshotPath : null);
+                    //^ Verified and durable (directory synced) once written - only then are any segments deleted.
+                    //^ A corrupt latest snapshot is replaced rather than kept, so the valid previous one stays.
+                    if (keepLatest) this.previousSnapshotSequence = this.snapshotSequence;
+                    this.latestSnapshotValid = true;
+                    this.snapshotSequence = snapshot.sequence();
+                    this.retainedSequence = Math.max(this.previousSnapshotSequence, 0);
+                }
+                this.deleteCoveredSegments();
+            }
+            catch (IOException | RuntimeException e) { this.failureHandler.handle(e); }
+            //^ Not fatal - every record is still in the segments, so startup just replays more of them.
+            finally { this.compacting.set(false); }
+        }, "journal-compaction");
+        thread.setDaemon(true);
+        this.compaction = thread;
+        thread.start();
+    }
+    /**
+     * Helper method to delete the segments whose every record is covered by both snapshots - oldest first, so the remaining segments stay contiguous after a crash.
+     * @throws IOException If a segment cannot be deleted.
+     */
+    private void deleteCoveredSegments() throws IOException {
+        while (true) {
+            long start;
+            this.lock.lock();
+            try {
+                if (this.segmentStarts.size() < 2 || this.segmentStarts.get(1) - 1 > this.retainedSequence) return;
+                start = this.segmentStarts.getFirst();
+            }
+            finally { this.lock.unlock(); }
+            Files.deleteIfExists(this.segmentPath(start));
+            this.lock.lock();
+            try { this.segmentStarts.removeFirst(); }
+            finally { this.lock.unlock(); }
+        }
+    }
+
+    /**
+     * Appends a record and waits until it is on disk.
+     * <p>
+     * Encoding happens before taking the lock; only copying the frame into the buffer is done under it.
+     * @param record The record to append.
+     * @throws UncheckedIOException If writing to the journal failed - this time or any time before (every later append fails too).
+     * @throws IllegalStateException If the journal is closed.
+     */
+    public void append(JournalRecord record) {
+        byte[] payload = Journal.encode(record);
+        CRC32C crc = new CRC32C();
+        crc.update(payload);
+
+        this.lock.lock();
+        try {
+            this.checkUsable();
+            if (this.pending.remaining() < FRAME_HEADER_BYTES + payload.length) this.pending = Journal.grow(this.pending, FRAME_HEADER_BYTES + payload.length);
+            this.pending.putInt(payload.length).putInt((int) crc.getValue()).put(payload);
+            long sequence = ++this.appendedCount;
+            while (this.durableCount < sequence) {
+                if (this.writing) {
+                    this.durableChanged.awaitUninterruptibly();
+                    //^ Another caller is writing; its batch or the next one will include this record.
+                    this.checkUsable();
+                    continue;
+                }
+                this.writeBatch();
+            }
+        }
+        finally { this.lock.unlock(); }
+    }
+    /**
+     * Writes and syncs every pending frame as one batch - must be called holding 'this.lock', which is released during the disk I/O.
+     */
+    private void writeBatch() {
+        ByteBuffer batch = this.pending;
+        this.pending = this.spare;
+        this.spare = batch;
+        //^ Others append into the other buffer while this one is written.
+        long batchEnd = this.appendedCount;
+        FileChannel channel = this.channel;
+        this.writing = true;
+        this.lock.unlock();
+        IOException error = null;
+        try {
+            batch.flip();
+            while (batch.hasRemaining()) channel.write(batch);
+            channel.force(false);
+            //^ File contents only - no need to sync metadata such as modification time.
+        }
+        catch (IOException e) { error = e; }
+        finally {
+            batch.clear();
+            this.lock.lock();
+            this.writing = false;
+            if (error == null) this.durableCount = batchEnd;
+            else this.failure = error;
+            this.durableChanged.signalAll();
+        }
+        this.checkUsable();
+    }
+    /**
+     * Helper method to stop appends after the journal is closed or failed.
+     * @throws UncheckedIOException If a write failed.
+     * @throws IllegalStateException If the journal is closed.
+     */
+    private void checkUsable() {
+        if (this.failure != null) throw new UncheckedIOException("Journal write failed - vending machine changes can no longer be recorded.", this.failure);
+        if (this.closed) throw new IllegalStateException("Journal is closed.");
+    }
+
+    /**
+     * Waits for any compaction and write in progress, then closes the newest segment.
+     * @throws UncheckedIOException If closing fails.
+     */
+    @Override
+    public void close() {
+        Thread compaction = this.compaction;
+        if (compaction != null) {
+            try { compaction.join(); }
+            catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+        }
+        this.lock.lock();
+        try {
+            while (this.writing) this.durableChanged.awaitUninterruptibly();
+            this.closed = true;
+            this.channel.close();
+        }
+        catch (IOException e) { throw new UncheckedIOException("Cannot close journal", e); }
+        finally { this.lock.unlock(); }
+    }
+
+    /**
+     * Helper method to encode a record's payload.
+     * @param record The record.
+     * @return The encoded bytes.
+     */
+    private static byte[] encode(JournalRecord record) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(32);
+        try { record.writeTo(new DataOutputStream(bytes)); }
+        catch (IOException e) { throw new UncheckedIOException(e); }
+        //^ Only thrown for items of unknown subclasses - writing to memory itself cannot fail.
+        return bytes.toByteArray();
+    }
+    /**
+     * Helper method to grow a buffer so it can fit more bytes.
+     * @param buffer The buffer (in write mode).
+     * @param needed How many more bytes must fit.
+     * @return A larger buffer with the same contents.
+     */
+    private static ByteBuffer grow(ByteBuffer buffer, int needed) {
+        ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + needed));
+        buffer.flip();
+        return larger.put(buffer);
+    }
+}
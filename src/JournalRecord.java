@@ -0,0 +1,311 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * One mutation of a vending machine, as written to its 'Journal'.
+ * <p>
+ * Sealed so every kind of record is known here; each kind is a small immutable record with its own tag byte and binary layout.
+ * Replaying every record in order (see 'VendingMachine') rebuilds the coin storage, item storage, state and any open customer session.
+ * <p>
+ * Customer payments are not separate records: a coin deposited while the vending machine is PAYING can only be the customer's, so replay credits it to the session.
+ * Likewise the amount to pay is recalculated from the basket when the state becomes PAYING, and the session ends when the state returns to IDLE.
+ * <p>
+ * Snapshots ('Snapshot') are stored as records too - mostly compact 'SlotRestored' and 'CoinsDeposited' ones - so they are replayed the same way as the journal.
+ */
+public sealed interface JournalRecord {
+    //: Tag bytes - must never be reused or renumbered as old journals would be misread.
+    byte SPECIFICATION = 1;
+    byte STATE_CHANGED = 2;
+    byte COINS_DEPOSITED = 3;
+    byte COINS_WITHDRAWN = 4;
+    byte CHANGE_WITHDRAWN = 5;
+    byte ITEM_STOCKED = 6;
+    byte ITEM_REMOVED = 7;
+    byte ITEM_DISPENSED = 8;
+    byte SLOT_ASSIGNED = 9;
+    byte SLOT_UNASSIGNED = 10;
+    byte BASKET_CHANGED = 11;
+    byte SLOT_RESTORED = 12;
+    byte RESERVATION_DISPENSED = 13;
+
+    //: Item subclass tags for 'SlotAssigned'.
+    byte DRINK = 0;
+    byte SNACK = 1;
+    byte MISCELLANEOUS = 2;
+
+    /**
+     * Writes the record's tag byte and fields.
+     * @param out Where to write the record.
+     * @throws IOException If writing fails.
+     */
+    void writeTo(DataOutput out) throws IOException;
+
+    /**
+     * Reads one record written by 'writeTo'.
+     * @param in Where to read the record from.
+     * @return The read record.
+     * @throws IOException If reading fails or the tag byte is unknown.
+     */
+    static JournalRecord readFrom(DataInput in) throws IOException {
+        byte tag = in.readByte();
+        return switch (tag) {
+            case SPECIFICATION -> {
+                int maxSlots = in.readInt();
+                int slotSize = in.readInt();
+                int coinTypes = in.readInt();
+                Map<CoinGBP, Integer> coinMaxes = new EnumMap<>(CoinGBP.class);
+                for (int i = 0; i < coinTypes; i++) coinMaxes.put(CoinGBP.values()[in.readByte()], in.readInt());
+                yield new Specification(maxSlots, slotSize, coinMaxes);
+            }
+            case STATE_CHANGED -> new StateChanged(VendingMachineState.values()[in.readByte()]);
+            case COINS_DEPOSITED -> new CoinsDeposited(CoinGBP.values()[in.readByte()], in.readInt());
+            case COINS_WITHDRAWN -> new CoinsWithdrawn(CoinGBP.values()[in.readByte()], in.readInt());
+            case CHANGE_WITHDRAWN -> {
+                int[] plan = new int[CoinGBP.values().length];
+                for (int i = 0; i < plan.length; i++) plan[i] = in.readInt();
+                yield new ChangeWithdrawn(plan);
+            }
+            case ITEM_STOCKED -> new ItemStocked(in.readInt());
+            case ITEM_REMOVED -> new ItemRemoved(in.readInt());
+            case ITEM_DISPENSED -> new ItemDispensed(in.readInt());
+            case SLOT_ASSIGNED -> new SlotAssigned(in.readInt(), JournalRecord.readItem(in));
+            case SLOT_UNASSIGNED -> new SlotUnassigned(in.readInt());
+            case BASKET_CHANGED -> new BasketChanged(in.readInt(), in.readInt());
+            case SLOT_RESTORED -> new SlotRestored(in.readInt(), JournalRecord.readItem(in), in.readInt());
+            case RESERVATION_DISPENSED -> {
+                int entries = in.readInt();
+                if (entries < 0) throw new IOException(STR."Negative reservation entry count \{entries}");
+                int[] slotNums = new int[entries];
+                int[] itemIDs = new int[entries];
+                int[] quantities = new int[entries];
+                for (int i = 0; i < entries; i++) {
+                    slotNums[i] = in.readInt();
+                    itemIDs[i] = in.readInt();
+                    quantities[i] = in.readInt();
+                }
+                yield new ReservationDispensed(slotNums, itemIDs, quantities);
+            }
+            default -> throw new IOException(STR."Unknown journal record tag \{tag}");
+        };
+    }
+
+    /**
+     * Helper method to write an item's subclass, common attributes and extra attribute.
+     * <p>
+     * Also used by the socket protocol ('VendingProtocol') so items cross the wire in the same layout.
+     * @param out  Where to write the item.
+     * @param item The item.
+     * @throws IOException If writing fails or the item subclass is unknown.
+     */
+    static void writeItem(DataOutput out, Item item) throws IOException {
+        out.writeByte(switch (item) {
+            case Drink drink -> DRINK;
+            case Snack snack -> SNACK;
+            default -> MISCELLANEOUS;
+        });
+        out.writeUTF(item.getName());
+        out.writeInt(item.getID());
+        out.writeLong(item.getPrice());
+        switch (item) {
+            case Drink drink -> out.writeInt(drink.getVolume());
+            case Snack snack -> out.writeInt(snack.getWeight());
+            case MiscellaneousItem miscellaneousItem -> out.writeUTF(miscellaneousItem.getDescription());
+            default -> throw new IOException(STR."Cannot journal item of type \{item.getClass().getSimpleName()}");
+        }
+    }
+    /**
+     * Helper method to read an item written by 'writeItem'.
+     * @param in Where to read the item from.
+     * @return The item.
+     * @throws IOException If reading fails or the item kind is unknown.
+     */
+    static Item readItem(DataInput in) throws IOException {
+        byte kind = in.readByte();
+        String name = in.readUTF();
+        int iD = in.readInt();
+        long price = in.readLong();
+        return switch (kind) {
+            case DRINK -> new Drink(name, iD, price, in.readInt());
+            case SNACK -> new Snack(name, iD, price, in.readInt());
+            case MISCELLANEOUS -> new MiscellaneousItem(name, iD, price, in.readUTF());
+            default -> throw new IOException(STR."Unknown item kind \{kind} in journal");
+        };
+        //^ Built directly (not via 'ItemFactory') as the item was already validated when first assigned.
+    }
+
+    /**
+     * First record of every journal - which vending machine it belongs to.
+     * @param maxSlots  Number of item slots.
+     * @param slotSize  Capacity of each item slot.
+     * @param coinMaxes Supported coin types and their capacities.
+     */
+    record Specification(int maxSlots, int slotSize, Map<CoinGBP, Integer> coinMaxes) implements JournalRecord {
+        @Override
+        public void writeTo(DataOutput out) throws IOException {
+            out.writeByte(SPECIFICATION);
+            out.writeInt(this.maxSlots);
+            out.writeInt(this.slotSize);
+            out.writeInt(this.coinMaxes.size());
+            for (Map.Entry<CoinGBP, Integer> coinMax : this.coinMaxes.entrySet()) {
+                out.writeByte(coinMax.getKey().ordinal());
+                out.writeInt(coinMax.getValue());
+            }
+        }
+    }
+    /**
+     * Vending machine changed state.
+     * @param state The new state.
+     */
+    record StateChanged(VendingMachineState state) implements JournalRecord {
+        @Override
+        public void writeTo(DataOutput out) throws IOException {
+            out.writeByte(STATE_CHANGED);
+            out.writeByte(this.state.ordinal());
+        }
+    }
+    /**
+     * Coins of one type went into the coin storage (customer payment or admin deposit).
+     * @param coin  The coin type.
+     * @param count How many were deposited.
+     */
+    record CoinsDeposited(CoinGBP coin, int count) implements JournalRecord {
+        @Override
+        public void writeTo(DataOutput out) throws IOException {
+            out.writeByte(COINS_DEPOSITED);
+            out.writeByte(this.coin.ordinal());
+            out.writeInt(this.count);
+        }
+    }
+    /**
+     * Coins of one type came out of the coin storage (admin withdrawal or a rejected coin).
+     * @param coin  The coin type.
+     * @param count How many were withdrawn.
+     */
+    record CoinsWithdrawn(CoinGBP coin, int count) implements JournalRecord {
+        @Override
+        public void writeTo(DataOutput out) throws IOException {
+            out.writeByte(COINS_WITHDRAWN);
+            out.writeByte(this.coin.ordinal());
+            out.writeInt(this.count);
+        }
+    }
+    /**
+     * A batch of coins was paid out at once (customer change/refund).
+     * @param plan How many of each coin type, indexed by 'CoinGBP.ordinal()'.
+     */
+    record ChangeWithdrawn(int[] plan) implements JournalRecord {
+        @Override
+        public void writeTo(DataOutput out) throws IOException {
+            out.writeByte(CHANGE_WITHDRAWN);
+            for (int count : this.plan) out.writeInt(count);
+        }
+    }
+    /**
+     * Admin stocked one item into a slot.
+     * @param slotNum The slot number.
+     */
+    record ItemStocked(int slotNum) implements JournalRecord {
+        @Override
+        public void writeTo(DataOutput out) throws IOException {
+            out.writeByte(ITEM_STOCKED);
+            out.writeInt(this.slotNum);
+        }
+    }
+    /**
+     * Admin removed one item from a slot.
+     * @param slotNum The slot number.
+     */
+    record ItemRemoved(int slotNum) implements JournalRecord {
+        @Override
+        public void writeTo(DataOutput out) throws IOException {
+            out.writeByte(ITEM_REMOVED);
+            out.writeInt(this.slotNum);
+        }
+    }
+    /**
+     * One item was dispensed to the customer.
+     * @param iD The item ID.
+     */
+    record ItemDispensed(int iD) implements JournalRecord {
+        @Override
+        public void writeTo(DataOutput out) throws IOException {
+            out.writeByte(ITEM_DISPENSED);
+            out.writeInt(this.iD);
+        }
+    }
+    /**
+     * A customer's whole reserved order was dispensed at once - one record per order instead of one per item.
+     * <p>
+     * Names the slots the items came from, so replay takes them from the same slots (not whichever slot an item ID is found in first).
+     * @param slotNums   Slot of each entry.
+     * @param itemIDs    Item ID of each entry (the slot's item).
+     * @param quantities How many items each entry dispensed from its slot.
+     */
+    record ReservationDispensed(int[] slotNums, int[] itemIDs, int[] quantities) implements JournalRecord {
+        @Override
+        public void writeTo(DataOutput out) throws IOException {
+            out.writeByte(RESERVATION_DISPENSED);
+            out.writeInt(this.slotNums.length);
+            for (int i = 0; i < this.slotNums.length; i++) {
+                out.writeInt(this.slotNums[i]);
+                out.writeInt(this.itemIDs[i]);
+                out.writeInt(this.quantities[i]);
+            }
+        }
+    }
+    /**
+     * Admin assigned an item to a slot.
+     * @param slotNum The slot number.
+     * @param item    The assigned item.
+     */
+    record SlotAssigned(int slotNum, Item item) implements JournalRecord {
+        @Override
+        public void writeTo(DataOutput out) throws IOException {
+            out.writeByte(SLOT_ASSIGNED);
+            out.writeInt(this.slotNum);
+            JournalRecord.writeItem(out, this.item);
+        }
+    }
+    /**
+     * Admin unassigned a slot.
+     * @param slotNum The slot number.
+     */
+    record SlotUnassigned(int slotNum) implements JournalRecord {
+        @Override
+        public void writeTo(DataOutput out) throws IOException {
+            out.writeByte(SLOT_UNASSIGNED);
+            out.writeInt(this.slotNum);
+        }
+    }
+    /**
+     * Customer's basket now holds a new quantity of an item.
+     * @param iD       The item ID.
+     * @param quantity The new quantity; zero if removed from the basket.
+     */
+    record BasketChanged(int iD, int quantity) implements JournalRecord {
+        @Override
+        public void writeTo(DataOutput out) throws IOException {
+            out.writeByte(BASKET_CHANGED);
+            out.writeInt(this.iD);
+            out.writeInt(this.quantity);
+        }
+    }
+    /**
+     * Snapshot only - an assigned slot and its stock, instead of one 'SlotAssigned' and many 'ItemStocked' records.
+     * @param slotNum The slot number.
+     * @param item    The assigned item.
+     * @param stock   How many items the slot holds.
+     */
+    record SlotRestored(int slotNum, Item item, int stock) implements JournalRecord {
+        @Override
+        public void writeTo(DataOutput out) throws IOException {
+            out.writeByte(SLOT_RESTORED);
+            out.writeInt(this.slotNum);
+            JournalRecord.writeItem(out, this.item);
+            out.writeInt(this.stock);
+        }
+    }
+}
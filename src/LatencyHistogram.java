@@ -0,0 +1,183 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free, fixed-memory histogram of latencies in nanoseconds.
+ * <p>
+ * Buckets are log-linear: every power of two is split into 'SUB_BUCKETS' equal buckets, so a recorded latency is off by at most 1/8 (12.5%)
+ * whatever its magnitude - 1 ns apart below 8 ns, up to about 4.3 seconds apart near the top.
+ * Latencies of 2^36 ns (about 69 seconds) or longer all go in the last bucket; the largest recorded is kept exactly as 'max'.
+ * <p>
+ * Recording is a few bit operations and one atomic increment - no locks and no allocation, so any number of threads can record at once.
+ * Memory is fixed at 'BUCKETS' counters from construction, however many latencies are recorded.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    //^ Buckets per power of two - the histogram's precision.
+    private static final int MAX_EXPONENT = 35;
+    //^ Highest power of two with its own buckets; 2^36 ns and above go in the last bucket.
+    static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+    //^ First 'SUB_BUCKETS' buckets are 0 to 7 ns exactly; then 'SUB_BUCKETS' per power of two from 2^3 to 2^35.
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder total = new LongAdder();
+    //^ Sum of every recorded latency, for the mean.
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Helper method to find the bucket of a latency.
+     * @param nanos The latency in nanoseconds (not negative).
+     * @return The bucket index.
+     */
+    static int bucketOf(long nanos) {
+        if (nanos < SUB_BUCKETS) return (int) nanos;
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        if (exponent > MAX_EXPONENT) return BUCKETS - 1;
+        int subBucket = (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+    /**
+     * Gets the highest latency that goes in a bucket.
+     * @param bucket The bucket index.
+     * @return The bucket's highest latency in nanoseconds; 'Long.MAX_VALUE' for the last bucket.
+     */
+    static long highestOf(int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+        if (bucket == BUCKETS - 1) return Long.MAX_VALUE;
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - SUB_BUCKET_BITS);
+        return lowest + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+
+    /**
+     * Records one latency.
+     * @param nanos The latency in nanoseconds; negative latencies (e.g. from a clock going backwards) are recorded as zero.
+     */
+    public void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        this.counts.getAndIncrement(LatencyHistogram.bucketOf(nanos));
+        this.total.add(nanos);
+        if (nanos > this.max.get()) this.max.accumulateAndGet(nanos, Math::max);
+        //^ Plain read first - once the max has settled, recording never writes it.
+    }
+
+    /**
+     * Copies the histogram - recording carries on meanwhile, so a latency being recorded may be in some fields of the copy but not others.
+     * @return Snapshot of the histogram.
+     */
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        for (int bucket = 0; bucket < BUCKETS; bucket++) copy[bucket] = this.counts.get(bucket);
+        return new Snapshot(copy, this.total.sum(), this.max.get());
+    }
+    /**
+     * Copies and empties the histogram in one pass - each bucket is taken atomically, so no latency is counted in two snapshots nor lost, even while recording carries on
+     * (though a latency being recorded may add to the next snapshot's mean and max instead).
+     * @return Snapshot of the histogram up to the reset.
+     */
+    public Snapshot snapshotAndReset() {
+        long[] copy = new long[BUCKETS];
+        for (int bucket = 0; bucket < BUCKETS; bucket++) copy[bucket] = this.counts.getAndSet(bucket, 0);
+        return new Snapshot(copy, this.total.sumThenReset(), this.max.getAndSet(0));
+    }
+
+    /**
+     * Immutable copy of a histogram's buckets, with the statistics derived from them.
+     */
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long total;
+        private final long max;
+
+        /**
+         * Constructor for a snapshot - takes ownership of 'counts'.
+         * @param counts Count of every bucket.
+         * @param total  Sum of the recorded latencies in nanoseconds.
+         * @param max    Largest recorded latency in nanoseconds.
+         */
+        private Snapshot(long[] counts, long total, long max) {
+            this.counts = counts;
+            long count = 0;
+            for (long bucketCount : counts) count += bucketCount;
+            this.count = count;
+            this.total = total;
+            this.max = max;
+        }
+
+        //: Getter methods.
+        /**
+         * Getter method for how many latencies were recorded.
+         * @return Number of recorded latencies.
+         */
+        public long getCount() { return this.count; }
+        /**
+         * Getter method for the largest recorded latency.
+         * @return Largest latency in nanoseconds; zero if none were recorded.
+         */
+        public long getMax() { return this.max; }
+        /**
+         * Getter method for the mean latency.
+         * @return Mean latency in nanoseconds; zero if none were recorded.
+         */
+        public long getMean() { return this.count == 0 ? 0 : this.total / this.count; }
+        /**
+         * Getter method for a percentile latency - accurate to the histogram's precision, and never above the largest recorded latency.
+         * @param percentile The percentile (e.g. 99.9).
+         * @return Highest latency of the bucket holding the percentile, in nanoseconds; zero if none were recorded.
+         * @throws IllegalArgumentException If 'percentile' is not between 0 and 100.
+         */
+        public long getPercentile(double percentile) {
+            if (!(percentile >= 0 && percentile <= 100)) throw new IllegalArgumentException("Percentile must be between 0 and 100.");
+            if (this.count == 0) return 0;
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100 * this.count));
+            long seen = 0;
+            for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                seen += this.counts[bucket];
+                if (seen >= rank) return Math.min(LatencyHistogram.highestOf(bucket), this.max);
+            }
+            return this.max;
+        }
+
+        /**
+         * Writes the snapshot compactly - only non-empty buckets are written.
+         * @param out Where to write the snapshot.
+         * @throws IOException If writing fails.
+         */
+        public void writeTo(DataOutput out) throws IOException {
+            int used = 0;
+            for (long bucketCount : this.counts) if (bucketCount != 0) used++;
+            out.writeLong(this.total);
+            out.writeLong(this.max);
+            out.writeShort(used);
+            for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                if (this.counts[bucket] == 0) continue;
+                out.writeShort(bucket);
+                out.writeLong(this.counts[bucket]);
+            }
+        }
+        /**
+         * Reads a snapshot written by 'writeTo'.
+         * @param in Where to read the snapshot from.
+         * @return The snapshot.
+         * @throws IOException If reading fails or a bucket is out of range.
+         */
+        public static Snapshot readFrom(DataInput in) throws IOException {
+            long total = in.readLong();
+            long max = in.readLong();
+            int used = in.readUnsignedShort();
+            long[] counts = new long[BUCKETS];
+            for (int i = 0; i < used; i++) {
+                int bucket = in.readUnsignedShort();
+                if (bucket >= BUCKETS) throw new IOException(STR."Unknown histogram bucket \{bucket}");
+                counts[bucket] = in.readLong();
+            }
+            return new Snapshot(counts, total, max);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Admin proxy that measures every admin action - how long it took and how it ended - into 'ActionMetrics'.
+ * <p>
+ * "proxy design pattern" again: wraps an 'AdminProxy' behind the same 'ActionsAdmin' contract, so front-ends use it unchanged.
+ * How an action ended is told by the failures the wrapped proxy reported meanwhile ('AdminProxy.getRefusals' and 'AdminProxy.getRejections'),
+ * or by an exception escaping it (e.g. viewing coins outside maintenance mode).
+ * <p>
+ * Like the wrapped proxy, it must only be driven by one thread at a time.
+ */
+public class MeteredAdminProxy implements ActionsAdmin {
+    private final AdminProxy adminProxy;
+    private final ActionMetrics metrics;
+
+    /**
+     * Constructor for a metered admin proxy.
+     * @param adminProxy The admin proxy to measure.
+     * @param metrics    Where measurements are recorded (may be shared with other metered proxies).
+     */
+    public MeteredAdminProxy(AdminProxy adminProxy, ActionMetrics metrics) {
+        this.adminProxy = adminProxy;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Getter method for 'this.metrics' - for snapshots, resets and exports (e.g. 'AdminDisplay.showMetrics').
+     * @return Where measurements are recorded.
+     */
+    public ActionMetrics getMetrics() { return this.metrics; }
+
+    /**
+     * Helper method to run and record an action of the wrapped proxy.
+     * @param action The action.
+     * @param body   Runs the action.
+     */
+    private void measure(ActionMetrics.Action action, Runnable body) { this.metrics.measure(action, this.adminProxy::getRefusals, this.adminProxy::getRejections, body); }
+    /**
+     * Helper method to run and record an action of the wrapped proxy that returns a result.
+     * @param action The action.
+     * @param body   Runs the action.
+     * @param <T>    The action's result type.
+     * @return The action's result.
+     */
+    private <T> T measure(ActionMetrics.Action action, Supplier<T> body) { return this.metrics.measure(action, this.adminProxy::getRefusals, this.adminProxy::getRejections, body); }
+
+    //: Measured actions - see 'AdminProxy' for what each does.
+    @Override
+    public void depositCoins(CoinGBP coin, int amount) { this.measure(ActionMetrics.Action.DEPOSIT_COINS, () -> this.adminProxy.depositCoins(coin, amount)); }
+    @Override
+    public void withdrawCoins(CoinGBP coin, int amount) { this.measure(ActionMetrics.Action.WITHDRAW_COINS, () -> this.adminProxy.withdrawCoins(coin, amount)); }
+    @Override
+    public Map<CoinGBP, Integer> viewCoins() { return this.measure(ActionMetrics.Action.VIEW_COINS, () -> this.adminProxy.viewCoins()); }
+    @Override
+    public void stockItems(int slotNum, int amount) { this.measure(ActionMetrics.Action.STOCK_ITEMS, () -> this.adminProxy.stockItems(slotNum, amount)); }
+    @Override
+    public void removeItems(int slotNum, int amount) { this.measure(ActionMetrics.Action.REMOVE_ITEMS, () -> this.adminProxy.removeItems(slotNum, amount)); }
+    @Override
+    public void assignItemSlot(int slotNum, Item item) { this.measure(ActionMetrics.Action.ASSIGN_ITEM_SLOT, () -> this.adminProxy.assignItemSlot(slotNum, item)); }
+    @Override
+    public void unassignItemSlot(int slotNum) { this.measure(ActionMetrics.Action.UNASSIGN_ITEM_SLOT, () -> this.adminProxy.unassignItemSlot(slotNum)); }
+    @Override
+    public ItemSlot[] viewItems() { return this.measure(ActionMetrics.Action.VIEW_ITEMS, () -> this.adminProxy.viewItems()); }
+    @Override
+    public void startMaintenance() { this.measure(ActionMetrics.Action.START_MAINTENANCE, () -> this.adminProxy.startMaintenance()); }
+    @Override
+    public void stopMaintenance() { this.measure(ActionMetrics.Action.STOP_MAINTENANCE, () -> this.adminProxy.stopMaintenance()); }
+}
@@ -0,0 +1,55 @@
+/**
+ * Customer proxy that measures every customer action - how long it took and how it ended - into 'ActionMetrics'.
+ * <p>
+ * "proxy design pattern" again: wraps a 'CustomerProxy' behind the same 'ActionsCustomer' contract, so front-ends use it unchanged.
+ * How an action ended is told by the failures the wrapped proxy reported meanwhile ('CustomerProxy.getRefusals' and 'CustomerProxy.getRejections'),
+ * or by an exception escaping it. The wrapped proxy also times its change/refund withdrawals into the same metrics.
+ * <p>
+ * Like the wrapped proxy, it must only be driven by one thread at a time.
+ */
+public class MeteredCustomerProxy implements ActionsCustomer {
+    private final CustomerProxy customerProxy;
+    private final ActionMetrics metrics;
+
+    /**
+     * Constructor for a metered customer proxy.
+     * @param customerProxy The customer proxy to measure.
+     * @param metrics       Where measurements are recorded (may be shared with other metered proxies).
+     */
+    public MeteredCustomerProxy(CustomerProxy customerProxy, ActionMetrics metrics) {
+        this.customerProxy = customerProxy;
+        this.metrics = metrics;
+        this.customerProxy.setMetrics(metrics);
+    }
+
+    /**
+     * Getter method for 'this.metrics' - for snapshots, resets and exports.
+     * @return Where measurements are recorded.
+     */
+    public ActionMetrics getMetrics() { return this.metrics; }
+
+    /**
+     * Helper method to run and record an action of the wrapped proxy.
+     * @param action The action.
+     * @param body   Runs the action.
+     */
+    private void measure(ActionMetrics.Action action, Runnable body) { this.metrics.measure(action, this.customerProxy::getRefusals, this.customerProxy::getRejections, body); }
+
+    //: Measured actions - see 'CustomerProxy' for what each does.
+    @Override
+    public void startOrder() { this.measure(ActionMetrics.Action.START_ORDER, () -> this.customerProxy.startOrder()); }
+    @Override
+    public void selectItem(int itemID) { this.measure(ActionMetrics.Action.SELECT_ITEM, () -> this.customerProxy.selectItem(itemID)); }
+    @Override
+    public void deselectItem(int itemID) { this.measure(ActionMetrics.Action.DESELECT_ITEM, () -> this.customerProxy.deselectItem(itemID)); }
+    @Override
+    public void checkout() { this.measure(ActionMetrics.Action.CHECKOUT, () -> this.customerProxy.checkout()); }
+    @Override
+    public void cancelOrder() { this.measure(ActionMetrics.Action.CANCEL_ORDER, () -> this.customerProxy.cancelOrder()); }
+    @Override
+    public void depositCoin(CoinGBP coin) { this.measure(ActionMetrics.Action.DEPOSIT_COIN, () -> this.customerProxy.depositCoin(coin)); }
+    @Override
+    public void GetBasket() { this.measure(ActionMetrics.Action.GET_BASKET, () -> this.customerProxy.GetBasket()); }
+    @Override
+    public void GetItemStock() { this.measure(ActionMetrics.Action.GET_ITEM_STOCK, () -> this.customerProxy.GetItemStock()); }
+}
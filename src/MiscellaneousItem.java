@@ -1,4 +1,3 @@
-import java.util.HashMap;
 import java.util.Map;
 
 /**
@@ -24,14 +23,20 @@ public class MiscellaneousItem extends Item{
      * See corresponding superclass's method documentation for more information.
      * @param name        What it is called for the customer's knowledge.
      * @param iD          The unique identifier (unique in subject vending machine) for the item.
-     * @param price       How much, each of this specific item, costs.
+     * @param price       How much, each of this specific item, costs (in pence).
      * @param description Description of the miscellaneous item - explains why it is miscellaneous.
      */
-    public MiscellaneousItem(String name, int iD, double price, String description) {
+    public MiscellaneousItem(String name, int iD, long price, String description) {
         super(name, iD, price);
         this.description = description;
     }
 
+    /**
+     * Getter method for 'description'.
+     * @return Description of the miscellaneous item.
+     */
+    public String getDescription() { return this.description; }
+
     /**
      * Implemented abstract method to specify item type as a miscellaneous item.
      * <p>
@@ -44,15 +49,15 @@ public class MiscellaneousItem extends Item{
     }
 
     /**
-     * View method (specialized getter method) that expands on Item's render (superclass) method by adding description.
+     * View method (specialized getter method) that expands on Item's details (superclass) method (used for its cached rendering) by adding description.
      * <p>
      * See corresponding superclass's method documentation for more information.
      * @return Item's name, type (drink), ID, price, and description (explains why it is miscellaneous).
      */
     @Override
-    public Map<String, String> render() {
-        Map<String, String> details = new HashMap<>(super.render());
-        //^ 'new HashMap<>' makes copy to allow appending more details.
+    Map<String, String> details() {
+        Map<String, String> details = super.details();
+        //^ Already a new map, so more details can be appended.
         details.put("description", this.description);
         return details;
     }
@@ -0,0 +1,49 @@
+/**
+ * Utility class for the fixed-point money representation used throughout the vending machine.
+ * <p>
+ * All monetary amounts (coin values, item prices, customer balance, payment due, change) are held as 'long' whole pence instead of 'double' pounds.
+ * This makes every payment and change calculation exact integer arithmetic - no floating point precision issues and no rounding passes (e.g. 'Math.round(x * 100) / 100') needed.
+ * <p>
+ * Amounts are kept as primitives rather than wrapped in an object so that the payment and change paths never allocate.
+ * Conversion from pounds only happens once at item creation ('ItemFactory') and conversion to pounds only happens when displaying.
+ * <p>
+ * Not instantiable as it only holds static helper methods.
+ */
+public final class Money {
+    private Money() {}
+    //^ Prevents instantiation - static utility class.
+
+    /**
+     * Converts an amount in pounds into whole pence.
+     * <p>
+     * Only to be called off the hot path (e.g. once when an item is created) as it is the only place where 'double' is involved.
+     * @param pounds The amount in pounds; expected to have at most two decimal places.
+     * @return The amount in whole pence.
+     */
+    public static long fromPounds(double pounds) {
+        return Math.round(pounds * 100);
+        //^ Rounds instead of truncates as, for example, 0.29 * 100 is 28.999999999999996 in floating point.
+    }
+    /**
+     * Checks whether an amount in pounds can be represented in whole pence (at most two decimal places).
+     * @param pounds The amount in pounds.
+     * @return 'true' if the amount has at most two decimal places; otherwise 'false'.
+     */
+    public static boolean isWholePence(double pounds) {
+        return Math.abs(pounds * 100 - Math.round(pounds * 100)) < 1e-6;
+        //^ Tolerance used as multiplying by 100 does not always give an exact whole number in floating point (e.g. 1.15 * 100).
+    }
+
+    /**
+     * Formats an amount of pence into pounds with exactly two decimal places (e.g. 106 to "1.06", -5 to "-0.05").
+     * <p>
+     * Cheaper than 'String.format("%.2f", ...)' as no format string is parsed.
+     * @param pence The amount in pence; can be negative (e.g. overpaid payment due).
+     * @return String representation of the amount in pounds, without the currency symbol.
+     */
+    public static String format(long pence) {
+        long absolute = Math.abs(pence);
+        long remainder = absolute % 100;
+        return (pence < 0 ? "-" : "") + (absolute / 100) + (remainder < 10 ? ".0" : ".") + remainder;
+    }
+}
@@ -0,0 +1,164 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Keeps track of which amounts of change (in pence) can be paid out exactly from the coins in a coin storage.
+ * <p>
+ * Answer is held in a bit set of reachable amounts (bit 'a' set means 'a' pence can be paid out), so asking is a single bit lookup.
+ * The bit set is kept together with the coin counts it is exact for, each count capped at how many of that coin fit in 'this.bound' - coins past the cap cannot change any tracked amount.
+ * Therefore deposits and withdraws above a tube's cap (most of them, once a machine holds a change float) leave the bit set as it is, and asking costs reading the tubes twice.
+ * <p>
+ * Counts that rose below their cap are added to the bit set one coin at a time: with one more coin of value 'v', the reachable amounts are the old ones plus the old ones shifted up by 'v'.
+ * Counts that fell below their cap are rebuilt from no coins the same way (O(capped coins x bound / 64)) - a bit set cannot tell which ways of making an amount used the coin that left.
+ * <p>
+ * Not locked: the latest capped counts and bit set are published together as one immutable pair, so a lookup can never see a bit set of other counts than it was computed for.
+ * Two threads updating at once may overwrite each other's pair, which costs only a later update.
+ * <p>
+ * Only amounts up to 'this.bound' are tracked - change owed by a customer is always less than the coin that overpaid, so the largest coin value is enough.
+ */
+public class PayableAmounts {
+    private static final CoinGBP[] COINS = CoinGBP.values();
+    //^ Cached as 'CoinGBP.values()' creates a new array every call.
+
+    /**
+     * Reachable amounts for one capped coin count vector.
+     * @param counts Capped coin counts the bit set was computed from, indexed by 'CoinGBP.ordinal()' (never mutated).
+     * @param words  Bit 'a' (bit 'a % 64' of word 'a / 64') set if and only if 'a' pence can be made from 'counts' (never mutated).
+     */
+    private record Reachable(int[] counts, long[] words) {}
+
+    private final AtomicIntegerArray coinCounts;
+    //^ The coin storage's live counts, indexed by 'CoinGBP.ordinal()' - only ever read.
+    private final int bound;
+    //^ Largest tracked amount in pence.
+    private final int[] caps;
+    //^ Most coins of each type any tracked amount can use, indexed by 'CoinGBP.ordinal()'.
+    private final long lastWordMask;
+    //^ Bits of the last word that are tracked amounts - shifted-in bits past 'this.bound' are cleared with it.
+    private final Reachable empty;
+    //^ No coins - only zero pence is payable (by giving no coins).
+    private volatile Reachable latest;
+
+    /**
+     * Constructor for a coin storage's payable amounts.
+     * @param coinCounts The coin storage's live counts, indexed by 'CoinGBP.ordinal()'.
+     * @param bound      Largest amount (in pence) to track.
+     */
+    public PayableAmounts(AtomicIntegerArray coinCounts, int bound) {
+        this.coinCounts = coinCounts;
+        this.bound = bound;
+        this.caps = new int[COINS.length];
+        for (CoinGBP coin : COINS) { if (coin.getValue() <= bound) this.caps[coin.ordinal()] = (int) (bound / coin.getValue()); }
+        this.lastWordMask = -1L >>> (63 - (bound & 63));
+        long[] words = new long[(bound >>> 6) + 1];
+        words[0] = 1L;
+        this.empty = new Reachable(new int[COINS.length], words);
+        this.latest = this.empty;
+    }
+
+    /**
+     * Getter method for 'this.bound'.
+     * @return Largest amount (in pence) tracked.
+     */
+    public int getBound() { return this.bound; }
+
+    /**
+     * Checks whether an exact amount can be paid out with the current coins.
+     * @param amount The amount in pence; must not exceed 'this.bound'.
+     * @return 'true' if the amount can be made from the coins; otherwise 'false'.
+     */
+    public boolean isPayable(long amount) {
+        if (amount < 0 || amount > this.bound) return false;
+        long[] words = this.current().words();
+        return (words[(int) amount >>> 6] & (1L << amount)) != 0;
+        //^ Shifting a long only uses the low 6 bits of 'amount'.
+    }
+    /**
+     * Checks whether every amount from 1 pence up to (and including) an amount can be paid out with the current coins.
+     * @param amount The largest amount in pence; must not exceed 'this.bound'.
+     * @return 'true' if every amount up to 'amount' can be made from the coins; otherwise 'false'.
+     */
+    public boolean isEveryPayableUpTo(long amount) {
+        if (amount > this.bound) return false;
+        long[] words = this.current().words();
+        for (int i = 0; i < words.length; i++) {
+            long unreachable = ~words[i];
+            if (unreachable != 0) return i * 64L + Long.numberOfTrailingZeros(unreachable) > amount;
+        }
+        return true;
+    }
+
+    /**
+     * Helper method to get the reachable amounts for the current coins - the latest ones if no tube has changed below its cap since.
+     * @return The capped counts with their reachable amounts.
+     */
+    private Reachable current() {
+        Reachable latest = this.latest;
+        if (this.matches(latest) && this.matches(latest)) return latest;
+        //^ Tubes read twice, as 'CoinStorage' snapshots them, so the answer is for counts held at one moment.
+        int[] counts = this.cappedCounts();
+        Reachable from = latest;
+        for (int i = 0; i < counts.length; i++) { if (counts[i] < latest.counts()[i]) from = this.empty; }
+        //^ A coin left below its cap - rebuilt from no coins.
+        Reachable current = this.extend(from, counts);
+        this.latest = current;
+        return current;
+    }
+    /**
+     * Helper method to check whether the live counts, capped, are the ones some reachable amounts were computed from.
+     * @param reachable The reachable amounts.
+     * @return 'true' if no tube differs below its cap; otherwise 'false'.
+     */
+    private boolean matches(Reachable reachable) {
+        for (int i = 0; i < this.caps.length; i++) { if (Math.min(this.coinCounts.get(i), this.caps[i]) != reachable.counts()[i]) return false; }
+        return true;
+    }
+    /**
+     * Helper method to take a snapshot of the capped coin counts.
+     * <p>
+     * Same as 'CoinStorage.countVector' - tubes are read twice until both reads agree.
+     * @return Capped count of every coin type held at one moment, indexed by 'CoinGBP.ordinal()'.
+     */
+    private int[] cappedCounts() {
+        int[] counts = new int[this.caps.length];
+        int[] again = new int[this.caps.length];
+        for (int i = 0; i < counts.length; i++) { counts[i] = Math.min(this.coinCounts.get(i), this.caps[i]); }
+        while (true) {
+            for (int i = 0; i < again.length; i++) { again[i] = Math.min(this.coinCounts.get(i), this.caps[i]); }
+            if (Arrays.equals(counts, again)) return counts;
+            int[] swap = counts;
+            counts = again;
+            again = swap;
+        }
+    }
+    /**
+     * Helper method to add coins to some reachable amounts.
+     * @param from   The reachable amounts to start from; none of its counts may exceed 'counts'.
+     * @param counts Capped coin counts to reach, indexed by 'CoinGBP.ordinal()'.
+     * @return The counts with their reachable amounts ('from' itself is not mutated).
+     */
+    private Reachable extend(Reachable from, int[] counts) {
+        long[] words = from.words().clone();
+        for (CoinGBP coin : COINS) {
+            for (int added = from.counts()[coin.ordinal()]; added < counts[coin.ordinal()]; added++) this.addCoin(words, (int) coin.getValue());
+        }
+        return new Reachable(counts, words);
+    }
+    /**
+     * Helper method to add one coin to a bit set of reachable amounts - every reachable amount stays reachable, and so does it plus the coin's value.
+     * <p>
+     * Words are shifted from the highest down, so every word is read before it is written.
+     * @param words The bit set, mutated in place.
+     * @param value The coin's value in pence; at most 'this.bound'.
+     */
+    private void addCoin(long[] words, int value) {
+        int wordShift = value >>> 6;
+        int bitShift = value & 63;
+        for (int i = words.length - 1; i >= wordShift; i--) {
+            long shifted = words[i - wordShift] << bitShift;
+            if (bitShift != 0 && i > wordShift) shifted |= words[i - wordShift - 1] >>> (64 - bitShift);
+            words[i] |= shifted;
+        }
+        words[words.length - 1] &= this.lastWordMask;
+    }
+}
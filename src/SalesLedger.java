@@ -0,0 +1,727 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32C;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Append-only ledger of sales - one row per dispensed order line - stored column by column for fast analytics queries (e.g. revenue per item per hour).
+ * <p>
+ * Each row holds: timestamp (epoch milliseconds), machine ID, item ID, quantity, unit price, coins in and change out (all money in whole pence).
+ * Coins in and change out are totals for the whole order, so they are only on the order's first line (zero on the rest) - summing either column gives the true total.
+ * <p>
+ * Rows are gathered in memory until a block of 65,536 is full, then the block is written to the end of the file and synced.
+ * A quiet vending machine may take weeks to fill a block, so a block is also written short once its first row has waited a set time (1 second by default) -
+ * trading bigger files (per-block overheads are spread over fewer rows) for losing at most that long of sales in a power cut.
+ * Stored as [magic][format version] followed by blocks of [row count][min timestamp][max timestamp][compressed and raw length of each column][CRC32C of the columns][columns].
+ * Each column is varint-encoded (timestamps as deltas, item IDs as a per-block dictionary plus codes) and then Deflate-compressed on its own.
+ * Therefore, a query only decompresses the columns it reads and skips every block whose timestamp range misses the queried range.
+ * <p>
+ * Queries map the candidate blocks and scan them in parallel with fork-join (like 'VendingFleet'), then add the partial results up; rows not yet written are scanned in memory.
+ * Closing waits for queries still scanning, so the file is never closed under a running scan.
+ * <p>
+ * A power cut can only tear the last block; when the ledger is opened, blocks are checked and the file is truncated at the first incomplete or corrupt one.
+ * Rows not yet written in a block are lost in a power cut - the ledger is for analytics, while the money itself is kept by the vending machine (and its 'Journal').
+ * Failing to write a short block on time is handed to the failure handler, and the rows are kept to be tried again.
+ */
+public class SalesLedger implements AutoCloseable {
+    private static final int MAGIC = 0x564D534C;
+    //^ "VMSL" - rejects files that are not sales ledgers at all.
+    private static final int FORMAT_VERSION = 1;
+    private static final int FILE_HEADER_BYTES = Integer.BYTES * 2;
+    private static final int BLOCK_ROWS = 65_536;
+    //^ Big enough for compression and per-block overheads to be small, small enough for fine-grained timestamp skipping and parallel scans.
+    private static final long DEFAULT_MAX_UNWRITTEN_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long HOUR_MILLIS = 3_600_000L;
+    private static final int MAX_HOURS = 24 * 366 * 5;
+    //^ Longest queried range (5 years) - results hold one total per item per hour.
+
+    //: Column indexes, in storage order.
+    private static final int TIME = 0;
+    private static final int MACHINE = 1;
+    private static final int ITEM = 2;
+    private static final int QUANTITY = 3;
+    private static final int PRICE = 4;
+    private static final int COINS_IN = 5;
+    private static final int CHANGE_OUT = 6;
+    private static final int COLUMNS = 7;
+    private static final int BLOCK_HEADER_BYTES = Integer.BYTES + Long.BYTES * 2 + Integer.BYTES * COLUMNS * 2 + Integer.BYTES;
+
+    private final FileChannel channel;
+    private final ForkJoinPool pool;
+    //^ Runs the block scans of queries.
+    private final ReentrantReadWriteLock scans = new ReentrantReadWriteLock();
+    //^ Held shared by each query for its whole scan (appends carry on meanwhile), and exclusively by 'this.close' - always taken before 'this'.
+    private final DurabilityFailureHandler failureHandler;
+    //^ Told about rows 'this.tryAppend' could not record, and about short blocks 'this.flusher' could not write.
+    private final long maxUnwrittenNanos;
+    //^ Longest a row waits in memory before its block is written, even if short; 0 to only write full blocks (and on 'this.flush' or 'this.close').
+    private final ScheduledExecutorService flusher;
+    //^ Writes short blocks once their first row has waited 'this.maxUnwrittenNanos'; 'null' if that is 0.
+    //: Guarded by 'this'.
+    private final List<Block> blocks = new ArrayList<>();
+    //^ Blocks on disk, oldest first.
+    private long fileEnd;
+    private final long[] times = new long[BLOCK_ROWS];
+    private final int[] machineIDs = new int[BLOCK_ROWS];
+    private final int[] itemIDs = new int[BLOCK_ROWS];
+    private final int[] quantities = new int[BLOCK_ROWS];
+    private final long[] prices = new long[BLOCK_ROWS];
+    private final long[] coinsIn = new long[BLOCK_ROWS];
+    private final long[] changeOut = new long[BLOCK_ROWS];
+    //^ Columns of the rows not yet written.
+    private int openRows;
+    private boolean flushScheduled;
+    private boolean closed;
+
+    /**
+     * Where a block is in the file and what it holds.
+     * @param offset            File position of the block header.
+     * @param rows              How many rows the block holds.
+     * @param minTime           Earliest timestamp in the block.
+     * @param maxTime           Latest timestamp in the block.
+     * @param compressedLengths Stored length of each column.
+     * @param rawLengths        Decompressed length of each column.
+     */
+    private record Block(long offset, int rows, long minTime, long maxTime, int[] compressedLengths, int[] rawLengths) {
+        /**
+         * Gets where a column starts within the block's columns.
+         * @param column The column index.
+         * @return Position of the column's first byte after the block header.
+         */
+        private int columnOffset(int column) {
+            int offset = 0;
+            for (int i = 0; i < column; i++) offset += this.compressedLengths[i];
+            return offset;
+        }
+        /**
+         * Gets where the block ends in the file.
+         * @return File position just after the block.
+         */
+        private long end() { return this.offset + BLOCK_HEADER_BYTES + this.columnOffset(COLUMNS); }
+    }
+
+    /**
+     * Opens (or creates) a sales ledger, scanning on the common fork-join pool and reporting failures to the thread's uncaught exception handler.
+     * @param path Where the ledger is kept.
+     * @return The opened ledger, positioned at its end.
+     * @throws UncheckedIOException If the ledger cannot be opened or read.
+     * @throws IllegalStateException If the file is not a sales ledger.
+     */
+    public static SalesLedger open(Path path) { return SalesLedger.open(path, ForkJoinPool.commonPool(), DurabilityFailureHandler.uncaught()); }
+    /**
+     * Opens (or creates) a sales ledger, reporting failures to the thread's uncaught exception handler.
+     * @param path Where the ledger is kept.
+     * @param pool Fork-join pool to run query scans on.
+     * @return The opened ledger, positioned at its end.
+     * @throws UncheckedIOException If the ledger cannot be opened or read.
+     * @throws IllegalStateException If the file is not a sales ledger.
+     */
+    public static SalesLedger open(Path path, ForkJoinPool pool) { return SalesLedger.open(path, pool, DurabilityFailureHandler.uncaught()); }
+    /**
+     * Opens (or creates) a sales ledger that writes a short block once its first row has waited 1 second.
+     * @param path           Where the ledger is kept.
+     * @param pool           Fork-join pool to run query scans on.
+     * @param failureHandler Told about every row 'this.tryAppend' could not record, and every short block that could not be written on time.
+     * @return The opened ledger, positioned at its end.
+     * @throws UncheckedIOException If the ledger cannot be opened or read.
+     * @throws IllegalStateException If the file is not a sales ledger.
+     */
+    public static SalesLedger open(Path path, ForkJoinPool pool, DurabilityFailureHandler failureHandler) {
+        return SalesLedger.open(path, pool, failureHandler, DEFAULT_MAX_UNWRITTEN_NANOS);
+    }
+    /**
+     * Opens (or creates) a sales ledger: checks every block and truncates any torn block at its end.
+     * @param path              Where the ledger is kept.
+     * @param pool              Fork-join pool to run query scans on.
+     * @param failureHandler    Told about every row 'this.tryAppend' could not record, and every short block that could not be written on time.
+     * @param maxUnwrittenNanos Longest a row waits in memory before its block is written, even if short; 0 to only write full blocks (e.g. bulk imports).
+     * @return The opened ledger, positioned at its end.
+     * @throws IllegalArgumentException If 'maxUnwrittenNanos' is negative.
+     * @throws UncheckedIOException If the ledger cannot be opened or read.
+     * @throws IllegalStateException If the file is not a sales ledger.
+     */
+    public static SalesLedger open(Path path, ForkJoinPool pool, DurabilityFailureHandler failureHandler, long maxUnwrittenNanos) {
+        if (maxUnwrittenNanos < 0) throw new IllegalArgumentException("Longest wait before writing cannot be negative.");
+        try { return new SalesLedger(path.toAbsolutePath(), pool, failureHandler, maxUnwrittenNanos); }
+        catch (IOException e) { throw new UncheckedIOException(STR."Cannot open sales ledger \{path}", e); }
+    }
+
+    /**
+     * Constructor reads every valid block header.
+     * @param path              Where the ledger is kept.
+     * @param pool              Fork-join pool to run query scans on.
+     * @param failureHandler    Told about every row 'this.tryAppend' could not record, and every short block that could not be written on time.
+     * @param maxUnwrittenNanos Longest a row waits in memory before its block is written; 0 to only write full blocks.
+     * @throws IOException If reading, writing or truncating fails.
+     */
+    private SalesLedger(Path path, ForkJoinPool pool, DurabilityFailureHandler failureHandler, long maxUnwrittenNanos) throws IOException {
+        this.pool = pool;
+        this.failureHandler = failureHandler;
+        this.maxUnwrittenNanos = maxUnwrittenNanos;
+        this.flusher = maxUnwrittenNanos == 0 ? null : Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "sales-ledger-flusher");
+            thread.setDaemon(true);
+            //^ Never keeps the JVM alive on its own if the ledger is not closed.
+            return thread;
+        });
+        //^ Its thread only starts with the first scheduled write - nothing to stop if opening fails below.
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long size = this.channel.size();
+        if (size < FILE_HEADER_BYTES) {
+            //* New ledger (or one torn before even its header was written).
+            this.channel.truncate(0);
+            this.write(ByteBuffer.allocate(FILE_HEADER_BYTES).putInt(MAGIC).putInt(FORMAT_VERSION).flip(), 0);
+            this.channel.force(true);
+            this.fileEnd = FILE_HEADER_BYTES;
+            return;
+        }
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_BYTES);
+        this.channel.read(header, 0);
+        if (header.getInt(0) != MAGIC || header.getInt(Integer.BYTES) != FORMAT_VERSION) {
+            this.channel.close();
+            throw new IllegalStateException(STR."\{path} is not a sales ledger.");
+        }
+        long offset = FILE_HEADER_BYTES;
+        Block block;
+        while ((block = this.readBlock(offset, size)) != null) {
+            this.blocks.add(block);
+            offset = block.end();
+        }
+        if (offset < size) {
+            this.channel.truncate(offset);
+            this.channel.force(true);
+        }
+        //^ Torn block from a power cut mid-write.
+        this.fileEnd = offset;
+    }
+    /**
+     * Helper method to read and check the block at a file position.
+     * @param offset File position of the block header.
+     * @param size   File size.
+     * @return The block; null if there is no complete, intact block there.
+     * @throws IOException If reading fails.
+     */
+    private Block readBlock(long offset, long size) throws IOException {
+        if (offset + BLOCK_HEADER_BYTES > size) return null;
+        ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER_BYTES);
+        while (header.hasRemaining()) this.channel.read(header, offset + header.position());
+        header.flip();
+        int rows = header.getInt();
+        long minTime = header.getLong();
+        long maxTime = header.getLong();
+        int[] compressedLengths = new int[COLUMNS];
+        int[] rawLengths = new int[COLUMNS];
+        long dataLength = 0;
+        for (int column = 0; column < COLUMNS; column++) {
+            compressedLengths[column] = header.getInt();
+            if (compressedLengths[column] < 0) return null;
+            dataLength += compressedLengths[column];
+        }
+        for (int column = 0; column < COLUMNS; column++) {
+            rawLengths[column] = header.getInt();
+            if (rawLengths[column] < 0) return null;
+        }
+        int checksum = header.getInt();
+        if (rows <= 0 || rows > BLOCK_ROWS || minTime > maxTime || offset + BLOCK_HEADER_BYTES + dataLength > size) return null;
+        CRC32C crc = new CRC32C();
+        crc.update(this.channel.map(FileChannel.MapMode.READ_ONLY, offset + BLOCK_HEADER_BYTES, dataLength));
+        if ((int) crc.getValue() != checksum) return null;
+        return new Block(offset, rows, minTime, maxTime, compressedLengths, rawLengths);
+    }
+
+    //: Appending.
+    /**
+     * Appends one dispensed order line.
+     * <p>
+     * Writes and syncs the current block first if it is full - so a failed write loses no rows and the next append tries again.
+     * Otherwise, the row's block is written by 'this.flusher' once the block's first row has waited long enough.
+     * @param timestamp When the order was completed (epoch milliseconds).
+     * @param machineID Which vending machine sold it.
+     * @param itemID    The item ID.
+     * @param quantity  How many of the item were dispensed.
+     * @param price     Unit price in pence.
+     * @param coinsIn   Coins paid for the whole order in pence; zero on every line but the first.
+     * @param changeOut Change given for the whole order in pence; zero on every line but the first.
+     * @throws IllegalArgumentException If the quantity is not positive or an amount is negative.
+     * @throws IllegalStateException If the ledger is closed.
+     * @throws UncheckedIOException If writing the full block fails.
+     */
+    public synchronized void append(long timestamp, int machineID, int itemID, int quantity, long price, long coinsIn, long changeOut) {
+        if (quantity <= 0) throw new IllegalArgumentException("Quantity must be positive.");
+        if (price < 0 || coinsIn < 0 || changeOut < 0) throw new IllegalArgumentException("Amounts cannot be negative.");
+        if (this.closed) throw new IllegalStateException("Sales ledger is closed.");
+        if (this.openRows == BLOCK_ROWS) this.writeOpenBlock();
+        int row = this.openRows++;
+        this.times[row] = timestamp;
+        this.machineIDs[row] = machineID;
+        this.itemIDs[row] = itemID;
+        this.quantities[row] = quantity;
+        this.prices[row] = price;
+        this.coinsIn[row] = coinsIn;
+        this.changeOut[row] = changeOut;
+        if (this.flusher != null && !this.flushScheduled) {
+            this.flushScheduled = true;
+            this.flusher.schedule(this::flushDue, this.maxUnwrittenNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+    /**
+     * Non-throwing version of 'this.append' - for callers that cannot do anything about a failure (e.g. the order was already dispensed), which is handed to the failure handler instead.
+     * @param timestamp When the order was completed (epoch milliseconds).
+     * @param machineID Which vending machine sold it.
+     * @param itemID    The item ID.
+     * @param quantity  How many of the item were dispensed.
+     * @param price     Unit price in pence.
+     * @param coinsIn   Coins paid for the whole order in pence; zero on every line but the first.
+     * @param changeOut Change given for the whole order in pence; zero on every line but the first.
+     * @return 'true' if the row was appended; 'false' if the ledger is closed or writing the full block failed.
+     * @throws IllegalArgumentException If the quantity is not positive or an amount is negative.
+     */
+    public boolean tryAppend(long timestamp, int machineID, int itemID, int quantity, long price, long coinsIn, long changeOut) {
+        try {
+            this.append(timestamp, machineID, itemID, quantity, price, coinsIn, changeOut);
+            return true;
+        }
+        catch (UncheckedIOException | IllegalStateException e) {
+            this.failureHandler.handle(e);
+            return false;
+        }
+    }
+    /**
+     * Writes and syncs the rows not yet written as a (possibly short) block.
+     * @throws UncheckedIOException If writing fails.
+     */
+    public synchronized void flush() {
+        if (this.openRows > 0) this.writeOpenBlock();
+    }
+    /**
+     * Writes the rows that have waited long enough as a short block - run on 'this.flusher'.
+     * <p>
+     * If writing fails, the failure handler is told and the rows are kept to be tried again after another wait (or by the next full block, 'this.flush' or 'this.close').
+     */
+    private synchronized void flushDue() {
+        this.flushScheduled = false;
+        if (this.closed || this.openRows == 0) return;
+        //^ Already written by 'this.flush', 'this.close' or a full block.
+        try { this.writeOpenBlock(); }
+        catch (UncheckedIOException e) {
+            this.failureHandler.handle(e);
+            this.flushScheduled = true;
+            this.flusher.schedule(this::flushDue, this.maxUnwrittenNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+    /**
+     * Counts every row in the ledger.
+     * @return How many rows were appended, written or not.
+     */
+    public synchronized long getRowCount() {
+        long rows = this.openRows;
+        for (Block block : this.blocks) rows += block.rows();
+        return rows;
+    }
+    /**
+     * Helper method to encode, compress and write the rows not yet written as one block - caller holds the lock.
+     * @throws UncheckedIOException If writing fails.
+     */
+    private void writeOpenBlock() {
+        int rows = this.openRows;
+        long minTime = Long.MAX_VALUE;
+        long maxTime = Long.MIN_VALUE;
+        for (int row = 0; row < rows; row++) {
+            minTime = Math.min(minTime, this.times[row]);
+            maxTime = Math.max(maxTime, this.times[row]);
+        }
+
+        VarintOutput[] raw = new VarintOutput[COLUMNS];
+        for (int column = 0; column < COLUMNS; column++) raw[column] = new VarintOutput(rows * 2);
+        long previous = minTime;
+        for (int row = 0; row < rows; row++) {
+            raw[TIME].writeSigned(this.times[row] - previous);
+            previous = this.times[row];
+            raw[MACHINE].writeSigned(this.machineIDs[row]);
+            raw[QUANTITY].write(this.quantities[row]);
+            raw[PRICE].write(this.prices[row]);
+            raw[COINS_IN].write(this.coinsIn[row]);
+            raw[CHANGE_OUT].write(this.changeOut[row]);
+        }
+        SalesLedger.encodeItems(raw[ITEM], this.itemIDs, rows);
+
+        byte[][] compressed = new byte[COLUMNS][];
+        int dataLength = 0;
+        CRC32C crc = new CRC32C();
+        for (int column = 0; column < COLUMNS; column++) {
+            compressed[column] = SalesLedger.deflate(raw[column]);
+            dataLength += compressed[column].length;
+            crc.update(compressed[column]);
+        }
+        ByteBuffer block = ByteBuffer.allocate(BLOCK_HEADER_BYTES + dataLength);
+        block.putInt(rows).putLong(minTime).putLong(maxTime);
+        for (byte[] column : compressed) block.putInt(column.length);
+        for (VarintOutput column : raw) block.putInt(column.size);
+        block.putInt((int) crc.getValue());
+        for (byte[] column : compressed) block.put(column);
+
+        try {
+            this.write(block.flip(), this.fileEnd);
+            this.channel.force(false);
+        }
+        catch (IOException e) { throw new UncheckedIOException("Cannot write sales ledger block", e); }
+        int[] compressedLengths = new int[COLUMNS];
+        int[] rawLengths = new int[COLUMNS];
+        for (int column = 0; column < COLUMNS; column++) {
+            compressedLengths[column] = compressed[column].length;
+            rawLengths[column] = raw[column].size;
+        }
+        this.blocks.add(new Block(this.fileEnd, rows, minTime, maxTime, compressedLengths, rawLengths));
+        this.fileEnd += block.capacity();
+        this.openRows = 0;
+    }
+    /**
+     * Helper method to dictionary-encode the item ID column: [distinct item count][each distinct item ID][one code per row].
+     * <p>
+     * A vending machine estate sells few distinct items, so every code is a single byte however big the item IDs are - and queries total per code, not per item ID.
+     * @param out     Where to write the column.
+     * @param itemIDs Item ID of each row.
+     * @param rows    How many rows.
+     */
+    private static void encodeItems(VarintOutput out, int[] itemIDs, int rows) {
+        Map<Integer, Integer> codes = new HashMap<>();
+        List<Integer> distinct = new ArrayList<>();
+        int[] rowCodes = new int[rows];
+        for (int row = 0; row < rows; row++) {
+            Integer code = codes.get(itemIDs[row]);
+            if (code == null) {
+                code = distinct.size();
+                codes.put(itemIDs[row], code);
+                distinct.add(itemIDs[row]);
+            }
+            rowCodes[row] = code;
+        }
+        out.write(distinct.size());
+        for (int itemID : distinct) out.writeSigned(itemID);
+        for (int row = 0; row < rows; row++) out.write(rowCodes[row]);
+    }
+    /**
+     * Helper method to compress a column.
+     * @param column The varint-encoded column.
+     * @return The compressed column.
+     */
+    private static byte[] deflate(VarintOutput column) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        //^ Fastest level - varints already did most of the shrinking; Deflate squeezes the repeats (e.g. zero change on most lines).
+        try {
+            deflater.setInput(column.bytes, 0, column.size);
+            deflater.finish();
+            byte[] out = new byte[column.size / 2 + 64];
+            int length = 0;
+            while (!deflater.finished()) {
+                if (length == out.length) out = Arrays.copyOf(out, out.length * 2);
+                length += deflater.deflate(out, length, out.length - length);
+            }
+            return Arrays.copyOf(out, length);
+        }
+        finally { deflater.end(); }
+        //^ Frees the native memory now instead of whenever the garbage collector gets to it.
+    }
+    /**
+     * Helper method to write a buffer fully at a file position.
+     * @param buffer   What to write.
+     * @param position Where to write it.
+     * @throws IOException If writing fails.
+     */
+    private void write(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) position += this.channel.write(buffer, position);
+    }
+
+    //: Queries.
+    /**
+     * Totals revenue (quantity x unit price) per item per hour over a time range - e.g. the last 30 days.
+     * <p>
+     * Blocks whose timestamps miss the range are skipped; the rest are decompressed (timestamp, item, quantity and price columns only) and scanned in parallel.
+     * @param fromMillis Start of the range (epoch milliseconds, inclusive) - hour 0 starts here.
+     * @param toMillis   End of the range (epoch milliseconds, exclusive).
+     * @return Item ID to revenue in pence per hour (index 'h' covering 'fromMillis + h' hours); items without sales in the range are left out.
+     * @throws IllegalArgumentException If the range is empty or longer than 5 years.
+     * @throws IllegalStateException If the ledger is closed.
+     * @throws UncheckedIOException If the file cannot be mapped or a block is corrupt.
+     */
+    public Map<Integer, long[]> revenuePerItemPerHour(long fromMillis, long toMillis) {
+        if (toMillis <= fromMillis) throw new IllegalArgumentException("Time range cannot be empty.");
+        long hours = Math.ceilDiv(toMillis - fromMillis, HOUR_MILLIS);
+        if (hours > MAX_HOURS) throw new IllegalArgumentException("Time range cannot be longer than 5 years.");
+        Range range = new Range(fromMillis, toMillis, (int) hours);
+
+        List<Block> candidates = new ArrayList<>();
+        Map<Integer, long[]> totals = new HashMap<>();
+        this.scans.readLock().lock();
+        try {
+            synchronized (this) {
+                if (this.closed) throw new IllegalStateException("Sales ledger is closed.");
+                for (Block block : this.blocks) {
+                    if (block.maxTime() >= fromMillis && block.minTime() < toMillis) candidates.add(block);
+                }
+                for (int row = 0; row < this.openRows; row++) {
+                    //* Rows not yet written - at most one block's worth, so scanned right here.
+                    range.add(totals, this.itemIDs[row], this.times[row], this.quantities[row] * this.prices[row]);
+                }
+            }
+            if (!candidates.isEmpty()) SalesLedger.merge(totals, this.pool.invoke(new BlockScan(this.channel, candidates, 0, candidates.size(), range)));
+        }
+        finally { this.scans.readLock().unlock(); }
+        return totals;
+    }
+    /**
+     * Helper method to add partial totals into running totals.
+     * @param totals  Running totals (item ID to revenue per hour) - updated.
+     * @param partial Partial totals to add.
+     */
+    private static void merge(Map<Integer, long[]> totals, Map<Integer, long[]> partial) {
+        for (Map.Entry<Integer, long[]> item : partial.entrySet()) {
+            long[] itemTotals = totals.putIfAbsent(item.getKey(), item.getValue());
+            if (itemTotals == null) continue;
+            long[] add = item.getValue();
+            for (int hour = 0; hour < add.length; hour++) itemTotals[hour] += add[hour];
+        }
+    }
+
+    /**
+     * Queried time range, split into hours.
+     * @param fromMillis Start (inclusive).
+     * @param toMillis   End (exclusive).
+     * @param hours      How many hours (the last one may be partial).
+     */
+    private record Range(long fromMillis, long toMillis, int hours) {
+        /**
+         * Adds revenue to an item's hour - if the timestamp is in the range.
+         * @param totals    Item ID to revenue per hour - updated.
+         * @param itemID    The item ID.
+         * @param timestamp When it was sold.
+         * @param revenue   Revenue in pence.
+         */
+        private void add(Map<Integer, long[]> totals, int itemID, long timestamp, long revenue) {
+            if (timestamp < this.fromMillis || timestamp >= this.toMillis) return;
+            totals.computeIfAbsent(itemID, iD -> new long[this.hours])[(int) ((timestamp - this.fromMillis) / HOUR_MILLIS)] += revenue;
+        }
+    }
+
+    /**
+     * Fork-join task totalling revenue over a range of blocks - splits the range in halves until one block is left.
+     * <p>
+     * Never serialised (only run on a fork-join pool), hence the serial warnings about its channel and block fields are suppressed.
+     */
+    @SuppressWarnings("serial")
+    private static final class BlockScan extends RecursiveTask<Map<Integer, long[]>> {
+        private final FileChannel channel;
+        //^ Blocks are mapped one by one - written blocks never change, so appends carry on meanwhile.
+        private final List<Block> blocks;
+        private final int from;
+        private final int to;
+        //^ Block range, 'from' inclusive and 'to' exclusive.
+        private final Range range;
+
+        /**
+         * Constructor for the task over a range of blocks.
+         * @param channel The ledger file.
+         * @param blocks  Candidate blocks.
+         * @param from    First block index (inclusive).
+         * @param to      Last block index (exclusive).
+         * @param range   Queried time range.
+         */
+        private BlockScan(FileChannel channel, List<Block> blocks, int from, int to, Range range) {
+            this.channel = channel;
+            this.blocks = blocks;
+            this.from = from;
+            this.to = to;
+            this.range = range;
+        }
+
+        @Override
+        protected Map<Integer, long[]> compute() {
+            if (this.to - this.from == 1) return this.scan(this.blocks.get(this.from));
+            int middle = (this.from + this.to) >>> 1;
+            BlockScan left = new BlockScan(this.channel, this.blocks, this.from, middle, this.range);
+            left.fork();
+            Map<Integer, long[]> totals = new BlockScan(this.channel, this.blocks, middle, this.to, this.range).compute();
+            //^ Right half done on this thread while another may steal the left half.
+            SalesLedger.merge(totals, left.join());
+            return totals;
+        }
+        /**
+         * Helper method to total one block's revenue per item code per hour, then key the totals by item ID.
+         * @param block The block.
+         * @return Item ID to revenue per hour.
+         * @throws UncheckedIOException If the block cannot be mapped or is corrupt.
+         */
+        private Map<Integer, long[]> scan(Block block) {
+            ByteBuffer columns;
+            try { columns = this.channel.map(FileChannel.MapMode.READ_ONLY, block.offset() + BLOCK_HEADER_BYTES, block.columnOffset(COLUMNS)); }
+            catch (IOException e) { throw new UncheckedIOException("Cannot map sales ledger block", e); }
+            VarintInput times = BlockScan.inflate(columns, block, TIME);
+            VarintInput items = BlockScan.inflate(columns, block, ITEM);
+            VarintInput quantities = BlockScan.inflate(columns, block, QUANTITY);
+            VarintInput prices = BlockScan.inflate(columns, block, PRICE);
+            int[] itemIDs = new int[(int) items.read()];
+            for (int code = 0; code < itemIDs.length; code++) itemIDs[code] = (int) items.readSigned();
+
+            int hours = this.range.hours();
+            long fromMillis = this.range.fromMillis();
+            long toMillis = this.range.toMillis();
+            long[] sums = new long[itemIDs.length * hours];
+            //^ Flat [item code][hour] - no map lookups per row.
+            long timestamp = block.minTime();
+            for (int row = 0; row < block.rows(); row++) {
+                timestamp += times.readSigned();
+                int code = (int) items.read();
+                long revenue = quantities.read() * prices.read();
+                if (timestamp < fromMillis || timestamp >= toMillis) continue;
+                sums[code * hours + (int) ((timestamp - fromMillis) / HOUR_MILLIS)] += revenue;
+            }
+
+            Map<Integer, long[]> totals = new HashMap<>();
+            for (int code = 0; code < itemIDs.length; code++) {
+                long[] itemTotals = new long[hours];
+                System.arraycopy(sums, code * hours, itemTotals, 0, hours);
+                boolean sold = false;
+                for (long total : itemTotals) sold |= total != 0;
+                if (sold) totals.put(itemIDs[code], itemTotals);
+            }
+            return totals;
+        }
+        /**
+         * Helper method to decompress one column of a block.
+         * @param columns The block's mapped columns.
+         * @param block   The block.
+         * @param column  The column index.
+         * @return Reader over the column's varints.
+         * @throws UncheckedIOException If the column is corrupt.
+         */
+        private static VarintInput inflate(ByteBuffer columns, Block block, int column) {
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(columns.slice(block.columnOffset(column), block.compressedLengths()[column]));
+                byte[] raw = new byte[block.rawLengths()[column]];
+                int length = 0;
+                while (length < raw.length && !inflater.finished()) {
+                    int inflated = inflater.inflate(raw, length, raw.length - length);
+                    if (inflated == 0 && inflater.needsInput()) break;
+                    length += inflated;
+                }
+                if (length != raw.length) throw new DataFormatException(STR."Column \{column} of block at \{block.offset()} is truncated");
+                return new VarintInput(raw);
+            }
+            catch (DataFormatException e) { throw new UncheckedIOException(new IOException(e)); }
+            finally { inflater.end(); }
+        }
+    }
+
+    //: Varint encoding (7 bits per byte, high bit set on every byte but the last; signed values zigzag-encoded first).
+    /**
+     * Growable byte array of varints.
+     */
+    private static final class VarintOutput {
+        private byte[] bytes;
+        private int size;
+
+        /**
+         * Constructor for an empty column.
+         * @param capacity Initial capacity in bytes.
+         */
+        private VarintOutput(int capacity) { this.bytes = new byte[Math.max(16, capacity)]; }
+        /**
+         * Writes a non-negative value.
+         * @param value The value.
+         */
+        private void write(long value) {
+            if (this.size + 10 > this.bytes.length) this.bytes = Arrays.copyOf(this.bytes, this.bytes.length * 2);
+            //^ 10 bytes is the longest varint (64 bits).
+            while ((value & ~0x7FL) != 0) {
+                this.bytes[this.size++] = (byte) (value | 0x80);
+                value >>>= 7;
+            }
+            this.bytes[this.size++] = (byte) value;
+        }
+        /**
+         * Writes a value that may be negative (e.g. a timestamp delta) - zigzag-encoded so small negatives stay short.
+         * @param value The value.
+         */
+        private void writeSigned(long value) { this.write((value << 1) ^ (value >> 63)); }
+    }
+    /**
+     * Reader of a byte array of varints.
+     */
+    private static final class VarintInput {
+        private final byte[] bytes;
+        private int position;
+
+        /**
+         * Constructor for a decompressed column.
+         * @param bytes The column's varints.
+         */
+        private VarintInput(byte[] bytes) { this.bytes = bytes; }
+        /**
+         * Reads a value written by 'VarintOutput.write'.
+         * @return The value.
+         */
+        private long read() {
+            long value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = this.bytes[this.position++];
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            return value;
+        }
+        /**
+         * Reads a value written by 'VarintOutput.writeSigned'.
+         * @return The value.
+         */
+        private long readSigned() {
+            long value = this.read();
+            return (value >>> 1) ^ -(value & 1);
+        }
+    }
+
+    /**
+     * Waits for queries still scanning, then writes the rows not yet written, stops the flusher and closes the file.
+     * @throws UncheckedIOException If writing or closing fails.
+     */
+    @Override
+    public void close() {
+        this.scans.writeLock().lock();
+        //^ Not while holding 'this' - a query waiting for 'this' would never release its share of the lock.
+        try {
+            synchronized (this) {
+                if (this.closed) return;
+                try {
+                    this.flush();
+                    this.channel.close();
+                }
+                catch (IOException e) { throw new UncheckedIOException(e); }
+                finally {
+                    this.closed = true;
+                    if (this.flusher != null) this.flusher.shutdownNow();
+                    //^ Drops a write still waiting - it would find the ledger closed anyway.
+                }
+            }
+        }
+        finally { this.scans.writeLock().unlock(); }
+    }
+}
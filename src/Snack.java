@@ -1,4 +1,3 @@
-import java.util.HashMap;
 import java.util.Map;
 
 /**
@@ -19,14 +18,20 @@ public class Snack extends Item{
      * See corresponding superclass's method documentation for more information.
      * @param name   What it is called for the customer's knowledge.
      * @param iD     The unique identifier (unique in subject vending machine) for the item.
-     * @param price  How much, each of this specific item, costs.
+     * @param price  How much, each of this specific item, costs (in pence).
      * @param weight How much it weighs, in grams.
      */
-    public Snack(String name, int iD, double price, int weight) {
+    public Snack(String name, int iD, long price, int weight) {
         super(name, iD, price);
         this.weight = weight;
     }
 
+    /**
+     * Getter method for 'weight'.
+     * @return How much it weighs, in grams.
+     */
+    public int getWeight() { return this.weight; }
+
     /**
      * Implemented abstract method to specify item type as a snack.
      * <p>
@@ -39,15 +44,15 @@ public class Snack extends Item{
     }
 
     /**
-     * View method (specialized getter method) that expands on Item's (superclass) render method by adding weight detail.
+     * View method (specialized getter method) that expands on Item's (superclass) details method (used for its cached rendering) by adding weight detail.
      * <p>
      * See corresponding superclass's method documentation for more information.
      * @return Item's name, type (drink), ID, price, and weight in g.
      */
     @Override
-    public Map<String, String> render() {
-        Map<String, String> details = new HashMap<>(super.render());
-        //^ 'new HashMap<>' makes copy to allow appending more details.
+    Map<String, String> details() {
+        Map<String, String> details = super.details();
+        //^ Already a new map, so more details can be appended.
         details.put("weight", Integer.toString(this.weight));
         return details;
     }
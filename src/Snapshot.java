@@ -0,0 +1,124 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * Compact image of a vending machine at one point of its 'Journal', so startup only replays the records after it.
+ * <p>
+ * Stored as [magic][format version][sequence][payload length][CRC32C of payload][payload], where the payload is the records rebuilding the vending machine
+ * (a 'Specification', one 'SlotRestored' per assigned slot and one 'CoinsDeposited' per coin type held).
+ * There is no state record: snapshots are only taken while the vending machine is IDLE (see 'VendingMachine.snapshotIfDue'), which is the state replay starts in.
+ * <p>
+ * Written and read through a memory-mapped file. A new snapshot is written to a temporary file, read back to verify it, then atomically moved into place, so a power cut leaves either the old or the new snapshot - never a mix.
+ * The old snapshot can be kept (moved aside) rather than replaced, so a snapshot found corrupt later still has an older one to fall back on (see 'Journal').
+ * The directory is synced after the moves, so the new snapshot is durable before anything it covers (journal segments) is deleted.
+ * @param sequence How many journal records the snapshot covers.
+ * @param records  The records rebuilding the vending machine, in replay order.
+ */
+public record Snapshot(long sequence, List<JournalRecord> records) {
+    private static final int MAGIC = 0x564D534E;
+    //^ "VMSN" - rejects files that are not snapshots at all.
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_BYTES = Integer.BYTES * 2 + Long.BYTES + Integer.BYTES * 2;
+
+    /**
+     * Constructor makes the records read-only.
+     * @param sequence How many journal records the snapshot covers.
+     * @param records  The records rebuilding the vending machine.
+     */
+    public Snapshot {
+        if (sequence < 0) throw new IllegalArgumentException("Snapshot sequence cannot be negative.");
+        records = Collections.unmodifiableList(new ArrayList<>(records));
+    }
+
+    /**
+     * Writes the snapshot and syncs it, replacing any snapshot already at the path.
+     * <p>
+     * Returns only once the move itself is on disk (the directory is synced), so callers may then delete what the snapshot covers.
+     * @param path Where the snapshot is kept.
+     * @throws IOException If writing, verifying, syncing or moving fails.
+     */
+    public void write(Path path) throws IOException { this.write(path, null); }
+    /**
+     * Writes the snapshot, verifies and syncs it, moving any snapshot already at the path aside first.
+     * <p>
+     * Returns only once the moves themselves are on disk (the directory is synced), so callers may then delete what the snapshot covers.
+     * @param path     Where the snapshot is kept.
+     * @param previous Where the snapshot already at the path is moved to (replacing any there); 'null' to replace it instead.
+     * @throws IOException If writing, verifying, syncing or moving fails - the snapshot already at the path is then left in place.
+     */
+    public void write(Path path, Path previous) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(4096);
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (JournalRecord record : this.records) record.writeTo(out);
+        byte[] payload = bytes.toByteArray();
+        CRC32C crc = new CRC32C();
+        crc.update(payload);
+
+        Path temporary = path.resolveSibling(STR."\{path.getFileName()}.tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + payload.length);
+            mapped.putInt(MAGIC).putInt(FORMAT_VERSION).putLong(this.sequence).putInt(payload.length).putInt((int) crc.getValue()).put(payload);
+            mapped.force();
+        }
+        Snapshot written = Snapshot.read(temporary);
+        if (written == null || written.sequence() != this.sequence || written.records().size() != this.records.size()) throw new IOException(STR."Snapshot written to \{temporary} failed verification.");
+        //^ Checked before anything is moved, so a bad write never replaces a good snapshot.
+        if (previous != null && Files.exists(path)) Files.move(path, previous, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        Snapshot.syncDirectory(path.toAbsolutePath().getParent());
+        //^ Without it, a power cut could keep the later segment deletions but lose the rename - losing both the old segments and the new snapshot.
+    }
+    /**
+     * Syncs a directory, so the files created, renamed or deleted in it so far survive a power cut.
+     * @param directory The directory.
+     * @throws IOException If the directory cannot be opened or synced.
+     */
+    static void syncDirectory(Path directory) throws IOException {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) { channel.force(true); }
+    }
+
+    /**
+     * Maps and validates the snapshot at the path.
+     * @param path Where the snapshot is kept.
+     * @return The snapshot, or null if there is none or it fails validation (in which case the journal falls back to its previous snapshot, or to replaying every segment - see 'Journal').
+     * @throws IOException If the file exists but cannot be read.
+     */
+    public static Snapshot read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES) return null;
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (mapped.getInt() != MAGIC || mapped.getInt() != FORMAT_VERSION) return null;
+            long sequence = mapped.getLong();
+            int length = mapped.getInt();
+            int checksum = mapped.getInt();
+            if (length < 0 || HEADER_BYTES + (long) length != size) return null;
+            byte[] payload = new byte[length];
+            mapped.get(payload);
+            CRC32C crc = new CRC32C();
+            crc.update(payload);
+            if ((int) crc.getValue() != checksum) return null;
+
+            List<JournalRecord> records = new ArrayList<>();
+            ByteArrayInputStream bytes = new ByteArrayInputStream(payload);
+            DataInputStream in = new DataInputStream(bytes);
+            while (bytes.available() > 0) records.add(JournalRecord.readFrom(in));
+            return new Snapshot(sequence, records);
+        }
+        catch (NoSuchFileException e) { return null; }
+    }
+}
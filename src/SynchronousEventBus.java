@@ -0,0 +1,45 @@
+/**
+ * Event bus that delivers every event immediately on the publishing thread.
+ * <p>
+ * Behaves exactly like 'java.util.Observable.notifyObservers' - the publisher waits until every listener has handled the event.
+ * Used by default by the proxies so existing observers (e.g. 'AdminDisplay', 'CustomerDisplay') keep their current behaviour.
+ */
+public class SynchronousEventBus implements EventBus {
+    private final EventSubscribers subscribers = new EventSubscribers();
+
+    /**
+     * Adds a listener to receive every event published from now on.
+     * <p>
+     * See corresponding interface's method documentation for more information.
+     * @param listener The listener to add.
+     */
+    @Override
+    public void subscribe(EventListener listener) { this.subscribers.add(listener); }
+    /**
+     * Adds a listener to receive only one kind of event published from now on.
+     * <p>
+     * See corresponding interface's method documentation for more information.
+     * @param kind     The event kind to receive.
+     * @param listener The listener to add.
+     */
+    @Override
+    public void subscribe(Class<? extends VendingEvent> kind, EventListener listener) { this.subscribers.add(kind, listener); }
+    /**
+     * Checks if publishing an event of a kind would reach any listener.
+     * <p>
+     * See corresponding interface's method documentation for more information.
+     * @param kind The event kind.
+     * @return 'true' if at least one listener would receive it; otherwise 'false'.
+     */
+    @Override
+    public boolean hasSubscribers(Class<? extends VendingEvent> kind) { return this.subscribers.has(kind); }
+
+    /**
+     * Delivers the event to every listener before returning.
+     * <p>
+     * See corresponding interface's method documentation for more information.
+     * @param event The event.
+     */
+    @Override
+    public void publish(VendingEvent event) { this.subscribers.deliver(event); }
+}
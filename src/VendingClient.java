@@ -0,0 +1,267 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Client for a 'VendingSocketServer' - calls customer and admin actions of a vending machine in another process, speaking 'VendingProtocol'.
+ * <p>
+ * Implements 'ActionsCustomer' and 'ActionsAdmin' itself, so a front-end can use it in place of the proxies: every action call sends one request and waits for its response.
+ * Exceptions the vending machine throws are rethrown with their type and message ('IllegalArgumentException' or 'IllegalStateException'); a lost connection is an 'UncheckedIOException'.
+ * <p>
+ * Events pushed by the server are published on the client's event bus by a reader thread, in the order the server sent them.
+ * Events caused by an action are therefore delivered before its call returns (with a synchronous event bus), while events caused by other clients arrive whenever they happen.
+ * Only kinds subscribed through 'this.subscribe' are pushed by the server at all.
+ * Listeners on a synchronous event bus must not call actions on this client - the reader thread would be waiting for the very response it has to read.
+ * <p>
+ * Calls are serialised (one request in flight per client); use one client per thread for concurrent calls.
+ * Responses carry no request ID - they are matched to calls by order - so a call interrupted while waiting closes the connection:
+ * its response would otherwise be taken by the next call, and every call after it would get the previous call's response.
+ */
+public class VendingClient implements ActionsCustomer, ActionsAdmin, AutoCloseable {
+    private static final byte[] DISCONNECTED = new byte[0];
+    //^ Queued as the response when the connection is lost, so a waiting call fails instead of waiting forever.
+
+    private final SocketChannel channel;
+    private final EventBus eventBus;
+    private final BlockingQueue<byte[]> responses = new LinkedBlockingQueue<>();
+    private final Thread reader;
+    private int subscriptions;
+    //^ Event kinds asked of the server (bit mask) - guarded by 'this'.
+    private boolean abandoned;
+    //^ Set once a call gave up waiting for its response - guarded by 'this'.
+
+    /**
+     * Constructor connects to a server, delivering pushed events synchronously on the reader thread.
+     * @param address Where the server listens.
+     * @throws IOException If the connection cannot be made.
+     */
+    public VendingClient(InetSocketAddress address) throws IOException { this(address, new SynchronousEventBus()); }
+    /**
+     * Constructor connects to a server, choosing how pushed events are delivered.
+     * @param address  Where the server listens.
+     * @param eventBus The event bus pushed events are published on (e.g. 'AsyncEventBus' so slow displays never hold up the reader thread).
+     * @throws IOException If the connection cannot be made.
+     */
+    public VendingClient(InetSocketAddress address, EventBus eventBus) throws IOException {
+        this.channel = SocketChannel.open(address);
+        this.channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        this.eventBus = eventBus;
+        this.reader = new Thread(this::readFrames, "vending-client-reader");
+        this.reader.setDaemon(true);
+        //^ Never keeps the JVM alive on its own if the client is not closed.
+        this.reader.start();
+    }
+
+    /**
+     * Reader thread - reads every frame from the server, publishing events and handing responses to the waiting call.
+     * <p>
+     * A listener that throws (on a synchronous event bus) is reported to the reader thread's uncaught exception handler, and the next frames are still read.
+     * However the reader thread stops, the waiting and later calls are released with a lost connection.
+     */
+    private void readFrames() {
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(this.channel)));
+            while (true) {
+                int length = in.readInt();
+                if (length < 1 || length > VendingProtocol.MAX_FRAME) throw new IOException(STR."Invalid frame length \{length}");
+                byte[] frame = new byte[length];
+                in.readFully(frame);
+                if (frame[0] == VendingProtocol.EVENT) {
+                    DataInputStream event = new DataInputStream(new ByteArrayInputStream(frame, 1, length - 1));
+                    VendingEvent pushed = VendingProtocol.readEvent(event);
+                    try { this.eventBus.publish(pushed); }
+                    catch (RuntimeException e) {
+                        //* One failing listener must not stop the responses being read.
+                        Thread thread = Thread.currentThread();
+                        thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+                    }
+                }
+                else this.responses.add(frame);
+            }
+        }
+        catch (IOException e) {}
+        //^ Includes end of stream once either side closes.
+        finally { this.responses.add(DISCONNECTED); }
+        //^ Also on an unexpected error, so no call waits forever for a response that will never be read.
+    }
+    /**
+     * Helper method to send a request and wait for its response.
+     * @param request The request frame.
+     * @return The response's result, positioned after the status.
+     * @throws IllegalArgumentException if the server rejected the request as an invalid argument.
+     * @throws IllegalStateException    if the server rejected the request for the vending machine's state, or the call was interrupted (the connection is then closed).
+     * @throws UncheckedIOException     if the connection is lost, or was closed by an interrupted call.
+     */
+    private synchronized DataInputStream call(ByteBuffer request) {
+        try {
+            if (this.abandoned) throw new IOException("Connection to the vending machine server was closed by an interrupted call");
+            //^ Its response may still be queued (read before the connection closed) - never handed to a later call.
+            while (request.hasRemaining()) this.channel.write(request);
+            byte[] response = this.responses.take();
+            if (response == DISCONNECTED) {
+                this.responses.add(DISCONNECTED);
+                //^ Put back so every later call fails too.
+                throw new IOException("Connection to the vending machine server lost");
+            }
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(response, 1, response.length - 1));
+            byte status = in.readByte();
+            if (status == VendingProtocol.OK) return in;
+            String message = in.readUTF();
+            throw status == VendingProtocol.REJECTED_STATE ? new IllegalStateException(message) : new IllegalArgumentException(message);
+        }
+        catch (IOException e) { throw new UncheckedIOException(e); }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            this.abandoned = true;
+            try { this.channel.close(); }
+            catch (IOException closeError) { e.addSuppressed(closeError); }
+            //^ The request may still be carried out by the server, but its response can no longer be told apart from the next call's.
+            throw new IllegalStateException("Interrupted while waiting for the vending machine server - connection closed.", e);
+        }
+    }
+    /**
+     * Helper method to call an action without arguments nor result.
+     * @param opcode The action's opcode.
+     */
+    private void call(byte opcode) { this.call(VendingProtocol.frame(opcode, out -> {})); }
+
+    //: Events.
+    /**
+     * Subscribes a listener to one kind of event, asking the server to push that kind to this client.
+     * @param kind     The event kind (a 'VendingEvent' record class).
+     * @param listener The listener to add.
+     */
+    public synchronized void subscribe(Class<? extends VendingEvent> kind, EventListener listener) {
+        this.eventBus.subscribe(kind, listener);
+        this.requestEvents(this.subscriptions | 1 << VendingProtocol.kindOf(kind));
+    }
+    /**
+     * Subscribes a listener to every kind of event (except 'OptIn' kinds - see 'VendingEvent'), asking the server to push them to this client.
+     * @param listener The listener to add.
+     */
+    public synchronized void subscribe(EventListener listener) {
+        this.eventBus.subscribe(listener);
+        this.requestEvents(this.subscriptions | VendingProtocol.everyKindMask());
+    }
+    /**
+     * Helper method to ask the server for a new set of event kinds.
+     * @param mask Event kinds to be pushed ('1 << event kind').
+     */
+    private void requestEvents(int mask) {
+        if (mask == this.subscriptions) return;
+        this.call(VendingProtocol.frame(VendingProtocol.SUBSCRIBE, out -> out.writeInt(mask)));
+        this.subscriptions = mask;
+    }
+
+    //: Customer actions - see 'ActionsCustomer'.
+    @Override
+    public void startOrder() { this.call(VendingProtocol.START_ORDER); }
+    @Override
+    public void selectItem(int itemID) { this.call(VendingProtocol.frame(VendingProtocol.SELECT_ITEM, out -> out.writeInt(itemID))); }
+    @Override
+    public void deselectItem(int itemID) { this.call(VendingProtocol.frame(VendingProtocol.DESELECT_ITEM, out -> out.writeInt(itemID))); }
+    @Override
+    public void checkout() { this.call(VendingProtocol.CHECKOUT); }
+    @Override
+    public void cancelOrder() { this.call(VendingProtocol.CANCEL_ORDER); }
+    @Override
+    public void depositCoin(CoinGBP coin) { this.call(VendingProtocol.frame(VendingProtocol.DEPOSIT_COIN, out -> out.writeByte(coin.ordinal()))); }
+    @Override
+    public void GetBasket() { this.call(VendingProtocol.GET_BASKET); }
+    @Override
+    public void GetItemStock() { this.call(VendingProtocol.GET_ITEM_STOCK); }
+
+    //: Admin actions - see 'ActionsAdmin'.
+    @Override
+    public void depositCoins(CoinGBP coin, int amount) {
+        this.call(VendingProtocol.frame(VendingProtocol.DEPOSIT_COINS, out -> {
+            out.writeByte(coin.ordinal());
+            out.writeInt(amount);
+        }));
+    }
+    @Override
+    public void withdrawCoins(CoinGBP coin, int amount) {
+        this.call(VendingProtocol.frame(VendingProtocol.WITHDRAW_COINS, out -> {
+            out.writeByte(coin.ordinal());
+            out.writeInt(amount);
+        }));
+    }
+    @Override
+    public Map<CoinGBP, Integer> viewCoins() {
+        try { return VendingProtocol.readCoins(this.call(VendingProtocol.frame(VendingProtocol.VIEW_COINS, out -> {}))); }
+        catch (IOException e) { throw new UncheckedIOException(e); }
+    }
+    @Override
+    public void stockItems(int slotNum, int amount) {
+        this.call(VendingProtocol.frame(VendingProtocol.STOCK_ITEMS, out -> {
+            out.writeInt(slotNum);
+            out.writeInt(amount);
+        }));
+    }
+    @Override
+    public void removeItems(int slotNum, int amount) {
+        this.call(VendingProtocol.frame(VendingProtocol.REMOVE_ITEMS, out -> {
+            out.writeInt(slotNum);
+            out.writeInt(amount);
+        }));
+    }
+    @Override
+    public void assignItemSlot(int slotNum, Item item) {
+        this.call(VendingProtocol.frame(VendingProtocol.ASSIGN_ITEM_SLOT, out -> {
+            out.writeInt(slotNum);
+            JournalRecord.writeItem(out, item);
+        }));
+    }
+    @Override
+    public void unassignItemSlot(int slotNum) { this.call(VendingProtocol.frame(VendingProtocol.UNASSIGN_ITEM_SLOT, out -> out.writeInt(slotNum))); }
+    /**
+     * Views all item slots of the remote vending machine.
+     * <p>
+     * The slots are a copy taken when the server answered (rebuilt in a local item storage), so unlike in-process they do not follow later stock changes.
+     * @return All slot representations; unassigned slots are 'null'.
+     */
+    @Override
+    public ItemSlot[] viewItems() {
+        DataInputStream in = this.call(VendingProtocol.frame(VendingProtocol.VIEW_ITEMS, out -> {}));
+        try {
+            int slotSize = in.readInt();
+            int slotCount = in.readInt();
+            ItemStorage itemStorage = new ItemStorage(slotSize, slotCount);
+            for (int slotNum = 0; slotNum < slotCount; slotNum++) {
+                if (!in.readBoolean()) continue;
+                itemStorage.assignSlot(slotNum, JournalRecord.readItem(in));
+                int stock = in.readInt();
+                for (int i = 0; i < stock; i++) itemStorage.restockItem(slotNum);
+            }
+            return itemStorage.render();
+        }
+        catch (IOException e) { throw new UncheckedIOException(e); }
+    }
+    @Override
+    public void startMaintenance() { this.call(VendingProtocol.START_MAINTENANCE); }
+    @Override
+    public void stopMaintenance() { this.call(VendingProtocol.STOP_MAINTENANCE); }
+
+    /**
+     * Disconnects from the server and waits for the reader thread to finish delivering events.
+     * <p>
+     * If interrupted while waiting for the reader thread, returns early with the interrupt flag set again; the reader still stops on its own.
+     * @throws IOException If closing the connection fails.
+     */
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+        try { this.reader.join(); }
+        catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+    }
+}
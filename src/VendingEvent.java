@@ -0,0 +1,246 @@
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Typed events published by the proxy classes (through an 'EventBus') for displays and other subscribers.
+ * <p>
+ * Sealed so every kind of event is known here and subscribers can dispatch with an exhaustive pattern-matching switch instead of comparing class names.
+ * Each kind is a small immutable record holding the raw values (coins, items, amounts in pence); text is only formatted when 'message()' is called, i.e. only when something actually displays it.
+ * <p>
+ * Subscribers can subscribe to specific kinds only ('EventBus.subscribe(Class, EventListener)'), and publishers skip creating events nobody subscribed to.
+ * Fine-grained kinds ('OptIn') are only delivered to subscribers of that exact kind, so displays subscribed to every kind are not flooded by them.
+ */
+public sealed interface VendingEvent {
+    /**
+     * Formats the event as human-readable text; only called by whoever displays it.
+     * @return Text describing the event.
+     */
+    String message();
+
+    /**
+     * Marks fine-grained event kinds (e.g. one per coin of a bulk deposit) that are only streamed to listeners subscribed to their kind specifically.
+     * <p>
+     * Listeners subscribed to every kind (such as displays) get the matching summary event instead.
+     */
+    sealed interface OptIn extends VendingEvent {}
+
+    //: General events.
+    /**
+     * Free text notice; text is supplied lazily so formatting is skipped when nobody displays it.
+     * @param text Supplies the notice text.
+     */
+    record Notice(Supplier<String> text) implements VendingEvent {
+        @Override
+        public String message() { return this.text.get(); }
+    }
+    /**
+     * An action failed or was not allowed.
+     * @param error The cause; 'IllegalStateException' for wrong vending machine state and 'IllegalArgumentException' for invalid operations.
+     */
+    record Failure(RuntimeException error) implements VendingEvent {
+        @Override
+        public String message() { return this.error.getMessage(); }
+    }
+    /**
+     * Vending machine entered or left maintenance mode.
+     * @param state The new state of the vending machine.
+     */
+    record StateChanged(VendingMachineState state) implements VendingEvent {
+        @Override
+        public String message() {
+            return this.state == VendingMachineState.MAINTENANCE ? "Vending machine is now in maintenance mode." : "Vending machine is now out of maintenance mode.";
+        }
+    }
+
+    //: Customer events.
+    /**
+     * Customer checked out their basket.
+     * @param payDue Total to pay in pence.
+     */
+    record CheckoutTotal(long payDue) implements VendingEvent {
+        @Override
+        public String message() { return STR."Items in basket total to £\{Money.format(this.payDue)}. Please deposit coins to proceed with payment."; }
+    }
+    /**
+     * Customer deposited a coin towards their payment.
+     * @param coin         The deposited coin.
+     * @param remainingDue Remaining amount to pay in pence; negative if overpaid.
+     */
+    record PaymentProgress(CoinGBP coin, long remainingDue) implements VendingEvent {
+        @Override
+        public String message() { return STR."Deposited \{this.coin.toString()}. Remaining price to pay: £\{Money.format(this.remainingDue)}"; }
+    }
+    /**
+     * One item of an order was dispensed to the customer; opt-in (see 'OptIn') - displays get 'OrderCompleted' instead.
+     * @param item The dispensed item.
+     */
+    record ItemDispensed(Item item) implements OptIn {
+        @Override
+        public String message() { return STR."Dispensed one \{this.item.getName()}."; }
+    }
+    /**
+     * Change/refund for the customer is about to be dispensed.
+     * @param amount The amount to dispense in pence.
+     */
+    record ChangeStarted(long amount) implements VendingEvent {
+        @Override
+        public String message() { return STR."Processing money withdrawal of £\{Money.format(this.amount)} for dear customer..."; }
+    }
+    /**
+     * One coin was dispensed to the customer as change/refund; opt-in (see 'OptIn') - displays get 'OrderCompleted' or 'ChangeCompleted' instead.
+     * @param coin The dispensed coin.
+     */
+    record ChangeDispensed(CoinGBP coin) implements OptIn {
+        @Override
+        public String message() { return STR."Dispensed \{this.coin.toString()} as change/refund."; }
+    }
+    /**
+     * All change/refund for the customer was dispensed.
+     * @param amount The dispensed amount in pence.
+     */
+    record ChangeCompleted(long amount) implements VendingEvent {
+        @Override
+        public String message() { return STR."£\{Money.format(this.amount)} withdrawn sucessfully."; }
+    }
+    /**
+     * Progress tick of an order being completed or refunded - items dispensed and coins returned so far; opt-in (see 'OptIn').
+     * <p>
+     * Ticks can be throttled to a display's frame rate ('CustomerProxy.setProgressFrameRate'); the last tick (everything done) is always sent.
+     * @param itemsDispensed How many items have been dispensed so far.
+     * @param items          How many items the order dispenses; zero for a refund.
+     * @param coinsReturned  How many coins have been returned so far.
+     * @param coins          How many coins the order returns as change/refund.
+     */
+    record OrderProgress(int itemsDispensed, int items, int coinsReturned, int coins) implements OptIn {
+        @Override
+        public String message() { return STR."Dispensed \{this.itemsDispensed}/\{this.items} item(s) and \{this.coinsReturned}/\{this.coins} coin(s)."; }
+    }
+    /**
+     * Customer's order was completed - one summary of everything dispensed and returned, instead of an event per item and per coin.
+     * @param items  Dispensed items and their quantities (read-only).
+     * @param change Coins returned as change and how many of each (read-only, in order of coin value); empty if paid exactly.
+     * @param amount The change returned in pence.
+     */
+    record OrderCompleted(Map<Item, Integer> items, Map<CoinGBP, Integer> change, long amount) implements VendingEvent {
+        @Override
+        public String message() {
+            StringBuilder summary = new StringBuilder("Dispensed");
+            String separator = " ";
+            for (Map.Entry<Item, Integer> line : this.items.entrySet()) {
+                summary.append(separator).append(line.getValue()).append(" x ").append(line.getKey().getName());
+                separator = ", ";
+            }
+            if (this.amount > 0) {
+                summary.append(STR.". Change of £\{Money.format(this.amount)} returned as");
+                separator = " ";
+                for (Map.Entry<CoinGBP, Integer> coin : this.change.entrySet()) {
+                    summary.append(separator).append(coin.getValue()).append(" x ").append(coin.getKey());
+                    separator = ", ";
+                }
+            }
+            return summary.append(". Thank you for your purchase!").toString();
+        }
+    }
+    /**
+     * Customer asked to view their basket.
+     * @param items Items in the basket and their quantities (read-only copy).
+     */
+    record BasketView(Map<Item, Integer> items) implements VendingEvent {
+        @Override
+        public String message() { return STR."Basket: \{this.items}"; }
+    }
+    /**
+     * Customer asked to view what the vending machine offers.
+     * @param items Offered items and their total stock (read-only).
+     */
+    record StockView(Map<Item, Integer> items) implements VendingEvent {
+        @Override
+        public String message() { return STR."Stock: \{this.items}"; }
+    }
+
+    //: Admin events.
+    /**
+     * Admin deposited coins of one type in bulk.
+     * @param coin      The deposited coin type.
+     * @param requested How many coins the admin tried to deposit.
+     * @param accepted  How many coins were deposited; the rest did not fit and were refunded.
+     */
+    record CoinsDeposited(CoinGBP coin, int requested, int accepted) implements VendingEvent {
+        @Override
+        public String message() {
+            if (this.accepted == this.requested) return STR."All \{this.accepted} \{this.coin.toString()}(s) deposited successfully.";
+            return STR."Only \{this.accepted} of \{this.requested} \{this.coin.toString()}(s) deposited - coin storage is full; \{this.requested - this.accepted} refunded.";
+        }
+    }
+    /**
+     * Admin withdrew coins of one type in bulk.
+     * @param coin      The withdrawn coin type.
+     * @param requested How many coins the admin tried to withdraw.
+     * @param withdrawn How many coins were withdrawn; fewer if the coin storage ran out.
+     */
+    record CoinsWithdrawn(CoinGBP coin, int requested, int withdrawn) implements VendingEvent {
+        @Override
+        public String message() {
+            if (this.withdrawn == this.requested) return STR."All \{this.withdrawn} \{this.coin.toString()}(s) withdrawn successfully.";
+            return STR."Only \{this.withdrawn} of \{this.requested} \{this.coin.toString()}(s) withdrawn - coin storage ran out.";
+        }
+    }
+    /**
+     * One coin of an admin bulk deposit; opt-in (see 'OptIn').
+     * @param coin The deposited coin.
+     */
+    record CoinAccepted(CoinGBP coin) implements OptIn {
+        @Override
+        public String message() { return this.coin.toString(); }
+    }
+    /**
+     * One coin of an admin bulk withdrawal; opt-in (see 'OptIn').
+     * @param coin The withdrawn coin.
+     */
+    record CoinWithdrawn(CoinGBP coin) implements OptIn {
+        @Override
+        public String message() { return this.coin.toString(); }
+    }
+    /**
+     * Admin stocked items into a slot in bulk - one summary instead of an event per item.
+     * @param slotNum   The stocked slot number.
+     * @param requested How many items the admin tried to stock.
+     * @param stocked   How many items were stocked; fewer if the vending machine rejected one (reported separately as a 'Failure').
+     */
+    record ItemsStocked(int slotNum, int requested, int stocked) implements VendingEvent {
+        @Override
+        public String message() {
+            if (this.stocked == this.requested) return STR."All \{this.stocked} item(s) stocked into slot #\{this.slotNum} successfully.";
+            return STR."Only \{this.stocked} of \{this.requested} item(s) stocked into slot #\{this.slotNum}.";
+        }
+    }
+    /**
+     * Admin removed items from a slot in bulk - one summary instead of an event per item.
+     * @param slotNum   The slot number the items were removed from.
+     * @param requested How many items the admin tried to remove.
+     * @param removed   How many items were removed; fewer if the vending machine rejected one (reported separately as a 'Failure').
+     */
+    record ItemsRemoved(int slotNum, int requested, int removed) implements VendingEvent {
+        @Override
+        public String message() {
+            if (this.removed == this.requested) return STR."All \{this.removed} item(s) removed from slot #\{this.slotNum} successfully.";
+            return STR."Only \{this.removed} of \{this.requested} item(s) removed from slot #\{this.slotNum}.";
+        }
+    }
+    /**
+     * One item of an admin bulk stock; opt-in (see 'OptIn') - displays get 'ItemsStocked' instead.
+     * @param slotNum The stocked slot number.
+     */
+    record ItemStocked(int slotNum) implements OptIn {
+        @Override
+        public String message() { return STR."Item stocked into slot #\{this.slotNum}"; }
+    }
+    /**
+     * One item of an admin bulk removal; opt-in (see 'OptIn') - displays get 'ItemsRemoved' instead.
+     * @param slotNum The slot number the item was removed from.
+     */
+    record ItemRemoved(int slotNum) implements OptIn {
+        @Override
+        public String message() { return STR."Item removed from slot #\{this.slotNum}"; }
+    }
+}
@@ -0,0 +1,183 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BiConsumer;
+
+/**
+ * Registry of many vending machines in one JVM, indexed by machine ID - e.g. for a back office simulating and monitoring every vending machine in an estate.
+ * <p>
+ * Vending machines are spread over a fixed number of shards by machine ID. Each shard is its own concurrent map, so creating and looking up vending machines in different shards never contend.
+ * <p>
+ * Aggregate queries (e.g. total stock of an item, total coins by denomination) are run with fork-join: the shard range is split in halves until one shard is left, every shard is summed in parallel, then the partial sums are added up.
+ * Counts are read with the vending machines' telemetry getters, so queries neither need nor disturb any state - though a total is not a snapshot of one instant, as machines keep trading meanwhile.
+ * <p>
+ * The registry itself costs one map entry per vending machine; the vending machines are created by 'VendingMachineFactory' as usual.
+ */
+public class VendingFleet {
+    private static final int DEFAULT_SHARDS = 64;
+    //^ Enough to keep every core busy on aggregate queries, few enough that tiny fleets do not pay for many empty maps.
+    private static final CoinGBP[] COINS = CoinGBP.values();
+    //^ Cached as 'CoinGBP.values()' creates a new array every call.
+
+    private final List<ConcurrentHashMap<Integer, VendingMachine>> shards;
+    //^ Machine ID to vending machine; a machine ID always maps to the same shard (see 'this.shardFor').
+    private final ForkJoinPool pool;
+    //^ Runs the aggregate queries.
+
+    /**
+     * Constructor for a fleet with the default number of shards, queried on the common fork-join pool.
+     */
+    public VendingFleet() { this(DEFAULT_SHARDS, ForkJoinPool.commonPool()); }
+    /**
+     * Constructor for a fleet with a chosen number of shards and fork-join pool.
+     * @param shardCount How many shards to spread vending machines over; must be a power of two.
+     * @param pool       Fork-join pool to run aggregate queries on.
+     * @throws IllegalArgumentException if the shard count is not a positive power of two.
+     */
+    public VendingFleet(int shardCount, ForkJoinPool pool) {
+        if (shardCount <= 0 || Integer.bitCount(shardCount) != 1) throw new IllegalArgumentException("Shard count must be a positive power of two.");
+        //^ Power of two so picking a shard is a bit mask instead of a division.
+        List<ConcurrentHashMap<Integer, VendingMachine>> shards = new ArrayList<>(shardCount);
+        for (int i = 0; i < shardCount; i++) { shards.add(new ConcurrentHashMap<>()); }
+        this.shards = List.copyOf(shards);
+        this.pool = pool;
+    }
+
+    /**
+     * Helper method to get the shard a machine ID belongs to.
+     * @param machineID The machine ID.
+     * @return The shard's map.
+     */
+    private Map<Integer, VendingMachine> shardFor(int machineID) {
+        return this.shards.get((machineID ^ (machineID >>> 16)) & (this.shards.size() - 1));
+        //^ High bits folded in so machine IDs allocated in strides (e.g. per site) still spread evenly.
+    }
+
+    //: Registry methods.
+    /**
+     * Creates a vending machine (via 'VendingMachineFactory') and registers it under a machine ID.
+     * @param machineID   Unique ID of the new vending machine within the fleet.
+     * @param maxSlots    The maximum number of item slots in the vending machine.
+     * @param slotSize    The item slot size in the vending machine.
+     * @param coinStorage The coin storage Map in the vending machine.
+     * @return The new vending machine.
+     * @throws IllegalArgumentException if the specifications are invalid or the machine ID is already in the fleet.
+     */
+    public VendingMachine createVendingMachine(int machineID, int maxSlots, int slotSize, Map<CoinGBP, Integer> coinStorage) {
+        VendingMachine vendingMachine = VendingMachineFactory.getInstance().createVendingMachine(maxSlots, slotSize, coinStorage);
+        if (this.shardFor(machineID).putIfAbsent(machineID, vendingMachine) != null) throw new IllegalArgumentException(STR."Vending machine \{machineID} is already in the fleet.");
+        return vendingMachine;
+    }
+    /**
+     * Gets a registered vending machine.
+     * @param machineID The machine ID.
+     * @return The vending machine.
+     * @throws IllegalArgumentException if no vending machine has the machine ID.
+     */
+    public VendingMachine getVendingMachine(int machineID) {
+        VendingMachine vendingMachine = this.shardFor(machineID).get(machineID);
+        if (vendingMachine == null) throw new IllegalArgumentException(STR."Vending machine \{machineID} is not in the fleet.");
+        return vendingMachine;
+    }
+    /**
+     * Unregisters a vending machine (e.g. decommissioned).
+     * @param machineID The machine ID.
+     * @return The unregistered vending machine.
+     * @throws IllegalArgumentException if no vending machine has the machine ID.
+     */
+    public VendingMachine removeVendingMachine(int machineID) {
+        VendingMachine vendingMachine = this.shardFor(machineID).remove(machineID);
+        if (vendingMachine == null) throw new IllegalArgumentException(STR."Vending machine \{machineID} is not in the fleet.");
+        return vendingMachine;
+    }
+    /**
+     * Counts the registered vending machines.
+     * @return How many vending machines are in the fleet.
+     */
+    public int size() {
+        int size = 0;
+        for (Map<Integer, VendingMachine> shard : this.shards) { size += shard.size(); }
+        return size;
+    }
+
+    //: Aggregate queries.
+    /**
+     * Totals the stock of an item across every vending machine in the fleet.
+     * @param iD The item ID.
+     * @return Total stock of the item in the fleet.
+     */
+    public long getTotalItemStock(int iD) {
+        return this.aggregate(1, (vendingMachine, totals) -> totals[0] += vendingMachine.readItemStock(iD))[0];
+    }
+    /**
+     * Totals the coins of every denomination across every vending machine in the fleet.
+     * @return Every coin type and its total count in the fleet, in order of coin value.
+     */
+    public Map<CoinGBP, Long> getTotalCoins() {
+        long[] totals = this.aggregate(COINS.length, (vendingMachine, counts) -> {
+            for (CoinGBP coin : COINS) { counts[coin.ordinal()] += vendingMachine.readCoinCount(coin); }
+        });
+        Map<CoinGBP, Long> coins = new EnumMap<>(CoinGBP.class);
+        for (CoinGBP coin : COINS) { coins.put(coin, totals[coin.ordinal()]); }
+        return Collections.unmodifiableMap(coins);
+    }
+    /**
+     * Helper method to sum per-machine counts over the whole fleet, one fork-join task per shard.
+     * @param width       How many counts to sum.
+     * @param accumulator Adds one vending machine's counts to an array of running totals.
+     * @return The totals.
+     */
+    private long[] aggregate(int width, BiConsumer<VendingMachine, long[]> accumulator) {
+        return this.pool.invoke(new ShardSum(0, this.shards.size(), width, accumulator));
+    }
+
+    /**
+     * Fork-join task summing the counts of a range of shards - splits the range in halves until one shard is left.
+     * <p>
+     * Never serialised (only run on a fork-join pool), hence the serial warnings about its non-serialisable fields are suppressed.
+     */
+    @SuppressWarnings("serial")
+    private final class ShardSum extends RecursiveTask<long[]> {
+        private final int from;
+        private final int to;
+        //^ Shard range, 'from' inclusive and 'to' exclusive.
+        private final int width;
+        private final BiConsumer<VendingMachine, long[]> accumulator;
+
+        /**
+         * Constructor for the task over a range of shards.
+         * @param from        First shard index (inclusive).
+         * @param to          Last shard index (exclusive).
+         * @param width       How many counts to sum.
+         * @param accumulator Adds one vending machine's counts to an array of running totals.
+         */
+        private ShardSum(int from, int to, int width, BiConsumer<VendingMachine, long[]> accumulator) {
+            this.from = from;
+            this.to = to;
+            this.width = width;
+            this.accumulator = accumulator;
+        }
+
+        @Override
+        protected long[] compute() {
+            if (this.to - this.from == 1) {
+                long[] totals = new long[this.width];
+                for (VendingMachine vendingMachine : VendingFleet.this.shards.get(this.from).values()) { this.accumulator.accept(vendingMachine, totals); }
+                return totals;
+            }
+            int middle = (this.from + this.to) >>> 1;
+            ShardSum left = new ShardSum(this.from, middle, this.width, this.accumulator);
+            left.fork();
+            long[] totals = new ShardSum(middle, this.to, this.width, this.accumulator).compute();
+            //^ Right half done on this thread while another may steal the left half.
+            long[] leftTotals = left.join();
+            for (int i = 0; i < this.width; i++) { totals[i] += leftTotals[i]; }
+            return totals;
+        }
+    }
+}
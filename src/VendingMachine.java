@@ -1,4 +1,13 @@
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * VendingMachine class that represents the vending machine itself - item and coin storage, state management, and operations.
@@ -11,14 +20,57 @@ import java.util.Map;
  * Used for controlling the behavior of the vending machine based on its current state and who is using it (admin/owner or customer).
  * <p>
  * "composite design pattern" class delegating item storage to ItemStorage class and coin storage to CoinStorage class.
+ * <p>
+ * Safe to drive from several threads at once (touchscreen, coin acceptor, telemetry, remote admin).
+ * State transitions are compare-and-set (or, when journaled, made under 'this.transitionLock' together with journaling them), and the item and coin storages handle their own (fine-grained) thread safety.
+ * <p>
+ * Optionally journaled: every successful mutation is appended to a 'Journal' (and on disk) before the method returns, and a journaled vending machine is rebuilt from its journal when created.
+ * A mutation that cannot be journaled is undone before the journal's exception is thrown, so memory is never ahead of the disk - also by the non-throwing 'try*' methods, whose results only cover refusals.
+ * Every so many records, on returning to IDLE, it also hands the journal a 'Snapshot' so later rebuilds only replay the records after it.
+ * <p>
+ * State rules are table-driven: illegal transitions (e.g. IDLE to DISPENSING) are refused by 'VendingMachineState.canChangeTo', and each operation is refused outside its states by 'VendingOperation' - one lookup each.
+ * Every transition is counted and timed per state (see 'this.getStateNanos'), and can be observed with transition hooks (see 'this.addTransitionHook').
  */
 public class VendingMachine {
-    private VendingMachineState state;
+    private final AtomicReference<VendingMachineState> state = new AtomicReference<>(VendingMachineState.IDLE);
+    //^ Atomic so state changes from one thread are seen by all others and can be compare-and-set.
+    private final ReentrantLock transitionLock = new ReentrantLock();
+    //^ Held by a journaled vending machine across checking, journaling and making a transition, so the journal has transitions in the order they were made.
+    //^ Without it, two racing transitions (e.g. a cancel and a new order) could be journaled in the opposite order and replay a wrong session.
+    //^ Also held while a snapshot is captured, so no transition can be journaled (but not yet made) meanwhile - see 'this.snapshotIfDue'.
+    private final AtomicLong stateEnteredNanos = new AtomicLong(System.nanoTime());
+    //^ When the current state was entered ('System.nanoTime').
+    private final AtomicLongArray stateEntries = new AtomicLongArray(VendingMachineState.values().length);
+    //^ How many transitions entered each state (by ordinal).
+    private final AtomicLongArray stateNanos = new AtomicLongArray(VendingMachineState.values().length);
+    //^ Total time spent in each state (by ordinal), added when the state is left.
+    private final List<TransitionHook> transitionHooks = new CopyOnWriteArrayList<>();
+    //^ Copy-on-write as hooks are read on every transition but rarely added.
     private final ItemStorage itemStorage;
     private final CoinStorage coinStorage;
+    private final Journal journal;
+    //^ Where every mutation is recorded; 'null' if this vending machine is not journaled.
+    private final JournalRecord.Specification specification;
+    //^ First record of every journal and snapshot; 'null' if this vending machine is not journaled.
+    private final AtomicReference<CustomerSession> recoveredSession = new AtomicReference<>();
+    //^ Customer session rebuilt from the journal, until a customer proxy takes it.
     //! listeners (for displays) are handled by proxies (hence are not stored here).
     //! There is no (customer) balance field here as it is handles by the customer proxy class.
 
+    /**
+     * Hook called after every state transition, on the thread that changed the state (e.g. to measure time spent in each state).
+     */
+    @FunctionalInterface
+    public interface TransitionHook {
+        /**
+         * Called after the vending machine changed state.
+         * @param from        The state left.
+         * @param to          The state entered.
+         * @param nanosInFrom How long the vending machine was in the state left.
+         */
+        void transitioned(VendingMachineState from, VendingMachineState to, long nanosInFrom);
+    }
+
     /**
      * Constructor to initialize the vending machine with specified maximum slots, slot size, and coin storage capacities and acceptance.
      * All 3 specifications are immutable after vending machine creation; this is because one cannot physically change these properties of a vending machine.
@@ -28,26 +80,358 @@ public class VendingMachine {
      * @throws IllegalArgumentException if slotSize is less than or equal to 0
      * @throws IllegalArgumentException if any coin type has a capacity less than or equal to 0.
      */
-    public VendingMachine(int maxSlots, int slotSize, Map<CoinGBP, Integer> coinStorage) {
-        this.state = VendingMachineState.IDLE;
+    public VendingMachine(int maxSlots, int slotSize, Map<CoinGBP, Integer> coinStorage) { this(maxSlots, slotSize, coinStorage, null); }
+    /**
+     * Constructor to initialize a journaled vending machine.
+     * <p>
+     * If the journal already has records (from before a power cut), they (starting with its latest snapshot) are replayed to rebuild the coin storage, item storage, state and any open customer session (see 'this.takeRecoveredSession').
+     * Otherwise, the specifications are written as the journal's first record.
+     * @param maxSlots    Maximum number of item slots in the vending machine.
+     * @param slotSize    Maximum number of items each slot can hold.
+     * @param coinStorage Coin storage capacities and acceptance.
+     * @param journal     Where to record every mutation; 'null' to not journal.
+     * @throws IllegalArgumentException if the journal belongs to a vending machine with different specifications.
+     * @throws IllegalStateException if a journal record cannot be replayed.
+     */
+    public VendingMachine(int maxSlots, int slotSize, Map<CoinGBP, Integer> coinStorage, Journal journal) {
         this.itemStorage = new ItemStorage(slotSize, maxSlots);
         this.coinStorage = new CoinStorage(coinStorage);
+        this.journal = journal;
+        this.specification = journal == null ? null : new JournalRecord.Specification(maxSlots, slotSize, coinStorage);
+        if (journal == null) return;
+
+        if (journal.getRecoveredRecords().isEmpty()) {
+            journal.append(this.specification);
+            return;
+        }
+        if (!journal.getRecoveredRecords().getFirst().equals(this.specification)) throw new IllegalArgumentException("Journal belongs to a vending machine with different specifications.");
+        this.replay(journal.getRecoveredRecords());
+    }
+
+    //: Journal.
+    /**
+     * Helper method to record a mutation already made to the storages, if journaled - undoing it if it cannot be recorded.
+     * @param record The mutation.
+     * @throws UncheckedIOException if writing to the journal failed (the mutation is undone).
+     * @throws IllegalStateException if the journal is closed (the mutation is undone).
+     */
+    private void journal(JournalRecord record) {
+        if (this.journal == null) return;
+        try { this.journal.append(record); }
+        catch (UncheckedIOException | IllegalStateException e) {
+            this.undo(record);
+            throw e;
+        }
+    }
+    /**
+     * Helper method to undo a mutation that could not be journaled, with the opposite storage operation.
+     * <p>
+     * Non-throwing operations, as the journal's exception is the one to report; a concurrent change may leave nothing to undo (e.g. a refilled tube), which is then skipped.
+     * @param record The mutation that was made but not journaled.
+     */
+    private void undo(JournalRecord record) {
+        switch (record) {
+            case JournalRecord.CoinsDeposited(CoinGBP coin, int count) -> this.coinStorage.tryWithdraw(coin, count);
+            case JournalRecord.CoinsWithdrawn(CoinGBP coin, int count) -> this.coinStorage.tryDeposit(coin, count);
+            case JournalRecord.ChangeWithdrawn(int[] plan) -> {
+                for (CoinGBP coin : CoinGBP.values()) { if (plan[coin.ordinal()] != 0) this.coinStorage.tryDeposit(coin, plan[coin.ordinal()]); }
+            }
+            case JournalRecord.ItemStocked(int slotNum) -> this.itemStorage.tryDispenseItem(slotNum, true);
+            case JournalRecord.ItemRemoved(int slotNum) -> this.itemStorage.tryRestockItem(slotNum);
+            case JournalRecord.ItemDispensed(int iD) -> {
+                for (ItemSlot slot : this.itemStorage.render()) { if (slot != null && slot.checkID(iD) && slot.tryAddItem()) break; }
+                //^ Back into a slot of the item - which one it came from is not known.
+            }
+            case JournalRecord.ReservationDispensed(int[] slotNums, int[] itemIDs, int[] quantities) -> {
+                for (int entry = 0; entry < slotNums.length; entry++) {
+                    for (int j = 0; j < quantities[entry]; j++) this.itemStorage.tryRestockItem(slotNums[entry]);
+                }
+            }
+            case JournalRecord.SlotAssigned(int slotNum, Item item) -> this.itemStorage.tryUnassignSlot(slotNum);
+            case JournalRecord.SlotUnassigned(int slotNum) -> {}
+            //^ Undone by 'this.tryUnassignSlot', the only one knowing the slot's item.
+            case JournalRecord.StateChanged stateChanged -> {}
+            case JournalRecord.BasketChanged basketChanged -> {}
+            case JournalRecord.SlotRestored slotRestored -> {}
+            case JournalRecord.Specification specification -> {}
+            //^ Journaled before anything is changed, or only found in snapshots.
+        }
+    }
+    /**
+     * Records a change to the customer's basket, so an open order survives a power cut.
+     * <p>
+     * Called by the customer proxy (which owns the basket); does nothing if this vending machine is not journaled.
+     * @param iD       The item ID.
+     * @param quantity The item's new quantity in the basket; zero if removed.
+     */
+    public void journalBasket(int iD, int quantity) { this.journal(new JournalRecord.BasketChanged(iD, quantity)); }
+    /**
+     * Takes the customer session rebuilt from the journal - only the first caller gets it.
+     * @return The open customer session from before the power cut; otherwise 'null'.
+     */
+    public CustomerSession takeRecoveredSession() { return this.recoveredSession.getAndSet(null); }
+    /**
+     * Helper method to hand the journal a snapshot, if one is due - called after returning to IDLE.
+     * <p>
+     * The storages cannot change while IDLE (customers must start an order and admins must enter MAINTENANCE first), so it is enough to stop the state changing:
+     * 'this.transitionLock' is held from checking IDLE until the snapshot is captured.
+     * Checking the state alone would not do - a transition journals its StateChanged before it changes the state,
+     * so the snapshot could cover a StateChanged to ORDERING while holding no state of its own, and recovery would lose the order.
+     * If anyone started using the vending machine first, the snapshot is taken on a later return to IDLE instead.
+     */
+    private void snapshotIfDue() {
+        if (this.journal == null || !this.journal.isSnapshotDue()) return;
+        Snapshot snapshot;
+        this.transitionLock.lock();
+        try {
+            if (this.state.get() != VendingMachineState.IDLE) return;
+            long sequence = this.journal.tryStartSegment();
+            if (sequence < 0) return;
+            //^ Not fatal (and reported to the journal's failure handler) - every record is still in the journal, so startup just replays more of them; retried on a later return to IDLE.
+            //^ Every mutation before going IDLE was journaled by then, including the StateChanged to IDLE itself (journaled before the state is changed).
+
+            List<JournalRecord> records = new ArrayList<>();
+            records.add(this.specification);
+            ItemSlot[] slots = this.itemStorage.render();
+            for (int slotNum = 0; slotNum < slots.length; slotNum++) {
+                if (slots[slotNum] != null) records.add(new JournalRecord.SlotRestored(slotNum, slots[slotNum].getItem(), slots[slotNum].getStock()));
+            }
+            for (Map.Entry<CoinGBP, Integer> coinCount : this.coinStorage.getCoinCounts().entrySet()) {
+                if (coinCount.getValue() != 0) records.add(new JournalRecord.CoinsDeposited(coinCount.getKey(), coinCount.getValue()));
+            }
+            snapshot = new Snapshot(sequence, records);
+        }
+        finally { this.transitionLock.unlock(); }
+        this.journal.compact(snapshot);
+        //^ Written on the journal's background thread - transitions carry on meanwhile.
+    }
+    /**
+     * Helper method to rebuild this vending machine by applying journal records in order.
+     * <p>
+     * Records are applied straight to the storages (no state checks - they were done when the records were written).
+     * Coin records use the clamping bulk operations, so two coin changes journaled in the opposite order to how they happened cannot fail.
+     * @param records Every record in the journal (or snapshot then the records after it), starting with the specifications.
+     * @throws IllegalStateException if a record cannot be applied (journal does not match the vending machine).
+     */
+    private void replay(List<JournalRecord> records) {
+        VendingMachineState replayState = VendingMachineState.IDLE;
+        Map<Integer, Integer> basket = new HashMap<>();
+        //^ Item ID to quantity.
+        long payDue = 0;
+        long balance = 0;
+
+        for (int i = 1; i < records.size(); i++) {
+            try {
+                switch (records.get(i)) {
+                    case JournalRecord.StateChanged(VendingMachineState state) -> {
+                        if (state == VendingMachineState.IDLE || state == VendingMachineState.MAINTENANCE) {
+                            //* Order completed or cancelled (or abandoned for maintenance) - session is over.
+                            basket.clear();
+                            payDue = 0;
+                            balance = 0;
+                        }
+                        else if (state == VendingMachineState.PAYING && replayState == VendingMachineState.ORDERING) {
+                            payDue = 0;
+                            for (Map.Entry<Integer, Integer> entry : basket.entrySet()) payDue += this.itemStorage.getItemByID(entry.getKey()).getPrice() * entry.getValue();
+                            //^ Same as the customer proxy's checkout.
+                        }
+                        replayState = state;
+                    }
+                    case JournalRecord.CoinsDeposited(CoinGBP coin, int count) -> {
+                        this.coinStorage.deposit(coin, count);
+                        if (replayState == VendingMachineState.PAYING) {
+                            //* Only a customer can deposit while PAYING - it is their payment.
+                            payDue -= coin.getValue() * count;
+                            balance += coin.getValue() * count;
+                        }
+                    }
+                    case JournalRecord.CoinsWithdrawn(CoinGBP coin, int count) -> this.coinStorage.withdraw(coin, count);
+                    case JournalRecord.ChangeWithdrawn(int[] plan) -> {
+                        for (CoinGBP coin : CoinGBP.values()) { if (plan[coin.ordinal()] != 0) this.coinStorage.withdraw(coin, plan[coin.ordinal()]); }
+                        //* Change/refund paid out - the customer is owed nothing more (even if the power cut came before returning to IDLE).
+                        basket.clear();
+                        payDue = 0;
+                        balance = 0;
+                    }
+                    case JournalRecord.ItemStocked(int slotNum) -> this.itemStorage.restockItem(slotNum);
+                    case JournalRecord.ItemRemoved(int slotNum) -> this.itemStorage.dispenseItem(slotNum, true);
+                    case JournalRecord.ItemDispensed(int iD) -> {
+                        this.itemStorage.dispenseItem(iD, false);
+                        basket.computeIfPresent(iD, (key, quantity) -> quantity > 1 ? quantity - 1 : null);
+                        //^ Dispensed items are no longer owed to the customer.
+                    }
+                    case JournalRecord.ReservationDispensed(int[] slotNums, int[] itemIDs, int[] quantities) -> {
+                        for (int entry = 0; entry < slotNums.length; entry++) {
+                            for (int j = 0; j < quantities[entry]; j++) this.itemStorage.dispenseItem(slotNums[entry], true);
+                            //^ By slot number - the same slots the reservation held.
+                            int dispensed = quantities[entry];
+                            basket.computeIfPresent(itemIDs[entry], (key, quantity) -> quantity > dispensed ? quantity - dispensed : null);
+                        }
+                    }
+                    case JournalRecord.SlotAssigned(int slotNum, Item item) -> this.itemStorage.assignSlot(slotNum, item);
+                    case JournalRecord.SlotUnassigned(int slotNum) -> this.itemStorage.unassignSlot(slotNum);
+                    case JournalRecord.SlotRestored(int slotNum, Item item, int stock) -> {
+                        this.itemStorage.assignSlot(slotNum, item);
+                        for (int j = 0; j < stock; j++) this.itemStorage.restockItem(slotNum);
+                    }
+                    case JournalRecord.BasketChanged(int iD, int quantity) -> {
+                        if (quantity == 0) basket.remove(iD);
+                        else basket.put(iD, quantity);
+                    }
+                    case JournalRecord.Specification specification -> throw new IllegalArgumentException("Specifications can only be the first record.");
+                }
+            }
+            catch (IllegalArgumentException e) { throw new IllegalStateException(STR."Journal record #\{i} (\{records.get(i)}) cannot be replayed.", e); }
+        }
+
+        boolean sessionOpen = !basket.isEmpty() || balance != 0;
+        if (!sessionOpen && replayState != VendingMachineState.MAINTENANCE) replayState = VendingMachineState.IDLE;
+        //^ e.g. power cut after change was paid out but before returning to IDLE.
+        this.state.set(replayState);
+        if (!sessionOpen) return;
+        Map<Item, Integer> items = new HashMap<>();
+        for (Map.Entry<Integer, Integer> entry : basket.entrySet()) items.put(this.itemStorage.getItemByID(entry.getKey()), entry.getValue());
+        this.recoveredSession.set(new CustomerSession(items, payDue, balance));
     }
 
     //: State management methods.
     /**
      * Changes the state of the vending machine to a new state.
-     * Must start from either IDLE or MAINTENANCE state to change state - only when owner/admin is using it or when no one was using it.
+     * Must be a legal transition from the current state (see 'VendingMachineState.canChangeTo') - e.g. MAINTENANCE can only be entered from IDLE (only when no one was using it).
      * @param newState The new state to transition to.
+     * @throws IllegalStateException if the transition from the current state is illegal, or if journaled and the journal is closed (the state is left unchanged).
+     * @throws UncheckedIOException if journaled and writing the transition to the journal failed (the state is left unchanged).
      */
     public void changeState(VendingMachineState newState){
         //* Implementation for changing the state of the vending machine.
         //* Message intended for admin/owner.
-        if (!(this.state == VendingMachineState.IDLE) && newState == VendingMachineState.MAINTENANCE) {
-            //* Indentation used instead as single-line is too long
-            throw new IllegalStateException("Cannot enter MAINTENANCE mode when not in IDLE state");
+        VendingMachineState current;
+        if (this.journal != null) {
+            this.transitionLock.lock();
+            try {
+                current = this.state.get();
+                if (!current.canChangeTo(newState)) throw new IllegalStateException(VendingMachine.refusal(current, newState));
+                this.commitTransition(newState);
+            }
+            finally { this.transitionLock.unlock(); }
+        }
+        else {
+            do {
+                current = this.state.get();
+                if (!current.canChangeTo(newState)) throw new IllegalStateException(VendingMachine.refusal(current, newState));
+            } while (!this.state.compareAndSet(current, newState));
+            //^ Retries if another thread changed the state between the check and the change.
+        }
+        this.transitioned(current, newState);
+    }
+    /**
+     * Changes the state of the vending machine only if it is currently in an expected state.
+     * <p>
+     * Lets two front-ends race for the same vending machine safely - e.g. only one of two customers starting an order at the same time gets IDLE to ORDERING.
+     * @param expectedState The state the vending machine must currently be in.
+     * @param newState      The new state to transition to.
+     * @return 'true' if the state was changed; 'false' if the vending machine was not in the expected state.
+     * @throws IllegalStateException if the transition from the expected state is illegal, or if journaled and the journal is closed (the state is left unchanged).
+     * @throws UncheckedIOException if journaled and writing the transition to the journal failed (the state is left unchanged).
+     */
+    public boolean changeState(VendingMachineState expectedState, VendingMachineState newState){
+        if (!expectedState.canChangeTo(newState)) throw new IllegalStateException(VendingMachine.refusal(expectedState, newState));
+        if (this.journal != null) {
+            this.transitionLock.lock();
+            try {
+                if (this.state.get() != expectedState) return false;
+                this.commitTransition(newState);
+            }
+            finally { this.transitionLock.unlock(); }
+        }
+        else if (!this.state.compareAndSet(expectedState, newState)) return false;
+        this.transitioned(expectedState, newState);
+        return true;
+    }
+    /**
+     * Helper method to make a checked transition of a journaled vending machine - 'this.transitionLock' must be held.
+     * <p>
+     * The transition is journaled (and on disk) before it is made, so the journal never lags behind memory: if journaling fails, the state is left unchanged.
+     * @param newState The new state to transition to.
+     * @throws UncheckedIOException if writing the transition to the journal failed.
+     * @throws IllegalStateException if the journal is closed.
+     */
+    private void commitTransition(VendingMachineState newState){
+        this.journal.append(new JournalRecord.StateChanged(newState));
+        this.state.set(newState);
+        //^ Plain set is enough - every transition of a journaled vending machine holds the lock.
+    }
+    /**
+     * Helper method for the message of a refused transition.
+     * @param from The state the transition was from.
+     * @param to   The state the transition was to.
+     * @return The message.
+     */
+    private static String refusal(VendingMachineState from, VendingMachineState to){
+        if (to == VendingMachineState.MAINTENANCE) return "Cannot enter MAINTENANCE mode when not in IDLE state";
+        return STR."Cannot change state from \{from} to \{to}";
+    }
+    /**
+     * Helper method for everything that follows a state transition - counting and timing it, calling the transition hooks and (on returning to IDLE) snapshotting.
+     * <p>
+     * Journaling is not done here but as part of the transition itself ('this.commitTransition').
+     * @param from The state left.
+     * @param to   The state entered.
+     */
+    private void transitioned(VendingMachineState from, VendingMachineState to){
+        long now = System.nanoTime();
+        long nanosInFrom = Math.max(0, now - this.stateEnteredNanos.getAndSet(now));
+        //^ Clamped - two threads changing state at the same instant may swap their timestamps (each transition is still counted).
+        this.stateNanos.addAndGet(from.ordinal(), nanosInFrom);
+        this.stateEntries.incrementAndGet(to.ordinal());
+        for (TransitionHook hook : this.transitionHooks) {
+            try { hook.transitioned(from, to, nanosInFrom); }
+            catch (RuntimeException e) {
+                Thread thread = Thread.currentThread();
+                thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+            }
+            //^ Not fatal - hooks only observe; a failing one must not fail the customer's or admin's action, so it goes to the thread's uncaught exception handler instead.
         }
-        this.state = newState;
+        if (to == VendingMachineState.IDLE) this.snapshotIfDue();
+    }
+    /**
+     * Helper method to check that an operation is permitted in the current state (see 'VendingOperation').
+     * @param operation The operation about to be performed.
+     * @return The current state (read once, so callers can decide on the same state that was checked).
+     * @throws IllegalStateException if the operation is not permitted in the current state.
+     */
+    private VendingMachineState require(VendingOperation operation){
+        VendingMachineState current = this.state.get();
+        if (!operation.permittedIn(current)) throw new IllegalStateException(operation.getRefusal());
+        return current;
+    }
+    /**
+     * Adds a hook called after every state transition.
+     * <p>
+     * Hooks run on the thread that changed the state, before the state-changing method returns - so must be quick; exceptions they throw go to the thread's uncaught exception handler (see 'Thread.setDefaultUncaughtExceptionHandler') and do not fail the transition.
+     * @param hook The hook to add.
+     */
+    public void addTransitionHook(TransitionHook hook){ this.transitionHooks.add(hook); }
+    /**
+     * Removes a hook added by 'this.addTransitionHook'.
+     * @param hook The hook to remove.
+     */
+    public void removeTransitionHook(TransitionHook hook){ this.transitionHooks.remove(hook); }
+    /**
+     * Telemetry getter for how many transitions entered a state.
+     * @param state The state.
+     * @return Number of transitions into the state since the vending machine was created (not counting the state it was created or rebuilt in).
+     */
+    public long getStateEntries(VendingMachineState state){ return this.stateEntries.get(state.ordinal()); }
+    /**
+     * Telemetry getter for the total time spent in a state, including the time so far if it is the current state.
+     * @param state The state.
+     * @return Nanoseconds spent in the state since the vending machine was created.
+     */
+    public long getStateNanos(VendingMachineState state){
+        long nanos = this.stateNanos.get(state.ordinal());
+        if (this.state.get() == state) nanos += Math.max(0, System.nanoTime() - this.stateEnteredNanos.get());
+        return nanos;
     }
     /**
      * Gets current state to help proxy classes determine allowed actions.
@@ -56,7 +440,7 @@ public class VendingMachine {
      * @return The current state of the vending machine.
      */
     public VendingMachineState getState() {
-        return this.state;
+        return this.state.get();
     }
 
     /**
@@ -84,7 +468,7 @@ public class VendingMachine {
      * Called in admin proxy constructor (not need for customers).
      * Called once per proxy instance creation to initialize display listeners.
      * Unfrequent calls because coin capacities do not change after vending machine creation - immutable.
-     * @return A map containing the maximum capacities for each accepted coin type.
+     * @return A read-only map containing the maximum capacities for each accepted coin type.
      */
     public Map<CoinGBP, Integer> getCoinMaxes(){
         //* Implementation for viewing the coin storage maximums of the vending machine.
@@ -96,12 +480,12 @@ public class VendingMachine {
      * Gets the current coin storage counts of the vending machine.
      * <p>
      * Not to be confused with 'getCoinMaxes()' which gets the maximum capacities for each coin type.
-     * @return A map containing the current counts for each coin type in the vending machine.
+     * @return A read-only snapshot map containing the current counts for each coin type in the vending machine.
      * @throws IllegalStateException if the vending machine is not in MAINTENANCE state.
      */
     public Map<CoinGBP, Integer> getCoinStorage() {
-        if (this.state != VendingMachineState.MAINTENANCE) throw new IllegalStateException("Cannot view coin storage when not in MAINTENANCE state");
-        //^ Would only be satisfied when owner/admin is not in maintenance mode.
+        this.require(VendingOperation.VIEW_COINS);
+        //^ Would only be refused when owner/admin is not in maintenance mode.
         return this.coinStorage.getCoinCounts();
     }
     /**
@@ -112,14 +496,124 @@ public class VendingMachine {
      * @param coin The coin to be withdrawn.
      * @throws IllegalStateException if the vending machine is not in REFUNDING or MAINTENANCE state.
      */
-    public void withdrawCoin(CoinGBP coin) {
+    public void withdrawCoin(CoinGBP coin) { this.tryWithdrawCoin(coin).orThrow(VendingOperation.WITHDRAW_COIN, coin); }
+    /**
+     * Non-throwing version of 'this.withdrawCoin'.
+     * @param coin The coin to be withdrawn.
+     * @return 'OK' if withdrawn; otherwise 'REFUSED' (not in REFUNDING or MAINTENANCE state), 'COIN_UNSUPPORTED' or 'TUBE_EMPTY'.
+     */
+    public VendingResult tryWithdrawCoin(CoinGBP coin) {
         //* Implementation for returning unaccepted coins when coin stock is too full or is unsupported by the vending
         //* machine instance.
-        if (state != VendingMachineState.REFUNDING && state != VendingMachineState.MAINTENANCE) {
-            //^ REFUNDING for customer refunding coins or getting change; MAINTENANCE for admin/owner withdrawing coins for revenue (and not letting the capacity fill up).
-            throw new IllegalStateException("Cannot withdraw coin when not in REFUNDING or MAINTENANCE state");
-        }
-        this.coinStorage.withdraw(coin);
+        if (!VendingOperation.WITHDRAW_COIN.permittedIn(this.state.get())) return VendingResult.REFUSED;
+        VendingResult result = this.coinStorage.tryWithdraw(coin);
+        if (result.isOk()) this.journal(new JournalRecord.CoinsWithdrawn(coin, 1));
+        return result;
+    }
+    /**
+     * Plans which coins to withdraw for a customer's change/refund, without withdrawing anything.
+     * <p>
+     * Lets the customer proxy know whether the amount can be paid out before touching the coin storage.
+     * @param amount The amount to be paid out in pence.
+     * @return How many of each coin type to withdraw, indexed by 'CoinGBP.ordinal()'; otherwise 'null' if the amount cannot be paid out with the current coins.
+     */
+    public int[] planChange(long amount) {
+        return this.coinStorage.planChange(amount);
+    }
+    /**
+     * Checks whether an exact amount of change can currently be paid out.
+     * <p>
+     * Used by the customer proxy to reject a coin that would overpay by an amount the vending machine cannot give back - before any item is dispensed.
+     * @param amount The amount of change in pence.
+     * @return 'true' if the amount can be paid out exactly; otherwise 'false'.
+     */
+    public boolean canPayChange(long amount) {
+        return this.coinStorage.isChangePayable(amount);
+    }
+    /**
+     * Checks whether every amount of change up to (and including) an amount can currently be paid out.
+     * @param amount The largest amount of change in pence.
+     * @return 'true' if every overpayment up to 'amount' could be given back; otherwise 'false'.
+     */
+    public boolean canPayEveryChangeUpTo(long amount) {
+        return this.coinStorage.isEveryChangePayableUpTo(amount);
+    }
+    /**
+     * Withdraws a batch of coins (usually a plan from 'this.planChange') from the vending machine in one go.
+     * <p>
+     * Either every coin in the batch is withdrawn or none are.
+     * @param plan How many of each coin type to withdraw, indexed by 'CoinGBP.ordinal()'.
+     * @throws IllegalStateException if the vending machine is not in REFUNDING or MAINTENANCE state.
+     */
+    public void withdrawCoins(int[] plan) {
+        this.require(VendingOperation.WITHDRAW_COIN);
+        this.coinStorage.withdraw(plan);
+        //^ Throwing version of the coin storage, so an unsupported coin is named in the message.
+        this.journal(new JournalRecord.ChangeWithdrawn(plan.clone()));
+    }
+    /**
+     * Non-throwing version of 'this.withdrawCoins(int[])'.
+     * @param plan How many of each coin type to withdraw, indexed by 'CoinGBP.ordinal()'.
+     * @return 'OK' if the whole batch was withdrawn; otherwise 'REFUSED' (not in REFUNDING or MAINTENANCE state), 'COIN_UNSUPPORTED' or 'BATCH_SHORT'.
+     */
+    public VendingResult tryWithdrawCoins(int[] plan) {
+        if (!VendingOperation.WITHDRAW_COIN.permittedIn(this.state.get())) return VendingResult.REFUSED;
+        VendingResult result = this.coinStorage.tryWithdraw(plan);
+        if (result.isOk()) this.journal(new JournalRecord.ChangeWithdrawn(plan.clone()));
+        return result;
+    }
+    /**
+     * Withdraws many coins of one type from the vending machine in one go.
+     * <p>
+     * Used for admin/owner bulk withdrawals; state is checked once for the whole batch.
+     * @param coin   The coin type to be withdrawn.
+     * @param amount How many coins to withdraw.
+     * @return How many coins were actually withdrawn - less than 'amount' if the coin storage ran out.
+     * @throws IllegalStateException if the vending machine is not in MAINTENANCE state.
+     */
+    public int withdrawCoins(CoinGBP coin, int amount) {
+        int withdrawn = this.tryWithdrawCoins(coin, amount);
+        VendingResult.ofCount(withdrawn).orThrow(VendingOperation.WITHDRAW_COINS, coin);
+        return withdrawn;
+    }
+    /**
+     * Non-throwing version of 'this.withdrawCoins(CoinGBP, int)'.
+     * @param coin   The coin type to be withdrawn.
+     * @param amount How many coins to withdraw.
+     * @return How many coins were actually withdrawn; otherwise 'REFUSED' (not in MAINTENANCE state), 'COIN_UNSUPPORTED' or 'NEGATIVE_AMOUNT' as a negative count (see 'VendingResult.ofCount').
+     */
+    public int tryWithdrawCoins(CoinGBP coin, int amount) {
+        if (!VendingOperation.WITHDRAW_COINS.permittedIn(this.state.get())) return VendingResult.REFUSED.asCount();
+        int withdrawn = this.coinStorage.tryWithdraw(coin, amount);
+        if (withdrawn > 0) this.journal(new JournalRecord.CoinsWithdrawn(coin, withdrawn));
+        return withdrawn;
+    }
+    /**
+     * Inserts many coins of one type into the vending machine in one go.
+     * <p>
+     * Used for admin/owner restocking coins; state is checked once for the whole batch.
+     * Customers still insert coins one at a time ('this.insertCoin').
+     * @param coin   The coin type to be inserted.
+     * @param amount How many coins to insert.
+     * @return How many coins were actually inserted - less than 'amount' if the coin storage became full (the rest are refunded).
+     * @throws IllegalStateException if the vending machine is not in MAINTENANCE state.
+     */
+    public int insertCoins(CoinGBP coin, int amount) {
+        int inserted = this.tryInsertCoins(coin, amount);
+        VendingResult.ofCount(inserted).orThrow(VendingOperation.INSERT_COINS, coin);
+        return inserted;
+    }
+    /**
+     * Non-throwing version of 'this.insertCoins'.
+     * @param coin   The coin type to be inserted.
+     * @param amount How many coins to insert.
+     * @return How many coins were actually inserted; otherwise 'REFUSED' (not in MAINTENANCE state), 'COIN_UNSUPPORTED' or 'NEGATIVE_AMOUNT' as a negative count (see 'VendingResult.ofCount').
+     */
+    public int tryInsertCoins(CoinGBP coin, int amount) {
+        if (!VendingOperation.INSERT_COINS.permittedIn(this.state.get())) return VendingResult.REFUSED.asCount();
+        int inserted = this.coinStorage.tryDeposit(coin, amount);
+        if (inserted > 0) this.journal(new JournalRecord.CoinsDeposited(coin, inserted));
+        return inserted;
     }
     /**
      * Inserts a coin into the vending machine.
@@ -129,17 +623,26 @@ public class VendingMachine {
      * @param coin The coin to be inserted.
      * @throws IllegalStateException if the vending machine is not in PAYING or MAINTENANCE state.
      */
-    public void insertCoin(CoinGBP coin) {
+    public void insertCoin(CoinGBP coin) { this.tryInsertCoin(coin).orThrow(VendingOperation.INSERT_COIN, coin); }
+    /**
+     * Non-throwing version of 'this.insertCoin'.
+     * @param coin The coin to be inserted.
+     * @return 'OK' if inserted; otherwise 'REFUSED' (not in PAYING or MAINTENANCE state), 'COIN_UNSUPPORTED' or 'TUBE_FULL'.
+     */
+    public VendingResult tryInsertCoin(CoinGBP coin) {
         //* Implementation for inserting a coin into the vending machine.
         //* Used for customer paying or owner/admin restocking coins.
         //* If for customer, balance updated in customer proxy class.
-        if (this.state != VendingMachineState.PAYING && this.state != VendingMachineState.MAINTENANCE) {
+        if (!VendingOperation.INSERT_COIN.permittedIn(this.state.get())) {
             //* Coin can only be inserted when in PAYING (customer) or MAINTENANCE (admin/owner) state.
-            this.withdrawCoin(coin);
-            throw new IllegalStateException("Only insert coin when in PAYING or MAINTENANCE state");
-            //^ Message intended for customer
+            //* Refused coin never reached the coin storage (the coin acceptor hands it back), so nothing is withdrawn nor journaled.
+            return VendingResult.REFUSED;
+            //^ Refusal message intended for customer
         }
-        this.coinStorage.deposit(coin);
+        VendingResult result = this.coinStorage.tryDeposit(coin);
+        if (result.isOk()) this.journal(new JournalRecord.CoinsDeposited(coin, 1));
+        //^ On disk before the coin acceptor is told the coin was taken.
+        return result;
     }
 
     /**
@@ -150,12 +653,65 @@ public class VendingMachine {
      * @throws IllegalStateException if the vending machine is not in MAINTENANCE or ORDERING state.
      */
     public ItemSlot[] getItemStorage() {
-        if (this.state != VendingMachineState.MAINTENANCE && this.state != VendingMachineState.ORDERING) {
-            //* Would only be satisfied when owner/admin is not in maintenance mode.
-            throw new IllegalStateException("Cannot view item storage when not in MAINTENANCE or ORDERING state");
-        }
+        this.require(VendingOperation.VIEW_ITEMS);
         return this.itemStorage.render();
     }
+    /**
+     * Finds the first slot that is assigned to the item ID and still has stock.
+     * <p>
+     * Used by the customer proxy to look up an item without scanning every slot of the item storage.
+     * @param iD The ID of the item to look up.
+     * @return The first non-empty slot assigned to the item; otherwise 'null' if item is not offered or out of stock.
+     * @throws IllegalStateException if the vending machine is not in MAINTENANCE or ORDERING state.
+     */
+    public ItemSlot findItemSlot(int iD) {
+        this.require(VendingOperation.VIEW_ITEMS);
+        return this.itemStorage.findSlotByItem(iD);
+    }
+    /**
+     * Gets the item offered under the item ID, regardless of whether it is in stock or not.
+     * @param iD The ID of the item to look up.
+     * @return The item assigned to the ID; otherwise 'null' if no slot is assigned to the item ID.
+     * @throws IllegalStateException if the vending machine is not in MAINTENANCE or ORDERING state.
+     */
+    public Item getItem(int iD) {
+        this.require(VendingOperation.VIEW_ITEMS);
+        return this.itemStorage.getItemByID(iD);
+    }
+    /**
+     * Gets the total stock of an item across every slot assigned to it.
+     * @param iD The ID of the item to count.
+     * @return Total stock of the item; zero if not offered or out of stock.
+     * @throws IllegalStateException if the vending machine is not in MAINTENANCE or ORDERING state.
+     */
+    public int getItemStock(int iD) {
+        this.require(VendingOperation.VIEW_ITEMS);
+        return this.itemStorage.getStockByID(iD);
+    }
+    /**
+     * Gets every offered item with its total stock across all slots assigned to it (see 'ItemStorage.getStockView').
+     * @return Offered items and their total stock (read-only); the same map until the stock changes.
+     * @throws IllegalStateException if the vending machine is not in MAINTENANCE or ORDERING state.
+     */
+    public Map<Item, Integer> getItemStockView() {
+        this.require(VendingOperation.VIEW_ITEMS);
+        return this.itemStorage.getStockView();
+    }
+    /**
+     * Telemetry getter for the total stock of an item, whatever the state (e.g. for back-office monitoring via 'VendingFleet').
+     * <p>
+     * Unlike 'this.getItemStock', not restricted to MAINTENANCE/ORDERING - reading a count cannot disturb the customer or admin using the vending machine.
+     * Scans the item storage's columns, so fleet-wide totals do not allocate.
+     * @param iD The ID of the item to count.
+     * @return Total stock of the item; zero if not offered or out of stock.
+     */
+    public int readItemStock(int iD) { return this.itemStorage.scanStockByID(iD); }
+    /**
+     * Telemetry getter for the current count of a coin type, whatever the state (e.g. for back-office monitoring via 'VendingFleet').
+     * @param coin The coin type to count.
+     * @return Current count of the coin type; zero if unsupported.
+     */
+    public int readCoinCount(CoinGBP coin) { return this.coinStorage.getCoinCount(coin); }
     /**
      * Stocks an item in the vending machine by item ID.
      * <p>
@@ -163,13 +719,21 @@ public class VendingMachine {
      * @param slotNum The ID of the item slot to be restocked.
      * @throws IllegalStateException if the vending machine is not in MAINTENANCE state.
      */
-    public void stockItem(int slotNum) {
+    public void stockItem(int slotNum) { this.tryStockItem(slotNum).orThrow(VendingOperation.STOCK_ITEM); }
+    /**
+     * Non-throwing version of 'this.stockItem' - used by the admin proxy, which stocks in a loop until the slot is full.
+     * @param slotNum The ID of the item slot to be restocked.
+     * @return 'OK' if stocked; otherwise 'REFUSED' (not in MAINTENANCE state), 'SLOT_OUT_OF_RANGE', 'SLOT_UNASSIGNED' or 'SLOT_FULL'.
+     */
+    public VendingResult tryStockItem(int slotNum) {
         //* Implementation for restocking item by item ID.
         //* Used for admin/owner restocking items only.
-        if (state != VendingMachineState.MAINTENANCE) throw new IllegalStateException("Cannot restock item when not in MAINTENANCE state");
-        //^ Would only be satisfied when owner/admin is not in maintenance mode.
+        if (!VendingOperation.STOCK_ITEM.permittedIn(this.state.get())) return VendingResult.REFUSED;
+        //^ Would only be refused when owner/admin is not in maintenance mode.
 
-        this.itemStorage.restockItem(slotNum);
+        VendingResult result = this.itemStorage.tryRestockItem(slotNum);
+        if (result.isOk()) this.journal(new JournalRecord.ItemStocked(slotNum));
+        return result;
     }
     /**
      * Dispenses an item from the vending machine by item ID.
@@ -178,15 +742,61 @@ public class VendingMachine {
      * @param iD The ID of the item to be dispensed.
      * @throws IllegalStateException if the vending machine is not in DISPENSING or MAINTENANCE state.
      */
-    public void dispenseItem(int iD) {
+    public void dispenseItem(int iD) { this.tryDispenseItem(iD).orThrow(VendingOperation.DISPENSE_ITEM); }
+    /**
+     * Non-throwing version of 'this.dispenseItem'.
+     * @param iD The ID of the item to be dispensed (slot number when in MAINTENANCE state).
+     * @return 'OK' if dispensed; otherwise 'REFUSED' (not in DISPENSING or MAINTENANCE state) or the item storage's failure (see 'ItemStorage.tryDispenseItem').
+     */
+    public VendingResult tryDispenseItem(int iD) {
         //* Implementation for getting item by item ID.
         //* Used for dispensing item to customer or admin/owner taking out expired items.
-        if (state != VendingMachineState.DISPENSING && this.state != VendingMachineState.MAINTENANCE) {
-            //* Would only be satisfied when owner/admin is not in maintenance mode.
-            throw new IllegalStateException("Cannot dispense item when not in DISPENSING or MAINTENANCE state");
-            //^ Customer message.
+        VendingMachineState current = this.state.get();
+        //^ Read once so the check and the slot/item ID decision below agree even if another thread changes state.
+        if (!VendingOperation.DISPENSE_ITEM.permittedIn(current)) return VendingResult.REFUSED;
+        VendingResult result = this.itemStorage.tryDispenseItem(iD, current == VendingMachineState.MAINTENANCE);
+        if (result.isOk()) this.journal(current == VendingMachineState.MAINTENANCE ? new JournalRecord.ItemRemoved(iD) : new JournalRecord.ItemDispensed(iD));
+        return result;
+    }
+    /**
+     * Reserves items for a customer's order at checkout, so paying for it can never end with an item out of stock (see 'ItemStorage.reserve').
+     * @param itemIDs      Item ID of each basket line.
+     * @param quantities   How many of each line's item.
+     * @param timeoutNanos How long the items are held before other orders may take them.
+     * @return The reservation; otherwise 'null' if there is not enough unreserved stock for the whole order.
+     * @throws IllegalStateException if the vending machine is not in ORDERING state.
+     */
+    public ItemStorage.Reservation reserveItems(int[] itemIDs, int[] quantities, long timeoutNanos) {
+        this.require(VendingOperation.RESERVE_ITEMS);
+        return this.itemStorage.reserve(itemIDs, quantities, timeoutNanos);
+    }
+    /**
+     * Releases the items of a reservation (e.g. order cancelled) - whatever the state, as giving items back cannot disturb anyone.
+     * @param reservation The reservation to release; nothing happens if it was already dispensed, released or expired.
+     */
+    public void releaseItems(ItemStorage.Reservation reservation) { this.itemStorage.release(reservation); }
+    /**
+     * Dispenses every item of a paid-for reservation in one go (see 'ItemStorage.dispenseReserved').
+     * <p>
+     * Journaled as one 'ReservationDispensed' record naming the slots dispensed from - a single append (and disk sync) per order, however many items it has,
+     * and replay takes the items from the same slots.
+     * @param reservation The reservation to dispense.
+     * @return 'OK' if every item was dispensed; otherwise 'REFUSED' (not in DISPENSING or MAINTENANCE state) or 'ITEM_UNAVAILABLE' (expired and taken meanwhile - nothing dispensed).
+     */
+    public VendingResult tryDispenseReserved(ItemStorage.Reservation reservation) {
+        if (!VendingOperation.DISPENSE_ITEM.permittedIn(this.state.get())) return VendingResult.REFUSED;
+        VendingResult result = this.itemStorage.dispenseReserved(reservation);
+        if (!result.isOk() || this.journal == null) return result;
+        int[] slotNums = new int[reservation.getEntries()];
+        int[] itemIDs = new int[slotNums.length];
+        int[] quantities = new int[slotNums.length];
+        for (int entry = 0; entry < slotNums.length; entry++) {
+            slotNums[entry] = reservation.getSlotNum(entry);
+            itemIDs[entry] = reservation.getSlotItemID(entry);
+            quantities[entry] = reservation.getSlotQuantity(entry);
         }
-        this.itemStorage.dispenseItem(iD, this.state == VendingMachineState.MAINTENANCE);
+        this.journal(new JournalRecord.ReservationDispensed(slotNums, itemIDs, quantities));
+        return result;
     }
     /**
      * Assigns an item slot to a specific item in the vending machine.
@@ -196,13 +806,22 @@ public class VendingMachine {
      * @param item    The item to be assigned to the slot.
      * @throws IllegalStateException if the vending machine is not in MAINTENANCE state.
      */
-    public void assignSlot(int slotNum, Item item){
+    public void assignSlot(int slotNum, Item item){ this.tryAssignSlot(slotNum, item).orThrow(VendingOperation.ASSIGN_SLOT); }
+    /**
+     * Non-throwing version of 'this.assignSlot'.
+     * @param slotNum The slot number to assign the item to.
+     * @param item    The item to be assigned to the slot.
+     * @return 'OK' if assigned; otherwise 'REFUSED' (not in MAINTENANCE state), 'SLOT_OUT_OF_RANGE' or 'SLOT_ASSIGNED'.
+     */
+    public VendingResult tryAssignSlot(int slotNum, Item item){
         //* Implementation for assigning an item slot to an item.
         //* Used for admin/owner assigning item slots.
-        if (state != VendingMachineState.MAINTENANCE) throw new IllegalStateException("Cannot assign item slot when not in MAINTENANCE state");
-        //^ Would only be satisfied when owner/admin is not in maintenance mode.
+        if (!VendingOperation.ASSIGN_SLOT.permittedIn(this.state.get())) return VendingResult.REFUSED;
+        //^ Would only be refused when owner/admin is not in maintenance mode.
 
-        this.itemStorage.assignSlot(slotNum, item);
+        VendingResult result = this.itemStorage.tryAssignSlot(slotNum, item);
+        if (result.isOk()) this.journal(new JournalRecord.SlotAssigned(slotNum, item));
+        return result;
     }
     /**
      * Unassigns an item slot from the vending machine.
@@ -211,12 +830,27 @@ public class VendingMachine {
      * @param slotNum The slot number to unassign.
      * @throws IllegalStateException if the vending machine is not in MAINTENANCE state.
      */
-    public void unassignSlot(int slotNum){
+    public void unassignSlot(int slotNum){ this.tryUnassignSlot(slotNum).orThrow(VendingOperation.UNASSIGN_SLOT); }
+    /**
+     * Non-throwing version of 'this.unassignSlot'.
+     * @param slotNum The slot number to unassign.
+     * @return 'OK' if unassigned; otherwise 'REFUSED' (not in MAINTENANCE state), 'SLOT_OUT_OF_RANGE', 'SLOT_UNASSIGNED' or 'SLOT_NOT_EMPTY'.
+     */
+    public VendingResult tryUnassignSlot(int slotNum){
         //* Implementation for unassigning an item slot to an item.
         //* Used for admin/owner unassigning item slots.
-        if (state != VendingMachineState.MAINTENANCE) throw new IllegalStateException("Cannot unassign item slot when not in MAINTENANCE state");
-        //^ Would only be satisfied when owner/admin is not in maintenance mode.
+        if (!VendingOperation.UNASSIGN_SLOT.permittedIn(this.state.get())) return VendingResult.REFUSED;
+        //^ Would only be refused when owner/admin is not in maintenance mode.
 
-        this.itemStorage.unassignSlot(slotNum);
+        ItemSlot slot = slotNum < 0 || slotNum >= this.itemStorage.getMaxSlots() ? null : this.itemStorage.render()[slotNum];
+        //^ Kept to assign the slot again if unassigning it cannot be journaled.
+        VendingResult result = this.itemStorage.tryUnassignSlot(slotNum);
+        if (!result.isOk()) return result;
+        try { this.journal(new JournalRecord.SlotUnassigned(slotNum)); }
+        catch (UncheckedIOException | IllegalStateException e) {
+            this.itemStorage.tryAssignSlot(slotNum, slot.getItem());
+            throw e;
+        }
+        return result;
     }
 }
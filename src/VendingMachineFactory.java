@@ -1,3 +1,4 @@
+import java.nio.file.Path;
 import java.util.Map;
 /**
  * Supports creation of valid specification vending machines
@@ -133,4 +134,40 @@ public class VendingMachineFactory {
         this.validateSpecifications(maxSlots, slotSize, coinStorage);
         return new VendingMachine(maxSlots, slotSize, coinStorage);
     }
+    /**
+     * Factory method for creating (or, after a power cut, recovering) a journaled vending machine.
+     * <p>
+     * If the journal already has records, the vending machine is rebuilt from its latest snapshot and the records after it - coins, items, state and any open customer session; otherwise a new one is made.
+     * @param maxSlots    The maximum number of item slots in the vending machine.
+     * @param slotSize    The item slot size in the vending machine.
+     * @param coinStorage The coin storage Map in the vending machine.
+     * @param journalPath The journal path (its segment and snapshot files are named after it) recording every change to the vending machine.
+     * @return A new or recovered VendingMachine instance with the specified configurations (if valid).
+     * @throws IllegalArgumentException If any of the specification arguments are invalid or the journal belongs to a vending machine with different specifications.
+     * @throws java.io.UncheckedIOException If the journal cannot be opened or read.
+     */
+    public VendingMachine createVendingMachine(int maxSlots, int slotSize, Map<CoinGBP, Integer> coinStorage, Path journalPath) {
+        return this.createVendingMachine(maxSlots, slotSize, coinStorage, journalPath, DurabilityFailureHandler.uncaught());
+    }
+    /**
+     * Factory method for creating (or recovering) a journaled vending machine, choosing who is told when a journal snapshot fails.
+     * @param maxSlots       The maximum number of item slots in the vending machine.
+     * @param slotSize       The item slot size in the vending machine.
+     * @param coinStorage    The coin storage Map in the vending machine.
+     * @param journalPath    The journal path (its segment and snapshot files are named after it) recording every change to the vending machine.
+     * @param failureHandler Told about every journal snapshot or compaction that failed (e.g. disk full) - the vending machine carries on regardless.
+     * @return A new or recovered VendingMachine instance with the specified configurations (if valid).
+     * @throws IllegalArgumentException If any of the specification arguments are invalid or the journal belongs to a vending machine with different specifications.
+     * @throws java.io.UncheckedIOException If the journal cannot be opened or read.
+     */
+    public VendingMachine createVendingMachine(int maxSlots, int slotSize, Map<CoinGBP, Integer> coinStorage, Path journalPath, DurabilityFailureHandler failureHandler) {
+        this.validateSpecifications(maxSlots, slotSize, coinStorage);
+        Journal journal = Journal.open(journalPath, failureHandler);
+        try { return new VendingMachine(maxSlots, slotSize, coinStorage, journal); }
+        catch (RuntimeException e) {
+            journal.close();
+            //^ Not left open if the journal does not match or cannot be replayed.
+            throw e;
+        }
+    }
 }
@@ -2,6 +2,8 @@
  * States of the vending machine as part of the "state design pattern".
  * <p>
  * Description of each enum value is given as comments its scope.
+ * <p>
+ * Also holds which transitions between states are legal ('this.canChangeTo'); which operations each state permits is in 'VendingOperation'.
  */
 public enum VendingMachineState {
     //* All stable states will be used - only some transient states will be included.
@@ -14,7 +16,37 @@ public enum VendingMachineState {
     MAINTENANCE, //< Admin/owner only - restocking items or coins, or performing maintenance.
     //: Transient states - last for a short period; happens between the stable states.
     DISPENSING, //< Dispensing items.
-    REFUNDING, //< Refunding coins.
+    REFUNDING; //< Refunding coins.
+
+    private static final int[] SUCCESSORS = new int[VendingMachineState.values().length];
+    //^ Legal transitions - bit mask per state (by ordinal) of the states it may change to ('1 << ordinal').
+    //^ Filled in below rather than by constructors, as a constant cannot name constants declared after it.
+    static {
+        VendingMachineState.allow(IDLE, IDLE, ORDERING, MAINTENANCE);
+        //^ IDLE to IDLE as stopping maintenance (or resetting) when already IDLE is harmless.
+        VendingMachineState.allow(ORDERING, IDLE, PAYING);
+        VendingMachineState.allow(PAYING, IDLE, DISPENSING, REFUNDING);
+        VendingMachineState.allow(DISPENSING, IDLE, DISPENSING, REFUNDING);
+        //^ DISPENSING to REFUNDING for giving change after dispensing.
+        VendingMachineState.allow(REFUNDING, IDLE, DISPENSING, REFUNDING);
+        //^ Self and REFUNDING to DISPENSING only when a purchase interrupted by a crash is resumed (see 'CustomerProxy.resume').
+        VendingMachineState.allow(MAINTENANCE, IDLE);
+    }
+
+    /**
+     * Helper method to fill in one row of the transition table.
+     * @param from The state changed from.
+     * @param to   Every state it may change to.
+     */
+    private static void allow(VendingMachineState from, VendingMachineState... to) {
+        for (VendingMachineState state : to) SUCCESSORS[from.ordinal()] |= 1 << state.ordinal();
+    }
+    /**
+     * Predicate method to check whether this state may change to another - one table lookup.
+     * @param next The state to change to.
+     * @return 'true' if the transition is legal; otherwise 'false'.
+     */
+    public boolean canChangeTo(VendingMachineState next) { return (SUCCESSORS[this.ordinal()] >>> next.ordinal() & 1) != 0; }
 
     //! No need a toString() method as enum's default toString() is sufficient.
 }
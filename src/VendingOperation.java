@@ -0,0 +1,53 @@
+/**
+ * Operations of the vending machine that are only permitted in some states - the permission half of the vending machine's state table
+ * (the transition half is 'VendingMachineState.canChangeTo').
+ * <p>
+ * Each operation holds the states it is permitted in as a bit mask ('1 << state ordinal'), so checking a permission is one shift and mask
+ * instead of a chain of state comparisons repeated in every method of 'VendingMachine'.
+ * Each also holds the message of the 'IllegalStateException' thrown when it is refused.
+ */
+public enum VendingOperation {
+    VIEW_COINS("Cannot view coin storage when not in MAINTENANCE state", VendingMachineState.MAINTENANCE),
+    WITHDRAW_COIN("Cannot withdraw coin when not in REFUNDING or MAINTENANCE state", VendingMachineState.REFUNDING, VendingMachineState.MAINTENANCE),
+    //^ REFUNDING for customer refunding coins or getting change; MAINTENANCE for admin/owner withdrawing coins for revenue (and not letting the capacity fill up).
+    INSERT_COIN("Only insert coin when in PAYING or MAINTENANCE state", VendingMachineState.PAYING, VendingMachineState.MAINTENANCE),
+    //^ PAYING for customer paying; MAINTENANCE for admin/owner restocking coins.
+    WITHDRAW_COINS("Cannot withdraw coins in bulk when not in MAINTENANCE state", VendingMachineState.MAINTENANCE),
+    INSERT_COINS("Cannot insert coins in bulk when not in MAINTENANCE state", VendingMachineState.MAINTENANCE),
+    VIEW_ITEMS("Cannot view item storage when not in MAINTENANCE or ORDERING state", VendingMachineState.MAINTENANCE, VendingMachineState.ORDERING),
+    STOCK_ITEM("Cannot restock item when not in MAINTENANCE state", VendingMachineState.MAINTENANCE),
+    DISPENSE_ITEM("Cannot dispense item when not in DISPENSING or MAINTENANCE state", VendingMachineState.DISPENSING, VendingMachineState.MAINTENANCE),
+    //^ DISPENSING for customer purchases (by item ID); MAINTENANCE for admin/owner taking out expired items (by slot number).
+    RESERVE_ITEMS("Cannot reserve items when not in ORDERING state", VendingMachineState.ORDERING),
+    //^ Customer checkout - items are held for the order while it is paid for.
+    ASSIGN_SLOT("Cannot assign item slot when not in MAINTENANCE state", VendingMachineState.MAINTENANCE),
+    UNASSIGN_SLOT("Cannot unassign item slot when not in MAINTENANCE state", VendingMachineState.MAINTENANCE);
+
+    private final String refusal;
+    private final int permittedStates;
+    //^ Bit mask of the states the operation is permitted in ('1 << state ordinal').
+
+    /**
+     * Constructor for one row of the permission table.
+     * @param refusal         Message of the exception thrown when refused.
+     * @param permittedStates States the operation is permitted in.
+     */
+    VendingOperation(String refusal, VendingMachineState... permittedStates) {
+        this.refusal = refusal;
+        int mask = 0;
+        for (VendingMachineState state : permittedStates) mask |= 1 << state.ordinal();
+        this.permittedStates = mask;
+    }
+
+    /**
+     * Predicate method to check whether the operation is permitted in a state.
+     * @param state The state to check.
+     * @return 'true' if permitted; otherwise 'false'.
+     */
+    public boolean permittedIn(VendingMachineState state) { return (this.permittedStates >>> state.ordinal() & 1) != 0; }
+    /**
+     * Getter method for 'this.refusal'.
+     * @return Message of the exception thrown when the operation is refused.
+     */
+    public String getRefusal() { return this.refusal; }
+}
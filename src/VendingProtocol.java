@@ -0,0 +1,353 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact length-prefixed binary protocol between 'VendingSocketServer' and 'VendingClient', exposing every 'ActionsCustomer' and 'ActionsAdmin' method to other processes.
+ * <p>
+ * Every frame is [payload length (int)][opcode (byte)][arguments], big-endian as written by 'DataOutput'.
+ * The client sends one request frame per action call and the server answers every request with exactly one 'RESPONSE' frame, in request order.
+ * Responses are [RESPONSE][status][result]: 'OK' followed by the result of getters ('viewCoins', 'viewItems'), or a rejection followed by the exception message -
+ * 'REJECTED_ARGUMENT' and 'REJECTED_STATE' for what the vending machine throws in-process as 'IllegalArgumentException' and 'IllegalStateException'.
+ * <p>
+ * Proxy events are pushed as [EVENT][event kind][fields] frames to connections subscribed to their kind ('SUBSCRIBE' with a bit mask of event kinds).
+ * Events caused by a request are always sent before its response, so a client has received them by the time the action call returns.
+ * <p>
+ * Items are written in the same layout as the journal ('JournalRecord.writeItem'); amounts are whole pence and coins are their 'CoinGBP' ordinal.
+ * <p>
+ * Not instantiable as it only holds constants and static helper methods.
+ */
+public final class VendingProtocol {
+    private VendingProtocol() {}
+    //^ Prevents instantiation - static utility class.
+
+    static final int MAX_FRAME = 1 << 20;
+    //^ Largest payload accepted (1 MiB) - a stock view of the largest vending machine is well under it; anything bigger is a broken or hostile peer.
+
+    //: Request opcodes - must never be reused or renumbered as older clients would call the wrong action.
+    static final byte START_ORDER = 1;
+    static final byte SELECT_ITEM = 2;
+    static final byte DESELECT_ITEM = 3;
+    static final byte CHECKOUT = 4;
+    static final byte CANCEL_ORDER = 5;
+    static final byte DEPOSIT_COIN = 6;
+    static final byte GET_BASKET = 7;
+    static final byte GET_ITEM_STOCK = 8;
+    static final byte DEPOSIT_COINS = 16;
+    static final byte WITHDRAW_COINS = 17;
+    static final byte VIEW_COINS = 18;
+    static final byte STOCK_ITEMS = 19;
+    static final byte REMOVE_ITEMS = 20;
+    static final byte ASSIGN_ITEM_SLOT = 21;
+    static final byte UNASSIGN_ITEM_SLOT = 22;
+    static final byte VIEW_ITEMS = 23;
+    static final byte START_MAINTENANCE = 24;
+    static final byte STOP_MAINTENANCE = 25;
+    static final byte SUBSCRIBE = 32;
+    //^ Replaces the connection's event subscriptions with a bit mask ('1 << event kind').
+
+    //: Server frame opcodes.
+    static final byte RESPONSE = 64;
+    static final byte EVENT = 65;
+
+    //: Response statuses.
+    static final byte OK = 0;
+    static final byte REJECTED_ARGUMENT = 1;
+    static final byte REJECTED_STATE = 2;
+
+    //: Event kinds - bit numbers in 'SUBSCRIBE' masks; never reused or renumbered, for the same reason as opcodes.
+    static final byte NOTICE = 0;
+    static final byte FAILURE = 1;
+    static final byte STATE_CHANGED = 2;
+    static final byte CHECKOUT_TOTAL = 3;
+    static final byte PAYMENT_PROGRESS = 4;
+    static final byte ITEM_DISPENSED = 5;
+    static final byte CHANGE_STARTED = 6;
+    static final byte CHANGE_DISPENSED = 7;
+    static final byte CHANGE_COMPLETED = 8;
+    static final byte BASKET_VIEW = 9;
+    static final byte STOCK_VIEW = 10;
+    static final byte COINS_DEPOSITED = 11;
+    static final byte COINS_WITHDRAWN = 12;
+    static final byte COIN_ACCEPTED = 13;
+    static final byte COIN_WITHDRAWN = 14;
+    static final byte ITEM_STOCKED = 15;
+    static final byte ITEM_REMOVED = 16;
+    static final byte ORDER_PROGRESS = 17;
+    static final byte ORDER_COMPLETED = 18;
+    static final byte ITEMS_STOCKED = 19;
+    static final byte ITEMS_REMOVED = 20;
+    private static final List<Class<? extends VendingEvent>> EVENT_KINDS = List.of(
+        VendingEvent.Notice.class, VendingEvent.Failure.class, VendingEvent.StateChanged.class,
+        VendingEvent.CheckoutTotal.class, VendingEvent.PaymentProgress.class, VendingEvent.ItemDispensed.class,
+        VendingEvent.ChangeStarted.class, VendingEvent.ChangeDispensed.class, VendingEvent.ChangeCompleted.class,
+        VendingEvent.BasketView.class, VendingEvent.StockView.class,
+        VendingEvent.CoinsDeposited.class, VendingEvent.CoinsWithdrawn.class, VendingEvent.CoinAccepted.class, VendingEvent.CoinWithdrawn.class,
+        VendingEvent.ItemStocked.class, VendingEvent.ItemRemoved.class,
+        VendingEvent.OrderProgress.class, VendingEvent.OrderCompleted.class,
+        VendingEvent.ItemsStocked.class, VendingEvent.ItemsRemoved.class
+    );
+    //^ Event classes indexed by event kind.
+    private static final CoinGBP[] COINS = CoinGBP.values();
+    //^ Cached as 'CoinGBP.values()' creates a new array every call.
+
+    /**
+     * Writes the arguments or result following a frame's opcode.
+     */
+    @FunctionalInterface
+    interface Body { void writeTo(DataOutput out) throws IOException; }
+
+    /**
+     * Byte array output stream whose buffer becomes the frame directly, instead of being copied by 'toByteArray'.
+     */
+    private static final class FrameOutput extends ByteArrayOutputStream {
+        private FrameOutput() { super(32); }
+        /**
+         * Fills in the length prefix and wraps the written bytes.
+         * @return The frame, ready to be written to a channel.
+         */
+        private ByteBuffer toFrame() {
+            ByteBuffer frame = ByteBuffer.wrap(this.buf, 0, this.count);
+            frame.putInt(0, this.count - Integer.BYTES);
+            return frame;
+        }
+    }
+
+    /**
+     * Builds a frame.
+     * @param opcode The frame's opcode.
+     * @param body   Writes what follows the opcode.
+     * @return The frame, positioned at its length prefix.
+     * @throws IllegalArgumentException if an argument cannot be encoded (e.g. an item subclass the protocol does not know).
+     */
+    static ByteBuffer frame(byte opcode, Body body) {
+        FrameOutput bytes = new FrameOutput();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(0);
+            //^ Length prefix, filled in once the payload is written.
+            out.writeByte(opcode);
+            body.writeTo(out);
+        }
+        catch (IOException e) { throw new IllegalArgumentException(e.getMessage(), e); }
+        //^ Writing to memory never fails - only encoding can.
+        return bytes.toFrame();
+    }
+
+    //: Values shared by requests, responses and events.
+    /**
+     * Reads a coin written as its ordinal.
+     * @param in Where to read the coin from.
+     * @return The coin.
+     * @throws IOException If reading fails or the ordinal is not a coin.
+     */
+    static CoinGBP readCoin(DataInput in) throws IOException {
+        int ordinal = in.readByte();
+        if (ordinal < 0 || ordinal >= COINS.length) throw new IOException(STR."Unknown coin \{ordinal}");
+        return COINS[ordinal];
+    }
+    /**
+     * Writes coin counts (e.g. 'viewCoins').
+     * @param out   Where to write the counts.
+     * @param coins Coin types and their counts.
+     * @throws IOException If writing fails.
+     */
+    static void writeCoins(DataOutput out, Map<CoinGBP, Integer> coins) throws IOException {
+        out.writeByte(coins.size());
+        for (Map.Entry<CoinGBP, Integer> coin : coins.entrySet()) {
+            out.writeByte(coin.getKey().ordinal());
+            out.writeInt(coin.getValue());
+        }
+    }
+    /**
+     * Reads coin counts written by 'writeCoins'.
+     * @param in Where to read the counts from.
+     * @return Read-only map of coin types and their counts, in order of coin value.
+     * @throws IOException If reading fails.
+     */
+    static Map<CoinGBP, Integer> readCoins(DataInput in) throws IOException {
+        int size = in.readByte();
+        Map<CoinGBP, Integer> coins = new EnumMap<>(CoinGBP.class);
+        for (int i = 0; i < size; i++) coins.put(VendingProtocol.readCoin(in), in.readInt());
+        return Collections.unmodifiableMap(coins);
+    }
+    /**
+     * Helper method to write items and their quantities (basket or stock views).
+     * @param out   Where to write the items.
+     * @param items Items and their quantities.
+     * @throws IOException If writing fails.
+     */
+    private static void writeItems(DataOutput out, Map<Item, Integer> items) throws IOException {
+        out.writeInt(items.size());
+        for (Map.Entry<Item, Integer> item : items.entrySet()) {
+            JournalRecord.writeItem(out, item.getKey());
+            out.writeInt(item.getValue());
+        }
+    }
+    /**
+     * Helper method to read items and their quantities written by 'writeItems'.
+     * @param in Where to read the items from.
+     * @return Read-only map of items and their quantities.
+     * @throws IOException If reading fails.
+     */
+    private static Map<Item, Integer> readItems(DataInput in) throws IOException {
+        int size = in.readInt();
+        if (size < 0) throw new IOException(STR."Negative item count \{size}");
+        Map<Item, Integer> items = new HashMap<>();
+        for (int i = 0; i < size; i++) items.put(JournalRecord.readItem(in), in.readInt());
+        return Map.copyOf(items);
+    }
+
+    //: Events.
+    /**
+     * Gets the event kind (bit number in 'SUBSCRIBE' masks) of an event class.
+     * @param kind The event class (a 'VendingEvent' record class).
+     * @return The event kind.
+     * @throws IllegalArgumentException if the class is not a concrete event kind.
+     */
+    static int kindOf(Class<? extends VendingEvent> kind) {
+        int index = EVENT_KINDS.indexOf(kind);
+        if (index < 0) throw new IllegalArgumentException(STR."\{kind.getSimpleName()} is not an event kind.");
+        return index;
+    }
+    /**
+     * Gets the event class of an event kind.
+     * @param kind The event kind.
+     * @return The event class.
+     */
+    static Class<? extends VendingEvent> kindAt(int kind) { return EVENT_KINDS.get(kind); }
+    /**
+     * Counts the event kinds.
+     * @return How many event kinds there are (every kind is below it).
+     */
+    static int kindCount() { return EVENT_KINDS.size(); }
+    /**
+     * Builds the mask of every event kind a listener subscribed to every kind would receive - all but the 'OptIn' kinds.
+     * @return The mask.
+     */
+    static int everyKindMask() {
+        int mask = 0;
+        for (int kind = 0; kind < EVENT_KINDS.size(); kind++) {
+            if (!VendingEvent.OptIn.class.isAssignableFrom(EVENT_KINDS.get(kind))) mask |= 1 << kind;
+        }
+        return mask;
+    }
+
+    /**
+     * Builds an event frame.
+     * @param event The event.
+     * @return The frame.
+     */
+    static ByteBuffer eventFrame(VendingEvent event) {
+        return VendingProtocol.frame(EVENT, out -> {
+            out.writeByte(VendingProtocol.kindOf(event.getClass()));
+            switch (event) {
+                case VendingEvent.Notice notice -> out.writeUTF(notice.message());
+                case VendingEvent.Failure(RuntimeException error) -> {
+                    out.writeByte(error instanceof IllegalStateException ? REJECTED_STATE : REJECTED_ARGUMENT);
+                    out.writeUTF(String.valueOf(error.getMessage()));
+                }
+                case VendingEvent.StateChanged(VendingMachineState state) -> out.writeByte(state.ordinal());
+                case VendingEvent.CheckoutTotal(long payDue) -> out.writeLong(payDue);
+                case VendingEvent.PaymentProgress(CoinGBP coin, long remainingDue) -> {
+                    out.writeByte(coin.ordinal());
+                    out.writeLong(remainingDue);
+                }
+                case VendingEvent.ItemDispensed(Item item) -> JournalRecord.writeItem(out, item);
+                case VendingEvent.ChangeStarted(long amount) -> out.writeLong(amount);
+                case VendingEvent.ChangeDispensed(CoinGBP coin) -> out.writeByte(coin.ordinal());
+                case VendingEvent.ChangeCompleted(long amount) -> out.writeLong(amount);
+                case VendingEvent.BasketView(Map<Item, Integer> items) -> VendingProtocol.writeItems(out, items);
+                case VendingEvent.StockView(Map<Item, Integer> items) -> VendingProtocol.writeItems(out, items);
+                case VendingEvent.CoinsDeposited(CoinGBP coin, int requested, int accepted) -> {
+                    out.writeByte(coin.ordinal());
+                    out.writeInt(requested);
+                    out.writeInt(accepted);
+                }
+                case VendingEvent.CoinsWithdrawn(CoinGBP coin, int requested, int withdrawn) -> {
+                    out.writeByte(coin.ordinal());
+                    out.writeInt(requested);
+                    out.writeInt(withdrawn);
+                }
+                case VendingEvent.CoinAccepted(CoinGBP coin) -> out.writeByte(coin.ordinal());
+                case VendingEvent.CoinWithdrawn(CoinGBP coin) -> out.writeByte(coin.ordinal());
+                case VendingEvent.ItemStocked(int slotNum) -> out.writeInt(slotNum);
+                case VendingEvent.ItemRemoved(int slotNum) -> out.writeInt(slotNum);
+                case VendingEvent.OrderProgress(int itemsDispensed, int items, int coinsReturned, int coins) -> {
+                    out.writeInt(itemsDispensed);
+                    out.writeInt(items);
+                    out.writeInt(coinsReturned);
+                    out.writeInt(coins);
+                }
+                case VendingEvent.OrderCompleted(Map<Item, Integer> items, Map<CoinGBP, Integer> change, long amount) -> {
+                    VendingProtocol.writeItems(out, items);
+                    VendingProtocol.writeCoins(out, change);
+                    out.writeLong(amount);
+                }
+                case VendingEvent.ItemsStocked(int slotNum, int requested, int stocked) -> {
+                    out.writeInt(slotNum);
+                    out.writeInt(requested);
+                    out.writeInt(stocked);
+                }
+                case VendingEvent.ItemsRemoved(int slotNum, int requested, int removed) -> {
+                    out.writeInt(slotNum);
+                    out.writeInt(requested);
+                    out.writeInt(removed);
+                }
+            }
+            //^ Exhaustive over the sealed event kinds - a new kind does not compile until it is encoded here.
+        });
+    }
+    /**
+     * Reads an event written by 'eventFrame' (after its opcode).
+     * @param in Where to read the event from.
+     * @return The event; notices already hold their formatted text.
+     * @throws IOException If reading fails or the event kind is unknown.
+     */
+    static VendingEvent readEvent(DataInput in) throws IOException {
+        byte kind = in.readByte();
+        return switch (kind) {
+            case NOTICE -> {
+                String text = in.readUTF();
+                yield new VendingEvent.Notice(() -> text);
+            }
+            case FAILURE -> {
+                byte status = in.readByte();
+                String message = in.readUTF();
+                yield new VendingEvent.Failure(status == REJECTED_STATE ? new IllegalStateException(message) : new IllegalArgumentException(message));
+            }
+            case STATE_CHANGED -> {
+                int ordinal = in.readByte();
+                if (ordinal < 0 || ordinal >= VendingMachineState.values().length) throw new IOException(STR."Unknown state \{ordinal}");
+                yield new VendingEvent.StateChanged(VendingMachineState.values()[ordinal]);
+            }
+            case CHECKOUT_TOTAL -> new VendingEvent.CheckoutTotal(in.readLong());
+            case PAYMENT_PROGRESS -> new VendingEvent.PaymentProgress(VendingProtocol.readCoin(in), in.readLong());
+            case ITEM_DISPENSED -> new VendingEvent.ItemDispensed(JournalRecord.readItem(in));
+            case CHANGE_STARTED -> new VendingEvent.ChangeStarted(in.readLong());
+            case CHANGE_DISPENSED -> new VendingEvent.ChangeDispensed(VendingProtocol.readCoin(in));
+            case CHANGE_COMPLETED -> new VendingEvent.ChangeCompleted(in.readLong());
+            case BASKET_VIEW -> new VendingEvent.BasketView(VendingProtocol.readItems(in));
+            case STOCK_VIEW -> new VendingEvent.StockView(VendingProtocol.readItems(in));
+            case COINS_DEPOSITED -> new VendingEvent.CoinsDeposited(VendingProtocol.readCoin(in), in.readInt(), in.readInt());
+            case COINS_WITHDRAWN -> new VendingEvent.CoinsWithdrawn(VendingProtocol.readCoin(in), in.readInt(), in.readInt());
+            case COIN_ACCEPTED -> new VendingEvent.CoinAccepted(VendingProtocol.readCoin(in));
+            case COIN_WITHDRAWN -> new VendingEvent.CoinWithdrawn(VendingProtocol.readCoin(in));
+            case ITEM_STOCKED -> new VendingEvent.ItemStocked(in.readInt());
+            case ITEM_REMOVED -> new VendingEvent.ItemRemoved(in.readInt());
+            case ORDER_PROGRESS -> new VendingEvent.OrderProgress(in.readInt(), in.readInt(), in.readInt(), in.readInt());
+            case ORDER_COMPLETED -> new VendingEvent.OrderCompleted(VendingProtocol.readItems(in), VendingProtocol.readCoins(in), in.readLong());
+            case ITEMS_STOCKED -> new VendingEvent.ItemsStocked(in.readInt(), in.readInt(), in.readInt());
+            case ITEMS_REMOVED -> new VendingEvent.ItemsRemoved(in.readInt(), in.readInt(), in.readInt());
+            default -> throw new IOException(STR."Unknown event kind \{kind}");
+        };
+    }
+}
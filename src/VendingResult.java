@@ -0,0 +1,98 @@
+/**
+ * Outcomes of the non-throwing ('try') operations of 'VendingMachine', 'ItemStorage' and 'CoinStorage'.
+ * <p>
+ * Business outcomes such as a full slot or an empty coin tube are returned as one of these preallocated constants instead of thrown,
+ * so a failed attempt costs a comparison rather than a stack trace capture and a formatted message.
+ * The message (and exception) is only made when a failure is actually reported - by 'this.toException', e.g. for a display or the throwing methods.
+ * <p>
+ * Operations that otherwise return a count of coins return a failure as a negative count instead ('this.asCount' and 'VendingResult.ofCount'), so they stay primitive too.
+ */
+public enum VendingResult {
+    OK,
+    REFUSED,
+    //^ Operation not permitted in the vending machine's current state.
+    SLOT_OUT_OF_RANGE,
+    SLOT_UNASSIGNED,
+    SLOT_ASSIGNED,
+    SLOT_FULL,
+    SLOT_EMPTY,
+    SLOT_NOT_EMPTY,
+    //^ Slot still has items in it, so cannot be unassigned.
+    ITEM_UNAVAILABLE,
+    //^ Item ID not offered or out of stock in every slot assigned to it.
+    COIN_UNSUPPORTED,
+    NEGATIVE_AMOUNT,
+    TUBE_FULL,
+    TUBE_EMPTY,
+    BATCH_SHORT;
+    //^ Not enough of a coin type to withdraw a whole batch (e.g. a change plan) - nothing was withdrawn.
+
+    private static final VendingResult[] RESULTS = VendingResult.values();
+    //^ Cached as 'VendingResult.values()' creates a new array every call.
+
+    /**
+     * Predicate method to check whether the operation succeeded.
+     * @return 'true' if 'OK'; otherwise 'false'.
+     */
+    public boolean isOk() { return this == OK; }
+    /**
+     * Encodes a failure as a negative count, for operations that otherwise return how many coins they moved.
+     * @return The negated ordinal - always negative for failures.
+     */
+    public int asCount() { return -this.ordinal(); }
+    /**
+     * Decodes the count returned by a counting operation (see 'this.asCount').
+     * @param count How many coins were moved; otherwise a negative encoded failure.
+     * @return 'OK' for any count that is not negative; otherwise the encoded failure.
+     */
+    public static VendingResult ofCount(int count) { return count >= 0 ? OK : RESULTS[-count]; }
+
+    /**
+     * Throws the failure as an exception - thin bridge from the non-throwing operations to the throwing ones.
+     * @param operation The operation that returned this result.
+     * @throws IllegalStateException    If the operation was refused in the current state.
+     * @throws IllegalArgumentException For any other failure.
+     */
+    public void orThrow(VendingOperation operation) { this.orThrow(operation, null); }
+    /**
+     * Throws the failure as an exception - thin bridge from the non-throwing operations to the throwing ones.
+     * @param operation The operation that returned this result.
+     * @param coin      The coin type operated on; 'null' for item operations.
+     * @throws IllegalStateException    If the operation was refused in the current state.
+     * @throws IllegalArgumentException For any other failure.
+     */
+    public void orThrow(VendingOperation operation, CoinGBP coin) {
+        if (this != OK) throw this.toException(operation, coin);
+    }
+    /**
+     * Makes the exception describing this failure - only called when the failure is reported, so the message is only formatted then.
+     * <p>
+     * Messages are the ones the operations always threw, hence the wording depends on the operation as well.
+     * @param operation The operation that returned this result.
+     * @param coin      The coin type operated on; 'null' for item operations.
+     * @return 'IllegalStateException' if the operation was refused in the current state; otherwise 'IllegalArgumentException'.
+     * @throws IllegalStateException If called on 'OK' - nothing failed.
+     */
+    public RuntimeException toException(VendingOperation operation, CoinGBP coin) {
+        return switch (this) {
+            case OK -> throw new IllegalStateException("Operation succeeded - there is no failure to describe.");
+            case REFUSED -> new IllegalStateException(operation.getRefusal());
+            case SLOT_OUT_OF_RANGE -> new IllegalArgumentException(operation == VendingOperation.ASSIGN_SLOT || operation == VendingOperation.UNASSIGN_SLOT ? "Slot number out of range." : "Slot number out of range");
+            case SLOT_UNASSIGNED -> new IllegalArgumentException(switch (operation) {
+                case STOCK_ITEM -> "Cannot put items in a unassigned slot.";
+                case UNASSIGN_SLOT -> "Slot already unassigned.";
+                default -> "Cannot remove items from a unassigned slot.";
+            });
+            case SLOT_ASSIGNED -> new IllegalArgumentException("Slot already assigned.");
+            case SLOT_FULL -> new IllegalArgumentException("Cannot put items in a completely populated slot.");
+            case SLOT_EMPTY -> new IllegalArgumentException("Cannot remove items in an empty slot.");
+            case SLOT_NOT_EMPTY -> new IllegalArgumentException("Cannot unassign a slot that physically have items inside it.");
+            case ITEM_UNAVAILABLE -> new IllegalArgumentException("Item not found or out of stock.");
+            case COIN_UNSUPPORTED -> new IllegalArgumentException(STR."This vending machine does not accept/support \{coin}s. Use another coin type");
+            case NEGATIVE_AMOUNT -> new IllegalArgumentException(operation == VendingOperation.WITHDRAW_COINS ? "Cannot withdraw a negative amount of coins" : "Cannot deposit a negative amount of coins");
+            case TUBE_FULL -> new IllegalArgumentException(STR."Capacity of \{coin} would be exceeded");
+            case TUBE_EMPTY -> new IllegalArgumentException(STR."Do not have \{coin}s to withdraw");
+            case BATCH_SHORT -> new IllegalArgumentException("Do not have enough coins to withdraw the whole batch");
+        };
+    }
+}
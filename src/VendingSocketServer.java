@@ -0,0 +1,425 @@
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Non-blocking socket server exposing one vending machine's customer and admin actions to other processes (e.g. a kiosk UI and back-office tools), speaking 'VendingProtocol'.
+ * <p>
+ * One selector loop on one thread serves every connection: it accepts connections, reads request frames, calls the matching 'ActionsCustomer' or 'ActionsAdmin' method and queues the response.
+ * As every action runs on the selector thread, actions from different connections never interleave - the same guarantee as one front-end calling the proxies directly.
+ * <p>
+ * The server holds one 'CustomerProxy' and one 'AdminProxy', publishing on one synchronous event bus.
+ * Events are therefore published on the selector thread too: each is encoded once and queued to every connection subscribed to its kind, before the response of the request that caused it.
+ * A connection is only subscribed to the event bus's kinds when first asked for (see 'this.subscribe'), so proxies keep skipping events (and notice formatting) nobody asked for.
+ * <p>
+ * Writes never block the loop: what a connection cannot take yet stays queued until its socket is writable again.
+ * A connection falling too far behind (e.g. a stuck subscriber) is disconnected instead of growing its queue without bound.
+ * <p>
+ * Made and started with 'VendingSocketServer.start'.
+ */
+public class VendingSocketServer implements AutoCloseable {
+    private static final int READ_BUFFER_BYTES = 4096;
+    //^ Initial read buffer per connection; grown only for frames bigger than it.
+    private static final int MAX_QUEUED_BYTES = 8 << 20;
+    //^ Unsent bytes a connection may fall behind by before being disconnected.
+    private static final ByteBuffer OK_RESPONSE = VendingProtocol.frame(VendingProtocol.RESPONSE, out -> out.writeByte(VendingProtocol.OK)).asReadOnlyBuffer();
+    //^ Response of every action without a result - shared, each connection queues its own duplicate.
+
+    private final VendingMachine vendingMachine;
+    private final SynchronousEventBus eventBus = new SynchronousEventBus();
+    private final CustomerProxy customerProxy;
+    private final AdminProxy adminProxy;
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final List<Connection> connections = new ArrayList<>();
+    private final ArrayDeque<Connection> pendingWrites = new ArrayDeque<>();
+    //^ Connections with newly queued frames, written out after each round of the selector loop.
+    private int subscribedKinds;
+    //^ Event kinds already subscribed to the event bus (bit mask) - only touched by the selector thread.
+    private final Thread loop;
+    private final ErrorHandler errorHandler;
+    private volatile boolean running = true;
+
+    /**
+     * Handler for a server failure that is not any one request's fault, so cannot be returned as a rejection.
+     */
+    @FunctionalInterface
+    public interface ErrorHandler {
+        /**
+         * Called on the selector thread when accepting connections failed (the server keeps serving), or the selector itself failed (the server stops).
+         * @param error What failed.
+         */
+        void failed(IOException error);
+    }
+
+    /**
+     * A client connection and its buffers - only touched by the selector thread.
+     */
+    private static final class Connection {
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        private ByteBuffer in = ByteBuffer.allocate(READ_BUFFER_BYTES);
+        //^ Bytes read but not yet handled (in write mode between reads).
+        private final ArrayDeque<ByteBuffer> out = new ArrayDeque<>();
+        //^ Frames queued but not yet (fully) written.
+        private long queuedBytes;
+        private int subscriptions;
+        //^ Event kinds pushed to this connection (bit mask).
+
+        /**
+         * Constructor for a newly accepted connection.
+         * @param channel The connection's channel (non-blocking).
+         * @param key     The connection's selection key.
+         */
+        private Connection(SocketChannel channel, SelectionKey key) {
+            this.channel = channel;
+            this.key = key;
+        }
+    }
+
+    /**
+     * Constructor binds the server; its selector loop is made but not started (see 'VendingSocketServer.start').
+     * @param vendingMachine The vending machine to expose.
+     * @param address        Where to listen.
+     * @param errorHandler   Handler for failures of the server itself.
+     * @throws IOException If the server cannot be bound.
+     */
+    private VendingSocketServer(VendingMachine vendingMachine, InetSocketAddress address, ErrorHandler errorHandler) throws IOException {
+        this.vendingMachine = vendingMachine;
+        this.customerProxy = new CustomerProxy(vendingMachine, this.eventBus);
+        this.adminProxy = new AdminProxy(vendingMachine, this.eventBus);
+        this.errorHandler = errorHandler;
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        this.serverChannel.bind(address);
+        this.serverChannel.configureBlocking(false);
+        this.serverChannel.register(this.selector, SelectionKey.OP_ACCEPT);
+        this.loop = new Thread(this::run, "vending-socket-server");
+    }
+
+    /**
+     * Binds a server and starts its selector loop.
+     * <p>
+     * A failure of the server itself is reported to the selector thread's uncaught exception handler (see 'Thread.setDefaultUncaughtExceptionHandler').
+     * @param vendingMachine The vending machine to expose.
+     * @param address        Where to listen (e.g. loopback with port 0 for any free port - see 'this.getAddress').
+     * @return The running server.
+     * @throws IOException If the server cannot be bound.
+     */
+    public static VendingSocketServer start(VendingMachine vendingMachine, InetSocketAddress address) throws IOException {
+        return VendingSocketServer.start(vendingMachine, address, error -> {
+            Thread thread = Thread.currentThread();
+            thread.getUncaughtExceptionHandler().uncaughtException(thread, error);
+        });
+    }
+    /**
+     * Binds a server with a failure handler and starts its selector loop.
+     * <p>
+     * The thread is started here rather than in the constructor, so it never sees a partly constructed server.
+     * @param vendingMachine The vending machine to expose.
+     * @param address        Where to listen (e.g. loopback with port 0 for any free port - see 'this.getAddress').
+     * @param errorHandler   Called (on the selector thread) with every failure of the server itself.
+     * @return The running server.
+     * @throws IOException If the server cannot be bound.
+     */
+    public static VendingSocketServer start(VendingMachine vendingMachine, InetSocketAddress address, ErrorHandler errorHandler) throws IOException {
+        VendingSocketServer server = new VendingSocketServer(vendingMachine, address, errorHandler);
+        server.loop.start();
+        return server;
+    }
+
+    /**
+     * Gets where the server listens.
+     * @return The bound address (with the actual port if bound to port 0).
+     */
+    public InetSocketAddress getAddress() {
+        try { return (InetSocketAddress) this.serverChannel.getLocalAddress(); }
+        catch (IOException e) { throw new UncheckedIOException(e); }
+    }
+
+    //: Selector loop.
+    /**
+     * Selector loop - runs until the server is closed.
+     */
+    private void run() {
+        try {
+            while (this.running) {
+                this.selector.select(this::handleKey);
+                while (!this.pendingWrites.isEmpty()) {
+                    Connection connection = this.pendingWrites.poll();
+                    if (connection.key.isValid()) this.flush(connection);
+                }
+            }
+        }
+        catch (IOException e) { this.reportError(e); }
+        //^ Selector itself failed - nothing left to serve with.
+        finally {
+            for (Connection connection : this.connections) this.closeQuietly(connection.channel);
+            this.connections.clear();
+            this.closeQuietly(this.serverChannel);
+            this.closeQuietly(this.selector);
+        }
+    }
+    /**
+     * Helper method to handle one ready key of the selector loop.
+     * @param key The ready key.
+     */
+    private void handleKey(SelectionKey key) {
+        if (!key.isValid()) return;
+        if (key.isAcceptable()) {
+            this.accept();
+            return;
+        }
+        Connection connection = (Connection) key.attachment();
+        try {
+            if (key.isReadable()) this.read(connection);
+            if (key.isValid() && key.isWritable()) this.flush(connection);
+        }
+        catch (IOException e) { this.disconnect(connection); }
+        //^ Peer reset or broke the protocol - only that connection is dropped.
+    }
+    /**
+     * Helper method to accept every pending connection.
+     */
+    private void accept() {
+        try {
+            SocketChannel channel;
+            while ((channel = this.serverChannel.accept()) != null) {
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                //^ Request/response with small frames - Nagle's algorithm would add delay to every call.
+                SelectionKey key = channel.register(this.selector, SelectionKey.OP_READ);
+                Connection connection = new Connection(channel, key);
+                key.attach(connection);
+                this.connections.add(connection);
+            }
+        }
+        catch (IOException e) { this.reportError(e); }
+        //^ Failing to accept one connection must not stop the server.
+    }
+    /**
+     * Helper method to read what a connection sent and handle every complete request frame.
+     * @param connection The connection.
+     * @throws IOException If reading fails, the peer closed the connection or a frame length is invalid.
+     */
+    private void read(Connection connection) throws IOException {
+        if (connection.channel.read(connection.in) < 0) throw new IOException("Connection closed by peer");
+        ByteBuffer in = connection.in.flip();
+        while (in.remaining() >= Integer.BYTES) {
+            int length = in.getInt(in.position());
+            if (length < 1 || length > VendingProtocol.MAX_FRAME) throw new IOException(STR."Invalid frame length \{length}");
+            if (in.remaining() < Integer.BYTES + length) break;
+            int start = in.position() + Integer.BYTES;
+            this.queue(connection, this.handle(connection, in.array(), start, length));
+            in.position(start + length);
+            if (!connection.key.isValid()) return;
+            //^ Disconnected while handling (e.g. its queue overflowed).
+        }
+        in.compact();
+        if (in.position() >= Integer.BYTES) {
+            int needed = Integer.BYTES + in.getInt(0);
+            if (needed > in.capacity()) connection.in = ByteBuffer.allocate(needed).put(in.flip());
+            //^ Frame bigger than the buffer - grown to fit it exactly (at most 'MAX_FRAME').
+        }
+    }
+
+    //: Requests.
+    /**
+     * Helper method to handle one request frame - calls the matching action and builds the response.
+     * <p>
+     * Exceptions thrown by the vending machine, and malformed arguments, are returned as rejections; the connection stays usable as frames are length-prefixed.
+     * @param connection The requesting connection.
+     * @param frame      Array holding the frame.
+     * @param start      Where the frame's payload starts.
+     * @param length     Length of the frame's payload.
+     * @return The response frame.
+     */
+    private ByteBuffer handle(Connection connection, byte[] frame, int start, int length) {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(frame, start, length));
+        try {
+            byte opcode = in.readByte();
+            switch (opcode) {
+                case VendingProtocol.START_ORDER -> this.customerProxy.startOrder();
+                case VendingProtocol.SELECT_ITEM -> this.customerProxy.selectItem(in.readInt());
+                case VendingProtocol.DESELECT_ITEM -> this.customerProxy.deselectItem(in.readInt());
+                case VendingProtocol.CHECKOUT -> this.customerProxy.checkout();
+                case VendingProtocol.CANCEL_ORDER -> this.customerProxy.cancelOrder();
+                case VendingProtocol.DEPOSIT_COIN -> this.customerProxy.depositCoin(VendingProtocol.readCoin(in));
+                case VendingProtocol.GET_BASKET -> this.customerProxy.GetBasket();
+                case VendingProtocol.GET_ITEM_STOCK -> this.customerProxy.GetItemStock();
+                case VendingProtocol.DEPOSIT_COINS -> this.adminProxy.depositCoins(VendingProtocol.readCoin(in), in.readInt());
+                case VendingProtocol.WITHDRAW_COINS -> this.adminProxy.withdrawCoins(VendingProtocol.readCoin(in), in.readInt());
+                case VendingProtocol.VIEW_COINS -> {
+                    Map<CoinGBP, Integer> coins = this.adminProxy.viewCoins();
+                    return VendingProtocol.frame(VendingProtocol.RESPONSE, out -> {
+                        out.writeByte(VendingProtocol.OK);
+                        VendingProtocol.writeCoins(out, coins);
+                    });
+                }
+                case VendingProtocol.STOCK_ITEMS -> this.adminProxy.stockItems(in.readInt(), in.readInt());
+                case VendingProtocol.REMOVE_ITEMS -> this.adminProxy.removeItems(in.readInt(), in.readInt());
+                case VendingProtocol.ASSIGN_ITEM_SLOT -> this.adminProxy.assignItemSlot(in.readInt(), JournalRecord.readItem(in));
+                case VendingProtocol.UNASSIGN_ITEM_SLOT -> this.adminProxy.unassignItemSlot(in.readInt());
+                case VendingProtocol.VIEW_ITEMS -> {
+                    ItemSlot[] slots = this.adminProxy.viewItems();
+                    int slotSize = this.vendingMachine.viewSpecifications()[1];
+                    return VendingProtocol.frame(VendingProtocol.RESPONSE, out -> {
+                        out.writeByte(VendingProtocol.OK);
+                        out.writeInt(slotSize);
+                        out.writeInt(slots.length);
+                        for (ItemSlot slot : slots) {
+                            out.writeBoolean(slot != null);
+                            if (slot == null) continue;
+                            JournalRecord.writeItem(out, slot.getItem());
+                            out.writeInt(slot.getStock());
+                        }
+                    });
+                }
+                case VendingProtocol.START_MAINTENANCE -> this.adminProxy.startMaintenance();
+                case VendingProtocol.STOP_MAINTENANCE -> this.adminProxy.stopMaintenance();
+                case VendingProtocol.SUBSCRIBE -> this.subscribe(connection, in.readInt());
+                default -> throw new IOException(STR."Unknown opcode \{opcode}");
+            }
+            return OK_RESPONSE.duplicate();
+        }
+        catch (IOException e) { return this.reject(VendingProtocol.REJECTED_ARGUMENT, STR."Malformed request: \{e.getMessage()}"); }
+        catch (IllegalArgumentException e) { return this.reject(VendingProtocol.REJECTED_ARGUMENT, e.getMessage()); }
+        catch (RuntimeException e) { return this.reject(VendingProtocol.REJECTED_STATE, e.getMessage()); }
+        //^ Mostly 'IllegalStateException' (wrong state); anything else is reported the same way instead of killing the selector loop.
+    }
+    /**
+     * Helper method to build a rejection response.
+     * @param status  'REJECTED_ARGUMENT' or 'REJECTED_STATE'.
+     * @param message The exception message, rethrown by the client.
+     * @return The response frame.
+     */
+    private ByteBuffer reject(byte status, String message) {
+        return VendingProtocol.frame(VendingProtocol.RESPONSE, out -> {
+            out.writeByte(status);
+            out.writeUTF(String.valueOf(message));
+        });
+    }
+    /**
+     * Helper method to replace a connection's event subscriptions, subscribing the event bus to any kind not asked for before.
+     * @param connection The connection.
+     * @param mask       Event kinds to push to the connection ('1 << event kind').
+     */
+    private void subscribe(Connection connection, int mask) {
+        int validKinds = (1 << VendingProtocol.kindCount()) - 1;
+        if ((mask & ~validKinds) != 0) throw new IllegalArgumentException(STR."Unknown event kinds in mask \{Integer.toBinaryString(mask)}");
+        int newKinds = mask & ~this.subscribedKinds;
+        for (int kind = 0; kind < VendingProtocol.kindCount(); kind++) {
+            if ((newKinds & (1 << kind)) != 0) this.eventBus.subscribe(VendingProtocol.kindAt(kind), this::broadcast);
+        }
+        this.subscribedKinds |= newKinds;
+        //^ Never unsubscribed (the event bus has no such operation) - a kind nobody wants any more just reaches no connection.
+        connection.subscriptions = mask;
+    }
+    /**
+     * Event bus listener - encodes an event once and queues it to every connection subscribed to its kind.
+     * @param event The published event.
+     */
+    private void broadcast(VendingEvent event) {
+        int bit = 1 << VendingProtocol.kindOf(event.getClass());
+        ByteBuffer frame = null;
+        for (int i = 0; i < this.connections.size(); i++) {
+            Connection connection = this.connections.get(i);
+            if ((connection.subscriptions & bit) == 0) continue;
+            if (frame == null) frame = VendingProtocol.eventFrame(event);
+            this.queue(connection, frame.duplicate());
+            if (!connection.key.isValid()) i--;
+            //^ Disconnected for falling behind - removed from 'this.connections'.
+        }
+    }
+
+    //: Writes.
+    /**
+     * Helper method to queue a frame to a connection, to be written after the current round of the selector loop.
+     * @param connection The connection.
+     * @param frame      The frame.
+     */
+    private void queue(Connection connection, ByteBuffer frame) {
+        if (connection.out.isEmpty()) this.pendingWrites.add(connection);
+        connection.out.add(frame);
+        connection.queuedBytes += frame.remaining();
+        if (connection.queuedBytes > MAX_QUEUED_BYTES) this.disconnect(connection);
+    }
+    /**
+     * Helper method to write as many queued frames as the connection takes without blocking.
+     * <p>
+     * Watches for the connection becoming writable again only while frames are left over.
+     * @param connection The connection.
+     */
+    private void flush(Connection connection) {
+        try {
+            while (!connection.out.isEmpty()) {
+                ByteBuffer frame = connection.out.peek();
+                connection.queuedBytes -= connection.channel.write(frame);
+                if (frame.hasRemaining()) break;
+                //^ Socket buffer full.
+                connection.out.poll();
+            }
+        }
+        catch (IOException e) {
+            this.disconnect(connection);
+            return;
+        }
+        connection.key.interestOps(connection.out.isEmpty() ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+    }
+    /**
+     * Helper method to drop a connection.
+     * @param connection The connection.
+     */
+    private void disconnect(Connection connection) {
+        connection.key.cancel();
+        this.closeQuietly(connection.channel);
+        this.connections.remove(connection);
+        connection.out.clear();
+    }
+    /**
+     * Helper method to hand a failure of the server to the error handler.
+     * @param error What failed.
+     */
+    private void reportError(IOException error) {
+        try { this.errorHandler.failed(error); }
+        catch (RuntimeException handlerError) {
+            //* A failing handler must not stop the selector loop either - both failures go to the thread's uncaught exception handler instead.
+            handlerError.addSuppressed(error);
+            Thread thread = Thread.currentThread();
+            thread.getUncaughtExceptionHandler().uncaughtException(thread, handlerError);
+        }
+    }
+    /**
+     * Helper method to close a channel or selector, ignoring failures (nothing left to do about them).
+     * @param closeable What to close.
+     */
+    private void closeQuietly(AutoCloseable closeable) {
+        try { closeable.close(); }
+        catch (Exception e) {}
+    }
+
+    /**
+     * Stops the server - disconnects every client and closes the listening socket.
+     * <p>
+     * If interrupted while waiting for the selector loop to stop, returns early with the interrupt flag set again; the loop still stops on its own.
+     */
+    @Override
+    public void close() {
+        this.running = false;
+        this.selector.wakeup();
+        try { this.loop.join(); }
+        catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+    }
+}
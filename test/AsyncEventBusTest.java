@@ -0,0 +1,49 @@
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the asynchronous event bus delivers every event in order through a small ring buffer - including events published just as the consumer goes to sleep -
+ * and hands failing listeners to its failure handler without losing later events nor keeping the event from the other listeners.
+ */
+class AsyncEventBusTest {
+    private static final int EVENTS = 20_000;
+
+    @Test
+    void deliversEveryEventInOrderAndReportsFailures() {
+        assertTimeoutPreemptively(Duration.ofSeconds(60), () -> {
+            //^ A lost wake-up would leave 'flush' waiting forever.
+            List<Long> delivered = new ArrayList<>();
+            List<Long> failed = new ArrayList<>();
+            List<Long> seenByNext = new ArrayList<>();
+            //^ Only touched by the consumer thread until 'close' has joined it.
+            try (AsyncEventBus eventBus = AsyncEventBus.start(4, (event, error) -> failed.add(((VendingEvent.CheckoutTotal) event).payDue()))) {
+                eventBus.subscribe(VendingEvent.CheckoutTotal.class, event -> {
+                    long payDue = ((VendingEvent.CheckoutTotal) event).payDue();
+                    if (payDue % 100 == 0) throw new IllegalStateException("Listener failed.");
+                    delivered.add(payDue);
+                });
+                eventBus.subscribe(VendingEvent.CheckoutTotal.class, event -> seenByNext.add(((VendingEvent.CheckoutTotal) event).payDue()));
+                //^ Subscribed after the failing listener, so it only sees the failing events if listeners are isolated.
+                for (long i = 1; i <= EVENTS; i++) {
+                    eventBus.publish(new VendingEvent.CheckoutTotal(i));
+                    if (i % 1_000 == 0) {
+                        eventBus.flush();
+                        LockSupport.parkNanos(100_000);
+                        //^ Lets the consumer go to sleep, so the next event has to wake it.
+                    }
+                }
+            }
+            assertEquals(EVENTS / 100, failed.size());
+            assertEquals(EVENTS - EVENTS / 100, delivered.size());
+            assertEquals(EVENTS, seenByNext.size());
+            for (int i = 1; i < delivered.size(); i++) assertTrue(delivered.get(i) > delivered.get(i - 1), STR."event \{i} out of order");
+        });
+    }
+}
@@ -0,0 +1,172 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the basket's hash table finds every line after removals - lines sharing a probe run, runs wrapping around the end of the table, and tables grown past the initial 8 lines -
+ * and that the running total stays equal to the re-summed total after every change.
+ */
+class BasketTest {
+    private static final int INITIAL_MASK = 15;
+    //^ An unused basket's table has 16 positions (twice its 8 lines).
+    private static final long SEED = 2323L;
+
+    private final Map<Integer, Item> items = new HashMap<>();
+
+    /**
+     * Helper method to make the item for an ID (made once, so every line of an ID holds the same item).
+     * @param iD The item ID.
+     * @return The item - priced 10p to 99p by its ID.
+     */
+    private Item item(int iD) {
+        return this.items.computeIfAbsent(iD, key -> ItemFactory.getInstance().createItem(ItemType.SNACK, STR."Item \{key}", key, (10 + key % 90) / 100.0, 25));
+    }
+    /**
+     * Helper method to find item IDs whose probe run starts at the same position of an unused basket's table.
+     * <p>
+     * Repeats 'Basket.hash', so the tests can build collisions on purpose.
+     * @param home  The table position.
+     * @param count How many item IDs.
+     * @return The smallest such item IDs, in increasing order.
+     */
+    private static int[] idsStartingAt(int home, int count) {
+        int[] iDs = new int[count];
+        int found = 0;
+        for (int iD = 1; found < count; iD++) {
+            int h = iD * 0x9E3779B9;
+            if (((h ^ (h >>> 16)) & INITIAL_MASK) == home) iDs[found++] = iD;
+        }
+        return iDs;
+    }
+    /**
+     * Helper method to check the basket holds exactly the expected quantities, and that its running total equals the re-summed total.
+     * @param basket   The basket.
+     * @param expected Item ID to quantity.
+     */
+    private void assertHolds(Basket basket, Map<Integer, Integer> expected) {
+        assertEquals(expected.size(), basket.getLines());
+        long total = 0;
+        for (Map.Entry<Integer, Integer> line : expected.entrySet()) {
+            assertEquals(line.getValue(), basket.getQuantity(line.getKey()), STR."quantity of item \{line.getKey()}");
+            total += this.item(line.getKey()).getPrice() * line.getValue();
+        }
+        assertEquals(total, basket.getTotal());
+        for (int line = 0; line < basket.getLines(); line++) assertEquals(expected.get(basket.getItemAt(line).getID()), basket.getQuantityAt(line));
+    }
+
+    @Test
+    void findsCollidingLinesAfterRemovals() {
+        int[] colliding = BasketTest.idsStartingAt(5, 3);
+        int next = BasketTest.idsStartingAt(6, 1)[0];
+        //^ Its home is taken by the second colliding ID, so it sits at the end of their probe run.
+        Basket basket = new Basket();
+        Map<Integer, Integer> expected = new HashMap<>();
+        for (int iD : colliding) {
+            basket.add(this.item(iD));
+            expected.put(iD, 1);
+        }
+        basket.add(this.item(next), 2);
+        expected.put(next, 2);
+        this.assertHolds(basket, expected);
+
+        assertEquals(0, basket.remove(colliding[0]));
+        //^ Frees the start of the run - the rest must shift back into it.
+        expected.remove(colliding[0]);
+        this.assertHolds(basket, expected);
+        assertEquals(-1, basket.remove(colliding[0]));
+        assertNull(basket.getItem(colliding[0]));
+
+        assertEquals(1, basket.remove(next));
+        expected.put(next, 1);
+        this.assertHolds(basket, expected);
+        assertEquals(0, basket.remove(colliding[1]));
+        //^ Frees the middle of the run.
+        expected.remove(colliding[1]);
+        this.assertHolds(basket, expected);
+
+        basket.add(this.item(colliding[0]));
+        expected.put(colliding[0], 1);
+        this.assertHolds(basket, expected);
+    }
+
+    @Test
+    void findsLinesWrappingAroundTheTableAfterRemovals() {
+        int[] wrapping = BasketTest.idsStartingAt(INITIAL_MASK, 3);
+        //^ Probe run of the last position, then positions 0 and 1.
+        int first = BasketTest.idsStartingAt(0, 1)[0];
+        Basket basket = new Basket();
+        Map<Integer, Integer> expected = new HashMap<>();
+        for (int iD : wrapping) {
+            basket.add(this.item(iD));
+            expected.put(iD, 1);
+        }
+        basket.add(this.item(first));
+        expected.put(first, 1);
+        this.assertHolds(basket, expected);
+
+        assertEquals(0, basket.remove(wrapping[0]));
+        //^ The run's entries past the end of the table must shift back across it.
+        expected.remove(wrapping[0]);
+        this.assertHolds(basket, expected);
+        assertEquals(0, basket.remove(first));
+        expected.remove(first);
+        this.assertHolds(basket, expected);
+        assertEquals(0, basket.remove(wrapping[2]));
+        expected.remove(wrapping[2]);
+        this.assertHolds(basket, expected);
+        assertEquals(0, basket.remove(wrapping[1]));
+        assertTrue(basket.isEmpty());
+        assertEquals(0, basket.getTotal());
+    }
+
+    @Test
+    void growsPastInitialLines() {
+        Basket basket = new Basket();
+        Map<Integer, Integer> expected = new HashMap<>();
+        for (int iD = 1; iD <= 50; iD++) {
+            assertEquals(iD, basket.add(this.item(iD), iD));
+            expected.put(iD, iD);
+            this.assertHolds(basket, expected);
+        }
+        List<Integer> order = new ArrayList<>(expected.keySet());
+        Collections.shuffle(order, new Random(SEED));
+        for (int iD : order) {
+            for (int left = iD - 1; left >= 0; left--) assertEquals(left, basket.remove(iD));
+            expected.remove(iD);
+            this.assertHolds(basket, expected);
+        }
+        assertTrue(basket.isEmpty());
+    }
+
+    @Test
+    void keepsRunningTotalThroughRandomChanges() {
+        Random random = new Random(SEED);
+        Basket basket = new Basket();
+        Map<Integer, Integer> expected = new HashMap<>();
+        for (int change = 0; change < 20_000; change++) {
+            int iD = 1 + random.nextInt(40);
+            //^ Few enough IDs to collide often, enough to grow the table.
+            if (random.nextBoolean()) assertEquals(expected.merge(iD, 1, Integer::sum), basket.add(this.item(iD)));
+            //^ Adding as often as removing, so lines keep being removed and added again.
+            else {
+                Integer quantity = expected.get(iD);
+                assertEquals(quantity == null ? -1 : quantity - 1, basket.remove(iD));
+                if (quantity != null && quantity == 1) expected.remove(iD);
+                else if (quantity != null) expected.put(iD, quantity - 1);
+            }
+            this.assertHolds(basket, expected);
+            if (random.nextInt(2_000) == 0) {
+                basket.clear();
+                expected.clear();
+            }
+        }
+    }
+}
@@ -0,0 +1,85 @@
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the change planner against coin counts where taking the largest coin first (greedy) goes wrong, and against a brute-force search of every plan.
+ */
+class ChangePlannerTest {
+    private static final CoinGBP[] COINS = CoinGBP.values();
+    private final ChangePlanner planner = new ChangePlanner();
+
+    /**
+     * Helper method to make a coin count vector.
+     * @param coinsAndCounts Pairs of coin type and count.
+     * @return Counts indexed by 'CoinGBP.ordinal()'.
+     */
+    private static int[] counts(Object... coinsAndCounts) {
+        int[] counts = new int[COINS.length];
+        for (int i = 0; i < coinsAndCounts.length; i += 2) counts[((CoinGBP) coinsAndCounts[i]).ordinal()] = (Integer) coinsAndCounts[i + 1];
+        return counts;
+    }
+    /**
+     * Helper method to find the fewest coins making an amount by trying every plan.
+     * @param counts Coin counts, indexed by 'CoinGBP.ordinal()'.
+     * @param type   Coin types from this ordinal up are still to be chosen.
+     * @param amount Pence still to be made.
+     * @return The fewest coins; 'Integer.MAX_VALUE' if the amount cannot be made.
+     */
+    private static int bruteForce(int[] counts, int type, int amount) {
+        if (amount == 0) return 0;
+        if (type == COINS.length) return Integer.MAX_VALUE;
+        int best = Integer.MAX_VALUE;
+        for (int k = 0; k <= counts[type] && k * COINS[type].getValue() <= amount; k++) {
+            int rest = ChangePlannerTest.bruteForce(counts, type + 1, amount - k * (int) COINS[type].getValue());
+            if (rest != Integer.MAX_VALUE) best = Math.min(best, rest + k);
+        }
+        return best;
+    }
+
+    @Test
+    void paysWhatGreedyMisses() {
+        int[] counts = ChangePlannerTest.counts(CoinGBP.TWENTY_PENCE, 3, CoinGBP.FIFTY_PENCE, 1);
+        //^ Greedy takes the 50p first and is left owing 10p.
+        assertArrayEquals(ChangePlannerTest.counts(CoinGBP.TWENTY_PENCE, 3), this.planner.plan(counts, 60));
+        assertTrue(this.planner.isPayable(counts, 60));
+    }
+
+    @Test
+    void refusesWhenNoPlanExists() {
+        int[] counts = ChangePlannerTest.counts(CoinGBP.TWENTY_PENCE, 3, CoinGBP.FIFTY_PENCE, 1);
+        assertNull(this.planner.plan(counts, 30));
+        assertFalse(this.planner.isPayable(counts, 30));
+        assertNull(this.planner.plan(counts, 200), "more than every coin together");
+        assertNull(this.planner.plan(new int[COINS.length], 1), "no coins at all");
+        assertArrayEquals(new int[COINS.length], this.planner.plan(new int[COINS.length], 0), "nothing owed needs no coins");
+        assertFalse(this.planner.isEveryPayableUpTo(counts, 40));
+        assertTrue(this.planner.isEveryPayableUpTo(ChangePlannerTest.counts(CoinGBP.ONE_PENNY, 5), 5));
+    }
+
+    @Test
+    void plansUseTheFewestCoins() {
+        int[] counts = ChangePlannerTest.counts(CoinGBP.ONE_PENNY, 2, CoinGBP.TWO_PENCE, 1, CoinGBP.FIVE_PENCE, 2, CoinGBP.TWENTY_PENCE, 3, CoinGBP.FIFTY_PENCE, 1, CoinGBP.ONE_POUND, 1);
+        for (int amount = 0; amount <= 250; amount++) {
+            int expected = ChangePlannerTest.bruteForce(counts, 0, amount);
+            int[] plan = this.planner.plan(counts, amount);
+            if (expected == Integer.MAX_VALUE) {
+                assertNull(plan, STR."\{amount}p");
+                continue;
+            }
+            long planned = 0;
+            int coins = 0;
+            for (CoinGBP coin : COINS) {
+                assertTrue(plan[coin.ordinal()] <= counts[coin.ordinal()], STR."\{amount}p uses only coins held");
+                planned += coin.getValue() * plan[coin.ordinal()];
+                coins += plan[coin.ordinal()];
+            }
+            assertEquals(amount, planned, STR."\{amount}p");
+            assertEquals(expected, coins, STR."\{amount}p");
+        }
+    }
+}
@@ -0,0 +1,289 @@
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Multi-threaded stress tests for the lock-free item and coin storage and the vending machine's state changes.
+ * <p>
+ * Every thread counts the operations that succeeded; once all have finished, the storage must hold exactly what those counts say -
+ * item totals by ID ('stockByItemID') equal to the sum of their slots, and coin counts (and so the money held) conserved.
+ */
+class ConcurrencyStressTest {
+    private static final int THREADS = 8;
+    private static final int ROUNDS = 20_000;
+    //^ Operations per thread.
+    private static final int SLOTS = 8;
+    private static final int SLOT_SIZE = 20;
+    private static final int ITEMS = 4;
+    //^ Item IDs 1 to 'ITEMS', each assigned to two slots - so item totals span slots.
+    private static final int COIN_MAX = 1_000;
+    private static final int COIN_START = 500;
+    private static final CoinGBP[] COINS = CoinGBP.values();
+
+    /**
+     * Helper method to get the item ID a slot holds.
+     * @param slotNum The slot number.
+     * @return Item ID from 1 to 'ITEMS'.
+     */
+    private static int itemOf(int slotNum) { return slotNum % ITEMS + 1; }
+    /**
+     * Helper method to make the item for an ID.
+     * @param iD The item ID.
+     * @return The item.
+     */
+    private static Item item(int iD) { return ItemFactory.getInstance().createItem(ItemType.SNACK, STR."Item \{iD}", iD, 0.05 * iD, 25); }
+    /**
+     * Helper method to make coin maximums of 'COIN_MAX' for every coin type.
+     * @return The coin maximums.
+     */
+    private static Map<CoinGBP, Integer> coinMaxes() {
+        Map<CoinGBP, Integer> coinMaxes = new EnumMap<>(CoinGBP.class);
+        for (CoinGBP coin : COINS) coinMaxes.put(coin, COIN_MAX);
+        return coinMaxes;
+    }
+    /**
+     * Helper method to run a body on 'THREADS' threads at once, starting together, and rethrow anything a thread threw.
+     * @param body What each thread runs, given its thread number.
+     * @throws Exception if a thread threw or did not finish in time.
+     */
+    private static void race(ThreadBody body) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (int thread = 0; thread < THREADS; thread++) {
+                int number = thread;
+                Callable<Void> task = () -> {
+                    start.await();
+                    body.run(number);
+                    return null;
+                };
+                futures.add(executor.submit(task));
+            }
+            start.countDown();
+            for (Future<Void> future : futures) future.get(60, TimeUnit.SECONDS);
+            //^ Rethrows a thread's failure (wrapped in 'ExecutionException').
+        }
+        finally { executor.shutdownNow(); }
+    }
+    /**
+     * Body of one racing thread.
+     */
+    @FunctionalInterface
+    private interface ThreadBody { void run(int thread); }
+
+    @Test
+    void itemTotalsMatchSlotsUnderConcurrentRestockDispenseAndReserve() throws Exception {
+        ItemStorage itemStorage = new ItemStorage(SLOT_SIZE, SLOTS);
+        for (int slot = 0; slot < SLOTS; slot++) itemStorage.assignSlot(slot, ConcurrencyStressTest.item(ConcurrencyStressTest.itemOf(slot)));
+        AtomicLongArray added = new AtomicLongArray(ITEMS + 1);
+        AtomicLongArray removed = new AtomicLongArray(ITEMS + 1);
+        //^ Both indexed by item ID.
+
+        ConcurrencyStressTest.race(thread -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int round = 0; round < ROUNDS; round++) {
+                int slot = random.nextInt(SLOTS);
+                int iD = random.nextInt(ITEMS) + 1;
+                switch (random.nextInt(5)) {
+                    case 0, 1 -> { if (itemStorage.tryRestockItem(slot).isOk()) added.incrementAndGet(ConcurrencyStressTest.itemOf(slot)); }
+                    case 2 -> { if (itemStorage.tryDispenseItem(iD, false).isOk()) removed.incrementAndGet(iD); }
+                    //^ Customer dispensing by item ID - from whichever of its slots has stock.
+                    case 3 -> { if (itemStorage.tryDispenseItem(slot, true).isOk()) removed.incrementAndGet(ConcurrencyStressTest.itemOf(slot)); }
+                    //^ Admin taking an item out by slot number.
+                    default -> {
+                        int quantity = random.nextInt(3) + 1;
+                        ItemStorage.Reservation reservation = itemStorage.reserve(new int[]{iD}, new int[]{quantity}, TimeUnit.SECONDS.toNanos(10));
+                        if (reservation == null) break;
+                        if (random.nextBoolean()) itemStorage.release(reservation);
+                        else if (itemStorage.dispenseReserved(reservation).isOk()) removed.addAndGet(iD, quantity);
+                    }
+                }
+            }
+        });
+
+        ItemSlot[] slots = itemStorage.render();
+        for (int iD = 1; iD <= ITEMS; iD++) {
+            int slotTotal = 0;
+            for (ItemSlot slot : slots) {
+                assertTrue(slot.getStock() >= 0 && slot.getStock() <= SLOT_SIZE, STR."slot \{slot.getSlotNum()} stock \{slot.getStock()}");
+                if (slot.checkID(iD)) slotTotal += slot.getStock();
+            }
+            long expected = added.get(iD) - removed.get(iD);
+            assertEquals(expected, slotTotal, STR."item \{iD} slot total");
+            assertEquals(expected, itemStorage.getStockByID(iD), STR."item \{iD} stockByItemID");
+            assertEquals(expected, itemStorage.scanStockByID(iD), STR."item \{iD} scan");
+        }
+    }
+
+    @Test
+    void reservationsExpiringWhileDispensedKeepItemTotals() throws Exception {
+        ItemStorage itemStorage = new ItemStorage(SLOT_SIZE, SLOTS);
+        for (int slot = 0; slot < SLOTS; slot++) itemStorage.assignSlot(slot, ConcurrencyStressTest.item(ConcurrencyStressTest.itemOf(slot)));
+        AtomicLongArray added = new AtomicLongArray(ITEMS + 1);
+        AtomicLongArray removed = new AtomicLongArray(ITEMS + 1);
+
+        ConcurrencyStressTest.race(thread -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int round = 0; round < ROUNDS; round++) {
+                int slot = random.nextInt(SLOTS);
+                int iD = random.nextInt(ITEMS) + 1;
+                if (random.nextBoolean()) {
+                    if (itemStorage.tryRestockItem(slot).isOk()) added.incrementAndGet(ConcurrencyStressTest.itemOf(slot));
+                    continue;
+                }
+                int quantity = random.nextInt(3) + 1;
+                ItemStorage.Reservation reservation = itemStorage.reserve(new int[]{iD}, new int[]{quantity}, 0);
+                //^ Expired at once - the next reservation by any thread releases it, racing this thread's dispensing.
+                if (reservation == null) continue;
+                if (random.nextInt(4) == 0) itemStorage.release(reservation);
+                else if (itemStorage.dispenseReserved(reservation).isOk()) removed.addAndGet(iD, quantity);
+            }
+        });
+
+        for (int iD = 1; iD <= ITEMS; iD++) {
+            int expected = (int) (added.get(iD) - removed.get(iD));
+            assertEquals(expected, itemStorage.scanStockByID(iD), STR."item \{iD} scan");
+            assertEquals(expected, itemStorage.getStockByID(iD), STR."item \{iD} stockByItemID");
+            assertEquals(null, itemStorage.reserve(new int[]{iD}, new int[]{expected + 1}, 0), STR."item \{iD} reservable beyond its stock");
+            if (expected > 0) assertNotEquals(null, itemStorage.reserve(new int[]{iD}, new int[]{expected}, 0), STR."item \{iD} stock not reservable");
+            //^ Unreserved counts equal the slot counts once every reservation is closed or expired.
+        }
+    }
+
+    @Test
+    void coinTotalsAreConservedUnderConcurrentDepositAndWithdraw() throws Exception {
+        CoinStorage coinStorage = new CoinStorage(ConcurrencyStressTest.coinMaxes());
+        for (CoinGBP coin : COINS) coinStorage.deposit(coin, COIN_START);
+        AtomicLongArray deposited = new AtomicLongArray(COINS.length);
+        AtomicLongArray withdrawn = new AtomicLongArray(COINS.length);
+        //^ Both indexed by 'CoinGBP.ordinal()'.
+
+        ConcurrencyStressTest.race(thread -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int round = 0; round < ROUNDS; round++) {
+                CoinGBP coin = COINS[random.nextInt(COINS.length)];
+                switch (random.nextInt(5)) {
+                    case 0 -> { if (coinStorage.tryDeposit(coin).isOk()) deposited.incrementAndGet(coin.ordinal()); }
+                    case 1 -> { if (coinStorage.tryWithdraw(coin).isOk()) withdrawn.incrementAndGet(coin.ordinal()); }
+                    case 2 -> deposited.addAndGet(coin.ordinal(), coinStorage.tryDeposit(coin, random.nextInt(5) + 1));
+                    case 3 -> withdrawn.addAndGet(coin.ordinal(), coinStorage.tryWithdraw(coin, random.nextInt(5) + 1));
+                    //^ Bulk versions return how many were actually moved (never negative here - every coin is supported).
+                    default -> {
+                        int[] plan = coinStorage.planChange(random.nextLong(1, 500));
+                        if (plan == null || !coinStorage.tryWithdraw(plan).isOk()) break;
+                        //^ Other threads may have taken the planned coins meanwhile - then nothing is withdrawn.
+                        for (CoinGBP planned : COINS) withdrawn.addAndGet(planned.ordinal(), plan[planned.ordinal()]);
+                    }
+                }
+            }
+        });
+
+        long expectedPence = 0;
+        long heldPence = 0;
+        for (CoinGBP coin : COINS) {
+            long expected = COIN_START + deposited.get(coin.ordinal()) - withdrawn.get(coin.ordinal());
+            int count = coinStorage.getCoinCount(coin);
+            assertEquals(expected, count, coin.name());
+            assertTrue(count >= 0 && count <= COIN_MAX, STR."\{coin.name()} count \{count}");
+            expectedPence += expected * coin.getValue();
+            heldPence += count * coin.getValue();
+        }
+        assertEquals(expectedPence, heldPence, "money held");
+    }
+
+    @Test
+    void stateChangeRacesLetOneSessionUseTheVendingMachine() throws Exception {
+        VendingMachine vendingMachine = VendingMachineFactory.getInstance().createVendingMachine(SLOTS, SLOT_SIZE, ConcurrencyStressTest.coinMaxes());
+        vendingMachine.changeState(VendingMachineState.MAINTENANCE);
+        for (int slot = 0; slot < SLOTS; slot++) vendingMachine.assignSlot(slot, ConcurrencyStressTest.item(ConcurrencyStressTest.itemOf(slot)));
+        for (CoinGBP coin : COINS) vendingMachine.insertCoins(coin, COIN_START);
+        vendingMachine.changeState(VendingMachineState.IDLE);
+        long maintenanceEntries = vendingMachine.getStateEntries(VendingMachineState.MAINTENANCE);
+
+        AtomicInteger users = new AtomicInteger();
+        //^ Threads currently holding the vending machine - must never exceed one.
+        AtomicInteger maintenanceSessions = new AtomicInteger();
+        AtomicLongArray added = new AtomicLongArray(ITEMS + 1);
+        AtomicLongArray removed = new AtomicLongArray(ITEMS + 1);
+        AtomicLongArray deposited = new AtomicLongArray(COINS.length);
+        AtomicLongArray withdrawn = new AtomicLongArray(COINS.length);
+
+        ConcurrencyStressTest.race(thread -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int round = 0; round < ROUNDS / 10; round++) {
+                int slot = random.nextInt(SLOTS);
+                CoinGBP coin = COINS[random.nextInt(COINS.length)];
+                if (random.nextBoolean()) {
+                    //* Admin session - restocks, takes an item out, and moves coins.
+                    if (!vendingMachine.changeState(VendingMachineState.IDLE, VendingMachineState.MAINTENANCE)) continue;
+                    assertEquals(1, users.incrementAndGet(), "vending machine shared");
+                    maintenanceSessions.incrementAndGet();
+                    VendingResult stocked = vendingMachine.tryStockItem(slot);
+                    assertNotEquals(VendingResult.REFUSED, stocked);
+                    if (stocked.isOk()) added.incrementAndGet(ConcurrencyStressTest.itemOf(slot));
+                    int other = random.nextInt(SLOTS);
+                    VendingResult taken = vendingMachine.tryDispenseItem(other);
+                    assertNotEquals(VendingResult.REFUSED, taken);
+                    if (taken.isOk()) removed.incrementAndGet(ConcurrencyStressTest.itemOf(other));
+                    if (vendingMachine.tryInsertCoin(coin).isOk()) deposited.incrementAndGet(coin.ordinal());
+                    CoinGBP revenue = COINS[random.nextInt(COINS.length)];
+                    if (vendingMachine.tryWithdrawCoin(revenue).isOk()) withdrawn.incrementAndGet(revenue.ordinal());
+                    users.decrementAndGet();
+                    vendingMachine.changeState(VendingMachineState.IDLE);
+                }
+                else {
+                    //* Customer session - pays a coin, gets an item by ID and a coin back.
+                    if (!vendingMachine.changeState(VendingMachineState.IDLE, VendingMachineState.ORDERING)) continue;
+                    assertEquals(1, users.incrementAndGet(), "vending machine shared");
+                    vendingMachine.changeState(VendingMachineState.PAYING);
+                    VendingResult paid = vendingMachine.tryInsertCoin(coin);
+                    assertNotEquals(VendingResult.REFUSED, paid);
+                    if (paid.isOk()) deposited.incrementAndGet(coin.ordinal());
+                    vendingMachine.changeState(VendingMachineState.DISPENSING);
+                    int iD = random.nextInt(ITEMS) + 1;
+                    VendingResult dispensed = vendingMachine.tryDispenseItem(iD);
+                    assertNotEquals(VendingResult.REFUSED, dispensed);
+                    if (dispensed.isOk()) removed.incrementAndGet(iD);
+                    vendingMachine.changeState(VendingMachineState.REFUNDING);
+                    CoinGBP change = COINS[random.nextInt(COINS.length)];
+                    VendingResult refunded = vendingMachine.tryWithdrawCoin(change);
+                    assertNotEquals(VendingResult.REFUSED, refunded);
+                    if (refunded.isOk()) withdrawn.incrementAndGet(change.ordinal());
+                    users.decrementAndGet();
+                    vendingMachine.changeState(VendingMachineState.IDLE);
+                }
+            }
+        });
+
+        assertEquals(VendingMachineState.IDLE, vendingMachine.getState());
+        assertEquals(maintenanceEntries + maintenanceSessions.get(), vendingMachine.getStateEntries(VendingMachineState.MAINTENANCE));
+        vendingMachine.changeState(VendingMachineState.MAINTENANCE);
+        ItemSlot[] slots = vendingMachine.getItemStorage();
+        for (int iD = 1; iD <= ITEMS; iD++) {
+            int slotTotal = 0;
+            for (ItemSlot slot : slots) if (slot.checkID(iD)) slotTotal += slot.getStock();
+            long expected = added.get(iD) - removed.get(iD);
+            assertEquals(expected, slotTotal, STR."item \{iD} slot total");
+            assertEquals(expected, vendingMachine.getItemStock(iD), STR."item \{iD} stockByItemID");
+        }
+        for (CoinGBP coin : COINS) {
+            assertEquals(COIN_START + deposited.get(coin.ordinal()) - withdrawn.get(coin.ordinal()), vendingMachine.readCoinCount(coin), coin.name());
+        }
+    }
+}
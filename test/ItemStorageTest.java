@@ -0,0 +1,59 @@
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the item storage's per-item totals ('getStockByID') and stock view stay in step with the slot counts, however the counts are changed.
+ */
+class ItemStorageTest {
+    private static final int SLOTS = 4;
+    private static final int SLOT_SIZE = 5;
+
+    /**
+     * Helper method to make the item for an ID.
+     * @param iD The item ID.
+     * @return The item.
+     */
+    private static Item item(int iD) { return ItemFactory.getInstance().createItem(ItemType.SNACK, STR."Item \{iD}", iD, 0.05 * iD, 25); }
+
+    @Test
+    void slotViewChangesUpdateItemTotalsAndStockView() {
+        ItemStorage itemStorage = new ItemStorage(SLOT_SIZE, SLOTS);
+        Item item = ItemStorageTest.item(1);
+        itemStorage.assignSlot(0, item);
+        itemStorage.assignSlot(1, item);
+        ItemSlot slot = itemStorage.render()[0];
+        //^ Not 'findSlotByItem' - it only finds slots with stock.
+        Map<Item, Integer> before = itemStorage.getStockView();
+
+        for (int i = 0; i < SLOT_SIZE; i++) slot.addItem();
+        assertFalse(slot.tryAddItem(), "slot is full");
+        assertEquals(SLOT_SIZE, itemStorage.getStockByID(1));
+        Map<Item, Integer> stocked = itemStorage.getStockView();
+        assertNotSame(before, stocked, "stock view rebuilt after stocking through the slot");
+        assertEquals(SLOT_SIZE, stocked.get(item));
+
+        assertTrue(slot.tryRemoveItem());
+        slot.removeItem();
+        assertEquals(SLOT_SIZE - 2, itemStorage.getStockByID(1));
+        assertEquals(SLOT_SIZE - 2, itemStorage.getStockView().get(item));
+        assertEquals(itemStorage.scanStockByID(1), itemStorage.getStockByID(1));
+    }
+
+    @Test
+    void staleSlotViewChangesNothing() {
+        ItemStorage itemStorage = new ItemStorage(SLOT_SIZE, SLOTS);
+        itemStorage.assignSlot(0, ItemStorageTest.item(1));
+        ItemSlot stale = itemStorage.render()[0];
+        itemStorage.unassignSlot(0);
+        itemStorage.assignSlot(0, ItemStorageTest.item(1));
+
+        assertFalse(stale.tryAddItem(), "view of a previous assignment");
+        assertEquals(0, itemStorage.getStockByID(1));
+        assertEquals(0, itemStorage.getSlotStock(0));
+    }
+}
@@ -0,0 +1,235 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks what a journaled vending machine recovers after a power cut - a torn last record is cut off, and coins, stock, state and an open customer session are rebuilt -
+ * that a change which cannot be journaled is undone, and that failing to snapshot is reported instead of only printed.
+ * <p>
+ * A power cut is simulated by opening the journal again without closing it: every record is on disk once appended, so closing adds nothing.
+ */
+class JournalTest {
+    private static final int SLOTS = 4;
+    private static final int SLOT_SIZE = 20;
+    private static final int ITEM_ID = 1;
+
+    @TempDir
+    Path directory;
+
+    /**
+     * Helper method to make coin maximums of 100 for every coin type.
+     * @return The coin maximums.
+     */
+    private static Map<CoinGBP, Integer> coinMaxes() {
+        Map<CoinGBP, Integer> coinMaxes = new EnumMap<>(CoinGBP.class);
+        for (CoinGBP coin : CoinGBP.values()) coinMaxes.put(coin, 100);
+        return coinMaxes;
+    }
+    /**
+     * Helper method to get the journal path.
+     * @return Path the segment and snapshot files are named after.
+     */
+    private Path journalPath() { return this.directory.resolve("machine.journal"); }
+    /**
+     * Helper method to open the journal and rebuild the vending machine from it.
+     * @return The rebuilt vending machine and its journal.
+     */
+    private Machine open() {
+        Journal journal = Journal.open(this.journalPath());
+        return new Machine(new VendingMachine(SLOTS, SLOT_SIZE, JournalTest.coinMaxes(), journal), journal);
+    }
+    /**
+     * A vending machine and the journal it records to.
+     * @param vendingMachine The vending machine.
+     * @param journal        Its journal.
+     */
+    private record Machine(VendingMachine vendingMachine, Journal journal) {}
+    /**
+     * Helper method to total the money in a vending machine.
+     * @param vendingMachine The vending machine.
+     * @return Value of every coin held in pence.
+     */
+    private static long money(VendingMachine vendingMachine) {
+        long total = 0;
+        for (CoinGBP coin : CoinGBP.values()) total += coin.getValue() * vendingMachine.readCoinCount(coin);
+        return total;
+    }
+    /**
+     * Helper method to set up a vending machine: one slot of 50p items stocked with 'SLOT_SIZE' items, and a float of 10 of every coin.
+     * @param vendingMachine The (new) vending machine.
+     */
+    private static void setUp(VendingMachine vendingMachine) {
+        vendingMachine.changeState(VendingMachineState.MAINTENANCE);
+        vendingMachine.assignSlot(0, ItemFactory.getInstance().createItem(ItemType.SNACK, "Crisps", ITEM_ID, 0.5, 25));
+        for (int i = 0; i < SLOT_SIZE; i++) vendingMachine.stockItem(0);
+        for (CoinGBP coin : CoinGBP.values()) vendingMachine.insertCoins(coin, 10);
+        vendingMachine.changeState(VendingMachineState.IDLE);
+    }
+
+    @Test
+    void truncatesTornLastRecord() throws IOException {
+        List<JournalRecord> records = List.of(new JournalRecord.StateChanged(VendingMachineState.MAINTENANCE), new JournalRecord.CoinsDeposited(CoinGBP.ONE_POUND, 5), new JournalRecord.ItemStocked(0));
+        Journal journal = Journal.open(this.journalPath());
+        for (JournalRecord record : records) journal.append(record);
+        journal.close();
+        Path segment = this.directory.resolve("machine.journal.1");
+        long intactSize = Files.size(segment);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.allocate(14).putInt(100).putInt(0x12345678).put(new byte[6]).flip());
+            //^ Header of a 100-byte record, cut off 6 bytes into its payload by the power cut.
+        }
+
+        journal = Journal.open(this.journalPath());
+        assertEquals(records, journal.getRecoveredRecords());
+        assertEquals(intactSize, Files.size(segment));
+        journal.append(new JournalRecord.ItemStocked(1));
+        //^ Appended where the torn record was, not after it.
+        journal.close();
+        journal = Journal.open(this.journalPath());
+        assertEquals(records.size() + 1, journal.getRecoveredRecords().size());
+        assertEquals(new JournalRecord.ItemStocked(1), journal.getRecoveredRecords().getLast());
+        journal.close();
+    }
+
+    @Test
+    void replaysCoinsStockAndState() {
+        Machine machine = this.open();
+        VendingMachine vendingMachine = machine.vendingMachine();
+        JournalTest.setUp(vendingMachine);
+        vendingMachine.changeState(VendingMachineState.MAINTENANCE);
+        vendingMachine.withdrawCoins(CoinGBP.TEN_PENCE, 3);
+        vendingMachine.insertCoin(CoinGBP.TWO_POUNDS);
+        vendingMachine.dispenseItem(0);
+        //^ Taken out by slot number (e.g. expired) - power cut while still in MAINTENANCE.
+
+        Machine recovered = this.open();
+        assertEquals(VendingMachineState.MAINTENANCE, recovered.vendingMachine().getState());
+        assertEquals(SLOT_SIZE - 1, recovered.vendingMachine().readItemStock(ITEM_ID));
+        for (CoinGBP coin : CoinGBP.values()) assertEquals(vendingMachine.readCoinCount(coin), recovered.vendingMachine().readCoinCount(coin), coin.toString());
+        assertEquals(7, recovered.vendingMachine().readCoinCount(CoinGBP.TEN_PENCE));
+        assertEquals(11, recovered.vendingMachine().readCoinCount(CoinGBP.TWO_POUNDS));
+        assertNull(recovered.vendingMachine().takeRecoveredSession());
+        machine.journal().close();
+        recovered.journal().close();
+    }
+
+    @Test
+    void restoresSessionCutOffBetweenDispensingAndChange() {
+        Machine machine = this.open();
+        VendingMachine vendingMachine = machine.vendingMachine();
+        JournalTest.setUp(vendingMachine);
+        long moneyBefore = JournalTest.money(vendingMachine);
+        //* The records a customer proxy journals for 2 x 50p paid with a £2 coin, up to dispensing - the power cut comes before the £1 change is paid out.
+        vendingMachine.changeState(VendingMachineState.IDLE, VendingMachineState.ORDERING);
+        vendingMachine.journalBasket(ITEM_ID, 2);
+        ItemStorage.Reservation reservation = vendingMachine.reserveItems(new int[]{ITEM_ID}, new int[]{2}, Long.MAX_VALUE);
+        assertNotNull(reservation);
+        vendingMachine.changeState(VendingMachineState.PAYING);
+        vendingMachine.insertCoin(CoinGBP.TWO_POUNDS);
+        vendingMachine.changeState(VendingMachineState.DISPENSING);
+        assertTrue(vendingMachine.tryDispenseReserved(reservation).isOk());
+
+        Machine recovered = this.open();
+        assertEquals(VendingMachineState.DISPENSING, recovered.vendingMachine().getState());
+        assertEquals(SLOT_SIZE - 2, recovered.vendingMachine().readItemStock(ITEM_ID));
+        CustomerSession session = recovered.vendingMachine().takeRecoveredSession();
+        assertNotNull(session);
+        assertTrue(session.basket().isEmpty(), "dispensed items are no longer owed");
+        assertEquals(-100, session.payDue());
+        assertEquals(200, session.balance());
+        recovered.journal().close();
+
+        Machine resumed = this.open();
+        new CustomerProxy(resumed.vendingMachine(), new SynchronousEventBus());
+        //^ Takes the session and finishes the purchase - pays the change out and returns to IDLE.
+        assertEquals(VendingMachineState.IDLE, resumed.vendingMachine().getState());
+        assertEquals(moneyBefore + 100, JournalTest.money(resumed.vendingMachine()));
+        assertEquals(SLOT_SIZE - 2, resumed.vendingMachine().readItemStock(ITEM_ID));
+        //^ Nothing dispensed twice.
+
+        Machine after = this.open();
+        assertEquals(VendingMachineState.IDLE, after.vendingMachine().getState());
+        assertEquals(moneyBefore + 100, JournalTest.money(after.vendingMachine()));
+        assertNull(after.vendingMachine().takeRecoveredSession());
+        //^ The change was journaled, so it is not paid out again.
+        machine.journal().close();
+        resumed.journal().close();
+        after.journal().close();
+    }
+
+    @Test
+    void undoesChangesThatCannotBeJournaled() {
+        Machine machine = this.open();
+        VendingMachine vendingMachine = machine.vendingMachine();
+        JournalTest.setUp(vendingMachine);
+        vendingMachine.changeState(VendingMachineState.MAINTENANCE);
+        machine.journal().close();
+
+        assertThrows(IllegalStateException.class, () -> vendingMachine.tryInsertCoin(CoinGBP.ONE_POUND));
+        assertEquals(10, vendingMachine.readCoinCount(CoinGBP.ONE_POUND));
+        assertThrows(IllegalStateException.class, () -> vendingMachine.tryWithdrawCoins(CoinGBP.TEN_PENCE, 4));
+        assertEquals(10, vendingMachine.readCoinCount(CoinGBP.TEN_PENCE));
+        assertThrows(IllegalStateException.class, () -> vendingMachine.tryDispenseItem(0));
+        assertEquals(SLOT_SIZE, vendingMachine.readItemStock(ITEM_ID));
+        assertThrows(IllegalStateException.class, () -> vendingMachine.changeState(VendingMachineState.IDLE));
+        assertEquals(VendingMachineState.MAINTENANCE, vendingMachine.getState());
+        //^ Memory still matches what the journal holds.
+    }
+
+    @Test
+    void refusedCoinLeavesStorageAndJournalAlone() {
+        Machine machine = this.open();
+        VendingMachine vendingMachine = machine.vendingMachine();
+        JournalTest.setUp(vendingMachine);
+        vendingMachine.changeState(VendingMachineState.ORDERING);
+        vendingMachine.changeState(VendingMachineState.PAYING);
+        vendingMachine.changeState(VendingMachineState.REFUNDING);
+        assertEquals(VendingResult.REFUSED, vendingMachine.tryInsertCoin(CoinGBP.ONE_POUND));
+        //^ Coins can be withdrawn while REFUNDING, but the refused coin never went in - the coin acceptor hands it back.
+        assertEquals(10, vendingMachine.readCoinCount(CoinGBP.ONE_POUND));
+
+        Machine recovered = this.open();
+        assertEquals(10, recovered.vendingMachine().readCoinCount(CoinGBP.ONE_POUND));
+        machine.journal().close();
+        recovered.journal().close();
+    }
+
+    @Test
+    void reportsFailedSnapshotsToTheFailureHandler() throws IOException {
+        Files.createDirectory(this.directory.resolve("machine.journal.snapshot.tmp"));
+        //^ The snapshot cannot be written - the name of its temporary file is taken by a directory.
+        List<Exception> failures = new CopyOnWriteArrayList<>();
+        Journal journal = Journal.open(this.journalPath(), 5, failures::add);
+        VendingMachine vendingMachine = new VendingMachine(SLOTS, SLOT_SIZE, JournalTest.coinMaxes(), journal);
+        JournalTest.setUp(vendingMachine);
+        //^ Returning to IDLE after well over 5 records makes a snapshot due.
+        journal.close();
+        //^ Waits for the compaction thread.
+
+        assertFalse(failures.isEmpty());
+        assertInstanceOf(IOException.class, failures.getFirst());
+        assertFalse(Files.exists(this.directory.resolve("machine.journal.snapshot")));
+        journal = Journal.open(this.journalPath());
+        vendingMachine = new VendingMachine(SLOTS, SLOT_SIZE, JournalTest.coinMaxes(), journal);
+        assertEquals(SLOT_SIZE, vendingMachine.readItemStock(ITEM_ID));
+        //^ Every record is still in the segments.
+        journal.close();
+    }
+}
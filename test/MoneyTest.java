@@ -0,0 +1,111 @@
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+/**
+ * Checks the whole-pence money arithmetic gives the same amounts as the 'double' pounds arithmetic it replaced, for every combination of coins.
+ * <p>
+ * Every combination of 0 to 'MAX_PER_COIN' coins of each type is deposited one coin at a time, as 'CustomerProxy.depositCoin' does.
+ * The old arithmetic is replayed alongside: the balance summed in 'double' pounds, and change paid out coin by coin with 'Math.round(x * 100) / 100' after every coin.
+ */
+class MoneyTest {
+    private static final int MAX_PER_COIN = 3;
+    //^ 4^8 = 65536 combinations.
+    private static final CoinGBP[] COINS = CoinGBP.values();
+    private static final double[] OLD_VALUES = {0.01, 0.02, 0.05, 0.10, 0.20, 0.50, 1.00, 2.00};
+    //^ Old 'CoinGBP' values in pounds, indexed by 'CoinGBP.ordinal()'.
+
+    /**
+     * Helper method to turn a combination number into how many of each coin type it holds (digits in base 'MAX_PER_COIN + 1').
+     * @param combination The combination number.
+     * @return How many of each coin type, indexed by 'CoinGBP.ordinal()'.
+     */
+    private static int[] countsOf(int combination) {
+        int[] counts = new int[COINS.length];
+        for (int i = 0; i < COINS.length; i++) {
+            counts[i] = combination % (MAX_PER_COIN + 1);
+            combination /= MAX_PER_COIN + 1;
+        }
+        return counts;
+    }
+    /**
+     * Helper method to get how many combinations there are.
+     * @return (MAX_PER_COIN + 1) ^ number of coin types.
+     */
+    private static int combinations() {
+        int combinations = 1;
+        for (int i = 0; i < COINS.length; i++) combinations *= MAX_PER_COIN + 1;
+        return combinations;
+    }
+
+    @Test
+    void coinValuesMatchOldPounds() {
+        for (CoinGBP coin : COINS) assertEquals(Money.fromPounds(OLD_VALUES[coin.ordinal()]), coin.getValue(), coin.name());
+    }
+
+    @Test
+    void depositedTotalsMatchOldArithmetic() {
+        for (int combination = 0; combination < MoneyTest.combinations(); combination++) {
+            int[] counts = MoneyTest.countsOf(combination);
+            long pence = 0;
+            double pounds = 0.0;
+            for (CoinGBP coin : COINS) {
+                for (int i = 0; i < counts[coin.ordinal()]; i++) {
+                    pence += coin.getValue();
+                    pounds += OLD_VALUES[coin.ordinal()];
+                }
+            }
+            assertEquals(Math.round(pounds * 100.0) / 100.0, pence / 100.0, 1e-9, STR."combination \{combination}");
+            assertEquals(String.format(Locale.ROOT, "%.2f", pounds), Money.format(pence), STR."combination \{combination}");
+            //^ What the display showed then and shows now.
+        }
+    }
+
+    @Test
+    void changeMatchesOldArithmetic() {
+        Map<CoinGBP, Integer> coinMaxes = new EnumMap<>(CoinGBP.class);
+        for (CoinGBP coin : COINS) coinMaxes.put(coin, 1_000);
+        CoinStorage coinStorage = new CoinStorage(coinMaxes);
+        for (CoinGBP coin : COINS) coinStorage.deposit(coin, 1_000);
+        //^ Plenty of every coin, so the old loop never skips a coin type.
+
+        for (int combination = 0; combination < MoneyTest.combinations(); combination++) {
+            int[] counts = MoneyTest.countsOf(combination);
+            long pence = 0;
+            double pounds = 0.0;
+            for (CoinGBP coin : COINS) {
+                pence += coin.getValue() * counts[coin.ordinal()];
+                for (int i = 0; i < counts[coin.ordinal()]; i++) pounds += OLD_VALUES[coin.ordinal()];
+            }
+
+            int oldCoins = 0;
+            double due = pounds;
+            while (due > 0.0) {
+                //* Old 'CustomerProxy.processCoinWithdrawal' - largest coin not above what is still due.
+                for (int i = COINS.length - 1; i >= 0; i--) {
+                    if (OLD_VALUES[i] <= due) {
+                        due = Math.round((due - OLD_VALUES[i]) * 100.0) / 100.0;
+                        oldCoins++;
+                        break;
+                    }
+                }
+            }
+
+            int[] plan = coinStorage.planChange(pence);
+            assertNotNull(plan, STR."combination \{combination}");
+            long planned = 0;
+            int plannedCoins = 0;
+            for (CoinGBP coin : COINS) {
+                planned += coin.getValue() * plan[coin.ordinal()];
+                plannedCoins += plan[coin.ordinal()];
+            }
+            assertEquals(pence, planned, STR."combination \{combination}");
+            assertEquals(oldCoins, plannedCoins, STR."combination \{combination}");
+            //^ Greedy is optimal for sterling coins, so the fewest-coins plan uses as many coins as the old loop.
+        }
+    }
+}
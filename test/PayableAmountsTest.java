@@ -0,0 +1,107 @@
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the coin storage's payable amounts stay exact as coins are deposited and withdrawn - compared against the change planner after every step.
+ */
+class PayableAmountsTest {
+    private static final CoinGBP[] COINS = CoinGBP.values();
+    private static final int COIN_MAX = 1_000;
+    private static final int BOUND = 200;
+    //^ Largest coin value - what the coin storage tracks as payable amounts.
+
+    /**
+     * Helper method to make a coin storage supporting every coin type.
+     * @return The empty coin storage.
+     */
+    private static CoinStorage coinStorage() {
+        Map<CoinGBP, Integer> coinMaxes = new EnumMap<>(CoinGBP.class);
+        for (CoinGBP coin : COINS) coinMaxes.put(coin, COIN_MAX);
+        return new CoinStorage(coinMaxes);
+    }
+    /**
+     * Helper method to check every tracked amount against the change planner.
+     * @param coinStorage The coin storage.
+     * @param step        What was last done, for failure messages.
+     */
+    private static void assertMatchesPlanner(CoinStorage coinStorage, String step) {
+        int[] counts = new int[COINS.length];
+        for (CoinGBP coin : COINS) counts[coin.ordinal()] = coinStorage.getCoinCount(coin);
+        ChangePlanner planner = new ChangePlanner();
+        for (int amount = 0; amount <= BOUND; amount++) {
+            assertEquals(planner.isPayable(counts, amount), coinStorage.isChangePayable(amount), STR."\{amount}p after \{step}");
+        }
+    }
+
+    @Test
+    void depositThenWithdrawRoundTripsToNothingPayable() {
+        CoinStorage coinStorage = PayableAmountsTest.coinStorage();
+        assertTrue(coinStorage.isChangePayable(0));
+        assertFalse(coinStorage.isChangePayable(1));
+
+        for (CoinGBP coin : COINS) coinStorage.deposit(coin, COIN_MAX);
+        //^ Thousands of ways to make most amounts - enough to wrap any fixed-width count of combinations.
+        assertTrue(coinStorage.isEveryChangePayableUpTo(BOUND));
+        for (CoinGBP coin : COINS) coinStorage.withdraw(coin, COIN_MAX);
+        for (int amount = 1; amount <= BOUND; amount++) assertFalse(coinStorage.isChangePayable(amount), STR."\{amount}p");
+        assertTrue(coinStorage.isChangePayable(0));
+    }
+
+    @Test
+    void singleCoinsRoundTrip() {
+        CoinStorage coinStorage = PayableAmountsTest.coinStorage();
+        coinStorage.deposit(CoinGBP.TWENTY_PENCE);
+        coinStorage.deposit(CoinGBP.TWENTY_PENCE);
+        coinStorage.deposit(CoinGBP.TWENTY_PENCE);
+        coinStorage.deposit(CoinGBP.FIFTY_PENCE);
+        assertTrue(coinStorage.isChangePayable(60), "three 20p");
+        assertFalse(coinStorage.isChangePayable(30));
+        coinStorage.withdraw(CoinGBP.TWENTY_PENCE);
+        assertFalse(coinStorage.isChangePayable(60));
+        assertTrue(coinStorage.isChangePayable(90), "two 20p and a 50p");
+        coinStorage.deposit(CoinGBP.TWENTY_PENCE);
+        assertTrue(coinStorage.isChangePayable(60), "back as before");
+        PayableAmountsTest.assertMatchesPlanner(coinStorage, "round trip");
+    }
+
+    @Test
+    void tubesCrossingTheirCapStayExact() {
+        CoinStorage coinStorage = PayableAmountsTest.coinStorage();
+        coinStorage.deposit(CoinGBP.FIFTY_PENCE, 6);
+        //^ Four 50p already make 200p - the fifth and sixth change no tracked amount.
+        assertTrue(coinStorage.isChangePayable(200));
+        coinStorage.withdraw(CoinGBP.FIFTY_PENCE, 2);
+        assertTrue(coinStorage.isChangePayable(200), "still four 50p");
+        coinStorage.withdraw(CoinGBP.FIFTY_PENCE);
+        assertFalse(coinStorage.isChangePayable(200), "three 50p");
+        assertTrue(coinStorage.isChangePayable(150));
+        coinStorage.deposit(CoinGBP.TEN_PENCE, 3);
+        assertTrue(coinStorage.isChangePayable(180), "three 50p and three 10p");
+        PayableAmountsTest.assertMatchesPlanner(coinStorage, "crossing the cap");
+    }
+
+    @Test
+    void matchesPlannerThroughRandomDepositsAndWithdrawals() {
+        CoinStorage coinStorage = PayableAmountsTest.coinStorage();
+        Random random = new Random(7007);
+        for (int step = 0; step < 1_000; step++) {
+            CoinGBP coin = COINS[random.nextInt(COINS.length)];
+            int amount = random.nextInt(4);
+            if (random.nextInt(3) == 0) coinStorage.tryWithdraw(coin, amount);
+            //^ Fewer withdrawals than deposits, so the storage fills up over the run.
+            else coinStorage.tryDeposit(coin, amount);
+            PayableAmountsTest.assertMatchesPlanner(coinStorage, STR."step \{step}");
+        }
+        int[] plan = coinStorage.planChange(BOUND - 1);
+        if (plan != null) {
+            coinStorage.withdraw(plan);
+            PayableAmountsTest.assertMatchesPlanner(coinStorage, "batch withdrawal");
+        }
+    }
+}
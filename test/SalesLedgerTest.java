@@ -0,0 +1,188 @@
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the sales ledger keeps its rows through a reopen, cuts off a block torn by a power cut, writes short blocks once their rows have waited,
+ * totals revenue into the right item and hour, and is not closed under a running query.
+ */
+class SalesLedgerTest {
+    private static final long HOUR_MILLIS = 3_600_000L;
+    private static final long START_MILLIS = 1_767_225_600_000L;
+    //^ 2026-01-01, on the hour.
+    private static final int MACHINE_ID = 7;
+
+    @TempDir
+    Path directory;
+
+    /**
+     * Helper method to open the ledger so it only writes blocks when told to (or when full).
+     * @return The opened ledger.
+     */
+    private SalesLedger open() { return SalesLedger.open(this.ledgerPath(), ForkJoinPool.commonPool(), DurabilityFailureHandler.uncaught(), 0); }
+    /**
+     * Helper method to get the ledger path.
+     * @return Where the ledger is kept.
+     */
+    private Path ledgerPath() { return this.directory.resolve("sales.ledger"); }
+    /**
+     * Helper method to append a line sold by 'MACHINE_ID' that paid exactly (no change).
+     * @param ledger    The ledger.
+     * @param timestamp When it was sold.
+     * @param itemID    The item ID.
+     * @param quantity  How many were sold.
+     * @param price     Unit price in pence.
+     */
+    private static void sell(SalesLedger ledger, long timestamp, int itemID, int quantity, long price) {
+        ledger.append(timestamp, MACHINE_ID, itemID, quantity, price, quantity * price, 0);
+    }
+
+    @Test
+    void keepsBlocksThroughReopen() {
+        try (SalesLedger ledger = this.open()) {
+            for (int row = 0; row < 1_000; row++) SalesLedgerTest.sell(ledger, START_MILLIS + row * 1_000L, 1 + row % 5, 1, 50);
+            ledger.flush();
+            for (int row = 0; row < 500; row++) SalesLedgerTest.sell(ledger, START_MILLIS + HOUR_MILLIS + row, 6, 2, 75);
+        }
+        //^ Second (short) block written by closing.
+
+        try (SalesLedger ledger = this.open()) {
+            assertEquals(1_500, ledger.getRowCount());
+            Map<Integer, long[]> revenue = ledger.revenuePerItemPerHour(START_MILLIS, START_MILLIS + 2 * HOUR_MILLIS);
+            assertEquals(6, revenue.size());
+            for (int itemID = 1; itemID <= 5; itemID++) assertArrayEquals(new long[]{200 * 50, 0}, revenue.get(itemID));
+            assertArrayEquals(new long[]{0, 500 * 2 * 75}, revenue.get(6));
+        }
+    }
+
+    @Test
+    void truncatesTornBlock() throws IOException {
+        long intactSize;
+        try (SalesLedger ledger = this.open()) {
+            SalesLedgerTest.sell(ledger, START_MILLIS, 1, 1, 50);
+            ledger.flush();
+            intactSize = Files.size(this.ledgerPath());
+            SalesLedgerTest.sell(ledger, START_MILLIS + 1, 2, 1, 80);
+            SalesLedgerTest.sell(ledger, START_MILLIS + 2, 2, 1, 80);
+        }
+        try (FileChannel channel = FileChannel.open(this.ledgerPath(), StandardOpenOption.WRITE)) {
+            channel.truncate(Files.size(this.ledgerPath()) - 3);
+            //^ Power cut before the last bytes of the second block reached the disk.
+        }
+
+        try (SalesLedger ledger = this.open()) {
+            assertEquals(1, ledger.getRowCount());
+            assertEquals(intactSize, Files.size(this.ledgerPath()));
+            SalesLedgerTest.sell(ledger, START_MILLIS + 3, 3, 1, 90);
+            //^ Written where the torn block was.
+        }
+        try (SalesLedger ledger = this.open()) {
+            Map<Integer, long[]> revenue = ledger.revenuePerItemPerHour(START_MILLIS, START_MILLIS + HOUR_MILLIS);
+            assertEquals(2, revenue.size());
+            assertArrayEquals(new long[]{50}, revenue.get(1));
+            assertArrayEquals(new long[]{90}, revenue.get(3));
+        }
+    }
+
+    @Test
+    void writesShortBlockOnceRowsHaveWaited() throws InterruptedException {
+        long maxUnwrittenNanos = TimeUnit.MILLISECONDS.toNanos(20);
+        SalesLedger ledger = SalesLedger.open(this.ledgerPath(), ForkJoinPool.commonPool(), DurabilityFailureHandler.uncaught(), maxUnwrittenNanos);
+        long headerSize = Integer.BYTES * 2;
+        //^ Magic and format version only.
+        SalesLedgerTest.sell(ledger, START_MILLIS, 1, 1, 50);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (this.fileSize() == headerSize && System.nanoTime() < deadline) Thread.sleep(5);
+        assertTrue(this.fileSize() > headerSize, "the row should be written without another append, flush or close");
+
+        try (SalesLedger afterPowerCut = this.open()) {
+            //* Opened without closing the first - as after a power cut.
+            assertEquals(1, afterPowerCut.getRowCount());
+        }
+        ledger.close();
+    }
+    /**
+     * Helper method to get the ledger file's size.
+     * @return Size in bytes.
+     */
+    private long fileSize() {
+        try { return Files.size(this.ledgerPath()); }
+        catch (IOException e) { throw new AssertionError(e); }
+    }
+
+    @Test
+    void totalsRevenuePerItemPerHour() {
+        try (SalesLedger ledger = this.open()) {
+            SalesLedgerTest.sell(ledger, START_MILLIS - 1, 3, 1, 100);
+            //^ Just before the range.
+            SalesLedgerTest.sell(ledger, START_MILLIS, 1, 2, 50);
+            SalesLedgerTest.sell(ledger, START_MILLIS + HOUR_MILLIS - 1, 1, 1, 50);
+            SalesLedgerTest.sell(ledger, START_MILLIS + 2 * HOUR_MILLIS, 2, 1, 120);
+            SalesLedgerTest.sell(ledger, START_MILLIS + 3 * HOUR_MILLIS, 3, 1, 100);
+            //^ The range's end is exclusive.
+            ledger.flush();
+            SalesLedgerTest.sell(ledger, START_MILLIS + 240 * HOUR_MILLIS, 4, 1, 60);
+            ledger.flush();
+            //^ A block wholly after the range - skipped.
+            SalesLedgerTest.sell(ledger, START_MILLIS + HOUR_MILLIS + 30, 2, 1, 30);
+            //^ Not yet written - scanned in memory.
+
+            Map<Integer, long[]> revenue = ledger.revenuePerItemPerHour(START_MILLIS, START_MILLIS + 3 * HOUR_MILLIS);
+            assertEquals(2, revenue.size(), "items without sales in the range are left out");
+            assertArrayEquals(new long[]{150, 0, 0}, revenue.get(1));
+            assertArrayEquals(new long[]{0, 30, 120}, revenue.get(2));
+
+            revenue = ledger.revenuePerItemPerHour(START_MILLIS + 30 * 60_000L, START_MILLIS + 90 * 60_000L);
+            //^ Hours counted from the range's start, the last one partial.
+            assertArrayEquals(new long[]{50}, revenue.get(1));
+            assertArrayEquals(new long[]{30}, revenue.get(2));
+        }
+    }
+
+    @Test
+    void closeWaitsForRunningQuery() throws Exception {
+        ForkJoinPool pool = new ForkJoinPool(1);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            SalesLedger ledger = SalesLedger.open(this.ledgerPath(), pool, DurabilityFailureHandler.uncaught(), 0);
+            SalesLedgerTest.sell(ledger, START_MILLIS, 1, 1, 50);
+            ledger.flush();
+            pool.execute(() -> {
+                try { release.await(); }
+                catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+            });
+            //^ Keeps the pool's only thread busy, so the query's scan waits in the pool.
+            CompletableFuture<Map<Integer, long[]>> query = CompletableFuture.supplyAsync(() -> ledger.revenuePerItemPerHour(START_MILLIS, START_MILLIS + HOUR_MILLIS));
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (pool.getQueuedSubmissionCount() == 0 && System.nanoTime() < deadline) Thread.sleep(5);
+            assertEquals(1, pool.getQueuedSubmissionCount(), "the query should be scanning");
+
+            CompletableFuture<Void> close = CompletableFuture.runAsync(ledger::close);
+            Thread.sleep(100);
+            assertFalse(close.isDone(), "closing should wait for the scan");
+            release.countDown();
+            assertArrayEquals(new long[]{50}, query.get(10, TimeUnit.SECONDS).get(1));
+            close.get(10, TimeUnit.SECONDS);
+            assertThrows(IllegalStateException.class, () -> ledger.revenuePerItemPerHour(START_MILLIS, START_MILLIS + HOUR_MILLIS));
+        }
+        finally {
+            release.countDown();
+            pool.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,141 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.EnumMap;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks a journaled vending machine is rebuilt from its latest snapshot plus the records after it,
+ * falls back on the previous snapshot when the latest is corrupt (after compaction already deleted the segments the latest covers),
+ * and fails naming what to restore when neither snapshot is usable.
+ */
+class SnapshotTest {
+    private static final int SNAPSHOT_INTERVAL = 10;
+    private static final int SLOTS = 4;
+    private static final int SLOT_SIZE = 50;
+    private static final int ITEM_ID = 1;
+    private static final CoinGBP COIN = CoinGBP.ONE_POUND;
+
+    @TempDir
+    Path directory;
+
+    /**
+     * Helper method to make coin maximums of 1,000 for every coin type.
+     * @return The coin maximums.
+     */
+    private static Map<CoinGBP, Integer> coinMaxes() {
+        Map<CoinGBP, Integer> coinMaxes = new EnumMap<>(CoinGBP.class);
+        for (CoinGBP coin : CoinGBP.values()) coinMaxes.put(coin, 1_000);
+        return coinMaxes;
+    }
+    /**
+     * Helper method to open the journal and rebuild the vending machine from it.
+     * @return The rebuilt vending machine and its journal.
+     */
+    private Machine open() {
+        Journal journal = Journal.open(this.directory.resolve("machine.journal"), SNAPSHOT_INTERVAL);
+        return new Machine(new VendingMachine(SLOTS, SLOT_SIZE, SnapshotTest.coinMaxes(), journal), journal);
+    }
+    /**
+     * A vending machine and the journal it records to.
+     * @param vendingMachine The vending machine.
+     * @param journal        Its journal - closing it waits for any snapshot being written.
+     */
+    private record Machine(VendingMachine vendingMachine, Journal journal) {}
+    /**
+     * Helper method for one admin visit - six journal records (two state changes, three items stocked and one bulk coin deposit).
+     * @param vendingMachine The vending machine.
+     */
+    private static void restock(VendingMachine vendingMachine) {
+        vendingMachine.changeState(VendingMachineState.MAINTENANCE);
+        if (vendingMachine.getItem(ITEM_ID) == null) vendingMachine.assignSlot(0, ItemFactory.getInstance().createItem(ItemType.SNACK, "Crisps", ITEM_ID, 0.5, 25));
+        for (int i = 0; i < 3; i++) vendingMachine.stockItem(0);
+        vendingMachine.insertCoins(COIN, 2);
+        vendingMachine.changeState(VendingMachineState.IDLE);
+        //^ Snapshots are only taken on returning to IDLE.
+    }
+    /**
+     * Helper method to write two snapshots, so compaction deletes the segments the older one covers, then a few records after the latest snapshot.
+     * @return Stock and coin count the rebuilt vending machine must have.
+     */
+    private int[] buildHistory() {
+        Machine machine = this.open();
+        for (int round = 0; round < 2; round++) SnapshotTest.restock(machine.vendingMachine());
+        machine.journal().close();
+        //^ Waits for the first snapshot to be written before the second is due (only one is written at a time).
+        machine = this.open();
+        for (int round = 0; round < 3; round++) SnapshotTest.restock(machine.vendingMachine());
+        //^ Two rounds make the second snapshot due; the third is left after it.
+        int[] expected = {machine.vendingMachine().readItemStock(ITEM_ID), machine.vendingMachine().readCoinCount(COIN)};
+        machine.journal().close();
+        assertTrue(Files.exists(this.directory.resolve("machine.journal.snapshot.previous")));
+        assertFalse(Files.exists(this.directory.resolve("machine.journal.1")), "compaction should have deleted the segment both snapshots cover");
+        return expected;
+    }
+    /**
+     * Helper method to flip the last byte of a snapshot's payload, so its checksum no longer matches.
+     * @param name The snapshot file name.
+     * @throws IOException if the file cannot be changed.
+     */
+    private void corrupt(String name) throws IOException {
+        try (FileChannel channel = FileChannel.open(this.directory.resolve(name), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer last = ByteBuffer.allocate(1);
+            channel.read(last, channel.size() - 1);
+            last.put(0, (byte) ~last.get(0)).rewind();
+            channel.write(last, channel.size() - 1);
+        }
+    }
+
+    @Test
+    void replaysSnapshotThenTail() {
+        int[] expected = this.buildHistory();
+
+        Machine machine = this.open();
+        assertInstanceOf(JournalRecord.SlotRestored.class, machine.journal().getRecoveredRecords().get(1), "replay should start from the snapshot");
+        assertEquals(expected[0], machine.vendingMachine().readItemStock(ITEM_ID));
+        assertEquals(expected[1], machine.vendingMachine().readCoinCount(COIN));
+        assertEquals(VendingMachineState.IDLE, machine.vendingMachine().getState());
+        machine.journal().close();
+    }
+
+    @Test
+    void fallsBackToPreviousSnapshotWhenLatestIsCorrupt() throws IOException {
+        int[] expected = this.buildHistory();
+        this.corrupt("machine.journal.snapshot");
+
+        Machine machine = this.open();
+        assertEquals(expected[0], machine.vendingMachine().readItemStock(ITEM_ID));
+        assertEquals(expected[1], machine.vendingMachine().readCoinCount(COIN));
+
+        SnapshotTest.restock(machine.vendingMachine());
+        SnapshotTest.restock(machine.vendingMachine());
+        //^ The next snapshot replaces the corrupt one, keeping the valid previous snapshot.
+        machine.journal().close();
+        machine = this.open();
+        assertEquals(expected[0] + 6, machine.vendingMachine().readItemStock(ITEM_ID));
+        assertEquals(expected[1] + 4, machine.vendingMachine().readCoinCount(COIN));
+        machine.journal().close();
+    }
+
+    @Test
+    void failsNamingWhatToRestoreWhenBothSnapshotsAreCorrupt() throws IOException {
+        this.buildHistory();
+        this.corrupt("machine.journal.snapshot");
+        this.corrupt("machine.journal.snapshot.previous");
+
+        IllegalStateException failure = assertThrows(IllegalStateException.class, this::open);
+        assertTrue(failure.getMessage().contains("is corrupt"), failure.getMessage());
+        assertTrue(failure.getMessage().contains("restore"), failure.getMessage());
+    }
+}